@@ -0,0 +1,96 @@
+package io.advantageous.reakt.kinesis.jmh;
+
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.advantageous.reakt.kinesis.jmh.PutRecordBenchmark.STREAM;
+
+/**
+ * getRecords fanned out to every shard of a stream at once, waiting until all shards answered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetRecordsBenchmark {
+
+    private static final int RECORDS_PER_SHARD = 1_000;
+
+    @Param({"1", "4", "16"})
+    private int shards;
+
+    @Param({"0", "500"})
+    private long latencyMicros;
+
+    @Param({"100"})
+    private int recordsPerCall;
+
+    private LocalKinesisAsyncClient local;
+    private KinesisClient client;
+    private GetRecordsRequest[] requests;
+
+    @Setup
+    public void setUp() throws Exception {
+        local = new LocalKinesisAsyncClient();
+        local.createLocalStream(STREAM, shards);
+        client = KinesisClient.create(local);
+        final ByteBuffer payload = ByteBuffer.wrap(new byte[100]);
+        final String[] partitionKeys = PutRecordBenchmark.partitionKeys(RECORDS_PER_SHARD * shards);
+        for (String partitionKey : partitionKeys) {
+            local.putRecordAsync(new PutRecordRequest().withStreamName(STREAM).withData(payload.duplicate())
+                    .withPartitionKey(partitionKey), null);
+        }
+        requests = new GetRecordsRequest[shards];
+        for (int index = 0; index < shards; index++) {
+            final CompletableFuture<String> iterator = new CompletableFuture<>();
+            client.getShardIteratorAsync(STREAM, String.format("shardId-%012d", index),
+                    ShardIteratorType.TRIM_HORIZON.toString())
+                    .then(result -> iterator.complete(result.getShardIterator()))
+                    .catchError(iterator::completeExceptionally).invoke();
+            requests[index] = new GetRecordsRequest().withShardIterator(iterator.get()).withLimit(recordsPerCall);
+        }
+        local.withLatencyMicros(latencyMicros);
+    }
+
+    @TearDown
+    public void tearDown() {
+        local.shutdown();
+    }
+
+    @Benchmark
+    public void fanOut(final Blackhole blackhole) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(requests.length);
+        for (GetRecordsRequest request : requests) {
+            client.getRecords(request).then(result -> {
+                blackhole.consume(result);
+                latch.countDown();
+            }).catchError(error -> {
+                blackhole.consume(error);
+                latch.countDown();
+            }).invoke();
+        }
+        latch.await();
+    }
+}
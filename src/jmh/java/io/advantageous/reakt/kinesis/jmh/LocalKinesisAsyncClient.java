@@ -0,0 +1,717 @@
+package io.advantageous.reakt.kinesis.jmh;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.kinesis.AmazonKinesisAsyncClient;
+import com.amazonaws.services.kinesis.model.CreateStreamRequest;
+import com.amazonaws.services.kinesis.model.CreateStreamResult;
+import com.amazonaws.services.kinesis.model.DescribeStreamRequest;
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.GetShardIteratorRequest;
+import com.amazonaws.services.kinesis.model.GetShardIteratorResult;
+import com.amazonaws.services.kinesis.model.HashKeyRange;
+import com.amazonaws.services.kinesis.model.InvalidArgumentException;
+import com.amazonaws.services.kinesis.model.MergeShardsRequest;
+import com.amazonaws.services.kinesis.model.MergeShardsResult;
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.ResourceInUseException;
+import com.amazonaws.services.kinesis.model.ResourceNotFoundException;
+import com.amazonaws.services.kinesis.model.SequenceNumberRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import com.amazonaws.services.kinesis.model.SplitShardRequest;
+import com.amazonaws.services.kinesis.model.SplitShardResult;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+import com.amazonaws.services.kinesis.model.StreamStatus;
+import io.advantageous.reakt.kinesis.FanOutConsumer;
+import io.advantageous.reakt.kinesis.FanOutTransport;
+import io.advantageous.reakt.kinesis.ShardEvent;
+import io.advantageous.reakt.kinesis.ShardEventListener;
+import io.advantageous.reakt.kinesis.ShardMap;
+import io.advantageous.reakt.kinesis.ShardSubscription;
+import io.advantageous.reakt.promise.Promise;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+/**
+ * In-memory stand-in for Kinesis. Serves stream creation, describeStream, putRecord, putRecords,
+ * getShardIterator, getRecords, splitShard and mergeShards without a network, with a configurable latency
+ * and throttling rate. Reshards take effect right away.
+ * {@link #fanOutTransport()} serves consumer registration and shard subscriptions from the same shards,
+ * pushing records to subscribers as they are written.
+ * <p>
+ * With no latency, calls complete on the calling thread, which isolates the cost of the client code.
+ * Each shard keeps its newest {@link #withMaxRecordsPerShard(int) records} in a ring, older ones are trimmed.
+ */
+public class LocalKinesisAsyncClient extends AmazonKinesisAsyncClient {
+
+    private static final BigInteger MAX_HASH_KEY = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+    private static final int SEQUENCE_DIGITS = 20;
+    private static final int MAX_RECORDS_PER_EVENT = 1_000;
+
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<String, LocalStream> streams = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, FanOutConsumer> consumers = new ConcurrentHashMap<>();
+    private volatile long latencyMicros;
+    private volatile double throttleRate;
+    private volatile int maxRecordsPerShard = 100_000;
+    private volatile long subscriptionMillis = TimeUnit.MINUTES.toMillis(5);
+
+    public LocalKinesisAsyncClient() {
+        this(new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), runnable -> {
+            final Thread thread = new Thread(runnable, "local-kinesis");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    private LocalKinesisAsyncClient(final ScheduledExecutorService scheduler) {
+        super(new BasicAWSCredentials("local", "local"), scheduler);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @param latencyMicros time every call takes to complete, 0 completes calls on the calling thread
+     * @return this
+     */
+    public LocalKinesisAsyncClient withLatencyMicros(final long latencyMicros) {
+        this.latencyMicros = latencyMicros;
+        return this;
+    }
+
+    /**
+     * @param throttleRate share of calls and PutRecords entries failed with ProvisionedThroughputExceeded,
+     *                     from 0 to 1
+     * @return this
+     */
+    public LocalKinesisAsyncClient withThrottleRate(final double throttleRate) {
+        this.throttleRate = throttleRate;
+        return this;
+    }
+
+    /**
+     * @param maxRecordsPerShard records each shard keeps, applies to streams created afterwards
+     * @return this
+     */
+    public LocalKinesisAsyncClient withMaxRecordsPerShard(final int maxRecordsPerShard) {
+        this.maxRecordsPerShard = maxRecordsPerShard;
+        return this;
+    }
+
+    /**
+     * @param subscriptionMillis lifetime of a shard subscription before it completes, 5 minutes like Kinesis
+     * @return this
+     */
+    public LocalKinesisAsyncClient withSubscriptionMillis(final long subscriptionMillis) {
+        this.subscriptionMillis = subscriptionMillis;
+        return this;
+    }
+
+    /**
+     * @return transport for {@link io.advantageous.reakt.kinesis.KinesisClient#fanOut}, events are pushed after
+     * the configured latency
+     */
+    public FanOutTransport fanOutTransport() {
+        return new LocalFanOutTransport();
+    }
+
+    /**
+     * Creates an active stream right away, with the hash key space split evenly between its shards.
+     *
+     * @param streamName stream name
+     * @param shardCount number of shards
+     */
+    public void createLocalStream(final String streamName, final int shardCount) {
+        if (streams.putIfAbsent(streamName, new LocalStream(streamName, shardCount, maxRecordsPerShard)) != null) {
+            throw new ResourceInUseException("stream " + streamName + " already exists");
+        }
+    }
+
+    @Override
+    public Future<CreateStreamResult> createStreamAsync(
+            final CreateStreamRequest request, final AsyncHandler<CreateStreamRequest, CreateStreamResult> handler) {
+        return complete(request, handler, () -> {
+            createLocalStream(request.getStreamName(), request.getShardCount());
+            return new CreateStreamResult();
+        });
+    }
+
+    @Override
+    public Future<DescribeStreamResult> describeStreamAsync(
+            final DescribeStreamRequest request,
+            final AsyncHandler<DescribeStreamRequest, DescribeStreamResult> handler) {
+        return complete(request, handler, () -> {
+            final LocalStream stream = stream(request.getStreamName());
+            final int limit = request.getLimit() != null ? request.getLimit() : 100;
+            final List<Shard> shards = new ArrayList<>();
+            boolean hasMoreShards = false;
+            boolean started = request.getExclusiveStartShardId() == null;
+            for (LocalShard shard : stream.shards) {
+                if (!started) {
+                    started = shard.shardId.equals(request.getExclusiveStartShardId());
+                } else if (shards.size() == limit) {
+                    hasMoreShards = true;
+                    break;
+                } else {
+                    shards.add(shard.describe());
+                }
+            }
+            return new DescribeStreamResult().withStreamDescription(new StreamDescription()
+                    .withStreamName(stream.streamName)
+                    .withStreamARN("arn:aws:kinesis:local:000000000000:stream/" + stream.streamName)
+                    .withStreamStatus(StreamStatus.ACTIVE.toString())
+                    .withRetentionPeriodHours(24)
+                    .withShards(shards)
+                    .withHasMoreShards(hasMoreShards));
+        });
+    }
+
+    @Override
+    public Future<PutRecordResult> putRecordAsync(final PutRecordRequest request,
+                                                  final AsyncHandler<PutRecordRequest, PutRecordResult> handler) {
+        return complete(request, handler, () -> {
+            final LocalStream stream = stream(request.getStreamName());
+            if (throttled()) {
+                throw throttle(request.getStreamName());
+            }
+            return stream.append(request.getPartitionKey(), request.getExplicitHashKey(), request.getData());
+        });
+    }
+
+    @Override
+    public Future<PutRecordsResult> putRecordsAsync(final PutRecordsRequest request,
+                                                    final AsyncHandler<PutRecordsRequest, PutRecordsResult> handler) {
+        return complete(request, handler, () -> {
+            final LocalStream stream = stream(request.getStreamName());
+            final List<PutRecordsResultEntry> entries = new ArrayList<>(request.getRecords().size());
+            int failed = 0;
+            for (PutRecordsRequestEntry entry : request.getRecords()) {
+                if (throttled()) {
+                    failed++;
+                    entries.add(new PutRecordsResultEntry()
+                            .withErrorCode("ProvisionedThroughputExceededException")
+                            .withErrorMessage("Rate exceeded for stream " + request.getStreamName()));
+                } else {
+                    final PutRecordResult result = stream.append(entry.getPartitionKey(), entry.getExplicitHashKey(),
+                            entry.getData());
+                    entries.add(new PutRecordsResultEntry().withShardId(result.getShardId())
+                            .withSequenceNumber(result.getSequenceNumber()));
+                }
+            }
+            return new PutRecordsResult().withFailedRecordCount(failed).withRecords(entries);
+        });
+    }
+
+    /**
+     * Closes the shard and creates two children right away, the stream stays active.
+     */
+    @Override
+    public Future<SplitShardResult> splitShardAsync(final SplitShardRequest request,
+                                                    final AsyncHandler<SplitShardRequest, SplitShardResult> handler) {
+        return complete(request, handler, () -> {
+            stream(request.getStreamName()).split(request.getShardToSplit(),
+                    new BigInteger(request.getNewStartingHashKey()));
+            return new SplitShardResult();
+        });
+    }
+
+    /**
+     * Closes both shards and creates their child right away, the stream stays active.
+     */
+    @Override
+    public Future<MergeShardsResult> mergeShardsAsync(
+            final MergeShardsRequest request, final AsyncHandler<MergeShardsRequest, MergeShardsResult> handler) {
+        return complete(request, handler, () -> {
+            stream(request.getStreamName()).merge(request.getShardToMerge(), request.getAdjacentShardToMerge());
+            return new MergeShardsResult();
+        });
+    }
+
+    @Override
+    public Future<GetShardIteratorResult> getShardIteratorAsync(
+            final GetShardIteratorRequest request,
+            final AsyncHandler<GetShardIteratorRequest, GetShardIteratorResult> handler) {
+        return complete(request, handler, () -> {
+            final LocalShard shard = stream(request.getStreamName()).shard(request.getShardId());
+            final long position = startingPosition(shard, request.getShardIteratorType(),
+                    request.getTimestamp() != null ? Long.toString(request.getTimestamp().getTime())
+                            : request.getStartingSequenceNumber());
+            return new GetShardIteratorResult().withShardIterator(shard.iterator(position));
+        });
+    }
+
+    @Override
+    public Future<GetRecordsResult> getRecordsAsync(final GetRecordsRequest request,
+                                                    final AsyncHandler<GetRecordsRequest, GetRecordsResult> handler) {
+        return complete(request, handler, () -> {
+            final String[] iterator = request.getShardIterator().split("/");
+            if (iterator.length != 3) {
+                throw new ExpiredIteratorException("unknown iterator " + request.getShardIterator());
+            }
+            if (throttled()) {
+                throw throttle(iterator[0]);
+            }
+            final LocalShard shard = stream(iterator[0]).shard(iterator[1]);
+            final int limit = request.getLimit() != null ? request.getLimit() : 10_000;
+            return shard.read(Long.parseLong(iterator[2]), limit);
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        scheduler.shutdownNow();
+    }
+
+    private <Q extends AmazonWebServiceRequest, R> Future<R> complete(final Q request,
+                                                                     final AsyncHandler<Q, R> handler,
+                                                                     final Callable<R> call) {
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        final Runnable task = () -> {
+            final R result;
+            try {
+                result = call.call();
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+                if (handler != null) {
+                    handler.onError(ex);
+                }
+                return;
+            }
+            future.complete(result);
+            if (handler != null) {
+                handler.onSuccess(request, result);
+            }
+        };
+        final long latency = latencyMicros;
+        if (latency == 0) {
+            task.run();
+        } else {
+            scheduler.schedule(task, latency, TimeUnit.MICROSECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * @param startingSequenceNumber sequence number, or epoch milliseconds for AT_TIMESTAMP
+     */
+    private static long startingPosition(final LocalShard shard, final String shardIteratorType,
+                                         final String startingSequenceNumber) {
+        switch (ShardIteratorType.fromValue(shardIteratorType)) {
+            case TRIM_HORIZON:
+                return shard.trimHorizon();
+            case LATEST:
+                return shard.latest();
+            case AT_SEQUENCE_NUMBER:
+                return position(startingSequenceNumber);
+            case AFTER_SEQUENCE_NUMBER:
+                return position(startingSequenceNumber) + 1;
+            case AT_TIMESTAMP:
+                return shard.atTimestamp(Long.parseLong(startingSequenceNumber));
+            default:
+                throw new IllegalArgumentException("unsupported iterator type " + shardIteratorType);
+        }
+    }
+
+    private LocalStream stream(final String streamName) {
+        final LocalStream stream = streams.get(streamName);
+        if (stream == null) {
+            throw new ResourceNotFoundException("stream " + streamName + " not found");
+        }
+        return stream;
+    }
+
+    private boolean throttled() {
+        final double rate = throttleRate;
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static ProvisionedThroughputExceededException throttle(final String streamName) {
+        final ProvisionedThroughputExceededException exception =
+                new ProvisionedThroughputExceededException("Rate exceeded for stream " + streamName);
+        exception.setErrorCode("ProvisionedThroughputExceededException");
+        exception.setStatusCode(400);
+        return exception;
+    }
+
+    /**
+     * Sequence numbers are the shard index followed by the zero padded position in the shard.
+     */
+    private static String sequenceNumber(final int shardIndex, final long position) {
+        final String digits = Long.toString(position);
+        final StringBuilder builder = new StringBuilder(SEQUENCE_DIGITS + 6).append(shardIndex + 10_000);
+        for (int index = digits.length(); index < SEQUENCE_DIGITS; index++) {
+            builder.append('0');
+        }
+        return builder.append(digits).toString();
+    }
+
+    private static long position(final String sequenceNumber) {
+        return Long.parseLong(sequenceNumber.substring(sequenceNumber.length() - SEQUENCE_DIGITS));
+    }
+
+    private class LocalFanOutTransport implements FanOutTransport {
+
+        @Override
+        public Promise<FanOutConsumer> registerConsumer(final String streamName, final String consumerName) {
+            return invokablePromise(promise -> {
+                try {
+                    stream(streamName);
+                } catch (ResourceNotFoundException ex) {
+                    promise.reject(ex);
+                    return;
+                }
+                promise.resolve(consumers.computeIfAbsent(streamName + '/' + consumerName,
+                        key -> new FanOutConsumer(streamName, consumerName, "arn:aws:kinesis:local:000000000000:stream/"
+                                + streamName + "/consumer/" + consumerName)));
+            });
+        }
+
+        @Override
+        public Promise<Void> deregisterConsumer(final FanOutConsumer consumer) {
+            return invokablePromise(promise -> {
+                consumers.remove(consumer.getStreamName() + '/' + consumer.getConsumerName());
+                promise.resolve(null);
+            });
+        }
+
+        @Override
+        public void subscribeToShard(final FanOutConsumer consumer, final String shardId,
+                                     final String startingPositionType, final String startingSequenceNumber,
+                                     final ShardEventListener listener) {
+            final LocalShard shard;
+            final long position;
+            try {
+                if (!consumers.containsKey(consumer.getStreamName() + '/' + consumer.getConsumerName())) {
+                    throw new ResourceNotFoundException("consumer " + consumer + " is not registered");
+                }
+                shard = stream(consumer.getStreamName()).shard(shardId);
+                position = startingPosition(shard, startingPositionType, startingSequenceNumber);
+            } catch (RuntimeException ex) {
+                ShardEventListener.reject(listener, ex);
+                return;
+            }
+            final LocalSubscription subscription = new LocalSubscription(shard, position, listener);
+            listener.onSubscribe(subscription);
+            shard.subscriptions.add(subscription);
+            scheduler.schedule(subscription::expire, subscriptionMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Pushes the records of one shard to a listener while it has requested events.
+     * Pushes run one at a time, after the configured latency.
+     */
+    private class LocalSubscription implements ShardSubscription {
+        private final LocalShard shard;
+        private final ShardEventListener listener;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pushRequests = new AtomicInteger();
+        private final Runnable pushTask = this::push;
+        private long position;
+        private volatile boolean expired;
+        private volatile boolean done;
+
+        private LocalSubscription(final LocalShard shard, final long position, final ShardEventListener listener) {
+            this.shard = shard;
+            this.position = position;
+            this.listener = listener;
+        }
+
+        @Override
+        public void request(final long events) {
+            demand.addAndGet(events);
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            shard.subscriptions.remove(this);
+        }
+
+        private void expire() {
+            expired = true;
+            signal();
+        }
+
+        private void signal() {
+            final long latency = latencyMicros;
+            if (latency == 0) {
+                push();
+            } else {
+                scheduler.schedule(pushTask, latency, TimeUnit.MICROSECONDS);
+            }
+        }
+
+        private void push() {
+            if (pushRequests.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!done && expired) {
+                    /* Like Kinesis, the last event reports where the subscription stopped even without records. */
+                    if (demand.get() > 0 && position > 0) {
+                        demand.decrementAndGet();
+                        listener.onEvent(new ShardEvent(Collections.emptyList(),
+                                sequenceNumber(shard.index, position - 1), 0));
+                    }
+                    cancel();
+                    listener.onComplete();
+                }
+                while (!done && demand.get() > 0) {
+                    final GetRecordsResult result = shard.read(position, MAX_RECORDS_PER_EVENT);
+                    final List<Record> records = result.getRecords();
+                    final boolean ended = result.getNextShardIterator() == null;
+                    if (records.isEmpty() && !ended) {
+                        break;
+                    }
+                    String continuation = null;
+                    if (!records.isEmpty()) {
+                        continuation = records.get(records.size() - 1).getSequenceNumber();
+                        position = position(continuation) + 1;
+                    }
+                    demand.decrementAndGet();
+                    listener.onEvent(new ShardEvent(records, ended ? null : continuation,
+                            result.getMillisBehindLatest()));
+                    if (ended) {
+                        cancel();
+                        listener.onComplete();
+                    }
+                }
+                missed = pushRequests.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    private static class LocalStream {
+        private final String streamName;
+        private final int maxRecordsPerShard;
+        private final List<LocalShard> shards = new CopyOnWriteArrayList<>();
+        private volatile ShardMap shardMap;
+
+        private LocalStream(final String streamName, final int shardCount, final int maxRecordsPerShard) {
+            this.streamName = streamName;
+            this.maxRecordsPerShard = maxRecordsPerShard;
+            final BigInteger width = MAX_HASH_KEY.add(BigInteger.ONE).divide(BigInteger.valueOf(shardCount));
+            for (int index = 0; index < shardCount; index++) {
+                final BigInteger start = width.multiply(BigInteger.valueOf(index));
+                final BigInteger end = index == shardCount - 1 ? MAX_HASH_KEY
+                        : start.add(width).subtract(BigInteger.ONE);
+                shards.add(new LocalShard(streamName, index, start, end, maxRecordsPerShard, null, null));
+            }
+            remap();
+        }
+
+        /**
+         * Appends to the open shard of the key, again if a reshard closed the shard in between.
+         */
+        private PutRecordResult append(final String partitionKey, final String explicitHashKey,
+                                       final ByteBuffer data) {
+            while (true) {
+                final Shard shard = shardMap.shardFor(partitionKey, explicitHashKey);
+                final LocalShard localShard = shards.get(Integer.parseInt(
+                        shard.getShardId().substring("shardId-".length())));
+                final String sequenceNumber = localShard.append(data, partitionKey);
+                if (sequenceNumber != null) {
+                    return new PutRecordResult().withShardId(localShard.shardId).withSequenceNumber(sequenceNumber);
+                }
+            }
+        }
+
+        private synchronized void split(final String shardId, final BigInteger newStartingHashKey) {
+            final LocalShard parent = openShard(shardId);
+            if (newStartingHashKey.compareTo(parent.startingHashKey) <= 0
+                    || newStartingHashKey.compareTo(parent.endingHashKey) > 0) {
+                throw new InvalidArgumentException("new starting hash key " + newStartingHashKey
+                        + " is not inside shard " + shardId);
+            }
+            parent.close();
+            shards.add(new LocalShard(streamName, shards.size(), parent.startingHashKey,
+                    newStartingHashKey.subtract(BigInteger.ONE), maxRecordsPerShard, shardId, null));
+            shards.add(new LocalShard(streamName, shards.size(), newStartingHashKey, parent.endingHashKey,
+                    maxRecordsPerShard, shardId, null));
+            remap();
+        }
+
+        private synchronized void merge(final String shardId, final String adjacentShardId) {
+            final LocalShard shard = openShard(shardId);
+            final LocalShard adjacent = openShard(adjacentShardId);
+            final LocalShard lower = shard.startingHashKey.compareTo(adjacent.startingHashKey) < 0 ? shard : adjacent;
+            final LocalShard upper = lower == shard ? adjacent : shard;
+            if (!lower.endingHashKey.add(BigInteger.ONE).equals(upper.startingHashKey)) {
+                throw new InvalidArgumentException("shards " + shardId + " and " + adjacentShardId
+                        + " are not adjacent");
+            }
+            shard.close();
+            adjacent.close();
+            shards.add(new LocalShard(streamName, shards.size(), lower.startingHashKey, upper.endingHashKey,
+                    maxRecordsPerShard, shardId, adjacentShardId));
+            remap();
+        }
+
+        private LocalShard openShard(final String shardId) {
+            final LocalShard shard = shard(shardId);
+            if (shard.isClosed()) {
+                throw new ResourceInUseException("shard " + shardId + " is closed");
+            }
+            return shard;
+        }
+
+        private void remap() {
+            final List<Shard> described = new ArrayList<>(shards.size());
+            for (LocalShard shard : shards) {
+                described.add(shard.describe());
+            }
+            shardMap = new ShardMap(streamName, described);
+        }
+
+        private LocalShard shard(final String shardId) {
+            for (LocalShard shard : shards) {
+                if (shard.shardId.equals(shardId)) {
+                    return shard;
+                }
+            }
+            throw new ResourceNotFoundException("shard " + shardId + " not found in stream " + streamName);
+        }
+    }
+
+    private static class LocalShard {
+        private final String streamName;
+        private final String shardId;
+        private final int index;
+        private final BigInteger startingHashKey;
+        private final BigInteger endingHashKey;
+        private final String parentShardId;
+        private final String adjacentParentShardId;
+        private final Record[] ring;
+        private final List<LocalSubscription> subscriptions = new CopyOnWriteArrayList<>();
+        private long next;
+        private boolean closed;
+
+        private LocalShard(final String streamName, final int index, final BigInteger startingHashKey,
+                           final BigInteger endingHashKey, final int capacity, final String parentShardId,
+                           final String adjacentParentShardId) {
+            this.streamName = streamName;
+            this.shardId = String.format("shardId-%012d", index);
+            this.index = index;
+            this.startingHashKey = startingHashKey;
+            this.endingHashKey = endingHashKey;
+            this.parentShardId = parentShardId;
+            this.adjacentParentShardId = adjacentParentShardId;
+            this.ring = new Record[capacity];
+        }
+
+        private synchronized Shard describe() {
+            final SequenceNumberRange sequenceNumberRange = new SequenceNumberRange()
+                    .withStartingSequenceNumber(sequenceNumber(index, 0));
+            if (closed) {
+                sequenceNumberRange.withEndingSequenceNumber(sequenceNumber(index, Math.max(0, next - 1)));
+            }
+            return new Shard().withShardId(shardId)
+                    .withParentShardId(parentShardId)
+                    .withAdjacentParentShardId(adjacentParentShardId)
+                    .withHashKeyRange(new HashKeyRange().withStartingHashKey(startingHashKey.toString())
+                            .withEndingHashKey(endingHashKey.toString()))
+                    .withSequenceNumberRange(sequenceNumberRange);
+        }
+
+        private void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            for (LocalSubscription subscription : subscriptions) {
+                subscription.signal();
+            }
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * @return sequence number of the record, null if the shard is closed
+         */
+        private String append(final ByteBuffer data, final String partitionKey) {
+            final String sequenceNumber;
+            synchronized (this) {
+                if (closed) {
+                    return null;
+                }
+                sequenceNumber = sequenceNumber(index, next);
+                ring[(int) (next % ring.length)] = new Record().withSequenceNumber(sequenceNumber)
+                        .withPartitionKey(partitionKey).withData(data.duplicate())
+                        .withApproximateArrivalTimestamp(new Date());
+                next++;
+            }
+            for (LocalSubscription subscription : subscriptions) {
+                subscription.signal();
+            }
+            return sequenceNumber;
+        }
+
+        private synchronized long trimHorizon() {
+            return Math.max(0, next - ring.length);
+        }
+
+        private synchronized long latest() {
+            return next;
+        }
+
+        private synchronized long atTimestamp(final long timestamp) {
+            long position = trimHorizon();
+            while (position < next && ring[(int) (position % ring.length)].getApproximateArrivalTimestamp()
+                    .getTime() < timestamp) {
+                position++;
+            }
+            return position;
+        }
+
+        private synchronized GetRecordsResult read(final long position, final int limit) {
+            final long start = Math.max(position, next - ring.length);
+            final long end = Math.min(next, start + limit);
+            final List<Record> records = new ArrayList<>((int) (end - start));
+            for (long current = start; current < end; current++) {
+                records.add(ring[(int) (current % ring.length)]);
+            }
+            return new GetRecordsResult().withRecords(records)
+                    .withNextShardIterator(closed && end == next ? null : iterator(end))
+                    .withMillisBehindLatest(end == next ? 0L : 1_000L);
+        }
+
+        private String iterator(final long position) {
+            return streamName + '/' + shardId + '/' + position;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package io.advantageous.reakt.kinesis.jmh;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import io.advantageous.reakt.Callback;
+import io.advantageous.reakt.kinesis.KinesisCallback;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.KinesisMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static io.advantageous.reakt.kinesis.jmh.PutRecordBenchmark.STREAM;
+
+/**
+ * Cost of the promise wrapping in {@code KinesisClientImpl}: the same putRecord through the SDK async handler
+ * directly and through {@link KinesisClient}. Calls complete on the calling thread, so the difference
+ * is the wrapping alone. The metered variant adds the cost of {@link KinesisMetrics}, the callback variants
+ * skip the promise. Run with {@code -prof gc} to compare bytes allocated per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromiseOverheadBenchmark {
+
+    private LocalKinesisAsyncClient local;
+    private KinesisClient client;
+    private KinesisClient meteredClient;
+    private ByteBuffer payload;
+    /**
+     * Set by each call, so the reused handlers reach the current blackhole without allocating.
+     */
+    private Blackhole blackhole;
+    private AsyncHandler<PutRecordRequest, PutRecordResult> handler;
+    private Callback<PutRecordResult> callback;
+    private KinesisCallback<PutRecordResult> kinesisCallback;
+
+    @Setup
+    public void setUp() {
+        local = new LocalKinesisAsyncClient().withMaxRecordsPerShard(1_000);
+        local.createLocalStream(STREAM, 1);
+        client = KinesisClient.create(local);
+        meteredClient = KinesisClient.metered(client, new KinesisMetrics());
+        payload = ByteBuffer.wrap(new byte[100]);
+        handler = new AsyncHandler<PutRecordRequest, PutRecordResult>() {
+            @Override
+            public void onError(final Exception exception) {
+                PromiseOverheadBenchmark.this.blackhole.consume(exception);
+            }
+
+            @Override
+            public void onSuccess(final PutRecordRequest request, final PutRecordResult result) {
+                PromiseOverheadBenchmark.this.blackhole.consume(result);
+            }
+        };
+        callback = new Callback<PutRecordResult>() {
+            @Override
+            public void reply(final PutRecordResult result) {
+                PromiseOverheadBenchmark.this.blackhole.consume(result);
+            }
+
+            @Override
+            public void reject(final Throwable error) {
+                PromiseOverheadBenchmark.this.blackhole.consume(error);
+            }
+        };
+        kinesisCallback = new KinesisCallback<PutRecordResult>() {
+            @Override
+            public void reply(final PutRecordResult result) {
+                PromiseOverheadBenchmark.this.blackhole.consume(result);
+            }
+
+            @Override
+            public void reject(final Throwable error) {
+                PromiseOverheadBenchmark.this.blackhole.consume(error);
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        local.shutdown();
+    }
+
+    @Benchmark
+    public void asyncHandler(final Blackhole blackhole) {
+        this.blackhole = blackhole;
+        local.putRecordAsync(new PutRecordRequest().withStreamName(STREAM).withData(payload.duplicate())
+                .withPartitionKey("key"), handler);
+    }
+
+    @Benchmark
+    public void promise(final Blackhole blackhole) {
+        client.putRecord(STREAM, payload.duplicate(), "key").then(blackhole::consume).invoke();
+    }
+
+    @Benchmark
+    public void promiseWithErrorHandler(final Blackhole blackhole) {
+        client.putRecord(STREAM, payload.duplicate(), "key")
+                .then(blackhole::consume).catchError(blackhole::consume).invoke();
+    }
+
+    @Benchmark
+    public void meteredPromise(final Blackhole blackhole) {
+        meteredClient.putRecord(STREAM, payload.duplicate(), "key").then(blackhole::consume).invoke();
+    }
+
+    @Benchmark
+    public void callback(final Blackhole blackhole) {
+        this.blackhole = blackhole;
+        client.putRecordAsync(STREAM, payload.duplicate(), "key", callback);
+    }
+
+    @Benchmark
+    public void kinesisCallback(final Blackhole blackhole) {
+        this.blackhole = blackhole;
+        client.putRecordAsync(STREAM, payload.duplicate(), "key", kinesisCallback);
+    }
+}
@@ -0,0 +1,96 @@
+package io.advantageous.reakt.kinesis.jmh;
+
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.KinesisStreamConsumer;
+import io.advantageous.reakt.kinesis.ShardReaderConfig;
+import io.advantageous.reakt.kinesis.StreamConsumerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static io.advantageous.reakt.kinesis.jmh.PutRecordBenchmark.STREAM;
+
+/**
+ * Time from putRecord until a {@link KinesisStreamConsumer} hands the record to its handler,
+ * polling with GetRecords at the 5 calls per second shard limit against push delivery through shard subscriptions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PropagationLatencyBenchmark {
+
+    @Param({"poll", "push"})
+    private String mode;
+
+    @Param({"500"})
+    private long latencyMicros;
+
+    private LocalKinesisAsyncClient local;
+    private KinesisStreamConsumer consumer;
+    private ByteBuffer payload;
+    private volatile CompletableFuture<Void> received;
+
+    @Setup
+    public void setUp() throws Exception {
+        local = new LocalKinesisAsyncClient().withLatencyMicros(latencyMicros).withMaxRecordsPerShard(10_000);
+        local.createLocalStream(STREAM, 1);
+        final KinesisClient client = KinesisClient.fanOut(KinesisClient.create(local), local.fanOutTransport());
+        final StreamConsumerConfig config = new StreamConsumerConfig().withReaderConfig(new ShardReaderConfig()
+                .withPollIntervalMillis(200).withIdlePollIntervalMillis(200));
+        if ("push".equals(mode)) {
+            config.withFanOutConsumerName("benchmark");
+        }
+        consumer = KinesisStreamConsumer.create(client, STREAM, config);
+        final CompletableFuture<Object> started = new CompletableFuture<>();
+        consumer.start((shardId, record) -> received.complete(null))
+                .then(started::complete).catchError(started::completeExceptionally).invoke();
+        started.get();
+        payload = ByteBuffer.wrap(new byte[100]);
+        /* The shard starts at LATEST once its iterator is open, so retry until the first record comes through. */
+        while (true) {
+            try {
+                propagate().get(1, TimeUnit.SECONDS);
+                return;
+            } catch (TimeoutException ex) {
+                /* try again */
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        consumer.close();
+        local.shutdown();
+    }
+
+    @Benchmark
+    public void propagation() throws Exception {
+        propagate().get();
+    }
+
+    private CompletableFuture<Void> propagate() {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        received = future;
+        local.putRecordAsync(new PutRecordRequest().withStreamName(STREAM)
+                .withData(payload.duplicate()).withPartitionKey("key"), null);
+        return future;
+    }
+}
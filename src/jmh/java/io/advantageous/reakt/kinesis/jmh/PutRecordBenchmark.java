@@ -0,0 +1,70 @@
+package io.advantageous.reakt.kinesis.jmh;
+
+import io.advantageous.reakt.kinesis.KinesisClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single putRecord calls through {@link KinesisClient} against the in-memory stand-in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PutRecordBenchmark {
+
+    static final String STREAM = "benchmark";
+
+    @Param({"100", "1024"})
+    private int payloadBytes;
+
+    private LocalKinesisAsyncClient local;
+    private KinesisClient client;
+    private ByteBuffer payload;
+    private String[] partitionKeys;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        local = new LocalKinesisAsyncClient().withMaxRecordsPerShard(10_000);
+        local.createLocalStream(STREAM, 4);
+        client = KinesisClient.create(local);
+        payload = ByteBuffer.wrap(new byte[payloadBytes]);
+        partitionKeys = partitionKeys(1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        local.shutdown();
+    }
+
+    @Benchmark
+    public void putRecord(final Blackhole blackhole) {
+        client.putRecord(STREAM, payload.duplicate(), partitionKeys[next++ & 1023])
+                .then(blackhole::consume).catchError(blackhole::consume).invoke();
+    }
+
+    static String[] partitionKeys(final int count) {
+        final String[] partitionKeys = new String[count];
+        for (int index = 0; index < count; index++) {
+            partitionKeys[index] = "partition-" + index;
+        }
+        return partitionKeys;
+    }
+}
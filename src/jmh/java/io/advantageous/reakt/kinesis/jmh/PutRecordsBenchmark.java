@@ -0,0 +1,88 @@
+package io.advantageous.reakt.kinesis.jmh;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import io.advantageous.reakt.kinesis.BatchingKinesisProducer;
+import io.advantageous.reakt.kinesis.BatchingProducerConfig;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.advantageous.reakt.kinesis.jmh.PutRecordBenchmark.STREAM;
+
+/**
+ * Batched puts: one putRecords call with a prebuilt request, and the same records through
+ * {@link BatchingKinesisProducer}, which adds buffering, sizing and per-record promises.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PutRecordsBenchmark {
+
+    @Param({"10", "100", "500"})
+    private int batchSize;
+
+    private LocalKinesisAsyncClient local;
+    private KinesisClient client;
+    private BatchingKinesisProducer producer;
+    private PutRecordsRequest request;
+    private ByteBuffer payload;
+    private String[] partitionKeys;
+
+    @Setup
+    public void setUp() {
+        local = new LocalKinesisAsyncClient().withMaxRecordsPerShard(10_000);
+        local.createLocalStream(STREAM, 4);
+        client = KinesisClient.create(local);
+        producer = BatchingKinesisProducer.create(client, new BatchingProducerConfig()
+                .withMaxRecords(batchSize).withLingerMillis(60_000));
+        payload = ByteBuffer.wrap(new byte[100]);
+        partitionKeys = PutRecordBenchmark.partitionKeys(batchSize);
+        final List<PutRecordsRequestEntry> entries = new ArrayList<>(batchSize);
+        for (String partitionKey : partitionKeys) {
+            entries.add(new PutRecordsRequestEntry().withPartitionKey(partitionKey).withData(payload));
+        }
+        request = new PutRecordsRequest().withStreamName(STREAM).withRecords(entries);
+    }
+
+    @TearDown
+    public void tearDown() {
+        producer.close();
+        local.shutdown();
+    }
+
+    @Benchmark
+    public void putRecords(final Blackhole blackhole) {
+        client.putRecords(request).then(blackhole::consume).catchError(blackhole::consume).invoke();
+    }
+
+    /**
+     * The batch fills up with its last record and is sent right away.
+     */
+    @Benchmark
+    public void batchingProducer(final Blackhole blackhole) {
+        for (String partitionKey : partitionKeys) {
+            producer.putRecord(STREAM, payload.duplicate(), partitionKey)
+                    .then(blackhole::consume).catchError(blackhole::consume).invoke();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package io.advantageous.reakt.kinesis;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Settings for {@link ShardAutoscaler}. Utilization is the larger of the write byte and write record rate of a shard
+ * over its limit, so 1.0 is a shard writing at its full 1 MB/s or 1000 records/s.
+ */
+public class AutoscalerConfig {
+
+    private KinesisMetrics metrics;
+    private boolean fleetWideMetrics;
+    private long evaluationIntervalMillis = 60_000;
+    private double splitUtilization = 0.8;
+    private double throttledSplitUtilization = 0.5;
+    private double mergeUtilization = 0.5;
+    private long splitCooldownMillis = 5 * 60_000;
+    private long mergeCooldownMillis = 15 * 60_000;
+    private int minShards = 1;
+    private int maxShards = 100;
+    private long controlPlaneIntervalMillis = 200;
+    private long writeBytesPerSecondPerShard = 1024 * 1024;
+    private long writeRecordsPerSecondPerShard = 1_000;
+    private ScheduledExecutorService scheduler;
+
+    public KinesisMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics metrics of the metered client the producers write through, the source of per shard ingress
+     *                and throttles. These only see the writes of this process.
+     * @return this
+     */
+    public AutoscalerConfig withMetrics(final KinesisMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public boolean isFleetWideMetrics() {
+        return fleetWideMetrics;
+    }
+
+    /**
+     * @param fleetWideMetrics true if the metrics count every write to the stream, because this process is its only
+     *                         producer or the metrics are aggregated across producers. Shards are only merged when
+     *                         set, a shard that looks cold to one of several producers may be hot.
+     * @return this
+     */
+    public AutoscalerConfig withFleetWideMetrics(final boolean fleetWideMetrics) {
+        this.fleetWideMetrics = fleetWideMetrics;
+        return this;
+    }
+
+    public long getEvaluationIntervalMillis() {
+        return evaluationIntervalMillis;
+    }
+
+    /**
+     * @param evaluationIntervalMillis time between evaluations, also the window the rates are measured over
+     * @return this
+     */
+    public AutoscalerConfig withEvaluationIntervalMillis(final long evaluationIntervalMillis) {
+        this.evaluationIntervalMillis = positive(evaluationIntervalMillis, "evaluationIntervalMillis");
+        return this;
+    }
+
+    public double getSplitUtilization() {
+        return splitUtilization;
+    }
+
+    /**
+     * @param splitUtilization utilization at which a shard is split
+     * @return this
+     */
+    public AutoscalerConfig withSplitUtilization(final double splitUtilization) {
+        this.splitUtilization = splitUtilization;
+        return this;
+    }
+
+    public double getThrottledSplitUtilization() {
+        return throttledSplitUtilization;
+    }
+
+    /**
+     * @param throttledSplitUtilization utilization at which a shard is split while writes to the stream are throttled
+     * @return this
+     */
+    public AutoscalerConfig withThrottledSplitUtilization(final double throttledSplitUtilization) {
+        this.throttledSplitUtilization = throttledSplitUtilization;
+        return this;
+    }
+
+    public double getMergeUtilization() {
+        return mergeUtilization;
+    }
+
+    /**
+     * @param mergeUtilization combined utilization of two adjacent shards below which they are merged,
+     *                         keep it well under the split utilization so merged shards are not split again
+     * @return this
+     */
+    public AutoscalerConfig withMergeUtilization(final double mergeUtilization) {
+        this.mergeUtilization = mergeUtilization;
+        return this;
+    }
+
+    public long getSplitCooldownMillis() {
+        return splitCooldownMillis;
+    }
+
+    /**
+     * @param splitCooldownMillis time after any reshard of the stream before a shard is split
+     * @return this
+     */
+    public AutoscalerConfig withSplitCooldownMillis(final long splitCooldownMillis) {
+        this.splitCooldownMillis = splitCooldownMillis;
+        return this;
+    }
+
+    public long getMergeCooldownMillis() {
+        return mergeCooldownMillis;
+    }
+
+    /**
+     * @param mergeCooldownMillis time after any reshard of the stream before shards are merged
+     * @return this
+     */
+    public AutoscalerConfig withMergeCooldownMillis(final long mergeCooldownMillis) {
+        this.mergeCooldownMillis = mergeCooldownMillis;
+        return this;
+    }
+
+    public int getMinShards() {
+        return minShards;
+    }
+
+    public AutoscalerConfig withMinShards(final int minShards) {
+        this.minShards = (int) positive(minShards, "minShards");
+        return this;
+    }
+
+    public int getMaxShards() {
+        return maxShards;
+    }
+
+    public AutoscalerConfig withMaxShards(final int maxShards) {
+        this.maxShards = (int) positive(maxShards, "maxShards");
+        return this;
+    }
+
+    public long getControlPlaneIntervalMillis() {
+        return controlPlaneIntervalMillis;
+    }
+
+    /**
+     * @param controlPlaneIntervalMillis least time between the DescribeStream, SplitShard and MergeShards calls of
+     *                                   the autoscaler, these share a low per account limit
+     * @return this
+     */
+    public AutoscalerConfig withControlPlaneIntervalMillis(final long controlPlaneIntervalMillis) {
+        this.controlPlaneIntervalMillis = controlPlaneIntervalMillis;
+        return this;
+    }
+
+    public long getWriteBytesPerSecondPerShard() {
+        return writeBytesPerSecondPerShard;
+    }
+
+    public AutoscalerConfig withWriteBytesPerSecondPerShard(final long writeBytesPerSecondPerShard) {
+        this.writeBytesPerSecondPerShard = positive(writeBytesPerSecondPerShard, "writeBytesPerSecondPerShard");
+        return this;
+    }
+
+    public long getWriteRecordsPerSecondPerShard() {
+        return writeRecordsPerSecondPerShard;
+    }
+
+    public AutoscalerConfig withWriteRecordsPerSecondPerShard(final long writeRecordsPerSecondPerShard) {
+        this.writeRecordsPerSecondPerShard = positive(writeRecordsPerSecondPerShard, "writeRecordsPerSecondPerShard");
+        return this;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @param scheduler scheduler that runs evaluations, if not set a shared daemon scheduler is used
+     * @return this
+     */
+    public AutoscalerConfig withScheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    private static long positive(final long value, final String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,72 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import io.advantageous.reakt.kinesis.impl.BatchingKinesisProducerImpl;
+import io.advantageous.reakt.promise.Promise;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Producer that coalesces single record puts into PutRecords calls.
+ * Records are buffered per stream and sent when a batch reaches the configured record count,
+ * byte size or linger time. Each record still gets its own promise.
+ * <p>
+ * With a {@link BatchingProducerConfig#withSpill(SpillConfig) spill} a record that is spilled instead of sent
+ * resolves its promise as soon as it is on disk, with a {@link SpilledPutRecordResult}. The promise is not
+ * completed again once the replay sends the record, failures of the replay go to the
+ * {@link SpillConfig#withDropHandler(SpillDropHandler) drop handler}.
+ */
+public interface BatchingKinesisProducer extends AutoCloseable {
+
+    static BatchingKinesisProducer create(final KinesisClient kinesisClient) {
+        return create(kinesisClient, new BatchingProducerConfig());
+    }
+
+    static BatchingKinesisProducer create(final KinesisClient kinesisClient, final BatchingProducerConfig config) {
+        return new BatchingKinesisProducerImpl(kinesisClient, config);
+    }
+
+    /**
+     * Buffers a record for the next PutRecords call to the stream.
+     *
+     * @param streamName   stream name
+     * @param data         data buffer
+     * @param partitionKey partition key
+     * @return promise of PutRecordResult, resolved from the matching PutRecordsResultEntry
+     */
+    Promise<PutRecordResult> putRecord(String streamName, ByteBuffer data, String partitionKey);
+
+    /**
+     * Buffers a record for the next PutRecords call to the stream.
+     *
+     * @param streamName      stream name
+     * @param data            data buffer
+     * @param partitionKey    partition key
+     * @param explicitHashKey explicit hash key, may be null
+     * @return promise of PutRecordResult, resolved from the matching PutRecordsResultEntry
+     */
+    Promise<PutRecordResult> putRecord(String streamName, ByteBuffer data, String partitionKey,
+                                       String explicitHashKey);
+
+    /**
+     * @return bytes of records waiting in the spill for replay, 0 without a spill
+     */
+    long getSpilledBytes();
+
+    /**
+     * @return spilled records dropped because their replay failed with an error that is not retryable,
+     * see {@link SpillConfig#withDropHandler(SpillDropHandler)}
+     */
+    long getDroppedRecords();
+
+    /**
+     * Sends every buffered record now.
+     */
+    void flush();
+
+    /**
+     * Flushes buffered records and rejects any further puts.
+     */
+    @Override
+    void close();
+}
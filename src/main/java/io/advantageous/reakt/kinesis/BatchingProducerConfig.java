@@ -0,0 +1,159 @@
+package io.advantageous.reakt.kinesis;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Settings for {@link BatchingKinesisProducer}.
+ * Defaults match the Kinesis PutRecords limits of 500 records and 5 MB per request.
+ */
+public class BatchingProducerConfig {
+
+    /**
+     * Max records Kinesis accepts in a single PutRecords call.
+     */
+    public static final int MAX_RECORDS_PER_REQUEST = 500;
+
+    /**
+     * Max bytes (data plus partition keys) Kinesis accepts in a single PutRecords call.
+     */
+    public static final long MAX_BYTES_PER_REQUEST = 5L * 1024 * 1024;
+
+    /**
+     * Max bytes (data plus partition key) of a single record.
+     */
+    public static final int MAX_BYTES_PER_RECORD = 1024 * 1024;
+
+    private int maxRecords = MAX_RECORDS_PER_REQUEST;
+    private long maxBytes = MAX_BYTES_PER_REQUEST;
+    private long lingerMillis = 100;
+    private ScheduledExecutorService scheduler;
+    private RetryPolicy retryPolicy;
+    private int aggregationMaxBytes;
+    private ShardMapCache shardMapCache;
+    private SpillConfig spill;
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    /**
+     * @param maxRecords records per PutRecords call, at most {@link #MAX_RECORDS_PER_REQUEST}
+     * @return this
+     */
+    public BatchingProducerConfig withMaxRecords(final int maxRecords) {
+        if (maxRecords < 1 || maxRecords > MAX_RECORDS_PER_REQUEST) {
+            throw new IllegalArgumentException("maxRecords must be between 1 and " + MAX_RECORDS_PER_REQUEST);
+        }
+        this.maxRecords = maxRecords;
+        return this;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes bytes per PutRecords call, at most {@link #MAX_BYTES_PER_REQUEST}
+     * @return this
+     */
+    public BatchingProducerConfig withMaxBytes(final long maxBytes) {
+        if (maxBytes < MAX_BYTES_PER_RECORD || maxBytes > MAX_BYTES_PER_REQUEST) {
+            throw new IllegalArgumentException("maxBytes must be between " + MAX_BYTES_PER_RECORD
+                    + " and " + MAX_BYTES_PER_REQUEST);
+        }
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    /**
+     * @param lingerMillis how long the first record of a batch waits for company before the batch is sent
+     * @return this
+     */
+    public BatchingProducerConfig withLingerMillis(final long lingerMillis) {
+        if (lingerMillis < 0) {
+            throw new IllegalArgumentException("lingerMillis must not be negative");
+        }
+        this.lingerMillis = lingerMillis;
+        return this;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @param scheduler scheduler used for linger timers, if not set the producer creates and owns one
+     * @return this
+     */
+    public BatchingProducerConfig withScheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @param retryPolicy if set, failed entries of a batch are resent under this policy before promises are rejected
+     * @return this
+     */
+    public BatchingProducerConfig withRetryPolicy(final RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public int getAggregationMaxBytes() {
+        return aggregationMaxBytes;
+    }
+
+    /**
+     * Turns on KPL compatible aggregation. Records of a batch that map to the same shard are packed into
+     * aggregated Kinesis records of up to this size, the record count limit then applies to aggregated records.
+     *
+     * @param aggregationMaxBytes size limit of an aggregated record, for example
+     *                            {@link RecordAggregator#DEFAULT_MAX_BYTES}, 0 turns aggregation off
+     * @return this
+     */
+    public BatchingProducerConfig withAggregationMaxBytes(final int aggregationMaxBytes) {
+        if (aggregationMaxBytes < 0 || aggregationMaxBytes > MAX_BYTES_PER_RECORD) {
+            throw new IllegalArgumentException("aggregationMaxBytes must be between 0 and " + MAX_BYTES_PER_RECORD);
+        }
+        this.aggregationMaxBytes = aggregationMaxBytes;
+        return this;
+    }
+
+    public ShardMapCache getShardMapCache() {
+        return shardMapCache;
+    }
+
+    /**
+     * @param shardMapCache cache used to group records by shard for aggregation, if not set the producer creates one
+     * @return this
+     */
+    public BatchingProducerConfig withShardMapCache(final ShardMapCache shardMapCache) {
+        this.shardMapCache = shardMapCache;
+        return this;
+    }
+
+    public SpillConfig getSpill() {
+        return spill;
+    }
+
+    /**
+     * Turns on the local disk spill. Records that fail with a retryable error are appended to the spill instead
+     * of being rejected, and while the spill holds records new batches go to it too, so records leave in order.
+     * The spill is replayed through PutRecords until it is empty.
+     *
+     * @param spill spill settings, null turns the spill off
+     * @return this
+     */
+    public BatchingProducerConfig withSpill(final SpillConfig spill) {
+        this.spill = spill;
+        return this;
+    }
+}
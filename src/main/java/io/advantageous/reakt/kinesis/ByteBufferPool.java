@@ -0,0 +1,145 @@
+package io.advantageous.reakt.kinesis;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of byte buffers in power of two size classes.
+ * Buffers larger than the largest size class are allocated and dropped instead of pooled.
+ * The pool remembers, weakly and by identity, which buffers it handed out, and only takes those back, once each.
+ * Foreign buffers, read-only buffers, and slices or duplicates of pooled buffers are ignored on release, so a
+ * buffer someone else still holds is never handed out again. An acquired buffer that is never released is
+ * simply garbage collected.
+ */
+public class ByteBufferPool {
+
+    private static final int MIN_SHIFT = 8;
+
+    private final boolean direct;
+    private final int maxBuffersPerSize;
+    private final int maxShift;
+    private final Queue<ByteBuffer>[] pools;
+    private final AtomicInteger[] pooledCounts;
+    private final ConcurrentMap<Issued, Boolean> issued = new ConcurrentHashMap<>();
+    private final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<>();
+
+    /**
+     * Heap buffer pool for buffers up to the 1 MB Kinesis record limit, 64 buffers per size class.
+     */
+    public ByteBufferPool() {
+        this(false, 1024 * 1024, 64);
+    }
+
+    /**
+     * @param direct            true for direct buffers
+     * @param maxBufferSize     largest pooled buffer size
+     * @param maxBuffersPerSize buffers kept per size class
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ByteBufferPool(final boolean direct, final int maxBufferSize, final int maxBuffersPerSize) {
+        this.direct = direct;
+        this.maxBuffersPerSize = maxBuffersPerSize;
+        this.maxShift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(maxBufferSize - 1));
+        this.pools = new Queue[maxShift - MIN_SHIFT + 1];
+        this.pooledCounts = new AtomicInteger[pools.length];
+        for (int index = 0; index < pools.length; index++) {
+            pools[index] = new ConcurrentLinkedQueue<>();
+            pooledCounts[index] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * @param minCapacity capacity needed
+     * @return cleared buffer with at least the given capacity, its limit set to the capacity needed
+     */
+    public ByteBuffer acquire(final int minCapacity) {
+        final int shift = shift(minCapacity);
+        if (shift > maxShift) {
+            return allocate(minCapacity);
+        }
+        final int index = shift - MIN_SHIFT;
+        ByteBuffer buffer = pools[index].poll();
+        if (buffer != null) {
+            pooledCounts[index].decrementAndGet();
+            buffer.clear();
+        } else {
+            buffer = allocate(1 << shift);
+        }
+        buffer.limit(minCapacity);
+        expungeCollected();
+        issued.put(new Issued(buffer, collected), Boolean.TRUE);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer acquired from this pool. The caller must not use it afterwards.
+     * Buffers this pool did not hand out, or that were already released, are ignored.
+     *
+     * @param buffer buffer
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer == null || buffer.isReadOnly() || issued.remove(new Issued(buffer, null)) == null) {
+            return;
+        }
+        final int index = shift(buffer.capacity()) - MIN_SHIFT;
+        if (pooledCounts[index].incrementAndGet() <= maxBuffersPerSize) {
+            pools[index].add(buffer);
+        } else {
+            pooledCounts[index].decrementAndGet();
+        }
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    private void expungeCollected() {
+        Object reference;
+        while ((reference = collected.poll()) != null) {
+            issued.remove(reference);
+        }
+    }
+
+    private ByteBuffer allocate(final int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static int shift(final int capacity) {
+        return Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+    }
+
+    /**
+     * Identity key of a buffer handed out by the pool, cleared once the buffer is garbage collected.
+     */
+    private static final class Issued extends WeakReference<ByteBuffer> {
+        private final int hash;
+
+        private Issued(final ByteBuffer buffer, final ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            this.hash = System.identityHashCode(buffer);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Issued)) {
+                return false;
+            }
+            final ByteBuffer buffer = get();
+            return buffer != null && buffer == ((Issued) other).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
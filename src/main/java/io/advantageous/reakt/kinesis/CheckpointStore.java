@@ -0,0 +1,59 @@
+package io.advantageous.reakt.kinesis;
+
+import io.advantageous.reakt.kinesis.impl.MappedFileCheckpointStore;
+import io.advantageous.reakt.promise.Promise;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Durable store of the last processed sequence number of each shard.
+ * Reading resumes after the stored sequence number with AFTER_SEQUENCE_NUMBER.
+ */
+public interface CheckpointStore extends AutoCloseable {
+
+    /**
+     * Sequence number stored for a shard that has been read to its end.
+     */
+    String SHARD_END = "SHARD_END";
+
+    /**
+     * Store backed by a memory-mapped local file. Checkpoints survive a crash of the process,
+     * but not of the machine.
+     *
+     * @param file file, created if missing
+     * @return checkpoint store
+     */
+    static CheckpointStore mappedFile(final File file) {
+        return new MappedFileCheckpointStore(file, false);
+    }
+
+    /**
+     * Store backed by a memory-mapped local file.
+     *
+     * @param file  file, created if missing
+     * @param force true to force every save to the storage device before it completes
+     * @return checkpoint store
+     */
+    static CheckpointStore mappedFile(final File file, final boolean force) {
+        return new MappedFileCheckpointStore(file, force);
+    }
+
+    /**
+     * @param streamName stream name
+     * @return promise of the stored sequence numbers by shard id, empty if nothing is stored
+     */
+    Promise<Map<String, String>> load(String streamName);
+
+    /**
+     * Stores sequence numbers, replacing the ones stored before for the same shards.
+     *
+     * @param streamName      stream name
+     * @param sequenceNumbers sequence numbers by shard id
+     * @return promise that completes once the sequence numbers are stored
+     */
+    Promise<Void> save(String streamName, Map<String, String> sequenceNumbers);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,41 @@
+package io.advantageous.reakt.kinesis;
+
+import io.advantageous.reakt.kinesis.impl.CheckpointerImpl;
+import io.advantageous.reakt.promise.Promise;
+
+/**
+ * Collects the sequence numbers of processed records and writes them to a {@link CheckpointStore}
+ * in batches, in the background. Only the latest sequence number of each shard is written.
+ * A batch is written once a shard has {@link CheckpointerConfig#getMaxRecordsPerShard()} unsaved checkpoints
+ * or every {@link CheckpointerConfig#getFlushIntervalMillis()}, and only one write runs at a time.
+ */
+public interface Checkpointer extends AutoCloseable {
+
+    static Checkpointer create(final CheckpointStore store, final String streamName) {
+        return create(store, streamName, new CheckpointerConfig());
+    }
+
+    static Checkpointer create(final CheckpointStore store, final String streamName,
+                               final CheckpointerConfig config) {
+        return new CheckpointerImpl(store, streamName, config);
+    }
+
+    /**
+     * Records a processed sequence number. Never blocks on the store.
+     *
+     * @param shardId        shard id
+     * @param sequenceNumber sequence number of the last processed record, or {@link CheckpointStore#SHARD_END}
+     */
+    void checkpoint(String shardId, String sequenceNumber);
+
+    /**
+     * @return promise that completes once every checkpoint recorded so far is stored
+     */
+    Promise<Void> flush();
+
+    /**
+     * Stops the timer and writes the remaining checkpoints. Does not close the store.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,58 @@
+package io.advantageous.reakt.kinesis;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Settings for {@link Checkpointer}.
+ */
+public class CheckpointerConfig {
+
+    private long flushIntervalMillis = 1_000;
+    private int maxRecordsPerShard = 1_000;
+    private ScheduledExecutorService scheduler;
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    /**
+     * @param flushIntervalMillis time between writes of pending checkpoints
+     * @return this
+     */
+    public CheckpointerConfig withFlushIntervalMillis(final long flushIntervalMillis) {
+        if (flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("flushIntervalMillis must be at least 1");
+        }
+        this.flushIntervalMillis = flushIntervalMillis;
+        return this;
+    }
+
+    public int getMaxRecordsPerShard() {
+        return maxRecordsPerShard;
+    }
+
+    /**
+     * @param maxRecordsPerShard unsaved checkpoints of one shard that start a write before the interval ends
+     * @return this
+     */
+    public CheckpointerConfig withMaxRecordsPerShard(final int maxRecordsPerShard) {
+        if (maxRecordsPerShard < 1) {
+            throw new IllegalArgumentException("maxRecordsPerShard must be at least 1");
+        }
+        this.maxRecordsPerShard = maxRecordsPerShard;
+        return this;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @param scheduler scheduler that runs the flush timer, if not set a shared daemon scheduler is used
+     * @return this
+     */
+    public CheckpointerConfig withScheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+}
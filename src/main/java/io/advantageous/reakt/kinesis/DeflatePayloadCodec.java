@@ -0,0 +1,143 @@
+package io.advantageous.reakt.kinesis;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate codec. Deflaters, inflaters and scratch arrays are kept per thread and reused.
+ */
+public class DeflatePayloadCodec implements PayloadCodec {
+
+    /**
+     * Codec byte of deflate compressed payloads.
+     */
+    public static final byte HEADER = (byte) 0x81;
+
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public DeflatePayloadCodec() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     */
+    public DeflatePayloadCodec(final int level) {
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+    }
+
+    @Override
+    public byte header() {
+        return HEADER;
+    }
+
+    /**
+     * Same bound as zlib compressBound.
+     */
+    @Override
+    public int maxCompressedLength(final int length) {
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+    }
+
+    @Override
+    public void compress(final ByteBuffer source, final ByteBuffer target) {
+        final Scratch buffers = scratch.get();
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (source.hasArray()) {
+            deflater.setInput(source.array(), source.arrayOffset() + source.position(), source.remaining());
+        } else {
+            final byte[] input = buffers.input(source.remaining());
+            source.duplicate().get(input, 0, source.remaining());
+            deflater.setInput(input, 0, source.remaining());
+        }
+        deflater.finish();
+        if (target.hasArray()) {
+            final int written = deflate(deflater, target.array(), target.arrayOffset() + target.position(),
+                    target.remaining());
+            target.position(target.position() + written);
+        } else {
+            final byte[] output = buffers.output(target.remaining());
+            final int written = deflate(deflater, output, 0, target.remaining());
+            target.put(output, 0, written);
+        }
+    }
+
+    @Override
+    public void decompress(final ByteBuffer source, final ByteBuffer target) {
+        final Scratch buffers = scratch.get();
+        final Inflater inflater = inflaters.get();
+        inflater.reset();
+        if (source.hasArray()) {
+            inflater.setInput(source.array(), source.arrayOffset() + source.position(), source.remaining());
+        } else {
+            final byte[] input = buffers.input(source.remaining());
+            source.duplicate().get(input, 0, source.remaining());
+            inflater.setInput(input, 0, source.remaining());
+        }
+        try {
+            if (target.hasArray()) {
+                final int read = inflate(inflater, target.array(), target.arrayOffset() + target.position(),
+                        target.remaining());
+                target.position(target.position() + read);
+            } else {
+                final byte[] output = buffers.output(target.remaining());
+                final int read = inflate(inflater, output, 0, target.remaining());
+                target.put(output, 0, read);
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalArgumentException("corrupt deflate payload", ex);
+        }
+        source.position(source.limit());
+    }
+
+    private static int deflate(final Deflater deflater, final byte[] output, final int offset, final int length) {
+        int written = 0;
+        while (!deflater.finished()) {
+            if (written == length) {
+                throw new IllegalArgumentException("target buffer too small for compressed payload");
+            }
+            written += deflater.deflate(output, offset + written, length - written);
+        }
+        return written;
+    }
+
+    private static int inflate(final Inflater inflater, final byte[] output, final int offset, final int length)
+            throws DataFormatException {
+        int read = 0;
+        while (read < length && !inflater.finished()) {
+            final int count = inflater.inflate(output, offset + read, length - read);
+            if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("truncated deflate payload");
+            }
+            read += count;
+        }
+        return read;
+    }
+
+    /**
+     * Per thread arrays used when a buffer is not backed by an array.
+     */
+    private static class Scratch {
+        private byte[] input = new byte[0];
+        private byte[] output = new byte[0];
+
+        private byte[] input(final int length) {
+            if (input.length < length) {
+                input = new byte[length];
+            }
+            return input;
+        }
+
+        private byte[] output(final int length) {
+            if (output.length < length) {
+                output = new byte[length];
+            }
+            return output;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.advantageous.reakt.kinesis;
+
+/**
+ * Consumer registered on a stream for push delivery. Each registered consumer gets its own read throughput
+ * per shard instead of sharing the shard's GetRecords limit with every other reader.
+ */
+public class FanOutConsumer {
+
+    private final String streamName;
+    private final String consumerName;
+    private final String consumerArn;
+
+    public FanOutConsumer(final String streamName, final String consumerName, final String consumerArn) {
+        this.streamName = streamName;
+        this.consumerName = consumerName;
+        this.consumerArn = consumerArn;
+    }
+
+    public String getStreamName() {
+        return streamName;
+    }
+
+    public String getConsumerName() {
+        return consumerName;
+    }
+
+    /**
+     * @return id the transport uses for the consumer
+     */
+    public String getConsumerArn() {
+        return consumerArn;
+    }
+
+    @Override
+    public String toString() {
+        return "FanOutConsumer{" + streamName + '/' + consumerName + '}';
+    }
+}
@@ -0,0 +1,33 @@
+package io.advantageous.reakt.kinesis;
+
+import io.advantageous.reakt.promise.Promise;
+
+/**
+ * Carries consumer registration and shard subscriptions for push delivery, the SubscribeToShard family of calls.
+ * The AWS SDK this library is built on predates those calls, so they are plugged in through this interface
+ * with {@link KinesisClient#fanOut(KinesisClient, FanOutTransport)}.
+ */
+public interface FanOutTransport {
+
+    /**
+     * @param streamName   stream name
+     * @param consumerName consumer name, unique per stream
+     * @return promise of the consumer, the existing one if a consumer with that name is already registered
+     */
+    Promise<FanOutConsumer> registerConsumer(String streamName, String consumerName);
+
+    Promise<Void> deregisterConsumer(FanOutConsumer consumer);
+
+    /**
+     * Subscribes to one shard. Results and errors are reported to the listener.
+     *
+     * @param consumer               registered consumer
+     * @param shardId                shard id
+     * @param startingPositionType   shard iterator type, for example LATEST or AFTER_SEQUENCE_NUMBER
+     * @param startingSequenceNumber sequence number for AT_ and AFTER_SEQUENCE_NUMBER, epoch milliseconds
+     *                               for AT_TIMESTAMP, otherwise null
+     * @param listener               listener of the subscription
+     */
+    void subscribeToShard(FanOutConsumer consumer, String shardId, String startingPositionType,
+                          String startingSequenceNumber, ShardEventListener listener);
+}
@@ -0,0 +1,16 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Rejects a call locally because the client already has as many calls in flight as its {@link InFlightLimits}
+ * allow. The call was not sent and is retryable, so retry policies back off and send it again.
+ */
+public class InFlightLimitExceededException extends AmazonClientException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InFlightLimitExceededException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,69 @@
+package io.advantageous.reakt.kinesis;
+
+/**
+ * Bounds on the putRecord and putRecords calls a client has outstanding at once, counted in requests and in bytes.
+ * Calls over the bounds wait in a bounded queue until earlier calls complete, calls that do not fit in the
+ * queue are rejected with {@link InFlightLimitExceededException}. With no queue every call over the bounds is
+ * rejected right away.
+ */
+public class InFlightLimits {
+
+    /**
+     * Largest supported value of {@link #withMaxRequests(int)}.
+     */
+    public static final int MAX_REQUESTS = (1 << 20) - 1;
+
+    /**
+     * Largest supported value of {@link #withMaxBytes(long)}.
+     */
+    public static final long MAX_BYTES = (1L << 43) - 1;
+
+    private int maxRequests = 500;
+    private long maxBytes = 64L * 1024 * 1024;
+    private int maxQueuedRequests;
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public InFlightLimits withMaxRequests(final int maxRequests) {
+        if (maxRequests <= 0 || maxRequests > MAX_REQUESTS) {
+            throw new IllegalArgumentException("maxRequests must be between 1 and " + MAX_REQUESTS);
+        }
+        this.maxRequests = maxRequests;
+        return this;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes record bytes in flight, a single call larger than this is let through once nothing else is
+     *                 in flight
+     * @return this
+     */
+    public InFlightLimits withMaxBytes(final long maxBytes) {
+        if (maxBytes <= 0 || maxBytes > MAX_BYTES) {
+            throw new IllegalArgumentException("maxBytes must be between 1 and " + MAX_BYTES);
+        }
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    public int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    /**
+     * @param maxQueuedRequests calls that may wait for room before calls are rejected, 0 to reject right away
+     * @return this
+     */
+    public InFlightLimits withMaxQueuedRequests(final int maxQueuedRequests) {
+        if (maxQueuedRequests < 0) {
+            throw new IllegalArgumentException("maxQueuedRequests must not be negative");
+        }
+        this.maxQueuedRequests = maxQueuedRequests;
+        return this;
+    }
+}
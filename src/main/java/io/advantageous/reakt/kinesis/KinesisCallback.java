@@ -0,0 +1,25 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import io.advantageous.reakt.Callback;
+
+/**
+ * Callback that is also an SDK {@link AsyncHandler}. Clients from {@link KinesisClient#create} hand it to the SDK
+ * as is, so a call made with a reused callback creates no promise and no handler adapter.
+ * An instance must only be used for one call at a time.
+ *
+ * @param <T> result type
+ */
+public abstract class KinesisCallback<T> implements Callback<T>, AsyncHandler<AmazonWebServiceRequest, T> {
+
+    @Override
+    public final void onSuccess(final AmazonWebServiceRequest request, final T result) {
+        reply(result);
+    }
+
+    @Override
+    public final void onError(final Exception exception) {
+        reject(exception);
+    }
+}
@@ -2,8 +2,18 @@ package io.advantageous.reakt.kinesis;
 
 import com.amazonaws.services.kinesis.AmazonKinesisAsyncClient;
 import com.amazonaws.services.kinesis.model.*;
+import io.advantageous.reakt.Callback;
+import io.advantageous.reakt.kinesis.impl.BoundedKinesisClient;
+import io.advantageous.reakt.kinesis.impl.CachingKinesisClient;
+import io.advantageous.reakt.kinesis.impl.CompressingKinesisClient;
+import io.advantageous.reakt.kinesis.impl.FanOutKinesisClient;
 import io.advantageous.reakt.kinesis.impl.KinesisClientImpl;
+import io.advantageous.reakt.kinesis.impl.MeteredKinesisClient;
+import io.advantageous.reakt.kinesis.impl.PooledPayloadKinesisClient;
+import io.advantageous.reakt.kinesis.impl.PutRecordsRetrier;
+import io.advantageous.reakt.kinesis.impl.RateLimitedKinesisClient;
 import io.advantageous.reakt.promise.Promise;
+import io.advantageous.reakt.promise.Promises;
 
 import java.nio.ByteBuffer;
 
@@ -12,6 +22,90 @@ public interface KinesisClient {
         return new KinesisClientImpl(amazonKinesisAsyncClient);
     }
 
+    /**
+     * Wraps a client so putRecord, putRecords and getRecords calls are delayed locally to keep each shard
+     * within its throughput limits.
+     *
+     * @param kinesisClient client to wrap
+     * @param limits        per shard limits
+     * @return rate limited client
+     */
+    static KinesisClient rateLimited(final KinesisClient kinesisClient, final ShardRateLimits limits) {
+        return new RateLimitedKinesisClient(kinesisClient, limits);
+    }
+
+    /**
+     * Wraps a client so record data is compressed on put and decompressed on getRecords.
+     *
+     * @param kinesisClient client to wrap
+     * @param compression   payload compression
+     * @return compressing client
+     */
+    static KinesisClient compressing(final KinesisClient kinesisClient, final PayloadCompression compression) {
+        return new CompressingKinesisClient(kinesisClient, compression);
+    }
+
+    /**
+     * Wraps a client so every call records latency, outcome, bytes and consumer lag.
+     *
+     * @param kinesisClient client to wrap
+     * @param metrics       metrics to record to
+     * @return metered client
+     */
+    static KinesisClient metered(final KinesisClient kinesisClient, final KinesisMetrics metrics) {
+        return new MeteredKinesisClient(kinesisClient, metrics);
+    }
+
+    /**
+     * Wraps a client so the putRecord and putRecords calls in flight stay within a request and byte bound.
+     * Calls over the bound are queued or rejected with {@link InFlightLimitExceededException}.
+     *
+     * @param kinesisClient client to wrap
+     * @param limits        in flight limits
+     * @return bounded client
+     */
+    static KinesisClient bounded(final KinesisClient kinesisClient, final InFlightLimits limits) {
+        return new BoundedKinesisClient(kinesisClient, limits);
+    }
+
+    /**
+     * Wraps a client so consumer registration and shard subscriptions go through a push transport.
+     *
+     * @param kinesisClient client to wrap
+     * @param transport     transport for registerStreamConsumer and subscribeToShard
+     * @return client with push delivery
+     */
+    static KinesisClient fanOut(final KinesisClient kinesisClient, final FanOutTransport transport) {
+        return new FanOutKinesisClient(kinesisClient, transport);
+    }
+
+    /**
+     * Wraps a client so describeStream and listStreams results are cached and concurrent identical calls share
+     * one request. Every page is fetched into one complete view that paged calls are served from.
+     *
+     * @param kinesisClient    client to wrap
+     * @param timeToLiveMillis time a stream description or the stream list is kept
+     * @return caching client
+     */
+    static KinesisClient cached(final KinesisClient kinesisClient, final long timeToLiveMillis) {
+        return new CachingKinesisClient(kinesisClient, timeToLiveMillis);
+    }
+
+    /**
+     * Wraps a client so the data buffers of putRecord and putRecords go back to a pool once the call completes.
+     * Fill buffers from {@link ByteBufferPool#acquire(int)} and do not use them after the call.
+     * Wrap it around every other wrapper and retry through {@link #putRecords(PutRecordsRequest, RetryPolicy)},
+     * a retry outside it would resend buffers already back in the pool.
+     *
+     * @param kinesisClient client to wrap, not a client that already releases payload buffers
+     * @param pool          pool the buffers are returned to
+     * @return client that releases payload buffers
+     * @throws IllegalArgumentException if the client already releases payload buffers
+     */
+    static KinesisClient pooledPayloads(final KinesisClient kinesisClient, final ByteBufferPool pool) {
+        return new PooledPayloadKinesisClient(kinesisClient, pool);
+    }
+
     Promise<AddTagsToStreamResult> addTagsToStream(AddTagsToStreamRequest request);
 
     Promise<CreateStreamResult> createStream(CreateStreamRequest request);
@@ -38,6 +132,16 @@ public interface KinesisClient {
 
     Promise<GetRecordsResult> getRecords(GetRecordsRequest request);
 
+    /**
+     * Callback form of {@link #getRecords(GetRecordsRequest)}.
+     *
+     * @param request  request
+     * @param callback callback, a {@link KinesisCallback} is passed to the SDK as the handler
+     */
+    default void getRecordsAsync(final GetRecordsRequest request, final Callback<GetRecordsResult> callback) {
+        getRecords(request).then(callback::reply).catchError(callback::reject).invoke();
+    }
+
     Promise<GetShardIteratorResult> getShardIteratorAsync(GetShardIteratorRequest request);
 
     Promise<GetShardIteratorResult> getShardIteratorAsync(String streamName, String shardId,
@@ -75,6 +179,53 @@ public interface KinesisClient {
 
     Promise<PutRecordsResult> putRecords(PutRecordsRequest request);
 
+    /**
+     * Callback form of {@link #putRecord(PutRecordRequest)}. Clients from {@link #create} complete the callback
+     * from the SDK handler without creating a promise, decorators complete it through their promise form.
+     * Named apart from the promise overloads so that a null last argument is not ambiguous.
+     *
+     * @param request  request
+     * @param callback callback, a {@link KinesisCallback} is passed to the SDK as the handler
+     */
+    default void putRecordAsync(final PutRecordRequest request, final Callback<PutRecordResult> callback) {
+        putRecord(request).then(callback::reply).catchError(callback::reject).invoke();
+    }
+
+    /**
+     * Callback form of {@link #putRecord(String, ByteBuffer, String)}.
+     *
+     * @param streamName   stream name
+     * @param data         data
+     * @param partitionKey partition key
+     * @param callback     callback, a {@link KinesisCallback} is passed to the SDK as the handler
+     */
+    default void putRecordAsync(final String streamName, final ByteBuffer data, final String partitionKey,
+                                final Callback<PutRecordResult> callback) {
+        putRecord(streamName, data, partitionKey).then(callback::reply).catchError(callback::reject).invoke();
+    }
+
+    /**
+     * Callback form of {@link #putRecords(PutRecordsRequest)}.
+     *
+     * @param request  request
+     * @param callback callback, a {@link KinesisCallback} is passed to the SDK as the handler
+     */
+    default void putRecordsAsync(final PutRecordsRequest request, final Callback<PutRecordsResult> callback) {
+        putRecords(request).then(callback::reply).catchError(callback::reject).invoke();
+    }
+
+    /**
+     * Writes multiple data records and resends only the entries that failed until every entry
+     * succeeded or the retry policy is used up.
+     *
+     * @param request     request
+     * @param retryPolicy attempt and time budget
+     * @return promise of PutRecordsResult, entries that never succeeded keep their last error
+     */
+    default Promise<PutRecordsResult> putRecords(PutRecordsRequest request, RetryPolicy retryPolicy) {
+        return PutRecordsRetrier.putRecords(this, request, retryPolicy);
+    }
+
     Promise<RemoveTagsFromStreamResult> removeTagsFromStream(RemoveTagsFromStreamRequest request);
 
     Promise<SplitShardResult> splitShardAsync(SplitShardRequest request);
@@ -82,5 +233,40 @@ public interface KinesisClient {
     Promise<SplitShardResult> splitShardAsync(String streamName, String shardToSplit,
                                               String newStartingHashKey);
 
+    /**
+     * Registers a consumer for push delivery. Only clients from {@link #fanOut} support it.
+     *
+     * @param streamName   stream name
+     * @param consumerName consumer name
+     * @return promise of the consumer, the existing one if the name is already registered
+     */
+    default Promise<FanOutConsumer> registerStreamConsumer(final String streamName, final String consumerName) {
+        return Promises.invokablePromise(promise -> promise.reject(
+                new UnsupportedOperationException("registerStreamConsumer needs a client from fanOut")));
+    }
+
+    default Promise<Void> deregisterStreamConsumer(final FanOutConsumer consumer) {
+        return Promises.invokablePromise(promise -> promise.reject(
+                new UnsupportedOperationException("deregisterStreamConsumer needs a client from fanOut")));
+    }
+
+    /**
+     * Subscribes to one shard for push delivery. Only clients from {@link #fanOut} support it,
+     * others report an UnsupportedOperationException to the listener.
+     *
+     * @param consumer               registered consumer
+     * @param shardId                shard id
+     * @param startingPositionType   shard iterator type, for example LATEST or AFTER_SEQUENCE_NUMBER
+     * @param startingSequenceNumber sequence number for AT_ and AFTER_SEQUENCE_NUMBER, epoch milliseconds
+     *                               for AT_TIMESTAMP, otherwise null
+     * @param listener               listener of the subscription
+     */
+    default void subscribeToShard(final FanOutConsumer consumer, final String shardId,
+                                  final String startingPositionType, final String startingSequenceNumber,
+                                  final ShardEventListener listener) {
+        ShardEventListener.reject(listener,
+                new UnsupportedOperationException("subscribeToShard needs a client from fanOut"));
+    }
+
     AmazonKinesisAsyncClient getAmazonKinesisAsyncClient();
 }
@@ -0,0 +1,252 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.kinesis.model.LimitExceededException;
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics recorded by a client from {@link KinesisClient#metered(KinesisClient, KinesisMetrics)}:
+ * latency and counters per operation, bytes written and read per stream and shard, records written per shard,
+ * throttled writes per stream, and the consumer lag of each shard as reported by MillisBehindLatest.
+ * <p>
+ * Recording does not allocate once a stream and shard have been seen.
+ */
+public class KinesisMetrics {
+
+    private final Map<KinesisOperation, OperationMetrics> operations;
+    private final ConcurrentMap<String, StreamMetrics> streams = new ConcurrentHashMap<>();
+
+    public KinesisMetrics() {
+        final Map<KinesisOperation, OperationMetrics> metrics = new EnumMap<>(KinesisOperation.class);
+        for (KinesisOperation operation : KinesisOperation.values()) {
+            metrics.put(operation, new OperationMetrics(operation));
+        }
+        this.operations = Collections.unmodifiableMap(metrics);
+    }
+
+    public OperationMetrics operation(final KinesisOperation operation) {
+        return operations.get(operation);
+    }
+
+    public Map<KinesisOperation, OperationMetrics> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @param streamName stream name
+     * @return data and partition key bytes written to the stream
+     */
+    public long getBytesWritten(final String streamName) {
+        final StreamMetrics stream = streams.get(streamName);
+        return stream == null ? 0 : stream.bytesWritten.sum();
+    }
+
+    /**
+     * @param streamName stream name
+     * @return bytes written by shard id
+     */
+    public Map<String, Long> getShardBytesWritten(final String streamName) {
+        final StreamMetrics stream = streams.get(streamName);
+        return stream == null ? Collections.emptyMap() : sums(stream.shardBytesWritten);
+    }
+
+    /**
+     * @param streamName stream name
+     * @return records written by shard id
+     */
+    public Map<String, Long> getShardRecordsWritten(final String streamName) {
+        final StreamMetrics stream = streams.get(streamName);
+        return stream == null ? Collections.emptyMap() : sums(stream.shardRecordsWritten);
+    }
+
+    /**
+     * @param streamName stream name
+     * @return records rejected with ProvisionedThroughputExceeded when written to the stream
+     */
+    public long getWriteThrottles(final String streamName) {
+        final StreamMetrics stream = streams.get(streamName);
+        return stream == null ? 0 : stream.writeThrottles.sum();
+    }
+
+    /**
+     * @param streamName stream name
+     * @return data and partition key bytes read from the stream
+     */
+    public long getBytesRead(final String streamName) {
+        final StreamMetrics stream = streams.get(streamName);
+        return stream == null ? 0 : stream.bytesRead.sum();
+    }
+
+    /**
+     * @param streamName stream name
+     * @return bytes read by shard id
+     */
+    public Map<String, Long> getShardBytesRead(final String streamName) {
+        final StreamMetrics stream = streams.get(streamName);
+        return stream == null ? Collections.emptyMap() : sums(stream.shardBytesRead);
+    }
+
+    /**
+     * @param streamName stream name
+     * @return largest MillisBehindLatest last reported for a shard of the stream, -1 if none was reported
+     */
+    public long getMillisBehindLatest(final String streamName) {
+        final StreamMetrics stream = streams.get(streamName);
+        long max = -1;
+        if (stream != null) {
+            for (AtomicLong lag : stream.millisBehindLatest.values()) {
+                max = Math.max(max, lag.get());
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @param streamName stream name
+     * @return MillisBehindLatest last reported by shard id
+     */
+    public Map<String, Long> getShardMillisBehindLatest(final String streamName) {
+        final StreamMetrics stream = streams.get(streamName);
+        if (stream == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Long> lags = new HashMap<>();
+        stream.millisBehindLatest.forEach((shardId, lag) -> lags.put(shardId, lag.get()));
+        return lags;
+    }
+
+    /**
+     * @return names of the streams seen so far
+     */
+    public Iterable<String> getStreamNames() {
+        return Collections.unmodifiableSet(streams.keySet());
+    }
+
+    /**
+     * Records one record written.
+     *
+     * @param streamName stream name
+     * @param shardId    shard id, null if unknown
+     * @param bytes      bytes written
+     */
+    public void bytesWritten(final String streamName, final String shardId, final long bytes) {
+        final StreamMetrics stream = stream(streamName);
+        stream.bytesWritten.add(bytes);
+        if (shardId != null) {
+            adder(stream.shardBytesWritten, shardId).add(bytes);
+            adder(stream.shardRecordsWritten, shardId).increment();
+        }
+    }
+
+    /**
+     * @param streamName stream name
+     * @param records    records rejected with ProvisionedThroughputExceeded
+     */
+    public void writesThrottled(final String streamName, final long records) {
+        stream(streamName).writeThrottles.add(records);
+    }
+
+    /**
+     * @param streamName stream name
+     * @param shardId    shard id, null if unknown
+     * @param bytes      bytes read
+     */
+    public void bytesRead(final String streamName, final String shardId, final long bytes) {
+        final StreamMetrics stream = stream(streamName);
+        stream.bytesRead.add(bytes);
+        if (shardId != null) {
+            adder(stream.shardBytesRead, shardId).add(bytes);
+        }
+    }
+
+    /**
+     * @param streamName         stream name
+     * @param shardId            shard id
+     * @param millisBehindLatest lag reported by GetRecords
+     */
+    public void millisBehindLatest(final String streamName, final String shardId, final long millisBehindLatest) {
+        final ConcurrentMap<String, AtomicLong> lags = stream(streamName).millisBehindLatest;
+        AtomicLong lag = lags.get(shardId);
+        if (lag == null) {
+            lag = lags.computeIfAbsent(shardId, id -> new AtomicLong());
+        }
+        lag.set(millisBehindLatest);
+    }
+
+    /**
+     * Drops the lag of a shard that was read to its end, so closed shards do not hold up the lag of the stream.
+     *
+     * @param streamName stream name
+     * @param shardId    shard id
+     */
+    public void shardEnded(final String streamName, final String shardId) {
+        final StreamMetrics stream = streams.get(streamName);
+        if (stream != null) {
+            stream.millisBehindLatest.remove(shardId);
+        }
+    }
+
+    /**
+     * Calls the reporter every period until the returned future is cancelled.
+     *
+     * @param reporter     reporter
+     * @param periodMillis time between reports
+     * @param scheduler    scheduler that runs the reporter
+     * @return future that stops the reports when cancelled
+     */
+    public ScheduledFuture<?> startReporting(final MetricsReporter reporter, final long periodMillis,
+                                             final ScheduledExecutorService scheduler) {
+        return scheduler.scheduleAtFixedRate(() -> reporter.report(this), periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param error error a call failed with
+     * @return true if a throughput or control plane limit was exceeded
+     */
+    public static boolean isThrottle(final Throwable error) {
+        if (error instanceof ProvisionedThroughputExceededException || error instanceof LimitExceededException) {
+            return true;
+        }
+        return error instanceof AmazonServiceException
+                && "ThrottlingException".equals(((AmazonServiceException) error).getErrorCode());
+    }
+
+    private StreamMetrics stream(final String streamName) {
+        final StreamMetrics stream = streams.get(streamName);
+        return stream != null ? stream : streams.computeIfAbsent(streamName, name -> new StreamMetrics());
+    }
+
+    private static LongAdder adder(final ConcurrentMap<String, LongAdder> adders, final String key) {
+        final LongAdder adder = adders.get(key);
+        return adder != null ? adder : adders.computeIfAbsent(key, id -> new LongAdder());
+    }
+
+    private static Map<String, Long> sums(final ConcurrentMap<String, LongAdder> adders) {
+        final Map<String, Long> sums = new HashMap<>();
+        adders.forEach((key, adder) -> sums.put(key, adder.sum()));
+        return sums;
+    }
+
+    private static class StreamMetrics {
+        private final LongAdder bytesWritten = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder writeThrottles = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> shardBytesWritten = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, LongAdder> shardRecordsWritten = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, LongAdder> shardBytesRead = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, AtomicLong> millisBehindLatest = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,24 @@
+package io.advantageous.reakt.kinesis;
+
+/**
+ * Kinesis API operations, as counted by {@link KinesisMetrics}. Overloads of a call count as one operation.
+ */
+public enum KinesisOperation {
+    ADD_TAGS_TO_STREAM,
+    CREATE_STREAM,
+    DECREASE_STREAM_RETENTION_PERIOD,
+    DELETE_STREAM,
+    DESCRIBE_STREAM,
+    DISABLE_ENHANCED_MONITORING,
+    ENABLE_ENHANCED_MONITORING,
+    GET_RECORDS,
+    GET_SHARD_ITERATOR,
+    INCREASE_STREAM_RETENTION_PERIOD,
+    LIST_STREAMS,
+    LIST_TAGS_FOR_STREAM,
+    MERGE_SHARDS,
+    PUT_RECORD,
+    PUT_RECORDS,
+    REMOVE_TAGS_FROM_STREAM,
+    SPLIT_SHARD
+}
@@ -0,0 +1,72 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.Record;
+import io.advantageous.reakt.Stream;
+import io.advantageous.reakt.kinesis.impl.FanOutShardReader;
+import io.advantageous.reakt.kinesis.impl.KinesisShardReaderImpl;
+
+/**
+ * Reads one shard as a Reakt stream of records.
+ * The reader follows NextShardIterator, paces GetRecords calls, and stops polling while the stream has
+ * no outstanding demand. Demand is added with request(n) on the StreamResult handed to the stream.
+ * The stream is completed when the shard is closed and fully read.
+ * Readers from {@link #subscribe} get records pushed through shard subscriptions instead of polling.
+ */
+public interface KinesisShardReader {
+
+    static KinesisShardReader create(final KinesisClient kinesisClient, final String streamName,
+                                     final String shardId) {
+        return create(kinesisClient, streamName, shardId, new ShardReaderConfig());
+    }
+
+    static KinesisShardReader create(final KinesisClient kinesisClient, final String streamName,
+                                     final String shardId, final ShardReaderConfig config) {
+        return new KinesisShardReaderImpl(kinesisClient, streamName, shardId, config);
+    }
+
+    static KinesisShardReader subscribe(final KinesisClient kinesisClient, final FanOutConsumer consumer,
+                                        final String shardId) {
+        return subscribe(kinesisClient, consumer, shardId, new ShardReaderConfig());
+    }
+
+    /**
+     * @param kinesisClient client from {@link KinesisClient#fanOut}
+     * @param consumer      registered consumer
+     * @param shardId       shard id
+     * @param config        demand, read-ahead and backoff settings, poll intervals do not apply
+     * @return reader fed by shard subscriptions
+     */
+    static KinesisShardReader subscribe(final KinesisClient kinesisClient, final FanOutConsumer consumer,
+                                        final String shardId, final ShardReaderConfig config) {
+        return new FanOutShardReader(kinesisClient, consumer, shardId, config);
+    }
+
+    /**
+     * Starts reading at the given position.
+     *
+     * @param shardIteratorType      shard iterator type, for example LATEST or AFTER_SEQUENCE_NUMBER
+     * @param startingSequenceNumber sequence number for AT_ and AFTER_SEQUENCE_NUMBER, epoch milliseconds
+     *                               for AT_TIMESTAMP, otherwise null
+     * @param stream                 stream that receives the records
+     */
+    void read(String shardIteratorType, String startingSequenceNumber, Stream<Record> stream);
+
+    /**
+     * Starts reading at the given position.
+     *
+     * @param shardIteratorType shard iterator type, for example LATEST or TRIM_HORIZON
+     * @param stream            stream that receives the records
+     */
+    default void read(String shardIteratorType, Stream<Record> stream) {
+        read(shardIteratorType, null, stream);
+    }
+
+    /**
+     * Stops polling. Records already fetched are dropped.
+     */
+    void stop();
+
+    String getStreamName();
+
+    String getShardId();
+}
@@ -0,0 +1,41 @@
+package io.advantageous.reakt.kinesis;
+
+import io.advantageous.reakt.kinesis.impl.KinesisStreamConsumerImpl;
+import io.advantageous.reakt.promise.Promise;
+
+import java.util.List;
+
+/**
+ * Reads the shards of a stream in parallel.
+ * Each shard has its own reader, and its records are handed to the handler in order on a bounded executor,
+ * so shards scale across cores instead of sharing the SDK callback thread.
+ * Child shards of a split or merge start once their parents are read to the end, and shards are listed again
+ * periodically, so resharding a running stream needs no restart.
+ */
+public interface KinesisStreamConsumer extends AutoCloseable {
+
+    static KinesisStreamConsumer create(final KinesisClient kinesisClient, final String streamName) {
+        return create(kinesisClient, streamName, new StreamConsumerConfig());
+    }
+
+    static KinesisStreamConsumer create(final KinesisClient kinesisClient, final String streamName,
+                                        final StreamConsumerConfig config) {
+        return new KinesisStreamConsumerImpl(kinesisClient, streamName, config);
+    }
+
+    /**
+     * Discovers the shards of the stream and starts reading the ones whose parents are finished, after their
+     * stored checkpoints if a {@link StreamConsumerConfig#withCheckpointStore(CheckpointStore) checkpoint store}
+     * is set.
+     *
+     * @param handler handler that receives the records
+     * @return promise of the ids of the shards being read
+     */
+    Promise<List<String>> start(ShardRecordHandler handler);
+
+    /**
+     * Stops every shard reader and writes the remaining checkpoints.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,14 @@
+package io.advantageous.reakt.kinesis;
+
+/**
+ * Exports {@link KinesisMetrics} to a metrics system. Called periodically once scheduled with
+ * {@link KinesisMetrics#startReporting(MetricsReporter, long, java.util.concurrent.ScheduledExecutorService)}.
+ */
+@FunctionalInterface
+public interface MetricsReporter {
+
+    /**
+     * @param metrics metrics to export, values are cumulative since the metrics were created
+     */
+    void report(KinesisMetrics metrics);
+}
@@ -0,0 +1,96 @@
+package io.advantageous.reakt.kinesis;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency of one {@link KinesisOperation}.
+ */
+public class OperationMetrics {
+
+    private final KinesisOperation operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder throttles = new LongAdder();
+    private final LongAdder failedRecords = new LongAdder();
+
+    public OperationMetrics(final KinesisOperation operation) {
+        this.operation = operation;
+    }
+
+    public KinesisOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return latency of completed calls, successful or not, in nanoseconds
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return calls started and not yet completed
+     */
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    /**
+     * @return failed calls, throttled ones included
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @return calls failed because a throughput or control plane limit was exceeded
+     */
+    public long getThrottles() {
+        return throttles.sum();
+    }
+
+    /**
+     * @return records that failed inside successful PutRecords calls
+     */
+    public long getFailedRecords() {
+        return failedRecords.sum();
+    }
+
+    /**
+     * @return start time to pass to {@link #completed(long, Throwable)}
+     */
+    public long started() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * @param startNanos value returned by {@link #started()}
+     * @param error      error the call failed with, null on success
+     */
+    public void completed(final long startNanos, final Throwable error) {
+        latency.record(System.nanoTime() - startNanos);
+        inFlight.decrement();
+        if (error == null) {
+            successes.increment();
+        } else {
+            errors.increment();
+            if (KinesisMetrics.isThrottle(error)) {
+                throttles.increment();
+            }
+        }
+    }
+
+    /**
+     * @param count records that failed inside a successful call
+     */
+    public void failedRecords(final long count) {
+        failedRecords.add(count);
+    }
+}
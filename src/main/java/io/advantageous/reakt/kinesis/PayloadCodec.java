@@ -0,0 +1,38 @@
+package io.advantageous.reakt.kinesis;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compression algorithm used by {@link PayloadCompression}.
+ * Each codec is identified by the codec byte written after the magic bytes of the payloads it compresses.
+ */
+public interface PayloadCodec {
+
+    /**
+     * @return codec byte of this codec, between 0x81 and 0xBF
+     */
+    byte header();
+
+    /**
+     * @param length uncompressed length
+     * @return largest possible compressed length
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * Compresses the remaining bytes of the source into the target. The source position is not moved.
+     *
+     * @param source uncompressed bytes
+     * @param target buffer with at least {@link #maxCompressedLength(int)} bytes remaining, its position is moved
+     *               past the compressed bytes
+     */
+    void compress(ByteBuffer source, ByteBuffer target);
+
+    /**
+     * Decompresses the remaining bytes of the source into the target.
+     *
+     * @param source compressed bytes
+     * @param target buffer with exactly the uncompressed length remaining, its position is moved to its limit
+     */
+    void decompress(ByteBuffer source, ByteBuffer target);
+}
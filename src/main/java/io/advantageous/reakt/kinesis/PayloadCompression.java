@@ -0,0 +1,219 @@
+package io.advantageous.reakt.kinesis;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Compresses record payloads on write and decompresses them on read.
+ * <p>
+ * Like a KPL aggregated record, every payload written is framed by magic bytes and a checksum: four magic bytes,
+ * the codec byte, for compressed payloads the uncompressed length as a varint, the payload, and a CRC32 of
+ * everything between the magic bytes and the CRC. Payloads that do not start with the magic bytes, whose CRC does
+ * not match, whose codec is unknown or whose uncompressed length is past the Kinesis record limit are returned
+ * unchanged, so records written before compression was turned on still read as they were written.
+ * Payloads that are small or do not shrink are written with the {@link #UNCOMPRESSED} codec byte.
+ */
+public class PayloadCompression {
+
+    /**
+     * Codec byte of payloads stored without compression.
+     */
+    public static final byte UNCOMPRESSED = (byte) 0x80;
+
+    /**
+     * Magic bytes that start every framed payload. 0xF8 never occurs in UTF-8 text.
+     */
+    static final byte[] MAGIC = {(byte) 0xF8, 'R', 'K', 'Z'};
+
+    private static final int CHECKSUM_LENGTH = 4;
+    private static final int FRAME_BYTES = MAGIC.length + 1 + CHECKSUM_LENGTH;
+    private static final int MAX_PAYLOAD_BYTES = BatchingProducerConfig.MAX_BYTES_PER_RECORD;
+    private static final int FIRST_CODEC = 0x80;
+    private static final int LAST_CODEC = 0xBF;
+
+    private final PayloadCodec writeCodec;
+    private final PayloadCodec[] readCodecs = new PayloadCodec[LAST_CODEC - FIRST_CODEC + 1];
+    private final ByteBufferPool bufferPool;
+    private final int minCompressBytes;
+    private final ThreadLocal<CRC32> crc = ThreadLocal.withInitial(CRC32::new);
+
+    /**
+     * @param writeCodec codec used to compress, also used to decompress
+     */
+    public PayloadCompression(final PayloadCodec writeCodec) {
+        this(writeCodec, new ByteBufferPool(), 128);
+    }
+
+    /**
+     * @param writeCodec       codec used to compress, also used to decompress
+     * @param bufferPool       pool of the buffers payloads are compressed to
+     * @param minCompressBytes payloads smaller than this are not compressed
+     * @param readCodecs       further codecs accepted when decompressing
+     */
+    public PayloadCompression(final PayloadCodec writeCodec, final ByteBufferPool bufferPool,
+                              final int minCompressBytes, final PayloadCodec... readCodecs) {
+        this.writeCodec = writeCodec;
+        this.bufferPool = bufferPool;
+        this.minCompressBytes = minCompressBytes;
+        register(writeCodec);
+        for (PayloadCodec codec : readCodecs) {
+            register(codec);
+        }
+    }
+
+    /**
+     * Compresses a payload into a pooled buffer. The source position is not moved.
+     * A payload that would not fit the 1 MiB Kinesis record limit once framed is copied as it is, unframed.
+     *
+     * @param data payload
+     * @return buffer holding the framed payload, hand it to {@link #release(ByteBuffer)} once sent
+     */
+    public ByteBuffer compress(final ByteBuffer data) {
+        final int length = data.remaining();
+        if (length < minCompressBytes) {
+            return uncompressed(data);
+        }
+        final ByteBuffer target = bufferPool.acquire(FRAME_BYTES + RecordAggregator.varintSize(length)
+                + writeCodec.maxCompressedLength(length));
+        target.put(MAGIC);
+        target.put(writeCodec.header());
+        putVarint(target, length);
+        try {
+            writeCodec.compress(data, target);
+        } catch (RuntimeException ex) {
+            bufferPool.release(target);
+            throw ex;
+        }
+        if (target.position() + CHECKSUM_LENGTH >= FRAME_BYTES + length || !seal(target)) {
+            bufferPool.release(target);
+            return uncompressed(data);
+        }
+        return target;
+    }
+
+    /**
+     * Decompresses a payload. Uncompressed payloads are returned as a slice of the data and compressed ones in a
+     * heap buffer of exactly the uncompressed length. Payloads that are not framed by {@link #compress(ByteBuffer)}
+     * are returned unchanged. The result never comes from the pool, so it stays valid for as long as the caller
+     * holds it and needs no release.
+     *
+     * @param data payload as read from Kinesis
+     * @return original payload
+     */
+    public ByteBuffer decompress(final ByteBuffer data) {
+        if (data.remaining() < FRAME_BYTES || !startsWithMagic(data)) {
+            return data;
+        }
+        final ByteBuffer source = data.duplicate();
+        source.position(data.position() + MAGIC.length);
+        source.limit(data.limit() - CHECKSUM_LENGTH);
+        if (checksum(source) != data.getInt(data.limit() - CHECKSUM_LENGTH)) {
+            return data;
+        }
+        final int codecByte = source.get() & 0xFF;
+        if (codecByte < FIRST_CODEC || codecByte > LAST_CODEC) {
+            return data;
+        }
+        if (codecByte == FIRST_CODEC) {
+            return source.slice();
+        }
+        final PayloadCodec codec = readCodecs[codecByte - FIRST_CODEC];
+        final int length = readVarint(source);
+        if (codec == null || length < 0 || length > MAX_PAYLOAD_BYTES) {
+            return data;
+        }
+        final ByteBuffer target = ByteBuffer.allocate(length);
+        codec.decompress(source, target);
+        target.flip();
+        return target;
+    }
+
+    /**
+     * Returns a buffer from {@link #compress(ByteBuffer)} to the pool once it has been sent.
+     * Buffers that did not come from the pool are ignored.
+     *
+     * @param buffer buffer
+     */
+    public void release(final ByteBuffer buffer) {
+        bufferPool.release(buffer);
+    }
+
+    private ByteBuffer uncompressed(final ByteBuffer data) {
+        final int length = data.remaining();
+        if (FRAME_BYTES + length > MAX_PAYLOAD_BYTES) {
+            final ByteBuffer target = bufferPool.acquire(length);
+            target.put(data.duplicate());
+            target.flip();
+            return target;
+        }
+        final ByteBuffer target = bufferPool.acquire(FRAME_BYTES + length);
+        target.put(MAGIC);
+        target.put(UNCOMPRESSED);
+        target.put(data.duplicate());
+        seal(target);
+        return target;
+    }
+
+    /**
+     * Appends the CRC and flips the buffer.
+     *
+     * @return false if the framed payload is past the record limit
+     */
+    private boolean seal(final ByteBuffer target) {
+        if (target.position() + CHECKSUM_LENGTH > MAX_PAYLOAD_BYTES) {
+            return false;
+        }
+        final ByteBuffer framed = target.duplicate();
+        framed.flip().position(MAGIC.length);
+        target.putInt(checksum(framed));
+        target.flip();
+        return true;
+    }
+
+    private int checksum(final ByteBuffer region) {
+        final CRC32 checksum = crc.get();
+        checksum.reset();
+        checksum.update(region.duplicate());
+        return (int) checksum.getValue();
+    }
+
+    private static boolean startsWithMagic(final ByteBuffer data) {
+        for (int index = 0; index < MAGIC.length; index++) {
+            if (data.get(data.position() + index) != MAGIC[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void register(final PayloadCodec codec) {
+        final int codecByte = codec.header() & 0xFF;
+        if (codecByte <= FIRST_CODEC || codecByte > LAST_CODEC) {
+            throw new IllegalArgumentException("codec header must be between 0x81 and 0xBF");
+        }
+        readCodecs[codecByte - FIRST_CODEC] = codec;
+    }
+
+    private static void putVarint(final ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * @return the varint, or -1 if it is malformed or runs past the payload
+     */
+    private static int readVarint(final ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32 && buffer.hasRemaining(); shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,257 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs user records into one Kinesis record in the KPL aggregated record format:
+ * four magic bytes, an AggregatedRecord protobuf message and the MD5 of that message.
+ * All records added to one aggregator should map to the same shard, the aggregated record is placed
+ * with the explicit hash key of the first one.
+ * <p>
+ * Not thread safe.
+ */
+public class RecordAggregator {
+
+    /**
+     * Magic bytes that start every aggregated record.
+     */
+    static final byte[] MAGIC = {(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2};
+
+    static final int DIGEST_LENGTH = 16;
+
+    /**
+     * Default size limit of an aggregated record, the same as the KPL uses.
+     */
+    public static final int DEFAULT_MAX_BYTES = 50 * 1024;
+
+    static final int PARTITION_KEY_TABLE_TAG = 1 << 3 | 2;
+    static final int EXPLICIT_HASH_KEY_TABLE_TAG = 2 << 3 | 2;
+    static final int RECORDS_TAG = 3 << 3 | 2;
+    static final int PARTITION_KEY_INDEX_TAG = 1 << 3;
+    static final int EXPLICIT_HASH_KEY_INDEX_TAG = 2 << 3;
+    static final int DATA_TAG = 3 << 3 | 2;
+
+    private final int maxBytes;
+    private final Map<String, Integer> partitionKeys = new HashMap<>();
+    private final List<byte[]> partitionKeyTable = new ArrayList<>();
+    private final Map<String, Integer> explicitHashKeys = new HashMap<>();
+    private final List<byte[]> explicitHashKeyTable = new ArrayList<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private int messageSize;
+    private String firstPartitionKey;
+    private String firstExplicitHashKey;
+
+    public RecordAggregator() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes size limit of the aggregated record, including partition key, magic bytes and digest
+     */
+    public RecordAggregator(final int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds a user record if it still fits.
+     *
+     * @param partitionKey    partition key
+     * @param explicitHashKey explicit hash key, may be null
+     * @param data            data, read from its position to its limit when the record is built
+     * @return false if the aggregated record would grow past its size limit, the record is not added then
+     * unless the aggregator is empty
+     */
+    public boolean add(final String partitionKey, final String explicitHashKey, final ByteBuffer data) {
+        final Integer knownPartitionKeyIndex = partitionKeys.get(partitionKey);
+        final byte[] partitionKeyBytes = knownPartitionKeyIndex == null
+                ? partitionKey.getBytes(StandardCharsets.UTF_8) : null;
+        final Integer knownExplicitHashKeyIndex = explicitHashKey == null ? null
+                : explicitHashKeys.get(explicitHashKey);
+        final byte[] explicitHashKeyBytes = explicitHashKey != null && knownExplicitHashKeyIndex == null
+                ? explicitHashKey.getBytes(StandardCharsets.US_ASCII) : null;
+
+        final int partitionKeyIndex = knownPartitionKeyIndex != null ? knownPartitionKeyIndex
+                : partitionKeyTable.size();
+        final int explicitHashKeyIndex = explicitHashKey == null ? -1
+                : knownExplicitHashKeyIndex != null ? knownExplicitHashKeyIndex : explicitHashKeyTable.size();
+
+        int growth = 0;
+        if (partitionKeyBytes != null) {
+            growth += fieldSize(partitionKeyBytes.length);
+        }
+        if (explicitHashKeyBytes != null) {
+            growth += fieldSize(explicitHashKeyBytes.length);
+        }
+        final int recordSize = recordSize(partitionKeyIndex, explicitHashKeyIndex, data.remaining());
+        growth += fieldSize(recordSize);
+
+        if (!entries.isEmpty() && sizeWith(growth) > maxBytes) {
+            return false;
+        }
+        if (entries.isEmpty()) {
+            firstPartitionKey = partitionKey;
+            firstExplicitHashKey = explicitHashKey;
+        }
+        if (partitionKeyBytes != null) {
+            partitionKeys.put(partitionKey, partitionKeyIndex);
+            partitionKeyTable.add(partitionKeyBytes);
+        }
+        if (explicitHashKeyBytes != null) {
+            explicitHashKeys.put(explicitHashKey, explicitHashKeyIndex);
+            explicitHashKeyTable.add(explicitHashKeyBytes);
+        }
+        entries.add(new Entry(partitionKeyIndex, explicitHashKeyIndex, data, recordSize));
+        messageSize += growth;
+        return true;
+    }
+
+    /**
+     * @return number of user records added
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return size the built record counts against Kinesis limits, data plus partition key
+     */
+    public int sizeBytes() {
+        return entries.isEmpty() ? 0 : sizeWith(0);
+    }
+
+    /**
+     * Builds the Kinesis record. A single user record is sent as is, without aggregation.
+     *
+     * @return entry for a PutRecords request
+     */
+    public PutRecordsRequestEntry build() {
+        if (entries.isEmpty()) {
+            throw new IllegalStateException("no records to aggregate");
+        }
+        final PutRecordsRequestEntry entry = new PutRecordsRequestEntry().withPartitionKey(firstPartitionKey);
+        if (entries.size() == 1) {
+            return entry.withExplicitHashKey(firstExplicitHashKey).withData(entries.get(0).data.duplicate());
+        }
+        final byte[] bytes = new byte[MAGIC.length + messageSize + DIGEST_LENGTH];
+        System.arraycopy(MAGIC, 0, bytes, 0, MAGIC.length);
+        int position = MAGIC.length;
+        for (byte[] partitionKey : partitionKeyTable) {
+            position = writeBytesField(bytes, position, PARTITION_KEY_TABLE_TAG, partitionKey);
+        }
+        for (byte[] explicitHashKey : explicitHashKeyTable) {
+            position = writeBytesField(bytes, position, EXPLICIT_HASH_KEY_TABLE_TAG, explicitHashKey);
+        }
+        for (Entry record : entries) {
+            position = writeVarint(bytes, position, RECORDS_TAG);
+            position = writeVarint(bytes, position, record.size);
+            position = writeVarint(bytes, position, PARTITION_KEY_INDEX_TAG);
+            position = writeVarint(bytes, position, record.partitionKeyIndex);
+            if (record.explicitHashKeyIndex >= 0) {
+                position = writeVarint(bytes, position, EXPLICIT_HASH_KEY_INDEX_TAG);
+                position = writeVarint(bytes, position, record.explicitHashKeyIndex);
+            }
+            position = writeVarint(bytes, position, DATA_TAG);
+            position = writeVarint(bytes, position, record.data.remaining());
+            record.data.duplicate().get(bytes, position, record.data.remaining());
+            position += record.data.remaining();
+        }
+        final MessageDigest md5 = md5();
+        md5.update(bytes, MAGIC.length, messageSize);
+        System.arraycopy(md5.digest(), 0, bytes, position, DIGEST_LENGTH);
+        return entry.withExplicitHashKey(firstExplicitHashKey != null ? firstExplicitHashKey
+                : ShardMap.hashKey(firstPartitionKey).toString())
+                .withData(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Empties the aggregator so it can be reused.
+     */
+    public void clear() {
+        partitionKeys.clear();
+        partitionKeyTable.clear();
+        explicitHashKeys.clear();
+        explicitHashKeyTable.clear();
+        entries.clear();
+        messageSize = 0;
+        firstPartitionKey = null;
+        firstExplicitHashKey = null;
+    }
+
+    private int sizeWith(final int growth) {
+        final int partitionKeyLength = partitionKeyTable.isEmpty() ? 0 : partitionKeyTable.get(0).length;
+        return MAGIC.length + messageSize + growth + DIGEST_LENGTH + partitionKeyLength;
+    }
+
+    static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static int recordSize(final int partitionKeyIndex, final int explicitHashKeyIndex, final int dataLength) {
+        int size = 1 + varintSize(partitionKeyIndex);
+        if (explicitHashKeyIndex >= 0) {
+            size += 1 + varintSize(explicitHashKeyIndex);
+        }
+        return size + fieldSize(dataLength);
+    }
+
+    private static int fieldSize(final int length) {
+        return 1 + varintSize(length) + length;
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeBytesField(final byte[] bytes, final int position, final int tag, final byte[] value) {
+        int next = writeVarint(bytes, position, tag);
+        next = writeVarint(bytes, next, value.length);
+        System.arraycopy(value, 0, bytes, next, value.length);
+        return next + value.length;
+    }
+
+    private static int writeVarint(final byte[] bytes, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    private static class Entry {
+        private final int partitionKeyIndex;
+        private final int explicitHashKeyIndex;
+        private final ByteBuffer data;
+        private final int size;
+
+        private Entry(final int partitionKeyIndex, final int explicitHashKeyIndex, final ByteBuffer data,
+                      final int size) {
+            this.partitionKeyIndex = partitionKeyIndex;
+            this.explicitHashKeyIndex = explicitHashKeyIndex;
+            this.data = data;
+            this.size = size;
+        }
+    }
+}
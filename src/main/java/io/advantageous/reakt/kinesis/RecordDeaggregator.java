@@ -0,0 +1,204 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static io.advantageous.reakt.kinesis.RecordAggregator.DATA_TAG;
+import static io.advantageous.reakt.kinesis.RecordAggregator.DIGEST_LENGTH;
+import static io.advantageous.reakt.kinesis.RecordAggregator.EXPLICIT_HASH_KEY_INDEX_TAG;
+import static io.advantageous.reakt.kinesis.RecordAggregator.EXPLICIT_HASH_KEY_TABLE_TAG;
+import static io.advantageous.reakt.kinesis.RecordAggregator.MAGIC;
+import static io.advantageous.reakt.kinesis.RecordAggregator.PARTITION_KEY_INDEX_TAG;
+import static io.advantageous.reakt.kinesis.RecordAggregator.PARTITION_KEY_TABLE_TAG;
+import static io.advantageous.reakt.kinesis.RecordAggregator.RECORDS_TAG;
+
+/**
+ * Unpacks Kinesis records written in the KPL aggregated record format into the user records they hold.
+ * Records that do not start with the magic bytes, whose MD5 does not match, or whose message does not decode
+ * into user records with a partition key and data are returned unchanged as a single user record.
+ * Data of unpacked records is a slice of the Kinesis record data, not a copy.
+ */
+public final class RecordDeaggregator {
+
+    private RecordDeaggregator() {
+    }
+
+    /**
+     * @param records records from GetRecords
+     * @return user records in order
+     */
+    public static List<Record> deaggregate(final List<Record> records) {
+        final List<Record> userRecords = new ArrayList<>(records.size());
+        for (Record record : records) {
+            userRecords.addAll(deaggregate(record));
+        }
+        return userRecords;
+    }
+
+    /**
+     * An aggregated record may hold no user records, the result is then empty.
+     *
+     * @param record record from GetRecords
+     * @return user records in order
+     */
+    public static List<UserRecord> deaggregate(final Record record) {
+        final ByteBuffer data = record.getData();
+        if (isAggregated(data)) {
+            final List<UserRecord> userRecords = unpack(record, data);
+            if (userRecords != null) {
+                return userRecords;
+            }
+        }
+        return Collections.singletonList(userRecord(record, record.getPartitionKey(), null, data, 0, false));
+    }
+
+    /**
+     * @return user records, or null if the message does not decode or a user record lacks its partition key
+     * or data, so the record is passed on as it is
+     */
+    private static List<UserRecord> unpack(final Record record, final ByteBuffer data) {
+        final ByteBuffer message = data.duplicate();
+        message.position(data.position() + MAGIC.length);
+        message.limit(data.limit() - DIGEST_LENGTH);
+
+        final List<String> partitionKeys = new ArrayList<>();
+        final List<String> explicitHashKeys = new ArrayList<>();
+        final List<UserRecord> userRecords = new ArrayList<>();
+        try {
+            while (message.hasRemaining()) {
+                final int tag = (int) readVarint(message);
+                if (tag == PARTITION_KEY_TABLE_TAG) {
+                    partitionKeys.add(readString(message));
+                } else if (tag == EXPLICIT_HASH_KEY_TABLE_TAG) {
+                    explicitHashKeys.add(readString(message));
+                } else if (tag == RECORDS_TAG) {
+                    final int length = (int) readVarint(message);
+                    final ByteBuffer inner = message.duplicate();
+                    inner.limit(message.position() + length);
+                    message.position(message.position() + length);
+                    final UserRecord userRecord = readUserRecord(record, inner, partitionKeys, explicitHashKeys,
+                            userRecords.size());
+                    if (userRecord.getPartitionKey() == null || userRecord.getData() == null) {
+                        return null;
+                    }
+                    userRecords.add(userRecord);
+                } else {
+                    skip(message, tag);
+                }
+            }
+        } catch (RuntimeException ex) {
+            /* Lengths or indexes out of range, the MD5 matched data that was never a KPL message. */
+            return null;
+        }
+        return userRecords;
+    }
+
+    /**
+     * @param data record data
+     * @return true if the data starts with the aggregation magic bytes and ends with a matching MD5
+     */
+    public static boolean isAggregated(final ByteBuffer data) {
+        if (data.remaining() < MAGIC.length + DIGEST_LENGTH) {
+            return false;
+        }
+        for (int index = 0; index < MAGIC.length; index++) {
+            if (data.get(data.position() + index) != MAGIC[index]) {
+                return false;
+            }
+        }
+        final ByteBuffer message = data.duplicate();
+        message.position(data.position() + MAGIC.length);
+        message.limit(data.limit() - DIGEST_LENGTH);
+        final MessageDigest md5 = RecordAggregator.md5();
+        md5.update(message);
+        final byte[] digest = md5.digest();
+        for (int index = 0; index < DIGEST_LENGTH; index++) {
+            if (data.get(data.limit() - DIGEST_LENGTH + index) != digest[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static UserRecord readUserRecord(final Record record, final ByteBuffer inner,
+                                             final List<String> partitionKeys, final List<String> explicitHashKeys,
+                                             final long subSequenceNumber) {
+        String partitionKey = null;
+        String explicitHashKey = null;
+        ByteBuffer data = null;
+        while (inner.hasRemaining()) {
+            final int tag = (int) readVarint(inner);
+            if (tag == PARTITION_KEY_INDEX_TAG) {
+                partitionKey = partitionKeys.get((int) readVarint(inner));
+            } else if (tag == EXPLICIT_HASH_KEY_INDEX_TAG) {
+                explicitHashKey = explicitHashKeys.get((int) readVarint(inner));
+            } else if (tag == DATA_TAG) {
+                final int length = (int) readVarint(inner);
+                data = inner.duplicate();
+                data.limit(inner.position() + length);
+                data = data.slice();
+                inner.position(inner.position() + length);
+            } else {
+                skip(inner, tag);
+            }
+        }
+        return userRecord(record, partitionKey, explicitHashKey, data, subSequenceNumber, true);
+    }
+
+    private static UserRecord userRecord(final Record record, final String partitionKey,
+                                         final String explicitHashKey, final ByteBuffer data,
+                                         final long subSequenceNumber, final boolean aggregated) {
+        final UserRecord userRecord = new UserRecord().withSubSequenceNumber(subSequenceNumber)
+                .withExplicitHashKey(explicitHashKey).withAggregated(aggregated);
+        userRecord.setSequenceNumber(record.getSequenceNumber());
+        userRecord.setApproximateArrivalTimestamp(record.getApproximateArrivalTimestamp());
+        userRecord.setPartitionKey(partitionKey);
+        userRecord.setData(data);
+        return userRecord;
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final int length = (int) readVarint(buffer);
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readVarint(final ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint in aggregated record");
+    }
+
+    private static void skip(final ByteBuffer buffer, final int tag) {
+        switch (tag & 0x7) {
+            case 0:
+                readVarint(buffer);
+                break;
+            case 1:
+                buffer.position(buffer.position() + 8);
+                break;
+            case 2:
+                final int length = (int) readVarint(buffer);
+                buffer.position(buffer.position() + length);
+                break;
+            case 5:
+                buffer.position(buffer.position() + 4);
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported wire type " + (tag & 0x7) + " in aggregated record");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.advantageous.reakt.kinesis;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Attempt and time budget for retried calls.
+ * Backoff between attempts is exponential with full jitter, capped at {@link #getMaxBackoffMillis()}.
+ */
+public class RetryPolicy {
+
+    private int maxAttempts = 5;
+    private long maxElapsedMillis = 30_000;
+    private long baseBackoffMillis = 100;
+    private long maxBackoffMillis = 5_000;
+    private ScheduledExecutorService scheduler;
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts attempts per record, including the first one
+     * @return this
+     */
+    public RetryPolicy withMaxAttempts(final int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public long getMaxElapsedMillis() {
+        return maxElapsedMillis;
+    }
+
+    /**
+     * @param maxElapsedMillis no retry is started after this much time has passed since the first attempt
+     * @return this
+     */
+    public RetryPolicy withMaxElapsedMillis(final long maxElapsedMillis) {
+        if (maxElapsedMillis < 0) {
+            throw new IllegalArgumentException("maxElapsedMillis must not be negative");
+        }
+        this.maxElapsedMillis = maxElapsedMillis;
+        return this;
+    }
+
+    public long getBaseBackoffMillis() {
+        return baseBackoffMillis;
+    }
+
+    /**
+     * @param baseBackoffMillis backoff ceiling before the first retry, doubled on every further retry
+     * @return this
+     */
+    public RetryPolicy withBaseBackoffMillis(final long baseBackoffMillis) {
+        if (baseBackoffMillis < 1) {
+            throw new IllegalArgumentException("baseBackoffMillis must be at least 1");
+        }
+        this.baseBackoffMillis = baseBackoffMillis;
+        return this;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * @param maxBackoffMillis upper bound of a single backoff
+     * @return this
+     */
+    public RetryPolicy withMaxBackoffMillis(final long maxBackoffMillis) {
+        if (maxBackoffMillis < 1) {
+            throw new IllegalArgumentException("maxBackoffMillis must be at least 1");
+        }
+        this.maxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @param scheduler scheduler used to delay retries, if not set a shared daemon scheduler is used
+     * @return this
+     */
+    public RetryPolicy withScheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+}
@@ -0,0 +1,44 @@
+package io.advantageous.reakt.kinesis;
+
+import io.advantageous.reakt.Callback;
+import io.advantageous.reakt.kinesis.impl.ShardAutoscalerImpl;
+import io.advantageous.reakt.promise.Promise;
+
+/**
+ * Reshards a stream to follow its write load, as measured by the {@link KinesisMetrics} of the metered client
+ * the producers write through. Each evaluation makes at most one change: the hottest shard over the split
+ * utilization is split at the middle of its hash key range, otherwise the coldest pair of adjacent shards under
+ * the merge utilization is merged. Cooldowns after every reshard keep the stream from flapping, and the
+ * autoscaler waits for the stream to be active again before its next change.
+ * <p>
+ * The metrics only cover writes made through this process, so with several producers the load is underestimated.
+ * Shards are split on local load alone, but only merged when {@link AutoscalerConfig#isFleetWideMetrics()} declares
+ * that the metrics cover every write to the stream.
+ */
+public interface ShardAutoscaler extends AutoCloseable {
+
+    static ShardAutoscaler create(final KinesisClient kinesisClient, final String streamName,
+                                  final AutoscalerConfig config) {
+        return new ShardAutoscalerImpl(kinesisClient, streamName, config);
+    }
+
+    /**
+     * Evaluates every {@link AutoscalerConfig#getEvaluationIntervalMillis()} until closed.
+     *
+     * @param callback receives each change made and each failed evaluation
+     */
+    void start(Callback<String> callback);
+
+    /**
+     * Runs one evaluation. Rates are measured since the previous evaluation, so the first one only takes a sample.
+     *
+     * @return promise of the change made, for example "split shardId-000000000000", or null if none was needed
+     */
+    Promise<String> evaluate();
+
+    /**
+     * Stops evaluating. A change already sent is not undone.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,40 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+import java.util.List;
+
+/**
+ * Records pushed to a shard subscription in one event.
+ */
+public class ShardEvent {
+
+    private final List<Record> records;
+    private final String continuationSequenceNumber;
+    private final long millisBehindLatest;
+
+    public ShardEvent(final List<Record> records, final String continuationSequenceNumber,
+                      final long millisBehindLatest) {
+        this.records = records;
+        this.continuationSequenceNumber = continuationSequenceNumber;
+        this.millisBehindLatest = millisBehindLatest;
+    }
+
+    /**
+     * @return records in shard order, may be empty
+     */
+    public List<Record> getRecords() {
+        return records;
+    }
+
+    /**
+     * @return sequence number to subscribe again after, null once the shard is closed and fully read
+     */
+    public String getContinuationSequenceNumber() {
+        return continuationSequenceNumber;
+    }
+
+    public long getMillisBehindLatest() {
+        return millisBehindLatest;
+    }
+}
@@ -0,0 +1,42 @@
+package io.advantageous.reakt.kinesis;
+
+/**
+ * Receives the events of one shard subscription.
+ * Calls are never concurrent. {@link #onSubscribe(ShardSubscription)} comes first, events are only pushed
+ * after they are requested through the subscription, and the subscription ends with exactly one call to
+ * {@link #onComplete()} or {@link #onError(Throwable)}.
+ */
+public interface ShardEventListener {
+
+    /**
+     * Ends a subscription that could not be opened. The listener still gets an inert subscription through
+     * {@link #onSubscribe(ShardSubscription)} before the error, as the contract requires.
+     *
+     * @param listener listener of the subscription
+     * @param error    why the subscription could not be opened
+     */
+    static void reject(final ShardEventListener listener, final Throwable error) {
+        listener.onSubscribe(new ShardSubscription() {
+            @Override
+            public void request(final long events) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        listener.onError(error);
+    }
+
+    void onSubscribe(ShardSubscription subscription);
+
+    void onEvent(ShardEvent event);
+
+    /**
+     * The subscription expired or the shard ended. Subscribe again after the last continuation sequence number
+     * to keep reading an open shard.
+     */
+    void onComplete();
+
+    void onError(Throwable error);
+}
@@ -0,0 +1,121 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.Shard;
+import io.advantageous.reakt.kinesis.impl.ShardDiscovery;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable map from hash key to open shard, built from the HashKeyRange of each shard.
+ * Kinesis places a record by the MD5 of its partition key read as an unsigned 128 bit integer,
+ * unless an explicit hash key is given. The map computes the same hash locally.
+ */
+public class ShardMap {
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private static final Pattern HASH_KEY = Pattern.compile("0|[1-9]\\d{0,38}");
+    private static final BigInteger MAX_HASH_KEY = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+    private final String streamName;
+    private final TreeMap<BigInteger, Shard> shardsByStartingHashKey = new TreeMap<>();
+    private final List<Shard> shards;
+
+    /**
+     * @param streamName stream name
+     * @param shards     shards from DescribeStream, closed shards are ignored
+     */
+    public ShardMap(final String streamName, final Collection<Shard> shards) {
+        this.streamName = streamName;
+        for (Shard shard : shards) {
+            if (ShardDiscovery.isOpen(shard)) {
+                shardsByStartingHashKey.put(new BigInteger(shard.getHashKeyRange().getStartingHashKey()), shard);
+            }
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shardsByStartingHashKey.values()));
+    }
+
+    /**
+     * @param partitionKey partition key
+     * @return the hash key Kinesis derives from the partition key
+     */
+    public static BigInteger hashKey(final String partitionKey) {
+        final MessageDigest md5 = MD5.get();
+        final byte[] digest = md5.digest(partitionKey.getBytes(StandardCharsets.UTF_8));
+        return new BigInteger(1, digest);
+    }
+
+    /**
+     * @param explicitHashKey explicit hash key as given to PutRecord
+     * @return the hash key, or null if it is not a decimal integer from 0 to 2^128 - 1 as Kinesis requires
+     */
+    public static BigInteger parseHashKey(final String explicitHashKey) {
+        if (!HASH_KEY.matcher(explicitHashKey).matches()) {
+            return null;
+        }
+        final BigInteger hashKey = new BigInteger(explicitHashKey);
+        return hashKey.compareTo(MAX_HASH_KEY) <= 0 ? hashKey : null;
+    }
+
+    /**
+     * @param partitionKey    partition key
+     * @param explicitHashKey explicit hash key, may be null
+     * @return open shard the record lands on, or null if no open shard covers the hash key or the explicit hash
+     * key is malformed
+     */
+    public Shard shardFor(final String partitionKey, final String explicitHashKey) {
+        if (explicitHashKey == null) {
+            return shardForHashKey(hashKey(partitionKey));
+        }
+        final BigInteger hashKey = parseHashKey(explicitHashKey);
+        return hashKey == null ? null : shardForHashKey(hashKey);
+    }
+
+    /**
+     * @param partitionKey partition key
+     * @return open shard the record lands on, or null if no open shard covers the hash key
+     */
+    public Shard shardFor(final String partitionKey) {
+        return shardForHashKey(hashKey(partitionKey));
+    }
+
+    /**
+     * @param hashKey hash key
+     * @return open shard whose hash key range contains the hash key, or null
+     */
+    public Shard shardForHashKey(final BigInteger hashKey) {
+        final Map.Entry<BigInteger, Shard> entry = shardsByStartingHashKey.floorEntry(hashKey);
+        if (entry == null) {
+            return null;
+        }
+        final Shard shard = entry.getValue();
+        return hashKey.compareTo(new BigInteger(shard.getHashKeyRange().getEndingHashKey())) <= 0 ? shard : null;
+    }
+
+    /**
+     * @return open shards ordered by starting hash key
+     */
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public String getStreamName() {
+        return streamName;
+    }
+}
@@ -0,0 +1,58 @@
+package io.advantageous.reakt.kinesis;
+
+import io.advantageous.reakt.kinesis.impl.ShardMapCacheImpl;
+import io.advantageous.reakt.promise.Promise;
+
+/**
+ * Caches a {@link ShardMap} per stream.
+ * Entries expire after a time to live, and are dropped when a shard is split or merged
+ * or a call fails because a shard or stream no longer exists.
+ */
+public interface ShardMapCache {
+
+    static ShardMapCache create(final KinesisClient kinesisClient) {
+        return create(kinesisClient, 60_000);
+    }
+
+    static ShardMapCache create(final KinesisClient kinesisClient, final long timeToLiveMillis) {
+        return new ShardMapCacheImpl(kinesisClient, timeToLiveMillis);
+    }
+
+    /**
+     * @param streamName stream name
+     * @return promise of the shard map, from the cache or from DescribeStream
+     */
+    Promise<ShardMap> shardMap(String streamName);
+
+    /**
+     * @param streamName stream name
+     * @return cached shard map or null, never calls Kinesis
+     */
+    ShardMap cachedShardMap(String streamName);
+
+    /**
+     * Drops the cached shard map of a stream.
+     *
+     * @param streamName stream name
+     */
+    void invalidate(String streamName);
+
+    /**
+     * Returns a client that drops cached shard maps after it splits or merges shards, and when a call to a stream
+     * fails with ResourceNotFoundException.
+     *
+     * @return invalidating client wrapping the client of this cache
+     */
+    default KinesisClient invalidatingClient() {
+        return invalidatingClient(null);
+    }
+
+    /**
+     * Same as {@link #invalidatingClient()} around another client, for clients that send through their own
+     * wrapper chain but route with this cache.
+     *
+     * @param kinesisClient client to wrap, null for the client of this cache
+     * @return invalidating client wrapping the given client
+     */
+    KinesisClient invalidatingClient(KinesisClient kinesisClient);
+}
@@ -0,0 +1,101 @@
+package io.advantageous.reakt.kinesis;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Per shard throughput the client allows itself before delaying calls locally.
+ * Defaults are the Kinesis shard limits: 1 MB/s or 1000 records/s for writes, 2 MB/s or 5 calls/s for reads.
+ */
+public class ShardRateLimits {
+
+    private long writeBytesPerSecond = 1024 * 1024;
+    private long writeRecordsPerSecond = 1_000;
+    private long readBytesPerSecond = 2 * 1024 * 1024;
+    private long readCallsPerSecond = 5;
+    private long maxDelayMillis = 5_000;
+    private ShardMapCache shardMapCache;
+    private ScheduledExecutorService scheduler;
+
+    public long getWriteBytesPerSecond() {
+        return writeBytesPerSecond;
+    }
+
+    public ShardRateLimits withWriteBytesPerSecond(final long writeBytesPerSecond) {
+        this.writeBytesPerSecond = positive(writeBytesPerSecond, "writeBytesPerSecond");
+        return this;
+    }
+
+    public long getWriteRecordsPerSecond() {
+        return writeRecordsPerSecond;
+    }
+
+    public ShardRateLimits withWriteRecordsPerSecond(final long writeRecordsPerSecond) {
+        this.writeRecordsPerSecond = positive(writeRecordsPerSecond, "writeRecordsPerSecond");
+        return this;
+    }
+
+    public long getReadBytesPerSecond() {
+        return readBytesPerSecond;
+    }
+
+    public ShardRateLimits withReadBytesPerSecond(final long readBytesPerSecond) {
+        this.readBytesPerSecond = positive(readBytesPerSecond, "readBytesPerSecond");
+        return this;
+    }
+
+    public long getReadCallsPerSecond() {
+        return readCallsPerSecond;
+    }
+
+    public ShardRateLimits withReadCallsPerSecond(final long readCallsPerSecond) {
+        this.readCallsPerSecond = positive(readCallsPerSecond, "readCallsPerSecond");
+        return this;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * @param maxDelayMillis calls that would have to wait longer than this are rejected locally with
+     *                       ProvisionedThroughputExceededException instead of being queued
+     * @return this
+     */
+    public ShardRateLimits withMaxDelayMillis(final long maxDelayMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    public ShardMapCache getShardMapCache() {
+        return shardMapCache;
+    }
+
+    /**
+     * @param shardMapCache cache used to find the shard of each put, if not set the limiter creates one
+     * @return this
+     */
+    public ShardRateLimits withShardMapCache(final ShardMapCache shardMapCache) {
+        this.shardMapCache = shardMapCache;
+        return this;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @param scheduler scheduler used to run delayed calls, if not set a shared daemon scheduler is used
+     * @return this
+     */
+    public ShardRateLimits withScheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    private static long positive(final long value, final String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,184 @@
+package io.advantageous.reakt.kinesis;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Settings for {@link KinesisShardReader}.
+ * The default poll interval keeps a reader within the limit of 5 GetRecords calls per second per shard.
+ */
+public class ShardReaderConfig {
+
+    /**
+     * Max records Kinesis returns from a single GetRecords call.
+     */
+    public static final int MAX_RECORDS_PER_CALL = 10_000;
+
+    private int maxRecordsPerCall = MAX_RECORDS_PER_CALL;
+    private long pollIntervalMillis = 200;
+    private long idlePollIntervalMillis = 1_000;
+    private long throttledBackoffMillis = 1_000;
+    private long initialDemand = Long.MAX_VALUE;
+    private int readAheadBatches;
+    private long readAheadBytes = 10L * 1024 * 1024;
+    private boolean deaggregate;
+    private ScheduledExecutorService scheduler;
+
+    public ShardReaderConfig() {
+    }
+
+    /**
+     * @param other settings to copy
+     */
+    public ShardReaderConfig(final ShardReaderConfig other) {
+        this.maxRecordsPerCall = other.maxRecordsPerCall;
+        this.pollIntervalMillis = other.pollIntervalMillis;
+        this.idlePollIntervalMillis = other.idlePollIntervalMillis;
+        this.throttledBackoffMillis = other.throttledBackoffMillis;
+        this.initialDemand = other.initialDemand;
+        this.readAheadBatches = other.readAheadBatches;
+        this.readAheadBytes = other.readAheadBytes;
+        this.deaggregate = other.deaggregate;
+        this.scheduler = other.scheduler;
+    }
+
+    public int getMaxRecordsPerCall() {
+        return maxRecordsPerCall;
+    }
+
+    /**
+     * @param maxRecordsPerCall limit passed to each GetRecords call
+     * @return this
+     */
+    public ShardReaderConfig withMaxRecordsPerCall(final int maxRecordsPerCall) {
+        if (maxRecordsPerCall < 1 || maxRecordsPerCall > MAX_RECORDS_PER_CALL) {
+            throw new IllegalArgumentException("maxRecordsPerCall must be between 1 and " + MAX_RECORDS_PER_CALL);
+        }
+        this.maxRecordsPerCall = maxRecordsPerCall;
+        return this;
+    }
+
+    public long getPollIntervalMillis() {
+        return pollIntervalMillis;
+    }
+
+    /**
+     * @param pollIntervalMillis minimum time between two GetRecords calls on the shard
+     * @return this
+     */
+    public ShardReaderConfig withPollIntervalMillis(final long pollIntervalMillis) {
+        if (pollIntervalMillis < 0) {
+            throw new IllegalArgumentException("pollIntervalMillis must not be negative");
+        }
+        this.pollIntervalMillis = pollIntervalMillis;
+        return this;
+    }
+
+    public long getIdlePollIntervalMillis() {
+        return idlePollIntervalMillis;
+    }
+
+    /**
+     * @param idlePollIntervalMillis time between GetRecords calls once the reader has caught up,
+     *                               that is once MillisBehindLatest is 0
+     * @return this
+     */
+    public ShardReaderConfig withIdlePollIntervalMillis(final long idlePollIntervalMillis) {
+        if (idlePollIntervalMillis < 0) {
+            throw new IllegalArgumentException("idlePollIntervalMillis must not be negative");
+        }
+        this.idlePollIntervalMillis = idlePollIntervalMillis;
+        return this;
+    }
+
+    public long getThrottledBackoffMillis() {
+        return throttledBackoffMillis;
+    }
+
+    /**
+     * @param throttledBackoffMillis wait before polling again after a ProvisionedThroughputExceededException
+     * @return this
+     */
+    public ShardReaderConfig withThrottledBackoffMillis(final long throttledBackoffMillis) {
+        if (throttledBackoffMillis < 0) {
+            throw new IllegalArgumentException("throttledBackoffMillis must not be negative");
+        }
+        this.throttledBackoffMillis = throttledBackoffMillis;
+        return this;
+    }
+
+    public long getInitialDemand() {
+        return initialDemand;
+    }
+
+    /**
+     * @param initialDemand records the reader may deliver before the stream asks for more with request(n),
+     *                      {@link Long#MAX_VALUE} turns backpressure off
+     * @return this
+     */
+    public ShardReaderConfig withInitialDemand(final long initialDemand) {
+        if (initialDemand < 1) {
+            throw new IllegalArgumentException("initialDemand must be at least 1");
+        }
+        this.initialDemand = initialDemand;
+        return this;
+    }
+
+    public int getReadAheadBatches() {
+        return readAheadBatches;
+    }
+
+    /**
+     * @param readAheadBatches batches fetched ahead of the one being delivered, 0 turns read-ahead off
+     * @return this
+     */
+    public ShardReaderConfig withReadAheadBatches(final int readAheadBatches) {
+        if (readAheadBatches < 0) {
+            throw new IllegalArgumentException("readAheadBatches must not be negative");
+        }
+        this.readAheadBatches = readAheadBatches;
+        return this;
+    }
+
+    public long getReadAheadBytes() {
+        return readAheadBytes;
+    }
+
+    /**
+     * @param readAheadBytes no batch is read ahead while this many bytes are buffered
+     * @return this
+     */
+    public ShardReaderConfig withReadAheadBytes(final long readAheadBytes) {
+        if (readAheadBytes < 0) {
+            throw new IllegalArgumentException("readAheadBytes must not be negative");
+        }
+        this.readAheadBytes = readAheadBytes;
+        return this;
+    }
+
+    public boolean isDeaggregate() {
+        return deaggregate;
+    }
+
+    /**
+     * @param deaggregate if true, records in the KPL aggregated format are unpacked and delivered as
+     *                    {@link UserRecord}s
+     * @return this
+     */
+    public ShardReaderConfig withDeaggregate(final boolean deaggregate) {
+        this.deaggregate = deaggregate;
+        return this;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @param scheduler scheduler used to pace polls, if not set a shared daemon scheduler is used
+     * @return this
+     */
+    public ShardReaderConfig withScheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+}
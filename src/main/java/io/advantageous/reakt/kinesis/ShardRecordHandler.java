@@ -0,0 +1,38 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+/**
+ * Receives records from {@link KinesisStreamConsumer}.
+ * Calls for one shard are never concurrent and arrive in shard order. Different shards are handled in parallel.
+ */
+@FunctionalInterface
+public interface ShardRecordHandler {
+
+    /**
+     * A record that throws is not checkpointed, and neither is any later record of the shard, so the shard is
+     * read again from the failed record after a restart.
+     *
+     * @param shardId shard the record was read from
+     * @param record  record
+     */
+    void onRecord(String shardId, Record record);
+
+    /**
+     * Called once a closed shard has been read to the end.
+     *
+     * @param shardId shard id
+     */
+    default void onShardEnd(String shardId) {
+    }
+
+    /**
+     * Called when reading a shard failed or {@link #onRecord(String, Record)} threw. A shard whose reader failed
+     * is read again after {@link StreamConsumerConfig#getShardRetryMillis()}.
+     *
+     * @param shardId shard id
+     * @param error   error
+     */
+    default void onError(String shardId, Throwable error) {
+    }
+}
@@ -0,0 +1,19 @@
+package io.advantageous.reakt.kinesis;
+
+/**
+ * Flow control of one shard subscription.
+ */
+public interface ShardSubscription {
+
+    /**
+     * Lets the transport push more events.
+     *
+     * @param events number of events
+     */
+    void request(long events);
+
+    /**
+     * Ends the subscription. No events are pushed afterwards.
+     */
+    void cancel();
+}
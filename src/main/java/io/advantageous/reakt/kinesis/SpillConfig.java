@@ -0,0 +1,112 @@
+package io.advantageous.reakt.kinesis;
+
+import java.io.File;
+
+/**
+ * Settings of the local disk spill of a {@link BatchingKinesisProducer}. Records are appended to memory-mapped
+ * segment files in a directory and replayed in order once Kinesis accepts writes again. Records left in the
+ * directory when the producer closes are replayed by the next producer that uses it.
+ */
+public class SpillConfig {
+
+    /**
+     * Smallest segment size, a segment has to hold a record of the largest size Kinesis accepts.
+     */
+    public static final int MIN_SEGMENT_BYTES = BatchingProducerConfig.MAX_BYTES_PER_RECORD + 64 * 1024;
+
+    private final File directory;
+    private int segmentBytes = 64 * 1024 * 1024;
+    private int maxSegments = 16;
+    private long replayIntervalMillis = 1_000;
+    private boolean force;
+    private SpillDropHandler dropHandler;
+
+    /**
+     * @param directory directory of the segment files, created if missing, used by one producer at a time
+     */
+    public SpillConfig(final File directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory is required");
+        }
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public SpillConfig withSegmentBytes(final int segmentBytes) {
+        if (segmentBytes < MIN_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("segmentBytes must be at least " + MIN_SEGMENT_BYTES);
+        }
+        this.segmentBytes = segmentBytes;
+        return this;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * @param maxSegments segment files the spill may use, records that do not fit are rejected
+     * @return this
+     */
+    public SpillConfig withMaxSegments(final int maxSegments) {
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be at least 1");
+        }
+        this.maxSegments = maxSegments;
+        return this;
+    }
+
+    public long getReplayIntervalMillis() {
+        return replayIntervalMillis;
+    }
+
+    /**
+     * @param replayIntervalMillis time between replay attempts while Kinesis rejects the replayed records
+     * @return this
+     */
+    public SpillConfig withReplayIntervalMillis(final long replayIntervalMillis) {
+        if (replayIntervalMillis < 1) {
+            throw new IllegalArgumentException("replayIntervalMillis must be at least 1");
+        }
+        this.replayIntervalMillis = replayIntervalMillis;
+        return this;
+    }
+
+    public boolean isForce() {
+        return force;
+    }
+
+    /**
+     * @param force true to force every append and replay position to the storage device, so spilled records
+     *              survive a crash of the machine and not only of the process
+     * @return this
+     */
+    public SpillConfig withForce(final boolean force) {
+        this.force = force;
+        return this;
+    }
+
+    public SpillDropHandler getDropHandler() {
+        return dropHandler;
+    }
+
+    /**
+     * @param dropHandler told about spilled records dropped because their replay failed with an error that is
+     *                    not retryable, by default they are only counted
+     * @return this
+     */
+    public SpillConfig withDropHandler(final SpillDropHandler dropHandler) {
+        if (dropHandler == null) {
+            throw new IllegalArgumentException("dropHandler is required");
+        }
+        this.dropHandler = dropHandler;
+        return this;
+    }
+}
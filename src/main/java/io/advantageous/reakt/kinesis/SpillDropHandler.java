@@ -0,0 +1,24 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+
+import java.util.List;
+
+/**
+ * Told about spilled records that are dropped because Kinesis rejected their replay with an error that is not
+ * retryable, such as a deleted stream. Their promises resolved when they were spilled, so this is the only place
+ * the loss shows up besides {@link BatchingKinesisProducer#getDroppedRecords()}.
+ */
+@FunctionalInterface
+public interface SpillDropHandler {
+
+    /**
+     * Called on the replay thread before the records are removed from the spill. The data buffers are views of
+     * the spill file and must be copied if they are needed after this returns.
+     *
+     * @param streamName stream the records were replayed to
+     * @param entries    dropped records
+     * @param error      error Kinesis rejected the replay with
+     */
+    void onDropped(String streamName, List<PutRecordsRequestEntry> entries, Throwable error);
+}
@@ -0,0 +1,12 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+
+/**
+ * Result of a record the {@link BatchingKinesisProducer} wrote to its spill instead of Kinesis. The record is kept
+ * on local disk and sent when the spill is replayed, so it has no shard id or sequence number yet.
+ */
+public class SpilledPutRecordResult extends PutRecordResult {
+
+    private static final long serialVersionUID = 1L;
+}
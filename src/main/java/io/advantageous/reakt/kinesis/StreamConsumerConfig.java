@@ -0,0 +1,170 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Settings for {@link KinesisStreamConsumer}.
+ */
+public class StreamConsumerConfig {
+
+    private String shardIteratorType = ShardIteratorType.LATEST.toString();
+    private int maxQueuedRecordsPerShard = 1_000;
+    private int maxRecordsPerDispatch = 100;
+    private ShardReaderConfig readerConfig = new ShardReaderConfig();
+    private ExecutorService executor;
+    private CheckpointStore checkpointStore;
+    private CheckpointerConfig checkpointerConfig = new CheckpointerConfig();
+    private String fanOutConsumerName;
+    private long shardSyncIntervalMillis = 60_000;
+    private long shardRetryMillis = 5_000;
+
+    public String getShardIteratorType() {
+        return shardIteratorType;
+    }
+
+    /**
+     * @param shardIteratorType where shards start reading, LATEST or TRIM_HORIZON
+     * @return this
+     */
+    public StreamConsumerConfig withShardIteratorType(final String shardIteratorType) {
+        this.shardIteratorType = shardIteratorType;
+        return this;
+    }
+
+    public int getMaxQueuedRecordsPerShard() {
+        return maxQueuedRecordsPerShard;
+    }
+
+    /**
+     * @param maxQueuedRecordsPerShard records a shard may hold ahead of its handler before its reader pauses
+     * @return this
+     */
+    public StreamConsumerConfig withMaxQueuedRecordsPerShard(final int maxQueuedRecordsPerShard) {
+        if (maxQueuedRecordsPerShard < 1) {
+            throw new IllegalArgumentException("maxQueuedRecordsPerShard must be at least 1");
+        }
+        this.maxQueuedRecordsPerShard = maxQueuedRecordsPerShard;
+        return this;
+    }
+
+    public int getMaxRecordsPerDispatch() {
+        return maxRecordsPerDispatch;
+    }
+
+    /**
+     * @param maxRecordsPerDispatch records a shard handles in one executor task before yielding to other shards
+     * @return this
+     */
+    public StreamConsumerConfig withMaxRecordsPerDispatch(final int maxRecordsPerDispatch) {
+        if (maxRecordsPerDispatch < 1) {
+            throw new IllegalArgumentException("maxRecordsPerDispatch must be at least 1");
+        }
+        this.maxRecordsPerDispatch = maxRecordsPerDispatch;
+        return this;
+    }
+
+    public ShardReaderConfig getReaderConfig() {
+        return readerConfig;
+    }
+
+    /**
+     * @param readerConfig settings for the reader of each shard, its initial demand is replaced by
+     *                     {@link #getMaxQueuedRecordsPerShard()}
+     * @return this
+     */
+    public StreamConsumerConfig withReaderConfig(final ShardReaderConfig readerConfig) {
+        this.readerConfig = readerConfig;
+        return this;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor bounded executor that runs the handlers, if not set the consumer creates and owns
+     *                 a fixed pool with one thread per core
+     * @return this
+     */
+    public StreamConsumerConfig withExecutor(final ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public CheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    /**
+     * @param checkpointStore store the consumer checkpoints handled records to and resumes from on start,
+     *                        shards without a checkpoint start at {@link #getShardIteratorType()}
+     * @return this
+     */
+    public StreamConsumerConfig withCheckpointStore(final CheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+        return this;
+    }
+
+    public CheckpointerConfig getCheckpointerConfig() {
+        return checkpointerConfig;
+    }
+
+    /**
+     * @param checkpointerConfig how often checkpoints are written to the checkpoint store
+     * @return this
+     */
+    public StreamConsumerConfig withCheckpointerConfig(final CheckpointerConfig checkpointerConfig) {
+        this.checkpointerConfig = checkpointerConfig;
+        return this;
+    }
+
+    public String getFanOutConsumerName() {
+        return fanOutConsumerName;
+    }
+
+    /**
+     * @param fanOutConsumerName if set the consumer registers under this name on start and reads every shard
+     *                           through shard subscriptions, which needs a client from {@link KinesisClient#fanOut}
+     * @return this
+     */
+    public StreamConsumerConfig withFanOutConsumerName(final String fanOutConsumerName) {
+        this.fanOutConsumerName = fanOutConsumerName;
+        return this;
+    }
+
+    public long getShardSyncIntervalMillis() {
+        return shardSyncIntervalMillis;
+    }
+
+    /**
+     * @param shardSyncIntervalMillis how often the consumer lists the shards of the stream to pick up shards created
+     *                                by resharding, 0 to only list them on start and when a shard ends
+     * @return this
+     */
+    public StreamConsumerConfig withShardSyncIntervalMillis(final long shardSyncIntervalMillis) {
+        if (shardSyncIntervalMillis < 0) {
+            throw new IllegalArgumentException("shardSyncIntervalMillis must not be negative");
+        }
+        this.shardSyncIntervalMillis = shardSyncIntervalMillis;
+        return this;
+    }
+
+    public long getShardRetryMillis() {
+        return shardRetryMillis;
+    }
+
+    /**
+     * @param shardRetryMillis how long a shard whose reader failed waits before it is read again from the last
+     *                         record handled without error
+     * @return this
+     */
+    public StreamConsumerConfig withShardRetryMillis(final long shardRetryMillis) {
+        if (shardRetryMillis < 0) {
+            throw new IllegalArgumentException("shardRetryMillis must not be negative");
+        }
+        this.shardRetryMillis = shardRetryMillis;
+        return this;
+    }
+}
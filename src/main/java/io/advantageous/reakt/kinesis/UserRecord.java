@@ -0,0 +1,65 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+/**
+ * Record as the producer wrote it, after de-aggregation.
+ * User records unpacked from one aggregated Kinesis record share its sequence number and are told apart
+ * by their sub-sequence number.
+ */
+public class UserRecord extends Record {
+
+    private static final long serialVersionUID = 1L;
+
+    private long subSequenceNumber;
+    private String explicitHashKey;
+    private boolean aggregated;
+
+    /**
+     * @return position of the record inside its aggregated Kinesis record, 0 for records that were not aggregated
+     */
+    public long getSubSequenceNumber() {
+        return subSequenceNumber;
+    }
+
+    public void setSubSequenceNumber(final long subSequenceNumber) {
+        this.subSequenceNumber = subSequenceNumber;
+    }
+
+    public UserRecord withSubSequenceNumber(final long subSequenceNumber) {
+        this.subSequenceNumber = subSequenceNumber;
+        return this;
+    }
+
+    /**
+     * @return explicit hash key the producer gave, or null
+     */
+    public String getExplicitHashKey() {
+        return explicitHashKey;
+    }
+
+    public void setExplicitHashKey(final String explicitHashKey) {
+        this.explicitHashKey = explicitHashKey;
+    }
+
+    public UserRecord withExplicitHashKey(final String explicitHashKey) {
+        this.explicitHashKey = explicitHashKey;
+        return this;
+    }
+
+    /**
+     * @return true if the record was unpacked from an aggregated Kinesis record
+     */
+    public boolean isAggregated() {
+        return aggregated;
+    }
+
+    public void setAggregated(final boolean aggregated) {
+        this.aggregated = aggregated;
+    }
+
+    public UserRecord withAggregated(final boolean aggregated) {
+        this.aggregated = aggregated;
+        return this;
+    }
+}
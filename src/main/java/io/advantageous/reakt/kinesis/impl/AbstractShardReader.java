@@ -0,0 +1,215 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.Record;
+import io.advantageous.reakt.Stream;
+import io.advantageous.reakt.kinesis.KinesisShardReader;
+import io.advantageous.reakt.kinesis.RecordDeaggregator;
+import io.advantageous.reakt.kinesis.ShardReaderConfig;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Demand, read-ahead and delivery shared by the polling and the subscribing shard reader. Subclasses fetch batches
+ * of records, hand them to {@link #buffer(List)} and call {@link #drain()}, this class decides when the next batch
+ * may be fetched and delivers records to the sink in order.
+ */
+public abstract class AbstractShardReader implements KinesisShardReader, RecordSource {
+
+    protected final String shardId;
+    protected final ShardReaderConfig config;
+    protected final ScheduledExecutorService scheduler;
+
+    private final Queue<Batch> fetched = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger fetchedBatches = new AtomicInteger();
+    private final AtomicLong fetchedBytes = new AtomicLong();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    private RecordSink sink;
+    protected String shardIteratorType;
+    protected String startingSequenceNumber;
+    protected volatile boolean shardEnded;
+    protected volatile boolean stopped;
+
+    protected AbstractShardReader(final String shardId, final ShardReaderConfig config) {
+        this.shardId = shardId;
+        this.config = config;
+        this.scheduler = config.getScheduler() != null ? config.getScheduler() : SharedScheduler.get();
+    }
+
+    @Override
+    public void read(final String shardIteratorType, final String startingSequenceNumber,
+                     final Stream<Record> stream) {
+        read(shardIteratorType, startingSequenceNumber, new RecordSink() {
+            @Override
+            public void onRecord(final Record record) {
+                stream.reply(record, false, AbstractShardReader.this::stop, AbstractShardReader.this::request);
+            }
+
+            @Override
+            public void onShardEnd() {
+                stream.reply(null, true, AbstractShardReader.this::stop, AbstractShardReader.this::request);
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                stream.reject(error);
+            }
+        });
+    }
+
+    @Override
+    public void read(final String shardIteratorType, final String startingSequenceNumber, final RecordSink sink) {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("shard reader for " + shardId + " is already started");
+        }
+        this.sink = sink;
+        this.shardIteratorType = shardIteratorType;
+        this.startingSequenceNumber = startingSequenceNumber;
+        this.demand.set(config.getInitialDemand());
+        start();
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        drain();
+    }
+
+    @Override
+    public void request(final long count) {
+        if (count <= 0) {
+            return;
+        }
+        demand.accumulateAndGet(count, (current, added) -> {
+            final long sum = current + added;
+            return sum < 0 ? Long.MAX_VALUE : sum;
+        });
+        drain();
+    }
+
+    @Override
+    public String getShardId() {
+        return shardId;
+    }
+
+    /**
+     * Opens the shard at {@link #shardIteratorType} and {@link #startingSequenceNumber}.
+     */
+    protected abstract void start();
+
+    /**
+     * Starts fetching the next batch unless a fetch is already in flight or cannot be made yet.
+     * Only called from {@link #drain()} while the shard has not ended and the read-ahead bounds allow a fetch.
+     */
+    protected abstract void fetchNext();
+
+    /**
+     * Queues the records of one fetch for delivery, de-aggregated if configured.
+     *
+     * @param records records as fetched
+     */
+    protected void buffer(final List<Record> records) {
+        final List<Record> userRecords = config.isDeaggregate() ? RecordDeaggregator.deaggregate(records) : records;
+        /* Empty fetches, and aggregated records without user records, leave nothing to deliver. */
+        if (userRecords.isEmpty()) {
+            return;
+        }
+        final Batch batch = new Batch(userRecords);
+        fetchedBytes.addAndGet(batch.bytes);
+        fetchedBatches.incrementAndGet();
+        fetched.add(batch);
+    }
+
+    protected void fail(final Throwable error) {
+        if (!stopped) {
+            stopped = true;
+            sink.onError(error);
+        }
+        drain();
+    }
+
+    /**
+     * Decides whether to fetch again, then delivers fetched records while there is demand. Deciding first lets
+     * the next fetch overlap with handing out the batch that just arrived, and deciding again after delivery
+     * picks up room the delivered records freed.
+     * Only one thread runs the loop at a time, calls made while it runs are folded into another pass.
+     */
+    protected void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            fetchIfAllowed();
+            Batch batch;
+            while (!stopped && demand.get() > 0 && (batch = fetched.peek()) != null) {
+                final Record record = batch.records.get(batch.position++);
+                if (batch.position == batch.records.size()) {
+                    fetched.poll();
+                    fetchedBatches.decrementAndGet();
+                    fetchedBytes.addAndGet(-batch.bytes);
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                sink.onRecord(record);
+            }
+            if (stopped) {
+                fetched.clear();
+            } else if (shardEnded) {
+                if (fetched.isEmpty()) {
+                    stopped = true;
+                    sink.onShardEnd();
+                }
+            } else {
+                fetchIfAllowed();
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void fetchIfAllowed() {
+        if (!stopped && !shardEnded && canFetch()) {
+            fetchNext();
+        }
+    }
+
+    /**
+     * With nothing buffered the reader fetches only if the sink has demand.
+     * With read-ahead it keeps fetching while the buffered batches stay within the read-ahead bounds,
+     * so the next batch is fetched while the current one is still being handled.
+     */
+    private boolean canFetch() {
+        final int batches = fetchedBatches.get();
+        if (batches == 0) {
+            return demand.get() > 0;
+        }
+        return batches <= config.getReadAheadBatches() && fetchedBytes.get() < config.getReadAheadBytes();
+    }
+
+    /**
+     * Records of one fetch that are not delivered yet.
+     */
+    private static class Batch {
+        private final List<Record> records;
+        private final long bytes;
+        private int position;
+
+        private Batch(final List<Record> records) {
+            this.records = records;
+            long size = 0;
+            for (Record record : records) {
+                size += Records.size(record.getData(), record.getPartitionKey());
+            }
+            this.bytes = size;
+        }
+    }
+}
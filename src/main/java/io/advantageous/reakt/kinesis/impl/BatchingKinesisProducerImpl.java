@@ -0,0 +1,506 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.amazonaws.services.kinesis.model.Shard;
+import io.advantageous.reakt.kinesis.BatchingKinesisProducer;
+import io.advantageous.reakt.kinesis.BatchingProducerConfig;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.RecordAggregator;
+import io.advantageous.reakt.kinesis.RetryPolicy;
+import io.advantageous.reakt.kinesis.ShardMap;
+import io.advantageous.reakt.kinesis.ShardMapCache;
+import io.advantageous.reakt.kinesis.SpillDropHandler;
+import io.advantageous.reakt.kinesis.SpilledPutRecordResult;
+import io.advantageous.reakt.promise.Promise;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+public class BatchingKinesisProducerImpl implements BatchingKinesisProducer {
+
+    private final KinesisClient kinesisClient;
+    private final int maxRecords;
+    private final long maxBytes;
+    private final long lingerMillis;
+    private final ScheduledExecutorService scheduler;
+    private final RetryPolicy retryPolicy;
+    private final ShardMapCache shardMapCache;
+    private final int aggregationMaxBytes;
+    private final int recordsPerBatch;
+    private final boolean ownsScheduler;
+    private final ConcurrentMap<String, StreamBuffer> buffers = new ConcurrentHashMap<>();
+    private final MappedFileSpill spill;
+    private final long replayIntervalMillis;
+    private final SpillDropHandler dropHandler;
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private final ScheduledFuture<?> replayTask;
+    private volatile boolean closed;
+
+    public BatchingKinesisProducerImpl(final KinesisClient kinesisClient, final BatchingProducerConfig config) {
+        if (kinesisClient instanceof PooledPayloadKinesisClient
+                && (config.getSpill() != null || config.getAggregationMaxBytes() > 0)) {
+            throw new IllegalArgumentException("a pooled payload client cannot be used with a spill or aggregation, "
+                    + "both copy record data the pool would hand out again or never get back");
+        }
+        this.maxRecords = config.getMaxRecords();
+        this.maxBytes = config.getMaxBytes();
+        this.lingerMillis = config.getLingerMillis();
+        this.retryPolicy = config.getRetryPolicy();
+        this.aggregationMaxBytes = config.getAggregationMaxBytes();
+        if (aggregationMaxBytes > 0) {
+            this.shardMapCache = config.getShardMapCache() != null ? config.getShardMapCache()
+                    : ShardMapCache.create(kinesisClient);
+            /* Puts that land on other shards than the map predicted drop the map, so aggregates follow reshards. */
+            this.kinesisClient = shardMapCache.invalidatingClient(kinesisClient);
+            this.recordsPerBatch = Integer.MAX_VALUE;
+        } else {
+            this.shardMapCache = null;
+            this.kinesisClient = kinesisClient;
+            this.recordsPerBatch = maxRecords;
+        }
+        if (config.getScheduler() != null) {
+            this.scheduler = config.getScheduler();
+            this.ownsScheduler = false;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "kinesis-batching-producer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.ownsScheduler = true;
+        }
+        if (config.getSpill() != null) {
+            this.spill = new MappedFileSpill(config.getSpill());
+            this.replayIntervalMillis = config.getSpill().getReplayIntervalMillis();
+            this.dropHandler = config.getSpill().getDropHandler();
+            this.replayTask = scheduler.scheduleWithFixedDelay(this::replay, 0, replayIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.spill = null;
+            this.replayIntervalMillis = 0;
+            this.dropHandler = null;
+            this.replayTask = null;
+        }
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey) {
+        return putRecord(streamName, data, partitionKey, null);
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey, final String explicitHashKey) {
+        return invokablePromise(promise -> {
+            if (closed) {
+                promise.reject(new IllegalStateException("producer is closed"));
+                return;
+            }
+            final int size = Records.size(data, partitionKey);
+            if (size > BatchingProducerConfig.MAX_BYTES_PER_RECORD) {
+                promise.reject(new IllegalArgumentException("record of " + size + " bytes exceeds the "
+                        + BatchingProducerConfig.MAX_BYTES_PER_RECORD + " byte Kinesis limit"));
+                return;
+            }
+            if (explicitHashKey != null && ShardMap.parseHashKey(explicitHashKey) == null) {
+                promise.reject(new IllegalArgumentException("explicit hash key " + explicitHashKey
+                        + " is not a decimal integer from 0 to 2^128 - 1"));
+                return;
+            }
+            final PutRecordsRequestEntry entry = new PutRecordsRequestEntry().withData(data)
+                    .withPartitionKey(partitionKey).withExplicitHashKey(explicitHashKey);
+            buffers.computeIfAbsent(streamName, StreamBuffer::new).add(new PendingRecord(entry, size, promise));
+        });
+    }
+
+    @Override
+    public long getSpilledBytes() {
+        return spill == null ? 0 : spill.getPendingBytes();
+    }
+
+    @Override
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    @Override
+    public void flush() {
+        buffers.values().forEach(StreamBuffer::flush);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+        if (spill != null) {
+            replayTask.cancel(false);
+            spill.close();
+        }
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        }
+    }
+
+    private void send(final String streamName, final List<PendingRecord> batch) {
+        if (shardMapCache == null) {
+            sendRequests(streamName, batch);
+            return;
+        }
+        final ShardMap shardMap = shardMapCache.cachedShardMap(streamName);
+        if (shardMap != null) {
+            sendRequests(streamName, aggregate(batch, shardMap));
+        } else {
+            shardMapCache.shardMap(streamName)
+                    .then(loaded -> sendRequests(streamName, aggregate(batch, loaded)))
+                    .catchError(error -> sendRequests(streamName, batch))
+                    .invoke();
+        }
+    }
+
+    /**
+     * Packs records that map to the same shard into aggregated records.
+     * Records that cannot be mapped to an open shard are sent as they are.
+     */
+    private List<PendingRecord> aggregate(final List<PendingRecord> batch, final ShardMap shardMap) {
+        final List<PendingRecord> outgoing = new ArrayList<>();
+        final Map<String, Aggregation> aggregations = new LinkedHashMap<>();
+        for (PendingRecord pendingRecord : batch) {
+            final PutRecordsRequestEntry entry = pendingRecord.entry;
+            final Shard shard = shardMap.shardFor(entry.getPartitionKey(), entry.getExplicitHashKey());
+            if (shard == null) {
+                outgoing.add(pendingRecord);
+                continue;
+            }
+            final Aggregation aggregation = aggregations.computeIfAbsent(shard.getShardId(),
+                    shardId -> new Aggregation());
+            if (!aggregation.add(pendingRecord)) {
+                outgoing.add(aggregation.drain());
+                aggregation.add(pendingRecord);
+            }
+        }
+        for (Aggregation aggregation : aggregations.values()) {
+            outgoing.add(aggregation.drain());
+        }
+        return outgoing;
+    }
+
+    /**
+     * Sends records in as few PutRecords calls as the request limits allow.
+     */
+    private void sendRequests(final String streamName, final List<PendingRecord> outgoing) {
+        int from = 0;
+        long bytes = 0;
+        for (int index = 0; index < outgoing.size(); index++) {
+            final int size = outgoing.get(index).size;
+            if (index > from && (index - from == maxRecords || bytes + size > maxBytes)) {
+                sendRequest(streamName, outgoing.subList(from, index));
+                from = index;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+        if (from < outgoing.size()) {
+            sendRequest(streamName, outgoing.subList(from, outgoing.size()));
+        }
+    }
+
+    private void sendRequest(final String streamName, final List<PendingRecord> batch) {
+        if (spill != null && !spill.isEmpty()) {
+            /* Records already spilled go first. */
+            batch.forEach(pendingRecord -> spill(streamName, pendingRecord, null));
+            return;
+        }
+        final List<PutRecordsRequestEntry> entries = new ArrayList<>(batch.size());
+        for (PendingRecord pendingRecord : batch) {
+            entries.add(pendingRecord.entry);
+        }
+        final PutRecordsRequest request = new PutRecordsRequest().withStreamName(streamName).withRecords(entries);
+        (retryPolicy == null ? kinesisClient.putRecords(request) : kinesisClient.putRecords(request, retryPolicy))
+                .then(result -> complete(streamName, batch, result))
+                .catchError(error -> {
+                    if (spill != null && PutRecordsRetrier.isRetryable(error)) {
+                        batch.forEach(pendingRecord -> spill(streamName, pendingRecord, error));
+                    } else {
+                        batch.forEach(pendingRecord -> pendingRecord.fail(error));
+                    }
+                })
+                .invoke();
+    }
+
+    private void complete(final String streamName, final List<PendingRecord> batch, final PutRecordsResult result) {
+        final List<PutRecordsResultEntry> resultEntries = result.getRecords();
+        for (int index = 0; index < batch.size(); index++) {
+            final PutRecordsResultEntry resultEntry = resultEntries.get(index);
+            if (spill != null && resultEntry.getErrorCode() != null) {
+                spill(streamName, batch.get(index), toException(resultEntry));
+            } else {
+                batch.get(index).complete(resultEntry);
+            }
+        }
+    }
+
+    /**
+     * @param error error to reject the record with if the spill is full, null if the record was not sent
+     */
+    private void spill(final String streamName, final PendingRecord pendingRecord, final Throwable error) {
+        if (spill.append(streamName, pendingRecord.entry)) {
+            pendingRecord.spilled();
+        } else {
+            pendingRecord.fail(error != null ? error : new IllegalStateException("spill is full"));
+        }
+    }
+
+    /**
+     * Sends the spill in order, one PutRecords call at a time. Entries that fail are resent after the replay
+     * interval before the next records are read, records rejected with an error that is not retryable are counted,
+     * handed to the drop handler and dropped.
+     */
+    private void replay() {
+        if (replaying.compareAndSet(false, true)) {
+            replayNext();
+        }
+    }
+
+    private void replayNext() {
+        final MappedFileSpill.Batch batch = closed ? null : spill.peek(maxRecords, maxBytes);
+        if (batch == null) {
+            replaying.set(false);
+            return;
+        }
+        replay(batch, batch.getEntries());
+    }
+
+    private void replay(final MappedFileSpill.Batch batch, final List<PutRecordsRequestEntry> entries) {
+        if (closed) {
+            replaying.set(false);
+            return;
+        }
+        kinesisClient.putRecords(new PutRecordsRequest().withStreamName(batch.getStreamName()).withRecords(entries))
+                .then(result -> {
+                    final List<PutRecordsRequestEntry> failed = new ArrayList<>();
+                    final List<PutRecordsResultEntry> resultEntries = result.getRecords();
+                    for (int index = 0; index < resultEntries.size(); index++) {
+                        if (resultEntries.get(index).getErrorCode() != null) {
+                            failed.add(entries.get(index));
+                        }
+                    }
+                    if (failed.isEmpty()) {
+                        spill.commit(batch);
+                        replayNext();
+                    } else {
+                        replayLater(() -> replay(batch, failed));
+                    }
+                })
+                .catchError(error -> {
+                    if (PutRecordsRetrier.isRetryable(error)) {
+                        replayLater(() -> replay(batch, entries));
+                    } else {
+                        drop(batch, entries, error);
+                        spill.commit(batch);
+                        replayNext();
+                    }
+                })
+                .invoke();
+    }
+
+    /**
+     * A closed producer may have shut its scheduler down, the records stay in the spill for the next open.
+     */
+    private void replayLater(final Runnable retry) {
+        if (!closed) {
+            try {
+                scheduler.schedule(retry, replayIntervalMillis, TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException ex) {
+                /* Closed since the check. */
+            }
+        }
+        replaying.set(false);
+    }
+
+    private void drop(final MappedFileSpill.Batch batch, final List<PutRecordsRequestEntry> entries,
+                      final Throwable error) {
+        droppedRecords.addAndGet(entries.size());
+        if (dropHandler == null) {
+            return;
+        }
+        try {
+            dropHandler.onDropped(batch.getStreamName(), entries, error);
+        } catch (RuntimeException ex) {
+            /* A failing handler must not stop the replay of the records behind these. */
+        }
+    }
+
+    static AmazonServiceException toException(final PutRecordsResultEntry resultEntry) {
+        final AmazonServiceException exception = new AmazonServiceException(resultEntry.getErrorMessage());
+        exception.setErrorCode(resultEntry.getErrorCode());
+        exception.setServiceName("AmazonKinesis");
+        return exception;
+    }
+
+    private static class PendingRecord {
+        private final PutRecordsRequestEntry entry;
+        private final int size;
+        private final Promise<PutRecordResult> promise;
+
+        private PendingRecord(final PutRecordsRequestEntry entry, final int size,
+                              final Promise<PutRecordResult> promise) {
+            this.entry = entry;
+            this.size = size;
+            this.promise = promise;
+        }
+
+        void complete(final PutRecordsResultEntry resultEntry) {
+            if (resultEntry.getErrorCode() == null) {
+                promise.resolve(new PutRecordResult().withShardId(resultEntry.getShardId())
+                        .withSequenceNumber(resultEntry.getSequenceNumber()));
+            } else {
+                promise.reject(toException(resultEntry));
+            }
+        }
+
+        void fail(final Throwable error) {
+            promise.reject(error);
+        }
+
+        void spilled() {
+            promise.resolve(new SpilledPutRecordResult());
+        }
+    }
+
+    /**
+     * Several user records sent as one aggregated Kinesis record, they all share its result.
+     */
+    private static class AggregatedRecord extends PendingRecord {
+        private final List<PendingRecord> members;
+
+        private AggregatedRecord(final PutRecordsRequestEntry entry, final int size,
+                                 final List<PendingRecord> members) {
+            super(entry, size, null);
+            this.members = members;
+        }
+
+        @Override
+        void complete(final PutRecordsResultEntry resultEntry) {
+            members.forEach(member -> member.complete(resultEntry));
+        }
+
+        @Override
+        void fail(final Throwable error) {
+            members.forEach(member -> member.fail(error));
+        }
+
+        @Override
+        void spilled() {
+            members.forEach(PendingRecord::spilled);
+        }
+    }
+
+    /**
+     * Records being packed for one shard.
+     */
+    private class Aggregation {
+        private final RecordAggregator aggregator = new RecordAggregator(aggregationMaxBytes);
+        private List<PendingRecord> members = new ArrayList<>();
+
+        private boolean add(final PendingRecord pendingRecord) {
+            final PutRecordsRequestEntry entry = pendingRecord.entry;
+            if (!aggregator.add(entry.getPartitionKey(), entry.getExplicitHashKey(), entry.getData())) {
+                return false;
+            }
+            members.add(pendingRecord);
+            return true;
+        }
+
+        private PendingRecord drain() {
+            final PendingRecord pendingRecord = members.size() == 1 ? members.get(0)
+                    : new AggregatedRecord(aggregator.build(), aggregator.sizeBytes(), members);
+            aggregator.clear();
+            members = new ArrayList<>();
+            return pendingRecord;
+        }
+    }
+
+    /**
+     * Records waiting to be sent to one stream.
+     */
+    private class StreamBuffer {
+        private final String streamName;
+        private List<PendingRecord> records = new ArrayList<>();
+        private long bytes;
+        private ScheduledFuture<?> lingerTask;
+
+        private StreamBuffer(final String streamName) {
+            this.streamName = streamName;
+        }
+
+        private void add(final PendingRecord pendingRecord) {
+            List<PendingRecord> full = null;
+            List<PendingRecord> filled = null;
+            synchronized (this) {
+                if (bytes + pendingRecord.size > maxBytes) {
+                    full = drain();
+                }
+                records.add(pendingRecord);
+                bytes += pendingRecord.size;
+                /* Once closed nothing lingers, close only flushes what was buffered before. */
+                if (records.size() >= recordsPerBatch || bytes >= maxBytes || closed) {
+                    filled = drain();
+                } else if (records.size() == 1) {
+                    lingerTask = scheduler.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+            if (full != null) {
+                send(streamName, full);
+            }
+            if (filled != null) {
+                send(streamName, filled);
+            }
+        }
+
+        private void flush() {
+            final List<PendingRecord> batch;
+            synchronized (this) {
+                batch = drain();
+            }
+            if (batch != null) {
+                send(streamName, batch);
+            }
+        }
+
+        private List<PendingRecord> drain() {
+            if (lingerTask != null) {
+                lingerTask.cancel(false);
+                lingerTask = null;
+            }
+            if (records.isEmpty()) {
+                return null;
+            }
+            final List<PendingRecord> batch = records;
+            records = new ArrayList<>();
+            bytes = 0;
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import io.advantageous.reakt.kinesis.InFlightLimitExceededException;
+import io.advantageous.reakt.kinesis.InFlightLimits;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.promise.Promise;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+/**
+ * Bounds the putRecord and putRecords calls in flight by count and by record bytes.
+ * Calls over the bounds wait in a bounded FIFO queue and are sent as earlier calls complete,
+ * calls that find the queue full are rejected with {@link InFlightLimitExceededException}.
+ * The window is one atomic word, requests in the high bits and bytes in the low bits, so admitting
+ * a call while there is room takes a single compare and set.
+ */
+public class BoundedKinesisClient extends DelegatingKinesisClient {
+
+    private static final int REQUEST_SHIFT = 43;
+    private static final long BYTES_MASK = (1L << REQUEST_SHIFT) - 1;
+    private static final long ONE_REQUEST = 1L << REQUEST_SHIFT;
+
+    private final long maxRequests;
+    private final long maxBytes;
+    private final int maxQueuedRequests;
+    private final AtomicLong window = new AtomicLong();
+    private final Queue<Queued> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    public BoundedKinesisClient(final KinesisClient delegate, final InFlightLimits limits) {
+        super(delegate);
+        this.maxRequests = limits.getMaxRequests();
+        this.maxBytes = limits.getMaxBytes();
+        this.maxQueuedRequests = limits.getMaxQueuedRequests();
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final PutRecordRequest request) {
+        return bounded(Records.size(request.getData(), request.getPartitionKey()),
+                () -> delegate.putRecord(request));
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey) {
+        return bounded(Records.size(data, partitionKey), () -> delegate.putRecord(streamName, data, partitionKey));
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey, final String sequenceNumberForOrdering) {
+        return bounded(Records.size(data, partitionKey),
+                () -> delegate.putRecord(streamName, data, partitionKey, sequenceNumberForOrdering));
+    }
+
+    @Override
+    public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+        long bytes = 0;
+        for (PutRecordsRequestEntry entry : request.getRecords()) {
+            bytes += Records.size(entry.getData(), entry.getPartitionKey());
+        }
+        return bounded(bytes, () -> delegate.putRecords(request));
+    }
+
+    /**
+     * @return calls sent and not completed yet
+     */
+    public int getInFlightRequests() {
+        return (int) (window.get() >>> REQUEST_SHIFT);
+    }
+
+    /**
+     * @return record bytes of the calls sent and not completed yet
+     */
+    public long getInFlightBytes() {
+        return window.get() & BYTES_MASK;
+    }
+
+    /**
+     * @return calls waiting for room in the window
+     */
+    public int getQueuedRequests() {
+        return queued.get();
+    }
+
+    private <T> Promise<T> bounded(final long bytes, final Supplier<Promise<T>> call) {
+        return invokablePromise(promise -> {
+            /* Calls only go straight out when nobody is queued, so queued calls keep their order. */
+            if (queued.get() == 0 && tryAcquire(bytes)) {
+                send(bytes, call, promise);
+                return;
+            }
+            if (queued.incrementAndGet() > maxQueuedRequests) {
+                queued.decrementAndGet();
+                promise.reject(new InFlightLimitExceededException("in flight limit of " + maxRequests
+                        + " requests or " + maxBytes + " bytes reached"));
+                return;
+            }
+            queue.add(new Queued(bytes, () -> send(bytes, call, promise)));
+            drain();
+        });
+    }
+
+    private <T> void send(final long bytes, final Supplier<Promise<T>> call, final Promise<T> promise) {
+        final Promise<T> sent;
+        try {
+            sent = call.get();
+        } catch (RuntimeException ex) {
+            release(bytes);
+            promise.reject(ex);
+            return;
+        }
+        sent.then(result -> {
+            release(bytes);
+            promise.resolve(result);
+        }).catchError(error -> {
+            release(bytes);
+            promise.reject(error);
+        }).invoke();
+    }
+
+    /**
+     * A call larger than the byte bound is admitted once the window is empty, so it cannot wait forever.
+     */
+    private boolean tryAcquire(final long bytes) {
+        for (;;) {
+            final long current = window.get();
+            final long requests = current >>> REQUEST_SHIFT;
+            if (requests != 0 && (requests >= maxRequests || (current & BYTES_MASK) + bytes > maxBytes)) {
+                return false;
+            }
+            if (window.compareAndSet(current, current + ONE_REQUEST + Math.min(bytes, maxBytes))) {
+                return true;
+            }
+        }
+    }
+
+    private void release(final long bytes) {
+        window.addAndGet(-(ONE_REQUEST + Math.min(bytes, maxBytes)));
+        if (queued.get() != 0) {
+            drain();
+        }
+    }
+
+    /**
+     * Sends queued calls in order while they fit. Only one thread runs the loop at a time,
+     * calls made while it runs are folded into another pass.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Queued next;
+            while ((next = queue.peek()) != null && tryAcquire(next.bytes)) {
+                queue.poll();
+                queued.decrementAndGet();
+                next.send.run();
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Call waiting for room in the window.
+     */
+    private static class Queued {
+        private final long bytes;
+        private final Runnable send;
+
+        private Queued(final long bytes, final Runnable send) {
+            this.bytes = bytes;
+            this.send = send;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.*;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.promise.Promise;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+/**
+ * Caches DescribeStream and ListStreams results for a time to live, and shares one call between concurrent
+ * requests for the same result. Pages are fetched until the stream or the stream list is complete, paged calls
+ * are then served from that complete view, and calls without a limit get everything after the start.
+ * Only ACTIVE streams are cached so status polls see a reshard finish. Reshards, retention and monitoring
+ * changes drop the cached stream, creating and deleting streams also drop the stream list.
+ */
+public class CachingKinesisClient extends DelegatingKinesisClient {
+
+    private static final int STREAM_PAGE_SIZE = 100;
+
+    private final long timeToLiveMillis;
+    private final ConcurrentMap<String, Cell<StreamDescription>> descriptions = new ConcurrentHashMap<>();
+    private final Cell<List<String>> streamNames;
+
+    public CachingKinesisClient(final KinesisClient delegate, final long timeToLiveMillis) {
+        super(delegate);
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.streamNames = new Cell<>(() -> invokablePromise(promise ->
+                listPage(null, new ArrayList<>(), promise)), names -> true);
+    }
+
+    /**
+     * Drops the cached description of a stream.
+     *
+     * @param streamName stream name
+     */
+    public void invalidate(final String streamName) {
+        final Cell<StreamDescription> cell = descriptions.get(streamName);
+        if (cell != null) {
+            cell.invalidate();
+        }
+    }
+
+    @Override
+    public Promise<DescribeStreamResult> describeStream(final DescribeStreamRequest request) {
+        return describe(request.getStreamName(), request.getLimit(), request.getExclusiveStartShardId());
+    }
+
+    @Override
+    public Promise<DescribeStreamResult> describeStream(final String streamName) {
+        return describe(streamName, null, null);
+    }
+
+    @Override
+    public Promise<DescribeStreamResult> describeStream(final String streamName, final int limit,
+                                                        final String exclusiveStartShardId) {
+        return describe(streamName, limit, exclusiveStartShardId);
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams() {
+        return list(null, null);
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams(final int limit, final String exclusiveStartStreamName) {
+        return list(limit, exclusiveStartStreamName);
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams(final String exclusiveStartStreamName) {
+        return list(null, exclusiveStartStreamName);
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams(final ListStreamsRequest request) {
+        return list(request.getLimit(), request.getExclusiveStartStreamName());
+    }
+
+    @Override
+    public Promise<CreateStreamResult> createStream(final CreateStreamRequest request) {
+        return after(delegate.createStream(request), () -> {
+            invalidate(request.getStreamName());
+            streamNames.invalidate();
+        });
+    }
+
+    @Override
+    public Promise<DeleteStreamResult> deleteStream(final DeleteStreamRequest request) {
+        return after(delegate.deleteStream(request), () -> {
+            invalidate(request.getStreamName());
+            streamNames.invalidate();
+        });
+    }
+
+    @Override
+    public Promise<DeleteStreamResult> deleteStream(final String streamName) {
+        return after(delegate.deleteStream(streamName), () -> {
+            invalidate(streamName);
+            streamNames.invalidate();
+        });
+    }
+
+    @Override
+    public Promise<MergeShardsResult> mergeShards(final MergeShardsRequest request) {
+        return after(delegate.mergeShards(request), () -> invalidate(request.getStreamName()));
+    }
+
+    @Override
+    public Promise<MergeShardsResult> mergeShards(final String streamName, final String shardToMerge,
+                                                  final String adjacentShardToMerge) {
+        return after(delegate.mergeShards(streamName, shardToMerge, adjacentShardToMerge),
+                () -> invalidate(streamName));
+    }
+
+    @Override
+    public Promise<SplitShardResult> splitShardAsync(final SplitShardRequest request) {
+        return after(delegate.splitShardAsync(request), () -> invalidate(request.getStreamName()));
+    }
+
+    @Override
+    public Promise<SplitShardResult> splitShardAsync(final String streamName, final String shardToSplit,
+                                                     final String newStartingHashKey) {
+        return after(delegate.splitShardAsync(streamName, shardToSplit, newStartingHashKey),
+                () -> invalidate(streamName));
+    }
+
+    @Override
+    public Promise<IncreaseStreamRetentionPeriodResult> increaseStreamRetentionPeriod(
+            final IncreaseStreamRetentionPeriodRequest request) {
+        return after(delegate.increaseStreamRetentionPeriod(request), () -> invalidate(request.getStreamName()));
+    }
+
+    @Override
+    public Promise<DecreaseStreamRetentionPeriodResult> decreaseStreamRetentionPeriod(
+            final DecreaseStreamRetentionPeriodRequest request) {
+        return after(delegate.decreaseStreamRetentionPeriod(request), () -> invalidate(request.getStreamName()));
+    }
+
+    @Override
+    public Promise<EnableEnhancedMonitoringResult> enableEnhancedMonitoring(
+            final EnableEnhancedMonitoringRequest request) {
+        return after(delegate.enableEnhancedMonitoring(request), () -> invalidate(request.getStreamName()));
+    }
+
+    @Override
+    public Promise<DisableEnhancedMonitoringResult> disableEnhancedMonitoring(
+            final DisableEnhancedMonitoringRequest request) {
+        return after(delegate.disableEnhancedMonitoring(request), () -> invalidate(request.getStreamName()));
+    }
+
+    private Promise<DescribeStreamResult> describe(final String streamName, final Integer limit,
+                                                   final String exclusiveStartShardId) {
+        final Cell<StreamDescription> cell = descriptions.computeIfAbsent(streamName, name -> new Cell<>(
+                () -> invokablePromise(promise -> describePage(name, null, new ArrayList<>(), promise)),
+                description -> StreamStatus.ACTIVE.toString().equals(description.getStreamStatus())));
+        return invokablePromise(promise -> cell.get().then(description -> promise.resolve(
+                new DescribeStreamResult().withStreamDescription(page(description, limit, exclusiveStartShardId))))
+                .catchError(promise::reject).invoke());
+    }
+
+    private Promise<ListStreamsResult> list(final Integer limit, final String exclusiveStartStreamName) {
+        return invokablePromise(promise -> streamNames.get().then(names -> {
+            final int from = indexAfter(names, exclusiveStartStreamName, name -> name);
+            final int to = to(names.size(), from, limit);
+            promise.resolve(new ListStreamsResult().withStreamNames(new ArrayList<>(names.subList(from, to)))
+                    .withHasMoreStreams(to < names.size()));
+        }).catchError(promise::reject).invoke());
+    }
+
+    private void describePage(final String streamName, final String exclusiveStartShardId, final List<Shard> shards,
+                              final Promise<StreamDescription> promise) {
+        delegate.describeStream(streamName, ShardDiscovery.PAGE_SIZE, exclusiveStartShardId).then(result -> {
+            final StreamDescription description = result.getStreamDescription();
+            final List<Shard> page = description.getShards() == null ? Collections.emptyList()
+                    : description.getShards();
+            shards.addAll(page);
+            if (Boolean.TRUE.equals(description.getHasMoreShards()) && !page.isEmpty()) {
+                describePage(streamName, page.get(page.size() - 1).getShardId(), shards, promise);
+            } else {
+                promise.resolve(description.withShards(shards).withHasMoreShards(false));
+            }
+        }).catchError(promise::reject).invoke();
+    }
+
+    private void listPage(final String exclusiveStartStreamName, final List<String> names,
+                          final Promise<List<String>> promise) {
+        delegate.listStreams(STREAM_PAGE_SIZE, exclusiveStartStreamName).then(result -> {
+            final List<String> page = result.getStreamNames() == null ? Collections.emptyList()
+                    : result.getStreamNames();
+            names.addAll(page);
+            if (Boolean.TRUE.equals(result.getHasMoreStreams()) && !page.isEmpty()) {
+                listPage(page.get(page.size() - 1), names, promise);
+            } else {
+                promise.resolve(Collections.unmodifiableList(names));
+            }
+        }).catchError(promise::reject).invoke();
+    }
+
+    /**
+     * Cached descriptions are shared, so every caller gets its own copy of the page it asked for.
+     */
+    private static StreamDescription page(final StreamDescription description, final Integer limit,
+                                          final String exclusiveStartShardId) {
+        final List<Shard> shards = description.getShards();
+        final int from = indexAfter(shards, exclusiveStartShardId, Shard::getShardId);
+        final int to = to(shards.size(), from, limit);
+        return new StreamDescription()
+                .withStreamName(description.getStreamName())
+                .withStreamARN(description.getStreamARN())
+                .withStreamStatus(description.getStreamStatus())
+                .withRetentionPeriodHours(description.getRetentionPeriodHours())
+                .withEnhancedMonitoring(description.getEnhancedMonitoring())
+                .withShards(new ArrayList<>(shards.subList(from, to)))
+                .withHasMoreShards(to < shards.size());
+    }
+
+    /**
+     * Shard ids and stream names are listed in sorted order, so the start does not have to be in the list.
+     *
+     * @return index of the first item after the exclusive start
+     */
+    private static <T> int indexAfter(final List<T> items, final String exclusiveStart,
+                                 final Function<T, String> key) {
+        int from = 0;
+        if (exclusiveStart != null) {
+            while (from < items.size() && key.apply(items.get(from)).compareTo(exclusiveStart) <= 0) {
+                from++;
+            }
+        }
+        return from;
+    }
+
+    private static int to(final int size, final int from, final Integer limit) {
+        return limit == null ? size : (int) Math.min(size, (long) from + Math.max(limit, 1));
+    }
+
+    /**
+     * Runs the invalidation once the call completes either way, a failed change may still have been applied.
+     */
+    private static <T> Promise<T> after(final Promise<T> call, final Runnable invalidate) {
+        return invokablePromise(promise -> call.then(result -> {
+            invalidate.run();
+            promise.resolve(result);
+        }).catchError(error -> {
+            invalidate.run();
+            promise.reject(error);
+        }).invoke());
+    }
+
+    /**
+     * One cached value with at most one load in flight. Requests that arrive during a load wait for it,
+     * failed loads are not cached. An invalidation during a load lets the next request start a fresh load.
+     */
+    private class Cell<T> {
+        private final Supplier<Promise<T>> loader;
+        private final Predicate<T> cacheable;
+        private T value;
+        private long expiresAt;
+        private long generation;
+        private List<Promise<T>> waiting;
+
+        private Cell(final Supplier<Promise<T>> loader, final Predicate<T> cacheable) {
+            this.loader = loader;
+            this.cacheable = cacheable;
+        }
+
+        private Promise<T> get() {
+            return invokablePromise(promise -> {
+                final T cached;
+                final List<Promise<T>> load;
+                final long loadGeneration;
+                synchronized (this) {
+                    loadGeneration = generation;
+                    if (value != null && System.currentTimeMillis() < expiresAt) {
+                        cached = value;
+                        load = null;
+                    } else {
+                        cached = null;
+                        load = waiting == null ? new ArrayList<>() : null;
+                        if (load != null) {
+                            waiting = load;
+                        }
+                        waiting.add(promise);
+                    }
+                }
+                if (cached != null) {
+                    promise.resolve(cached);
+                } else if (load != null) {
+                    loader.get().then(result -> complete(load, loadGeneration, result, null))
+                            .catchError(error -> complete(load, loadGeneration, null, error)).invoke();
+                }
+            });
+        }
+
+        private void complete(final List<Promise<T>> load, final long loadGeneration, final T result,
+                              final Throwable error) {
+            final List<Promise<T>> waiters;
+            synchronized (this) {
+                if (waiting == load) {
+                    waiting = null;
+                }
+                if (error == null && loadGeneration == generation && cacheable.test(result)) {
+                    value = result;
+                    expiresAt = System.currentTimeMillis() + timeToLiveMillis;
+                }
+                waiters = new ArrayList<>(load);
+            }
+            for (Promise<T> waiter : waiters) {
+                if (error == null) {
+                    waiter.resolve(result);
+                } else {
+                    waiter.reject(error);
+                }
+            }
+        }
+
+        private synchronized void invalidate() {
+            value = null;
+            generation++;
+            waiting = null;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import io.advantageous.reakt.kinesis.CheckpointStore;
+import io.advantageous.reakt.kinesis.Checkpointer;
+import io.advantageous.reakt.kinesis.CheckpointerConfig;
+import io.advantageous.reakt.promise.Promise;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+public class CheckpointerImpl implements Checkpointer {
+
+    private final CheckpointStore store;
+    private final String streamName;
+    private final int maxRecordsPerShard;
+    private final ScheduledExecutorService scheduler;
+    private final ScheduledFuture<?> timer;
+    private final Runnable thresholdSave = this::thresholdSave;
+    private final AtomicBoolean thresholdSaveQueued = new AtomicBoolean();
+    private final ConcurrentMap<String, ShardCheckpoint> checkpoints = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private List<Promise<Void>> waiters = new ArrayList<>();
+    private boolean saving;
+    private boolean saveAgain;
+
+    public CheckpointerImpl(final CheckpointStore store, final String streamName, final CheckpointerConfig config) {
+        this.store = store;
+        this.streamName = streamName;
+        this.maxRecordsPerShard = config.getMaxRecordsPerShard();
+        this.scheduler = config.getScheduler() != null ? config.getScheduler() : SharedScheduler.get();
+        this.timer = scheduler.scheduleWithFixedDelay(this::save, config.getFlushIntervalMillis(),
+                config.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void checkpoint(final String shardId, final String sequenceNumber) {
+        ShardCheckpoint checkpoint = checkpoints.get(shardId);
+        if (checkpoint == null) {
+            checkpoint = checkpoints.computeIfAbsent(shardId, id -> new ShardCheckpoint());
+        }
+        checkpoint.sequenceNumber = sequenceNumber;
+        /* The write runs on the scheduler, a store that forces its file never blocks the record handler. */
+        if (checkpoint.unsaved.incrementAndGet() >= maxRecordsPerShard
+                && thresholdSaveQueued.compareAndSet(false, true)) {
+            scheduler.execute(thresholdSave);
+        }
+    }
+
+    @Override
+    public Promise<Void> flush() {
+        return invokablePromise(promise -> {
+            synchronized (lock) {
+                waiters.add(promise);
+            }
+            save();
+        });
+    }
+
+    @Override
+    public void close() {
+        timer.cancel(false);
+        save();
+    }
+
+    private void thresholdSave() {
+        thresholdSaveQueued.set(false);
+        save();
+    }
+
+    /**
+     * Writes the checkpoints that changed since the last write. If a write is running, another one is started
+     * when it completes, so writes never overtake each other.
+     */
+    private void save() {
+        final Map<String, String> batch = new HashMap<>();
+        final List<Promise<Void>> batchWaiters;
+        synchronized (lock) {
+            if (saving) {
+                saveAgain = true;
+                return;
+            }
+            saveAgain = false;
+            checkpoints.forEach((shardId, checkpoint) -> {
+                final String sequenceNumber = checkpoint.sequenceNumber;
+                if (sequenceNumber != null && !sequenceNumber.equals(checkpoint.saved)) {
+                    checkpoint.unsaved.set(0);
+                    batch.put(shardId, sequenceNumber);
+                }
+            });
+            batchWaiters = waiters;
+            waiters = new ArrayList<>();
+            saving = !batch.isEmpty();
+        }
+        if (batch.isEmpty()) {
+            batchWaiters.forEach(waiter -> waiter.resolve(null));
+            return;
+        }
+        store.save(streamName, batch).then(result -> {
+            batch.forEach((shardId, sequenceNumber) -> checkpoints.get(shardId).saved = sequenceNumber);
+            saved(batchWaiters, null);
+        }).catchError(error -> saved(batchWaiters, error)).invoke();
+    }
+
+    private void saved(final List<Promise<Void>> batchWaiters, final Throwable error) {
+        final boolean again;
+        synchronized (lock) {
+            saving = false;
+            again = saveAgain || !waiters.isEmpty();
+        }
+        if (error == null) {
+            batchWaiters.forEach(waiter -> waiter.resolve(null));
+        } else {
+            batchWaiters.forEach(waiter -> waiter.reject(error));
+        }
+        /* After a failed write the next attempt waits for the timer. */
+        if (again && error == null) {
+            save();
+        }
+    }
+
+    private static class ShardCheckpoint {
+        private final AtomicInteger unsaved = new AtomicInteger();
+        private volatile String sequenceNumber;
+        private volatile String saved;
+    }
+}
@@ -0,0 +1,123 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.Record;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.PayloadCompression;
+import io.advantageous.reakt.promise.Promise;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+/**
+ * Compresses record data on putRecord and putRecords and decompresses it on getRecords.
+ * Compressed payloads are written to pooled buffers, which go back to the pool once the call completes.
+ * Decompressed payloads are plain heap buffers owned by the caller.
+ */
+public class CompressingKinesisClient extends DelegatingKinesisClient {
+
+    private final PayloadCompression compression;
+
+    public CompressingKinesisClient(final KinesisClient delegate, final PayloadCompression compression) {
+        super(delegate);
+        this.compression = compression;
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final PutRecordRequest request) {
+        return invokablePromise(promise -> {
+            final ByteBuffer compressed = compression.compress(request.getData());
+            final PutRecordRequest compressedRequest = new PutRecordRequest()
+                    .withStreamName(request.getStreamName())
+                    .withPartitionKey(request.getPartitionKey())
+                    .withExplicitHashKey(request.getExplicitHashKey())
+                    .withSequenceNumberForOrdering(request.getSequenceNumberForOrdering())
+                    .withData(compressed);
+            forward(() -> delegate.putRecord(compressedRequest), compressed, promise);
+        });
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey) {
+        return invokablePromise(promise -> {
+            final ByteBuffer compressed = compression.compress(data);
+            forward(() -> delegate.putRecord(streamName, compressed, partitionKey), compressed, promise);
+        });
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey, final String sequenceNumberForOrdering) {
+        return invokablePromise(promise -> {
+            final ByteBuffer compressed = compression.compress(data);
+            forward(() -> delegate.putRecord(streamName, compressed, partitionKey, sequenceNumberForOrdering),
+                    compressed, promise);
+        });
+    }
+
+    @Override
+    public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+        return invokablePromise(promise -> {
+            final List<PutRecordsRequestEntry> entries = request.getRecords();
+            final List<PutRecordsRequestEntry> compressedEntries = new ArrayList<>(entries.size());
+            for (PutRecordsRequestEntry entry : entries) {
+                compressedEntries.add(new PutRecordsRequestEntry()
+                        .withPartitionKey(entry.getPartitionKey())
+                        .withExplicitHashKey(entry.getExplicitHashKey())
+                        .withData(compression.compress(entry.getData())));
+            }
+            final PutRecordsRequest compressedRequest = new PutRecordsRequest()
+                    .withStreamName(request.getStreamName())
+                    .withRecords(compressedEntries);
+            delegate.putRecords(compressedRequest).then(result -> {
+                release(compressedEntries);
+                promise.resolve(result);
+            }).catchError(error -> {
+                release(compressedEntries);
+                promise.reject(error);
+            }).invoke();
+        });
+    }
+
+    @Override
+    public Promise<GetRecordsResult> getRecords(final GetRecordsRequest request) {
+        return invokablePromise(promise -> delegate.getRecords(request).then(result -> {
+            try {
+                for (Record record : result.getRecords()) {
+                    record.setData(compression.decompress(record.getData()));
+                }
+            } catch (RuntimeException ex) {
+                promise.reject(ex);
+                return;
+            }
+            promise.resolve(result);
+        }).catchError(promise::reject).invoke());
+    }
+
+    private void release(final List<PutRecordsRequestEntry> entries) {
+        for (PutRecordsRequestEntry entry : entries) {
+            compression.release(entry.getData());
+        }
+    }
+
+    private <T> void forward(final Supplier<Promise<T>> call, final ByteBuffer compressed, final Promise<T> promise) {
+        call.get().then(result -> {
+            compression.release(compressed);
+            promise.resolve(result);
+        }).catchError(error -> {
+            compression.release(compressed);
+            promise.reject(error);
+        }).invoke();
+    }
+}
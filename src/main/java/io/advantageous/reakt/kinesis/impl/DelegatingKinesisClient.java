@@ -0,0 +1,207 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.AmazonKinesisAsyncClient;
+import com.amazonaws.services.kinesis.model.*;
+import io.advantageous.reakt.kinesis.FanOutConsumer;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.ShardEventListener;
+import io.advantageous.reakt.promise.Promise;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Kinesis client that forwards every call to another client.
+ * Decorators extend it and override only the calls they change. None of them may wrap a
+ * {@link PooledPayloadKinesisClient}, which has to be the outermost wrapper.
+ */
+public class DelegatingKinesisClient implements KinesisClient {
+
+    protected final KinesisClient delegate;
+
+    public DelegatingKinesisClient(final KinesisClient delegate) {
+        if (delegate instanceof PooledPayloadKinesisClient) {
+            throw new IllegalArgumentException("the pooled payload client must be the outermost wrapper, "
+                    + getClass().getSimpleName() + " cannot wrap it");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Promise<AddTagsToStreamResult> addTagsToStream(final AddTagsToStreamRequest request) {
+        return delegate.addTagsToStream(request);
+    }
+
+    @Override
+    public Promise<CreateStreamResult> createStream(final CreateStreamRequest request) {
+        return delegate.createStream(request);
+    }
+
+    @Override
+    public Promise<DecreaseStreamRetentionPeriodResult> decreaseStreamRetentionPeriod(
+            final DecreaseStreamRetentionPeriodRequest request) {
+        return delegate.decreaseStreamRetentionPeriod(request);
+    }
+
+    @Override
+    public Promise<DeleteStreamResult> deleteStream(final DeleteStreamRequest request) {
+        return delegate.deleteStream(request);
+    }
+
+    @Override
+    public Promise<DeleteStreamResult> deleteStream(final String streamName) {
+        return delegate.deleteStream(streamName);
+    }
+
+    @Override
+    public Promise<DescribeStreamResult> describeStream(final DescribeStreamRequest request) {
+        return delegate.describeStream(request);
+    }
+
+    @Override
+    public Promise<DescribeStreamResult> describeStream(final String streamName) {
+        return delegate.describeStream(streamName);
+    }
+
+    @Override
+    public Promise<DescribeStreamResult> describeStream(final String streamName, final int limit,
+                                                        final String exclusiveStartShardId) {
+        return delegate.describeStream(streamName, limit, exclusiveStartShardId);
+    }
+
+    @Override
+    public Promise<DisableEnhancedMonitoringResult> disableEnhancedMonitoring(
+            final DisableEnhancedMonitoringRequest request) {
+        return delegate.disableEnhancedMonitoring(request);
+    }
+
+    @Override
+    public Promise<EnableEnhancedMonitoringResult> enableEnhancedMonitoring(
+            final EnableEnhancedMonitoringRequest request) {
+        return delegate.enableEnhancedMonitoring(request);
+    }
+
+    @Override
+    public Promise<GetRecordsResult> getRecords(final GetRecordsRequest request) {
+        return delegate.getRecords(request);
+    }
+
+    @Override
+    public Promise<GetShardIteratorResult> getShardIteratorAsync(final GetShardIteratorRequest request) {
+        return delegate.getShardIteratorAsync(request);
+    }
+
+    @Override
+    public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                 final String shardIteratorType) {
+        return delegate.getShardIteratorAsync(streamName, shardId, shardIteratorType);
+    }
+
+    @Override
+    public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                 final String shardIteratorType,
+                                                                 final String startingSequenceNumber) {
+        return delegate.getShardIteratorAsync(streamName, shardId, shardIteratorType, startingSequenceNumber);
+    }
+
+    @Override
+    public Promise<IncreaseStreamRetentionPeriodResult> increaseStreamRetentionPeriod(
+            final IncreaseStreamRetentionPeriodRequest request) {
+        return delegate.increaseStreamRetentionPeriod(request);
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams() {
+        return delegate.listStreams();
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams(final int limit, final String exclusiveStartStreamName) {
+        return delegate.listStreams(limit, exclusiveStartStreamName);
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams(final String exclusiveStartStreamName) {
+        return delegate.listStreams(exclusiveStartStreamName);
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams(final ListStreamsRequest request) {
+        return delegate.listStreams(request);
+    }
+
+    @Override
+    public Promise<ListTagsForStreamResult> listTagsForStream(final ListTagsForStreamRequest request) {
+        return delegate.listTagsForStream(request);
+    }
+
+    @Override
+    public Promise<MergeShardsResult> mergeShards(final MergeShardsRequest request) {
+        return delegate.mergeShards(request);
+    }
+
+    @Override
+    public Promise<MergeShardsResult> mergeShards(final String streamName, final String shardToMerge,
+                                                  final String adjacentShardToMerge) {
+        return delegate.mergeShards(streamName, shardToMerge, adjacentShardToMerge);
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final PutRecordRequest request) {
+        return delegate.putRecord(request);
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey) {
+        return delegate.putRecord(streamName, data, partitionKey);
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey, final String sequenceNumberForOrdering) {
+        return delegate.putRecord(streamName, data, partitionKey, sequenceNumberForOrdering);
+    }
+
+    @Override
+    public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+        return delegate.putRecords(request);
+    }
+
+    @Override
+    public Promise<RemoveTagsFromStreamResult> removeTagsFromStream(final RemoveTagsFromStreamRequest request) {
+        return delegate.removeTagsFromStream(request);
+    }
+
+    @Override
+    public Promise<SplitShardResult> splitShardAsync(final SplitShardRequest request) {
+        return delegate.splitShardAsync(request);
+    }
+
+    @Override
+    public Promise<SplitShardResult> splitShardAsync(final String streamName, final String shardToSplit,
+                                                     final String newStartingHashKey) {
+        return delegate.splitShardAsync(streamName, shardToSplit, newStartingHashKey);
+    }
+
+    @Override
+    public Promise<FanOutConsumer> registerStreamConsumer(final String streamName, final String consumerName) {
+        return delegate.registerStreamConsumer(streamName, consumerName);
+    }
+
+    @Override
+    public Promise<Void> deregisterStreamConsumer(final FanOutConsumer consumer) {
+        return delegate.deregisterStreamConsumer(consumer);
+    }
+
+    @Override
+    public void subscribeToShard(final FanOutConsumer consumer, final String shardId,
+                                 final String startingPositionType, final String startingSequenceNumber,
+                                 final ShardEventListener listener) {
+        delegate.subscribeToShard(consumer, shardId, startingPositionType, startingSequenceNumber, listener);
+    }
+
+    @Override
+    public AmazonKinesisAsyncClient getAmazonKinesisAsyncClient() {
+        return delegate.getAmazonKinesisAsyncClient();
+    }
+}
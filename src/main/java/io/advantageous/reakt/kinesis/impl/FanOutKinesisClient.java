@@ -0,0 +1,38 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import io.advantageous.reakt.kinesis.FanOutConsumer;
+import io.advantageous.reakt.kinesis.FanOutTransport;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.ShardEventListener;
+import io.advantageous.reakt.promise.Promise;
+
+/**
+ * Sends consumer registration and shard subscriptions to a {@link FanOutTransport}, every other call to the
+ * wrapped client.
+ */
+public class FanOutKinesisClient extends DelegatingKinesisClient {
+
+    private final FanOutTransport transport;
+
+    public FanOutKinesisClient(final KinesisClient delegate, final FanOutTransport transport) {
+        super(delegate);
+        this.transport = transport;
+    }
+
+    @Override
+    public Promise<FanOutConsumer> registerStreamConsumer(final String streamName, final String consumerName) {
+        return transport.registerConsumer(streamName, consumerName);
+    }
+
+    @Override
+    public Promise<Void> deregisterStreamConsumer(final FanOutConsumer consumer) {
+        return transport.deregisterConsumer(consumer);
+    }
+
+    @Override
+    public void subscribeToShard(final FanOutConsumer consumer, final String shardId,
+                                 final String startingPositionType, final String startingSequenceNumber,
+                                 final ShardEventListener listener) {
+        transport.subscribeToShard(consumer, shardId, startingPositionType, startingSequenceNumber, listener);
+    }
+}
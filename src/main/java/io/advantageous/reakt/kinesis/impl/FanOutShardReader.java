@@ -0,0 +1,153 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import io.advantageous.reakt.kinesis.FanOutConsumer;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.ShardEvent;
+import io.advantageous.reakt.kinesis.ShardEventListener;
+import io.advantageous.reakt.kinesis.ShardReaderConfig;
+import io.advantageous.reakt.kinesis.ShardSubscription;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads one shard through shard subscriptions instead of polling. Records arrive as soon as they are written,
+ * one event is requested at a time while the sink has demand and the read-ahead bounds allow it.
+ * Expired subscriptions are renewed after the continuation sequence number of the last event, throttled or
+ * retryable failures after the throttled backoff.
+ */
+public class FanOutShardReader extends AbstractShardReader {
+
+    private final KinesisClient kinesisClient;
+    private final FanOutConsumer consumer;
+
+    private String resubscribeType;
+    private String resubscribePosition;
+    private volatile String continuationSequenceNumber;
+    private volatile Listener listener;
+    private volatile ShardSubscription subscription;
+    private volatile boolean requested;
+
+    public FanOutShardReader(final KinesisClient kinesisClient, final FanOutConsumer consumer,
+                             final String shardId, final ShardReaderConfig config) {
+        super(shardId, config);
+        this.kinesisClient = kinesisClient;
+        this.consumer = consumer;
+    }
+
+    @Override
+    protected void start() {
+        resubscribeType = shardIteratorType;
+        resubscribePosition = startingSequenceNumber;
+        if (ShardIteratorType.LATEST.toString().equals(shardIteratorType)) {
+            resubscribeType = ShardIteratorType.AT_TIMESTAMP.toString();
+            resubscribePosition = Long.toString(System.currentTimeMillis());
+        }
+        subscribe(shardIteratorType, startingSequenceNumber);
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        final ShardSubscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+        drain();
+    }
+
+    @Override
+    public String getStreamName() {
+        return consumer.getStreamName();
+    }
+
+    /**
+     * Subscribes again after the continuation sequence number of the last event, or at the starting position if
+     * no event arrived yet. Events without records still carry a continuation, so a subscription that expires
+     * without records does not move the position back to LATEST. A reader that started at LATEST and got no
+     * event yet subscribes again at the time it started.
+     */
+    private void resubscribe() {
+        final String sequenceNumber = continuationSequenceNumber;
+        if (sequenceNumber != null) {
+            subscribe(ShardIteratorType.AFTER_SEQUENCE_NUMBER.toString(), sequenceNumber);
+        } else {
+            subscribe(resubscribeType, resubscribePosition);
+        }
+    }
+
+    private void subscribe(final String startingPositionType, final String startingPosition) {
+        if (stopped) {
+            return;
+        }
+        subscription = null;
+        requested = false;
+        final Listener next = new Listener();
+        listener = next;
+        kinesisClient.subscribeToShard(consumer, shardId, startingPositionType, startingPosition, next);
+    }
+
+    @Override
+    protected void fetchNext() {
+        final ShardSubscription current = subscription;
+        if (!requested && current != null) {
+            requested = true;
+            current.request(1);
+        }
+    }
+
+    private void onEvent(final ShardEvent event) {
+        buffer(event.getRecords());
+        if (event.getContinuationSequenceNumber() != null) {
+            continuationSequenceNumber = event.getContinuationSequenceNumber();
+        }
+        shardEnded = event.getContinuationSequenceNumber() == null;
+        requested = false;
+        drain();
+    }
+
+    private void onError(final Throwable error) {
+        if (PutRecordsRetrier.isRetryable(error)) {
+            scheduler.schedule(this::resubscribe, config.getThrottledBackoffMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            fail(error);
+        }
+    }
+
+    /**
+     * Listener of one subscription. Calls from a subscription that was replaced are ignored.
+     */
+    private class Listener implements ShardEventListener {
+
+        @Override
+        public void onSubscribe(final ShardSubscription shardSubscription) {
+            if (listener != this || stopped) {
+                shardSubscription.cancel();
+                return;
+            }
+            subscription = shardSubscription;
+            drain();
+        }
+
+        @Override
+        public void onEvent(final ShardEvent event) {
+            if (listener == this) {
+                FanOutShardReader.this.onEvent(event);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (listener == this && !shardEnded) {
+                resubscribe();
+            }
+        }
+
+        @Override
+        public void onError(final Throwable error) {
+            if (listener == this) {
+                FanOutShardReader.this.onError(error);
+            }
+        }
+    }
+}
@@ -4,6 +4,8 @@ import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.kinesis.AmazonKinesisAsyncClient;
 import com.amazonaws.services.kinesis.model.*;
+import io.advantageous.reakt.Callback;
+import io.advantageous.reakt.kinesis.KinesisCallback;
 import io.advantageous.reakt.kinesis.KinesisClient;
 import io.advantageous.reakt.promise.Promise;
 
@@ -163,6 +165,11 @@ public class KinesisClientImpl implements KinesisClient {
                 convertPromiseToAsyncResult(promise)));
     }
 
+    @Override
+    public void getRecordsAsync(final GetRecordsRequest request, final Callback<GetRecordsResult> callback) {
+        amazonKinesisAsyncClient.getRecordsAsync(request, asyncHandler(callback));
+    }
+
     /**
      * Gets an Amazon Kinesis shard iterator.
      *
@@ -324,6 +331,11 @@ public class KinesisClientImpl implements KinesisClient {
         return invokablePromise(p -> amazonKinesisAsyncClient.putRecordAsync(request, convertPromiseToAsyncResult(p)));
     }
 
+    @Override
+    public void putRecordAsync(final PutRecordRequest request, final Callback<PutRecordResult> callback) {
+        amazonKinesisAsyncClient.putRecordAsync(request, asyncHandler(callback));
+    }
+
 
     /**
      * Simplified method form for invoking the PutRecord operation.
@@ -340,6 +352,12 @@ public class KinesisClientImpl implements KinesisClient {
                 convertPromiseToAsyncResult(p)));
     }
 
+    @Override
+    public void putRecordAsync(final String streamName, final ByteBuffer data, final String partitionKey,
+                               final Callback<PutRecordResult> callback) {
+        amazonKinesisAsyncClient.putRecordAsync(streamName, data, partitionKey, asyncHandler(callback));
+    }
+
 
     /**
      * Simplified method form for invoking the PutRecord operation.
@@ -368,6 +386,11 @@ public class KinesisClientImpl implements KinesisClient {
         return invokablePromise(p -> amazonKinesisAsyncClient.putRecordsAsync(request, convertPromiseToAsyncResult(p)));
     }
 
+    @Override
+    public void putRecordsAsync(final PutRecordsRequest request, final Callback<PutRecordsResult> callback) {
+        amazonKinesisAsyncClient.putRecordsAsync(request, asyncHandler(callback));
+    }
+
 
     /**
      * Removes tags from the specified Amazon Kinesis stream.
@@ -430,4 +453,35 @@ public class KinesisClientImpl implements KinesisClient {
             }
         };
     }
+
+    /**
+     * Uses a {@link KinesisCallback} as the SDK handler itself, other callbacks get a small adapter.
+     */
+    @SuppressWarnings("unchecked")
+    private static <REQUEST extends AmazonWebServiceRequest, RESPONSE> AsyncHandler<REQUEST, RESPONSE>
+    asyncHandler(final Callback<RESPONSE> callback) {
+        if (callback instanceof KinesisCallback) {
+            return (AsyncHandler<REQUEST, RESPONSE>) (AsyncHandler<?, RESPONSE>) callback;
+        }
+        return new CallbackAsyncHandler<>(callback);
+    }
+
+    private static final class CallbackAsyncHandler<REQUEST extends AmazonWebServiceRequest, RESPONSE>
+            implements AsyncHandler<REQUEST, RESPONSE> {
+        private final Callback<RESPONSE> callback;
+
+        private CallbackAsyncHandler(final Callback<RESPONSE> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onError(final Exception exception) {
+            callback.reject(exception);
+        }
+
+        @Override
+        public void onSuccess(final REQUEST request, final RESPONSE response) {
+            callback.reply(response);
+        }
+    }
 }
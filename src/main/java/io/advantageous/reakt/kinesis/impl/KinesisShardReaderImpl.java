@@ -0,0 +1,141 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.GetShardIteratorRequest;
+import com.amazonaws.services.kinesis.model.GetShardIteratorResult;
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import io.advantageous.reakt.kinesis.KinesisCallback;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.ShardReaderConfig;
+import io.advantageous.reakt.promise.Promise;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class KinesisShardReaderImpl extends AbstractShardReader {
+
+    private final KinesisClient kinesisClient;
+    private final String streamName;
+    private final Runnable fetchTask = this::fetch;
+    private final KinesisCallback<GetRecordsResult> fetchCallback = new KinesisCallback<GetRecordsResult>() {
+        @Override
+        public void reply(final GetRecordsResult result) {
+            onRecords(result);
+        }
+
+        @Override
+        public void reject(final Throwable error) {
+            onFetchError(error);
+        }
+    };
+
+    private String lastSequenceNumber;
+    private String startTimestamp;
+    private volatile String shardIterator;
+    private volatile boolean fetching;
+    private volatile long nextFetchTime;
+
+    public KinesisShardReaderImpl(final KinesisClient kinesisClient, final String streamName, final String shardId,
+                                  final ShardReaderConfig config) {
+        super(shardId, config);
+        this.kinesisClient = kinesisClient;
+        this.streamName = streamName;
+    }
+
+    @Override
+    protected void start() {
+        fetching = true;
+        if (ShardIteratorType.LATEST.toString().equals(shardIteratorType)) {
+            /* An iterator that expires before the first record is reopened where it started, not at LATEST. */
+            startTimestamp = Long.toString(System.currentTimeMillis());
+        }
+        openIterator(shardIteratorType, startingSequenceNumber);
+    }
+
+    @Override
+    public String getStreamName() {
+        return streamName;
+    }
+
+    private void openIterator(final String iteratorType, final String sequenceNumber) {
+        final Promise<GetShardIteratorResult> promise;
+        if (ShardIteratorType.AT_TIMESTAMP.toString().equals(iteratorType)) {
+            promise = kinesisClient.getShardIteratorAsync(new GetShardIteratorRequest().withStreamName(streamName)
+                    .withShardId(shardId).withShardIteratorType(iteratorType)
+                    .withTimestamp(new Date(Long.parseLong(sequenceNumber))));
+        } else if (sequenceNumber == null) {
+            promise = kinesisClient.getShardIteratorAsync(streamName, shardId, iteratorType);
+        } else {
+            promise = kinesisClient.getShardIteratorAsync(streamName, shardId, iteratorType, sequenceNumber);
+        }
+        promise.then(result -> {
+            shardIterator = result.getShardIterator();
+            shardEnded = shardIterator == null;
+            fetching = false;
+            drain();
+        }).catchError(this::fail).invoke();
+    }
+
+    @Override
+    protected void fetchNext() {
+        if (!fetching) {
+            fetching = true;
+            scheduleFetch();
+        }
+    }
+
+    private void scheduleFetch() {
+        final long delay = nextFetchTime - System.nanoTime();
+        if (delay <= 0) {
+            scheduler.execute(fetchTask);
+        } else {
+            scheduler.schedule(fetchTask, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void fetch() {
+        if (stopped) {
+            return;
+        }
+        /* Only one fetch runs at a time, so one callback serves them all. */
+        kinesisClient.getRecordsAsync(new GetRecordsRequest().withShardIterator(shardIterator)
+                .withLimit(config.getMaxRecordsPerCall()), fetchCallback);
+    }
+
+    private void onRecords(final GetRecordsResult result) {
+        final List<Record> records = result.getRecords();
+        if (!records.isEmpty()) {
+            lastSequenceNumber = records.get(records.size() - 1).getSequenceNumber();
+        }
+        buffer(records);
+        final boolean caughtUp = result.getMillisBehindLatest() != null && result.getMillisBehindLatest() == 0;
+        nextFetchTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(caughtUp
+                ? config.getIdlePollIntervalMillis() : config.getPollIntervalMillis());
+        shardIterator = result.getNextShardIterator();
+        shardEnded = shardIterator == null;
+        fetching = false;
+        drain();
+    }
+
+    private void onFetchError(final Throwable error) {
+        if (error instanceof ProvisionedThroughputExceededException) {
+            nextFetchTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getThrottledBackoffMillis());
+            scheduleFetch();
+        } else if (error instanceof ExpiredIteratorException) {
+            if (lastSequenceNumber != null) {
+                openIterator(ShardIteratorType.AFTER_SEQUENCE_NUMBER.toString(), lastSequenceNumber);
+            } else if (startTimestamp != null) {
+                openIterator(ShardIteratorType.AT_TIMESTAMP.toString(), startTimestamp);
+            } else {
+                openIterator(shardIteratorType, startingSequenceNumber);
+            }
+        } else {
+            fail(error);
+        }
+    }
+}
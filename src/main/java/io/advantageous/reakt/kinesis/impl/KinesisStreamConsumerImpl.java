@@ -0,0 +1,344 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import io.advantageous.reakt.kinesis.CheckpointStore;
+import io.advantageous.reakt.kinesis.Checkpointer;
+import io.advantageous.reakt.kinesis.FanOutConsumer;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.KinesisStreamConsumer;
+import io.advantageous.reakt.kinesis.ShardReaderConfig;
+import io.advantageous.reakt.kinesis.ShardRecordHandler;
+import io.advantageous.reakt.kinesis.StreamConsumerConfig;
+import io.advantageous.reakt.kinesis.UserRecord;
+import io.advantageous.reakt.promise.Promise;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+public class KinesisStreamConsumerImpl implements KinesisStreamConsumer {
+
+    private final KinesisClient kinesisClient;
+    private final String streamName;
+    private final StreamConsumerConfig config;
+    private final ShardReaderConfig readerConfig;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Checkpointer checkpointer;
+    private final ConcurrentMap<String, ShardWorker> workers = new ConcurrentHashMap<>();
+    private final ShardLineage lineage = new ShardLineage();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+    private ShardRecordHandler handler;
+    private FanOutConsumer fanOutConsumer;
+    private Map<String, String> checkpoints = Collections.emptyMap();
+    private volatile ScheduledFuture<?> syncTask;
+
+    public KinesisStreamConsumerImpl(final KinesisClient kinesisClient, final String streamName,
+                                     final StreamConsumerConfig config) {
+        this.kinesisClient = kinesisClient;
+        this.streamName = streamName;
+        this.config = config;
+        this.readerConfig = new ShardReaderConfig(config.getReaderConfig())
+                .withInitialDemand(config.getMaxQueuedRecordsPerShard());
+        if (config.getExecutor() != null) {
+            this.executor = config.getExecutor();
+            this.ownsExecutor = false;
+        } else {
+            final AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                final Thread thread = new Thread(runnable, "kinesis-consumer-" + streamName + "-"
+                        + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.ownsExecutor = true;
+        }
+        this.checkpointer = config.getCheckpointStore() == null ? null
+                : Checkpointer.create(config.getCheckpointStore(), streamName, config.getCheckpointerConfig());
+    }
+
+    @Override
+    public Promise<List<String>> start(final ShardRecordHandler handler) {
+        return invokablePromise(promise -> {
+            if (!started.compareAndSet(false, true)) {
+                promise.reject(new IllegalStateException("consumer for " + streamName + " is already started"));
+                return;
+            }
+            this.handler = handler;
+            if (config.getFanOutConsumerName() == null) {
+                loadCheckpoints(promise);
+            } else {
+                kinesisClient.registerStreamConsumer(streamName, config.getFanOutConsumerName())
+                        .then(consumer -> {
+                            fanOutConsumer = consumer;
+                            loadCheckpoints(promise);
+                        })
+                        .catchError(promise::reject).invoke();
+            }
+        });
+    }
+
+    private void loadCheckpoints(final Promise<List<String>> promise) {
+        if (config.getCheckpointStore() == null) {
+            startShards(Collections.emptyMap(), promise);
+        } else {
+            config.getCheckpointStore().load(streamName)
+                    .then(sequenceNumbers -> startShards(sequenceNumbers, promise))
+                    .catchError(promise::reject).invoke();
+        }
+    }
+
+    /**
+     * Starts the shards that are ready to read and keeps listing shards so children of split and merged shards
+     * are picked up. With LATEST, closed shards without a checkpoint are skipped and only open shards start there.
+     */
+    private void startShards(final Map<String, String> sequenceNumbers, final Promise<List<String>> promise) {
+        checkpoints = sequenceNumbers;
+        ShardDiscovery.describeAllShards(kinesisClient, streamName).then(shards -> {
+            lineage.update(shards);
+            final boolean latest = ShardIteratorType.LATEST.toString().equals(config.getShardIteratorType());
+            for (Shard shard : shards) {
+                final String sequenceNumber = sequenceNumbers.get(shard.getShardId());
+                if (isEnded(shard.getShardId())
+                        || latest && sequenceNumber == null && !ShardDiscovery.isOpen(shard)) {
+                    lineage.finish(shard.getShardId());
+                }
+            }
+            final List<String> shardIds = new ArrayList<>();
+            for (Shard shard : lineage.takeReady()) {
+                /* Children of shards this consumer finished before a restart continue where the parents ended. */
+                final boolean parentEnded = isEnded(shard.getParentShardId())
+                        || isEnded(shard.getAdjacentParentShardId());
+                startShard(shard.getShardId(), parentEnded ? ShardIteratorType.TRIM_HORIZON.toString()
+                        : config.getShardIteratorType());
+                shardIds.add(shard.getShardId());
+            }
+            if (!closed && config.getShardSyncIntervalMillis() > 0) {
+                syncTask = SharedScheduler.get().scheduleWithFixedDelay(this::syncShards,
+                        config.getShardSyncIntervalMillis(), config.getShardSyncIntervalMillis(),
+                        TimeUnit.MILLISECONDS);
+            }
+            promise.resolve(shardIds);
+        }).catchError(promise::reject).invoke();
+    }
+
+    private boolean isEnded(final String shardId) {
+        return shardId != null && CheckpointStore.SHARD_END.equals(checkpoints.get(shardId));
+    }
+
+    /**
+     * Lists the shards again and starts the ones that became ready. Shards that appear after start were created
+     * by resharding, so they are read from TRIM_HORIZON.
+     */
+    private void syncShards() {
+        if (closed) {
+            return;
+        }
+        ShardDiscovery.describeAllShards(kinesisClient, streamName).then(shards -> {
+            lineage.update(shards);
+            for (Shard shard : lineage.takeReady()) {
+                startShard(shard.getShardId(), ShardIteratorType.TRIM_HORIZON.toString());
+            }
+        }).catchError(error -> {
+            /* Tried again on the next sync or shard end. */
+        }).invoke();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (syncTask != null) {
+            syncTask.cancel(false);
+        }
+        workers.values().forEach(worker -> worker.reader.stop());
+        workers.clear();
+        if (checkpointer != null) {
+            checkpointer.close();
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Starts a shard after its checkpoint if it has one, otherwise at the given iterator type.
+     */
+    private void startShard(final String shardId, final String shardIteratorType) {
+        final String sequenceNumber = checkpoints.get(shardId);
+        if (sequenceNumber != null) {
+            startShard(shardId, ShardIteratorType.AFTER_SEQUENCE_NUMBER.toString(), sequenceNumber);
+        } else {
+            startShard(shardId, shardIteratorType, null);
+        }
+    }
+
+    private void startShard(final String shardId, final String shardIteratorType, final String sequenceNumber) {
+        if (closed) {
+            return;
+        }
+        final ShardWorker worker = new ShardWorker(shardId, shardIteratorType, sequenceNumber);
+        if (workers.putIfAbsent(shardId, worker) == null) {
+            worker.reader.read(shardIteratorType, sequenceNumber, worker);
+        }
+    }
+
+    /**
+     * Reads a shard whose reader failed again after a backoff, after the last record handled without error,
+     * else at the first record the failed reader delivered, else where it started. A reader that started at
+     * LATEST and delivered nothing is resumed at the time it started, so records written since are not skipped.
+     * The shard stays taken in the lineage meanwhile, so its children wait.
+     */
+    private void retryShard(final ShardWorker worker) {
+        SharedScheduler.get().schedule(() -> {
+            if (worker.resumeSequenceNumber != null) {
+                startShard(worker.shardId, ShardIteratorType.AFTER_SEQUENCE_NUMBER.toString(),
+                        worker.resumeSequenceNumber);
+            } else if (worker.firstSequenceNumber != null) {
+                startShard(worker.shardId, ShardIteratorType.AT_SEQUENCE_NUMBER.toString(),
+                        worker.firstSequenceNumber);
+            } else if (ShardIteratorType.LATEST.toString().equals(worker.shardIteratorType)) {
+                startShard(worker.shardId, ShardIteratorType.AT_TIMESTAMP.toString(),
+                        Long.toString(worker.startTime));
+            } else {
+                startShard(worker.shardId, worker.shardIteratorType, worker.sequenceNumber);
+            }
+        }, config.getShardRetryMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the records of one shard and runs the handler on the executor, one task at a time,
+     * so records of the shard are handled in order. Processed records are requested again from the reader
+     * and checkpointed up to the first record the handler failed on.
+     */
+    private class ShardWorker implements RecordSink, Runnable {
+        private final String shardId;
+        private final String shardIteratorType;
+        private final String sequenceNumber;
+        private final RecordSource reader;
+        private final long startTime = System.currentTimeMillis();
+        private final Queue<Record> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean shardEnded;
+        private volatile Throwable readError;
+        private boolean failed;
+        private String lastSequenceNumber;
+        /* Last sequence number the shard can resume after without skipping a record, read by retryShard. */
+        private volatile String resumeSequenceNumber;
+        /* Sequence number of the first record delivered, where the shard resumes if none was handled. */
+        private volatile String firstSequenceNumber;
+
+        private ShardWorker(final String shardId, final String shardIteratorType, final String sequenceNumber) {
+            this.shardId = shardId;
+            this.shardIteratorType = shardIteratorType;
+            this.sequenceNumber = sequenceNumber;
+            this.reader = fanOutConsumer != null
+                    ? new FanOutShardReader(kinesisClient, fanOutConsumer, shardId, readerConfig)
+                    : new KinesisShardReaderImpl(kinesisClient, streamName, shardId, readerConfig);
+        }
+
+        @Override
+        public void onRecord(final Record record) {
+            if (firstSequenceNumber == null) {
+                firstSequenceNumber = record.getSequenceNumber();
+            }
+            queue.add(record);
+            schedule();
+        }
+
+        @Override
+        public void onShardEnd() {
+            shardEnded = true;
+            schedule();
+        }
+
+        /**
+         * Records already queued are still handled, then the shard is retried.
+         */
+        @Override
+        public void onError(final Throwable error) {
+            readError = error;
+            schedule();
+        }
+
+        @Override
+        public void run() {
+            int handled = 0;
+            Record record;
+            while (handled < config.getMaxRecordsPerDispatch() && (record = queue.poll()) != null) {
+                handled++;
+                try {
+                    handler.onRecord(shardId, record);
+                } catch (Exception ex) {
+                    failed = true;
+                    handler.onError(shardId, ex);
+                }
+                if (!failed) {
+                    advance(record);
+                }
+            }
+            if (handled > 0) {
+                reader.request(handled);
+            }
+            scheduled.set(false);
+            if (!queue.isEmpty()) {
+                schedule();
+            } else if (readError != null && workers.remove(shardId, this)) {
+                handler.onError(shardId, readError);
+                retryShard(this);
+            } else if (shardEnded && workers.remove(shardId, this)) {
+                if (checkpointer != null && !failed) {
+                    checkpointer.checkpoint(shardId, CheckpointStore.SHARD_END);
+                }
+                handler.onShardEnd(shardId);
+                lineage.finish(shardId);
+                syncShards();
+            }
+        }
+
+        /**
+         * Records unpacked from one aggregated record share its sequence number, which is only checkpointed
+         * once the next Kinesis record starts, so a restart never skips the rest of an aggregated record.
+         */
+        private void advance(final Record record) {
+            final String sequenceNumber = record.getSequenceNumber();
+            if (record instanceof UserRecord && ((UserRecord) record).isAggregated()) {
+                if (lastSequenceNumber != null && !lastSequenceNumber.equals(sequenceNumber)) {
+                    resume(lastSequenceNumber);
+                }
+                lastSequenceNumber = sequenceNumber;
+            } else {
+                lastSequenceNumber = null;
+                resume(sequenceNumber);
+            }
+        }
+
+        private void resume(final String sequenceNumber) {
+            resumeSequenceNumber = sequenceNumber;
+            if (checkpointer != null) {
+                checkpointer.checkpoint(shardId, sequenceNumber);
+            }
+        }
+
+        private void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import io.advantageous.reakt.kinesis.CheckpointStore;
+import io.advantageous.reakt.promise.Promise;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+/**
+ * Checkpoint store backed by a memory-mapped file, so a save is a few memory writes.
+ * <p>
+ * The file holds a header followed by fixed size slots, one per shard. A slot holds the stream and shard name
+ * and two copies of the sequence number, each with a version and a CRC. A save overwrites the older copy,
+ * so a save torn by a crash leaves the previous sequence number readable.
+ */
+public class MappedFileCheckpointStore implements CheckpointStore {
+
+    private static final int MAGIC = 0x52_4B_43_50;
+    private static final int HEADER_SIZE = 8;
+    private static final int SLOT_SIZE = 768;
+    private static final int KEY_SIZE = 256;
+    private static final int COPY_SIZE = 256;
+    private static final int MAX_VALUE_LENGTH = COPY_SIZE - 8 - 2 - 4;
+    private static final int INITIAL_SLOTS = 256;
+
+    private final FileChannel channel;
+    private final boolean force;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer buffer;
+    private int slotCount;
+
+    public MappedFileCheckpointStore(final File file, final boolean force) {
+        this.force = force;
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            final boolean created = channel.size() == 0;
+            map(Math.max(channel.size(), HEADER_SIZE + (long) INITIAL_SLOTS * SLOT_SIZE));
+            if (created) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, 0);
+            } else if (buffer.getInt(0) != MAGIC) {
+                channel.close();
+                throw new IllegalArgumentException(file + " is not a checkpoint file");
+            }
+            slotCount = buffer.getInt(4);
+            for (int slot = 0; slot < slotCount; slot++) {
+                slots.put(readKey(slot), slot);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public Promise<Map<String, String>> load(final String streamName) {
+        return invokablePromise(promise -> {
+            final Map<String, String> sequenceNumbers = new HashMap<>();
+            final String prefix = streamName + '/';
+            synchronized (this) {
+                slots.forEach((key, slot) -> {
+                    if (key.startsWith(prefix)) {
+                        final String sequenceNumber = readValue(slot);
+                        if (sequenceNumber != null) {
+                            sequenceNumbers.put(key.substring(prefix.length()), sequenceNumber);
+                        }
+                    }
+                });
+            }
+            promise.resolve(sequenceNumbers);
+        });
+    }
+
+    @Override
+    public Promise<Void> save(final String streamName, final Map<String, String> sequenceNumbers) {
+        return invokablePromise(promise -> {
+            try {
+                synchronized (this) {
+                    for (Map.Entry<String, String> entry : sequenceNumbers.entrySet()) {
+                        writeValue(slot(streamName + '/' + entry.getKey()), entry.getValue());
+                    }
+                    if (force) {
+                        buffer.force();
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                promise.reject(ex);
+                return;
+            }
+            promise.resolve(null);
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private int slot(final String key) throws IOException {
+        final Integer existing = slots.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > KEY_SIZE - 2) {
+            throw new IllegalArgumentException("stream and shard name too long: " + key);
+        }
+        final int slot = slotCount;
+        final long end = offset(slot + 1);
+        if (end > buffer.capacity()) {
+            map(Math.max(end, (long) buffer.capacity() * 2));
+        }
+        final int offset = offset(slot);
+        for (int index = offset; index < offset + SLOT_SIZE; index++) {
+            buffer.put(index, (byte) 0);
+        }
+        buffer.putShort(offset, (short) keyBytes.length);
+        put(offset + 2, keyBytes);
+        /* The slot only counts once it is complete. */
+        slotCount = slot + 1;
+        buffer.putInt(4, slotCount);
+        slots.put(key, slot);
+        return slot;
+    }
+
+    private String readKey(final int slot) {
+        final int offset = offset(slot);
+        final byte[] keyBytes = new byte[buffer.getShort(offset)];
+        get(offset + 2, keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    private String readValue(final int slot) {
+        final int first = offset(slot) + KEY_SIZE;
+        final int second = first + COPY_SIZE;
+        final boolean firstValid = isValid(first);
+        final boolean secondValid = isValid(second);
+        final int copy;
+        if (firstValid && secondValid) {
+            copy = buffer.getLong(first) >= buffer.getLong(second) ? first : second;
+        } else if (firstValid || secondValid) {
+            copy = firstValid ? first : second;
+        } else {
+            return null;
+        }
+        final byte[] value = new byte[buffer.getShort(copy + 8)];
+        get(copy + 10, value);
+        return new String(value, StandardCharsets.US_ASCII);
+    }
+
+    private void writeValue(final int slot, final String sequenceNumber) {
+        final byte[] value = sequenceNumber.getBytes(StandardCharsets.US_ASCII);
+        if (value.length > MAX_VALUE_LENGTH) {
+            throw new IllegalArgumentException("sequence number too long: " + sequenceNumber);
+        }
+        final int first = offset(slot) + KEY_SIZE;
+        final int second = first + COPY_SIZE;
+        final long firstVersion = isValid(first) ? buffer.getLong(first) : -1;
+        final long secondVersion = isValid(second) ? buffer.getLong(second) : -1;
+        final int copy = firstVersion <= secondVersion ? first : second;
+        buffer.putLong(copy, Math.max(firstVersion, secondVersion) + 1);
+        buffer.putShort(copy + 8, (short) value.length);
+        put(copy + 10, value);
+        buffer.putInt(copy + 10 + value.length, checksum(copy, value.length));
+    }
+
+    private boolean isValid(final int copy) {
+        final int length = buffer.getShort(copy + 8);
+        if (length <= 0 || length > MAX_VALUE_LENGTH) {
+            return false;
+        }
+        return buffer.getInt(copy + 10 + length) == checksum(copy, length);
+    }
+
+    private int checksum(final int copy, final int length) {
+        final ByteBuffer region = buffer.duplicate();
+        region.limit(copy + 10 + length).position(copy);
+        crc.reset();
+        crc.update(region);
+        return (int) crc.getValue();
+    }
+
+    private void map(final long size) throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void put(final int offset, final byte[] bytes) {
+        final ByteBuffer region = buffer.duplicate();
+        region.position(offset);
+        region.put(bytes);
+    }
+
+    private void get(final int offset, final byte[] bytes) {
+        final ByteBuffer region = buffer.duplicate();
+        region.position(offset);
+        region.get(bytes);
+    }
+
+    private static int offset(final int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,356 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import io.advantageous.reakt.kinesis.SpillConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead spill of PutRecords entries in memory-mapped segment files, read back in the order written.
+ * <p>
+ * A segment starts with a header holding the committed read offset, followed by frames of a length, a CRC and
+ * the stream name, partition key, explicit hash key and data of one entry. A zero length or a bad CRC ends the
+ * written part, so a frame torn by a crash is dropped on open. The spill only keeps the segment being written and
+ * the one being read mapped, and deletes a segment once it has been read and committed. A released mapping goes
+ * away when it is garbage collected, so data buffers of peeked batches that are still referenced keep their segment
+ * in memory. A segment file that cannot be deleted yet, as on platforms that refuse to delete mapped files, is
+ * deleted on a later commit or on close, and a spill opened on it skips and deletes it.
+ */
+public class MappedFileSpill {
+
+    private static final int MAGIC = 0x52_4B_53_50;
+    private static final int HEADER_SIZE = 8;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{20})\\.spill");
+
+    private final File directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final boolean force;
+    /* Segments oldest first, records are read from the first and appended to the last. */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    /* Read and committed segment files whose delete failed. */
+    private final List<File> undeleted = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private long pendingBytes;
+    private long nextIndex;
+    private boolean closed;
+
+    public MappedFileSpill(final SpillConfig config) {
+        this.directory = config.getDirectory();
+        this.segmentBytes = config.getSegmentBytes();
+        this.maxSegments = config.getMaxSegments();
+        this.force = config.isForce();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new UncheckedIOException(new IOException("cannot create spill directory " + directory));
+        }
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                final Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    final Segment segment = new Segment(file);
+                    segment.recover();
+                    segments.addLast(segment);
+                    pendingBytes += segment.end - segment.readOffset;
+                    nextIndex = Long.parseLong(matcher.group(1)) + 1;
+                }
+            }
+        }
+        for (Segment segment : segments) {
+            if (segment != segments.peekFirst() && segment != segments.peekLast()) {
+                segment.release();
+            }
+        }
+    }
+
+    /**
+     * @param streamName stream the entry is replayed to
+     * @param entry      entry
+     * @return false if the spill is full or closed
+     */
+    public synchronized boolean append(final String streamName, final PutRecordsRequestEntry entry) {
+        if (closed) {
+            return false;
+        }
+        final byte[] stream = streamName.getBytes(StandardCharsets.UTF_8);
+        final byte[] partitionKey = entry.getPartitionKey().getBytes(StandardCharsets.UTF_8);
+        final byte[] explicitHashKey = entry.getExplicitHashKey() == null ? null
+                : entry.getExplicitHashKey().getBytes(StandardCharsets.US_ASCII);
+        final ByteBuffer data = entry.getData().duplicate();
+        final int length = 6 + stream.length + partitionKey.length
+                + (explicitHashKey == null ? 0 : explicitHashKey.length) + data.remaining();
+        final int frameSize = FRAME_HEADER_SIZE + length;
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.end + frameSize > segment.buffer.capacity()) {
+            if (segments.size() >= maxSegments || HEADER_SIZE + frameSize > segmentBytes) {
+                return false;
+            }
+            if (segment != null && segment != segments.peekFirst()) {
+                segment.release();
+            }
+            segment = create();
+            segments.addLast(segment);
+        }
+        final ByteBuffer frame = segment.buffer.duplicate();
+        frame.position(segment.end + FRAME_HEADER_SIZE);
+        frame.putShort((short) stream.length).put(stream);
+        frame.putShort((short) partitionKey.length).put(partitionKey);
+        frame.putShort((short) (explicitHashKey == null ? -1 : explicitHashKey.length));
+        if (explicitHashKey != null) {
+            frame.put(explicitHashKey);
+        }
+        frame.put(data);
+        segment.buffer.putInt(segment.end + 4, checksum(segment.buffer, segment.end, length));
+        /* The length goes last, a frame only counts once it is complete. */
+        segment.buffer.putInt(segment.end, length);
+        segment.end += frameSize;
+        pendingBytes += frameSize;
+        if (force) {
+            segment.buffer.force();
+        }
+        return true;
+    }
+
+    /**
+     * Reads the oldest records without removing them. A batch holds records of one stream within one segment.
+     * The data buffers are views of the mapped segment.
+     *
+     * @param maxRecords max records
+     * @param maxBytes   max bytes of data and partition keys, the first record is always included
+     * @return oldest records, or null if the spill is empty or closed
+     */
+    public synchronized Batch peek(final int maxRecords, final long maxBytes) {
+        if (closed) {
+            return null;
+        }
+        Segment segment = segments.peekFirst();
+        while (segment != null && segment.readOffset >= segment.end && segment != segments.peekLast()) {
+            delete(segments.removeFirst());
+            segment = segments.peekFirst();
+            segment.map();
+        }
+        if (segment == null || segment.readOffset >= segment.end) {
+            return null;
+        }
+        final MappedByteBuffer buffer = segment.buffer;
+        final List<PutRecordsRequestEntry> entries = new ArrayList<>();
+        String streamName = null;
+        long bytes = 0;
+        int offset = segment.readOffset;
+        while (offset < segment.end && entries.size() < maxRecords) {
+            final int length = buffer.getInt(offset);
+            final ByteBuffer frame = buffer.duplicate();
+            frame.limit(offset + FRAME_HEADER_SIZE + length).position(offset + FRAME_HEADER_SIZE);
+            final String stream = string(frame, StandardCharsets.UTF_8);
+            if (streamName != null && !streamName.equals(stream)) {
+                break;
+            }
+            final String partitionKey = string(frame, StandardCharsets.UTF_8);
+            final String explicitHashKey = string(frame, StandardCharsets.US_ASCII);
+            final ByteBuffer data = frame.slice();
+            final int size = Records.size(data, partitionKey);
+            if (!entries.isEmpty() && bytes + size > maxBytes) {
+                break;
+            }
+            streamName = stream;
+            bytes += size;
+            entries.add(new PutRecordsRequestEntry().withData(data).withPartitionKey(partitionKey)
+                    .withExplicitHashKey(explicitHashKey));
+            offset += FRAME_HEADER_SIZE + length;
+        }
+        return new Batch(streamName, entries, segment, offset);
+    }
+
+    /**
+     * Removes the records of a batch returned by {@link #peek(int, long)}.
+     *
+     * Once the spill is closed commits are dropped, and the records are replayed again when it is reopened.
+     *
+     * @param batch batch that has been written to Kinesis
+     */
+    public synchronized void commit(final Batch batch) {
+        if (closed) {
+            return;
+        }
+        final Segment segment = batch.segment;
+        pendingBytes -= batch.endOffset - segment.readOffset;
+        segment.readOffset = batch.endOffset;
+        segment.buffer.putInt(4, segment.readOffset);
+        if (segment.readOffset >= segment.end && segment != segments.peekLast()) {
+            delete(segments.removeFirst());
+            final Segment next = segments.peekFirst();
+            if (next != null) {
+                next.map();
+            }
+        } else if (force) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * @return bytes of spilled records not committed yet, including frame overhead
+     */
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pendingBytes == 0;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        for (Segment segment : segments) {
+            segment.release();
+        }
+        retryDeletes();
+    }
+
+    /**
+     * Deletes a segment that has been read and committed. A failed delete is retried later, the committed read
+     * offset in its header keeps its records from being replayed if it is still there on the next open.
+     */
+    private void delete(final Segment segment) {
+        segment.buffer = null;
+        retryDeletes();
+        if (!segment.file.delete() && segment.file.exists()) {
+            undeleted.add(segment.file);
+        }
+    }
+
+    private void retryDeletes() {
+        undeleted.removeIf(file -> file.delete() || !file.exists());
+    }
+
+    private Segment create() {
+        final File file = new File(directory, String.format("segment-%020d.spill", nextIndex++));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final Segment segment = new Segment(file);
+            segment.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, HEADER_SIZE);
+            segment.readOffset = HEADER_SIZE;
+            segment.end = HEADER_SIZE;
+            return segment;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private int checksum(final MappedByteBuffer buffer, final int offset, final int length) {
+        final ByteBuffer region = buffer.duplicate();
+        region.limit(offset + FRAME_HEADER_SIZE + length).position(offset + FRAME_HEADER_SIZE);
+        crc.reset();
+        crc.update(region);
+        return (int) crc.getValue();
+    }
+
+    private static String string(final ByteBuffer frame, final Charset charset) {
+        final short length = frame.getShort();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        frame.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Records of one stream read from the spill.
+     */
+    public static class Batch {
+        private final String streamName;
+        private final List<PutRecordsRequestEntry> entries;
+        private final Segment segment;
+        private final int endOffset;
+
+        private Batch(final String streamName, final List<PutRecordsRequestEntry> entries, final Segment segment,
+                      final int endOffset) {
+            this.streamName = streamName;
+            this.entries = entries;
+            this.segment = segment;
+            this.endOffset = endOffset;
+        }
+
+        public String getStreamName() {
+            return streamName;
+        }
+
+        public List<PutRecordsRequestEntry> getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * One segment file, mapped while it is read or written.
+     */
+    private class Segment {
+        private final File file;
+        private MappedByteBuffer buffer;
+        private int readOffset;
+        private int end;
+
+        private Segment(final File file) {
+            this.file = file;
+        }
+
+        /**
+         * Finds the end of the written part, stopping at the first frame that is incomplete or corrupt.
+         */
+        private void recover() {
+            map();
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IllegalArgumentException(file + " is not a spill segment");
+            }
+            int offset = HEADER_SIZE;
+            while (offset + FRAME_HEADER_SIZE <= buffer.capacity()) {
+                final int length = buffer.getInt(offset);
+                if (length <= 0 || length > buffer.capacity() - offset - FRAME_HEADER_SIZE
+                        || buffer.getInt(offset + 4) != checksum(buffer, offset, length)) {
+                    break;
+                }
+                offset += FRAME_HEADER_SIZE + length;
+            }
+            end = offset;
+            readOffset = Math.min(Math.max(buffer.getInt(4), HEADER_SIZE), end);
+        }
+
+        private void map() {
+            if (buffer != null) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private void release() {
+            if (buffer != null) {
+                buffer.force();
+                buffer = null;
+            }
+        }
+    }
+}
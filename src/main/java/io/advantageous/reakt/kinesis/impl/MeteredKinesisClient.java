@@ -0,0 +1,311 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.*;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.KinesisMetrics;
+import io.advantageous.reakt.kinesis.KinesisOperation;
+import io.advantageous.reakt.kinesis.OperationMetrics;
+import io.advantageous.reakt.promise.Promise;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static io.advantageous.reakt.kinesis.KinesisOperation.*;
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+/**
+ * Records {@link KinesisMetrics} for every call: latency, in-flight calls, outcomes, bytes per stream and shard
+ * and the MillisBehindLatest of each shard read. Reads are mapped to shards by following the shard iterators
+ * this client hands out.
+ * <p>
+ * Latency covers what the wrapped client does, so a metered client directly around the SDK client measures
+ * the HTTP call and the SDK queue, and one wrapped around a retrying or rate limited client includes
+ * retries and local throttling.
+ */
+public class MeteredKinesisClient extends DelegatingKinesisClient {
+
+    private static final String THROTTLED = "ProvisionedThroughputExceededException";
+
+    private final KinesisMetrics metrics;
+    private final ShardIterators<ShardKey> shardIterators = new ShardIterators<>();
+
+    public MeteredKinesisClient(final KinesisClient delegate, final KinesisMetrics metrics) {
+        super(delegate);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Promise<AddTagsToStreamResult> addTagsToStream(final AddTagsToStreamRequest request) {
+        return meter(ADD_TAGS_TO_STREAM, () -> delegate.addTagsToStream(request));
+    }
+
+    @Override
+    public Promise<CreateStreamResult> createStream(final CreateStreamRequest request) {
+        return meter(CREATE_STREAM, () -> delegate.createStream(request));
+    }
+
+    @Override
+    public Promise<DecreaseStreamRetentionPeriodResult> decreaseStreamRetentionPeriod(
+            final DecreaseStreamRetentionPeriodRequest request) {
+        return meter(DECREASE_STREAM_RETENTION_PERIOD, () -> delegate.decreaseStreamRetentionPeriod(request));
+    }
+
+    @Override
+    public Promise<DeleteStreamResult> deleteStream(final DeleteStreamRequest request) {
+        return meter(DELETE_STREAM, () -> delegate.deleteStream(request));
+    }
+
+    @Override
+    public Promise<DeleteStreamResult> deleteStream(final String streamName) {
+        return meter(DELETE_STREAM, () -> delegate.deleteStream(streamName));
+    }
+
+    @Override
+    public Promise<DescribeStreamResult> describeStream(final DescribeStreamRequest request) {
+        return meter(DESCRIBE_STREAM, () -> delegate.describeStream(request));
+    }
+
+    @Override
+    public Promise<DescribeStreamResult> describeStream(final String streamName) {
+        return meter(DESCRIBE_STREAM, () -> delegate.describeStream(streamName));
+    }
+
+    @Override
+    public Promise<DescribeStreamResult> describeStream(final String streamName, final int limit,
+                                                        final String exclusiveStartShardId) {
+        return meter(DESCRIBE_STREAM, () -> delegate.describeStream(streamName, limit, exclusiveStartShardId));
+    }
+
+    @Override
+    public Promise<DisableEnhancedMonitoringResult> disableEnhancedMonitoring(
+            final DisableEnhancedMonitoringRequest request) {
+        return meter(DISABLE_ENHANCED_MONITORING, () -> delegate.disableEnhancedMonitoring(request));
+    }
+
+    @Override
+    public Promise<EnableEnhancedMonitoringResult> enableEnhancedMonitoring(
+            final EnableEnhancedMonitoringRequest request) {
+        return meter(ENABLE_ENHANCED_MONITORING, () -> delegate.enableEnhancedMonitoring(request));
+    }
+
+    @Override
+    public Promise<GetRecordsResult> getRecords(final GetRecordsRequest request) {
+        final ShardKey shard = shardIterators.get(request.getShardIterator());
+        return meter(GET_RECORDS, () -> delegate.getRecords(request), result -> {
+            if (shard == null) {
+                return;
+            }
+            shardIterators.remove(request.getShardIterator());
+            long bytes = 0;
+            for (Record record : result.getRecords()) {
+                bytes += Records.size(record.getData(), record.getPartitionKey());
+            }
+            metrics.bytesRead(shard.streamName, shard.shardId, bytes);
+            if (result.getMillisBehindLatest() != null) {
+                metrics.millisBehindLatest(shard.streamName, shard.shardId, result.getMillisBehindLatest());
+            }
+            if (result.getNextShardIterator() != null) {
+                shardIterators.put(result.getNextShardIterator(), shard);
+            } else {
+                metrics.shardEnded(shard.streamName, shard.shardId);
+            }
+        }, error -> {
+            if (shard != null && !KinesisMetrics.isThrottle(error)) {
+                shardIterators.remove(request.getShardIterator());
+            }
+        });
+    }
+
+    @Override
+    public Promise<GetShardIteratorResult> getShardIteratorAsync(final GetShardIteratorRequest request) {
+        return meter(GET_SHARD_ITERATOR, () -> delegate.getShardIteratorAsync(request),
+                result -> track(request.getStreamName(), request.getShardId(), result), null);
+    }
+
+    @Override
+    public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                 final String shardIteratorType) {
+        return meter(GET_SHARD_ITERATOR, () -> delegate.getShardIteratorAsync(streamName, shardId, shardIteratorType),
+                result -> track(streamName, shardId, result), null);
+    }
+
+    @Override
+    public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                 final String shardIteratorType,
+                                                                 final String startingSequenceNumber) {
+        return meter(GET_SHARD_ITERATOR,
+                () -> delegate.getShardIteratorAsync(streamName, shardId, shardIteratorType, startingSequenceNumber),
+                result -> track(streamName, shardId, result), null);
+    }
+
+    @Override
+    public Promise<IncreaseStreamRetentionPeriodResult> increaseStreamRetentionPeriod(
+            final IncreaseStreamRetentionPeriodRequest request) {
+        return meter(INCREASE_STREAM_RETENTION_PERIOD, () -> delegate.increaseStreamRetentionPeriod(request));
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams() {
+        return meter(LIST_STREAMS, () -> delegate.listStreams());
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams(final int limit, final String exclusiveStartStreamName) {
+        return meter(LIST_STREAMS, () -> delegate.listStreams(limit, exclusiveStartStreamName));
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams(final String exclusiveStartStreamName) {
+        return meter(LIST_STREAMS, () -> delegate.listStreams(exclusiveStartStreamName));
+    }
+
+    @Override
+    public Promise<ListStreamsResult> listStreams(final ListStreamsRequest request) {
+        return meter(LIST_STREAMS, () -> delegate.listStreams(request));
+    }
+
+    @Override
+    public Promise<ListTagsForStreamResult> listTagsForStream(final ListTagsForStreamRequest request) {
+        return meter(LIST_TAGS_FOR_STREAM, () -> delegate.listTagsForStream(request));
+    }
+
+    @Override
+    public Promise<MergeShardsResult> mergeShards(final MergeShardsRequest request) {
+        return meter(MERGE_SHARDS, () -> delegate.mergeShards(request));
+    }
+
+    @Override
+    public Promise<MergeShardsResult> mergeShards(final String streamName, final String shardToMerge,
+                                                  final String adjacentShardToMerge) {
+        return meter(MERGE_SHARDS, () -> delegate.mergeShards(streamName, shardToMerge, adjacentShardToMerge));
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final PutRecordRequest request) {
+        return meter(PUT_RECORD, () -> delegate.putRecord(request), result -> metrics.bytesWritten(
+                request.getStreamName(), result.getShardId(), Records.size(request.getData(),
+                        request.getPartitionKey())), error -> writeFailed(request.getStreamName(), error));
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey) {
+        return meter(PUT_RECORD, () -> delegate.putRecord(streamName, data, partitionKey), result ->
+                metrics.bytesWritten(streamName, result.getShardId(), Records.size(data, partitionKey)),
+                error -> writeFailed(streamName, error));
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey, final String sequenceNumberForOrdering) {
+        return meter(PUT_RECORD, () -> delegate.putRecord(streamName, data, partitionKey, sequenceNumberForOrdering),
+                result -> metrics.bytesWritten(streamName, result.getShardId(), Records.size(data, partitionKey)),
+                error -> writeFailed(streamName, error));
+    }
+
+    @Override
+    public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+        return meter(PUT_RECORDS, () -> delegate.putRecords(request), result -> {
+            final List<PutRecordsRequestEntry> entries = request.getRecords();
+            final List<PutRecordsResultEntry> resultEntries = result.getRecords();
+            long failed = 0;
+            long throttled = 0;
+            for (int index = 0; index < resultEntries.size(); index++) {
+                final PutRecordsResultEntry resultEntry = resultEntries.get(index);
+                if (resultEntry.getErrorCode() != null) {
+                    failed++;
+                    if (THROTTLED.equals(resultEntry.getErrorCode())) {
+                        throttled++;
+                    }
+                } else {
+                    final PutRecordsRequestEntry entry = entries.get(index);
+                    metrics.bytesWritten(request.getStreamName(), resultEntry.getShardId(),
+                            Records.size(entry.getData(), entry.getPartitionKey()));
+                }
+            }
+            if (failed > 0) {
+                metrics.operation(PUT_RECORDS).failedRecords(failed);
+            }
+            if (throttled > 0) {
+                metrics.writesThrottled(request.getStreamName(), throttled);
+            }
+        }, error -> writeFailed(request.getStreamName(), error, request.getRecords().size()));
+    }
+
+    @Override
+    public Promise<RemoveTagsFromStreamResult> removeTagsFromStream(final RemoveTagsFromStreamRequest request) {
+        return meter(REMOVE_TAGS_FROM_STREAM, () -> delegate.removeTagsFromStream(request));
+    }
+
+    @Override
+    public Promise<SplitShardResult> splitShardAsync(final SplitShardRequest request) {
+        return meter(SPLIT_SHARD, () -> delegate.splitShardAsync(request));
+    }
+
+    @Override
+    public Promise<SplitShardResult> splitShardAsync(final String streamName, final String shardToSplit,
+                                                     final String newStartingHashKey) {
+        return meter(SPLIT_SHARD, () -> delegate.splitShardAsync(streamName, shardToSplit, newStartingHashKey));
+    }
+
+    private void writeFailed(final String streamName, final Throwable error) {
+        writeFailed(streamName, error, 1);
+    }
+
+    private void writeFailed(final String streamName, final Throwable error, final int records) {
+        if (KinesisMetrics.isThrottle(error)) {
+            metrics.writesThrottled(streamName, records);
+        }
+    }
+
+    private void track(final String streamName, final String shardId, final GetShardIteratorResult result) {
+        if (result.getShardIterator() != null) {
+            shardIterators.put(result.getShardIterator(), new ShardKey(streamName, shardId));
+        }
+    }
+
+    private <T> Promise<T> meter(final KinesisOperation operation, final Supplier<Promise<T>> call) {
+        return meter(operation, call, null, null);
+    }
+
+    private <T> Promise<T> meter(final KinesisOperation operation, final Supplier<Promise<T>> call,
+                                 final Consumer<T> onSuccess, final Consumer<Throwable> onError) {
+        final OperationMetrics operationMetrics = metrics.operation(operation);
+        return invokablePromise(promise -> {
+            final long start = operationMetrics.started();
+            final Promise<T> pending;
+            try {
+                pending = call.get();
+            } catch (RuntimeException ex) {
+                operationMetrics.completed(start, ex);
+                promise.reject(ex);
+                return;
+            }
+            pending.then(result -> {
+                operationMetrics.completed(start, null);
+                if (onSuccess != null) {
+                    onSuccess.accept(result);
+                }
+                promise.resolve(result);
+            }).catchError(error -> {
+                operationMetrics.completed(start, error);
+                if (onError != null) {
+                    onError.accept(error);
+                }
+                promise.reject(error);
+            }).invoke();
+        });
+    }
+
+    private static class ShardKey {
+        private final String streamName;
+        private final String shardId;
+
+        private ShardKey(final String streamName, final String shardId) {
+            this.streamName = streamName;
+            this.shardId = shardId;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import io.advantageous.reakt.kinesis.BatchingKinesisProducer;
+import io.advantageous.reakt.kinesis.ByteBufferPool;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.RetryPolicy;
+import io.advantageous.reakt.promise.Promise;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+/**
+ * Takes ownership of the data buffers of putRecord and putRecords and returns them to a pool once the call
+ * completes either way, so a producer that fills pooled direct buffers allocates no payload per record.
+ * Callers must not touch a buffer after passing it in.
+ * <p>
+ * This must be the outermost wrapper. A retry made by a client around this one, or by a caller that resends
+ * failed entries, would resend buffers that are already back in the pool. Retries through
+ * {@link #putRecords(PutRecordsRequest, RetryPolicy)} are safe, the buffers go back once the last attempt
+ * completes. Wrapping this client in any {@link DelegatingKinesisClient}, and so in a second pooled client, fails
+ * with an IllegalArgumentException. A {@link BatchingKinesisProducer} refuses it with a spill, which copies the
+ * data of failed records after the call completes, and with aggregation, which copies every record so the pooled
+ * buffers would never go back.
+ */
+public class PooledPayloadKinesisClient extends DelegatingKinesisClient {
+
+    private final ByteBufferPool pool;
+
+    public PooledPayloadKinesisClient(final KinesisClient delegate, final ByteBufferPool pool) {
+        super(delegate);
+        this.pool = pool;
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final PutRecordRequest request) {
+        return invokablePromise(promise -> delegate.putRecord(request).then(result -> {
+            pool.release(request.getData());
+            promise.resolve(result);
+        }).catchError(error -> {
+            pool.release(request.getData());
+            promise.reject(error);
+        }).invoke());
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey) {
+        return invokablePromise(promise -> delegate.putRecord(streamName, data, partitionKey).then(result -> {
+            pool.release(data);
+            promise.resolve(result);
+        }).catchError(error -> {
+            pool.release(data);
+            promise.reject(error);
+        }).invoke());
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey, final String sequenceNumberForOrdering) {
+        return invokablePromise(promise -> delegate.putRecord(streamName, data, partitionKey,
+                sequenceNumberForOrdering).then(result -> {
+            pool.release(data);
+            promise.resolve(result);
+        }).catchError(error -> {
+            pool.release(data);
+            promise.reject(error);
+        }).invoke());
+    }
+
+    @Override
+    public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+        return invokablePromise(promise -> delegate.putRecords(request).then(result -> {
+            release(request.getRecords());
+            promise.resolve(result);
+        }).catchError(error -> {
+            release(request.getRecords());
+            promise.reject(error);
+        }).invoke());
+    }
+
+    /**
+     * Every attempt resends the same buffers, so they are released once, after the final result.
+     */
+    @Override
+    public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request, final RetryPolicy retryPolicy) {
+        return invokablePromise(promise -> delegate.putRecords(request, retryPolicy).then(result -> {
+            release(request.getRecords());
+            promise.resolve(result);
+        }).catchError(error -> {
+            release(request.getRecords());
+            promise.reject(error);
+        }).invoke());
+    }
+
+    private void release(final List<PutRecordsRequestEntry> entries) {
+        for (PutRecordsRequestEntry entry : entries) {
+            pool.release(entry.getData());
+        }
+    }
+}
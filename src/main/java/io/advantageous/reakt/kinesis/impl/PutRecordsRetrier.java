@@ -0,0 +1,173 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.RetryPolicy;
+import io.advantageous.reakt.promise.Promise;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+/**
+ * Sends a PutRecords request and resends only the entries that failed, with jittered exponential backoff,
+ * until every entry succeeded or the retry policy is used up.
+ */
+public class PutRecordsRetrier {
+
+    private final KinesisClient kinesisClient;
+    private final RetryPolicy retryPolicy;
+
+    public PutRecordsRetrier(final KinesisClient kinesisClient, final RetryPolicy retryPolicy) {
+        this.kinesisClient = kinesisClient;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @param request request
+     * @return promise of PutRecordsResult with one entry per request entry, in request order
+     */
+    public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+        return putRecords(kinesisClient, request, retryPolicy);
+    }
+
+    /**
+     * Same as {@link #putRecords(PutRecordsRequest)} without a retrier instance, only the per call state is
+     * allocated.
+     *
+     * @param kinesisClient client the attempts are sent through
+     * @param request       request
+     * @param retryPolicy   retry policy
+     * @return promise of PutRecordsResult with one entry per request entry, in request order
+     */
+    public static Promise<PutRecordsResult> putRecords(final KinesisClient kinesisClient,
+                                                       final PutRecordsRequest request,
+                                                       final RetryPolicy retryPolicy) {
+        return invokablePromise(promise -> new Attempt(kinesisClient, retryPolicy, request, promise).send());
+    }
+
+    static boolean isRetryable(final Throwable error) {
+        if (error instanceof ProvisionedThroughputExceededException) {
+            return true;
+        }
+        if (error instanceof AmazonServiceException) {
+            return ((AmazonServiceException) error).getStatusCode() >= 500;
+        }
+        return error instanceof AmazonClientException && ((AmazonClientException) error).isRetryable();
+    }
+
+    private static boolean isRetryable(final PutRecordsResultEntry resultEntry) {
+        /* Kinesis only reports ProvisionedThroughputExceededException and InternalFailure per entry. */
+        return resultEntry.getErrorCode() != null;
+    }
+
+    /**
+     * State of one retried PutRecords call.
+     */
+    private static class Attempt {
+        private final KinesisClient kinesisClient;
+        private final RetryPolicy retryPolicy;
+        private final PutRecordsRequest request;
+        private final Promise<PutRecordsResult> promise;
+        private final PutRecordsResultEntry[] results;
+        private final long startTime = System.currentTimeMillis();
+        private int[] pending;
+        private int attempts;
+
+        private Attempt(final KinesisClient kinesisClient, final RetryPolicy retryPolicy,
+                        final PutRecordsRequest request, final Promise<PutRecordsResult> promise) {
+            this.kinesisClient = kinesisClient;
+            this.retryPolicy = retryPolicy;
+            this.request = request;
+            this.promise = promise;
+            this.results = new PutRecordsResultEntry[request.getRecords().size()];
+            this.pending = new int[results.length];
+            Arrays.setAll(pending, index -> index);
+        }
+
+        private void send() {
+            attempts++;
+            final PutRecordsRequest attemptRequest;
+            if (pending.length == results.length) {
+                attemptRequest = request;
+            } else {
+                final List<PutRecordsRequestEntry> requestEntries = request.getRecords();
+                final List<PutRecordsRequestEntry> entries = new ArrayList<>(pending.length);
+                for (int index : pending) {
+                    entries.add(requestEntries.get(index));
+                }
+                attemptRequest = new PutRecordsRequest().withStreamName(request.getStreamName()).withRecords(entries);
+            }
+            kinesisClient.putRecords(attemptRequest).then(this::onResult).catchError(this::onError).invoke();
+        }
+
+        private void onResult(final PutRecordsResult result) {
+            final List<PutRecordsResultEntry> resultEntries = result.getRecords();
+            int failed = 0;
+            for (int index = 0; index < pending.length; index++) {
+                final PutRecordsResultEntry resultEntry = resultEntries.get(index);
+                results[pending[index]] = resultEntry;
+                if (isRetryable(resultEntry)) {
+                    pending[failed++] = pending[index];
+                }
+            }
+            pending = Arrays.copyOf(pending, failed);
+            if (failed == 0 || !retryOrFalse()) {
+                finish();
+            }
+        }
+
+        private void onError(final Throwable error) {
+            if (isRetryable(error) && retryOrFalse()) {
+                return;
+            }
+            if (attempts == 1) {
+                promise.reject(error);
+                return;
+            }
+            final String errorCode = error instanceof AmazonServiceException
+                    ? ((AmazonServiceException) error).getErrorCode() : error.getClass().getSimpleName();
+            for (int index : pending) {
+                results[index] = new PutRecordsResultEntry().withErrorCode(errorCode)
+                        .withErrorMessage(error.getMessage());
+            }
+            finish();
+        }
+
+        private boolean retryOrFalse() {
+            if (attempts >= retryPolicy.getMaxAttempts()) {
+                return false;
+            }
+            final long ceiling = Math.min(retryPolicy.getMaxBackoffMillis(),
+                    retryPolicy.getBaseBackoffMillis() << Math.min(attempts - 1, 20));
+            final long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+            if (System.currentTimeMillis() + delay - startTime > retryPolicy.getMaxElapsedMillis()) {
+                return false;
+            }
+            final ScheduledExecutorService scheduler = retryPolicy.getScheduler();
+            (scheduler != null ? scheduler : SharedScheduler.get()).schedule(this::send, delay, TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        private void finish() {
+            int failedRecordCount = 0;
+            for (PutRecordsResultEntry resultEntry : results) {
+                if (resultEntry.getErrorCode() != null) {
+                    failedRecordCount++;
+                }
+            }
+            promise.resolve(new PutRecordsResult().withRecords(results).withFailedRecordCount(failedRecordCount));
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.GetShardIteratorRequest;
+import com.amazonaws.services.kinesis.model.GetShardIteratorResult;
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.Shard;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.ShardMap;
+import io.advantageous.reakt.kinesis.ShardMapCache;
+import io.advantageous.reakt.kinesis.ShardRateLimits;
+import io.advantageous.reakt.promise.Promise;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+/**
+ * Delays putRecord, putRecords and getRecords calls locally so each shard stays within its throughput limits.
+ * Puts are mapped to shards with a {@link ShardMap}. Reads are mapped to shards by following the shard
+ * iterators this client hands out. Calls that cannot be mapped to a shard are not delayed.
+ */
+public class RateLimitedKinesisClient extends DelegatingKinesisClient {
+
+    private final ShardRateLimits limits;
+    private final ShardMapCache shardMapCache;
+    private final ScheduledExecutorService scheduler;
+    private final long maxDelayNanos;
+    private final ConcurrentMap<String, ShardThrottle> throttles = new ConcurrentHashMap<>();
+    private final ShardIterators<ShardThrottle> shardIterators = new ShardIterators<>();
+
+    public RateLimitedKinesisClient(final KinesisClient delegate, final ShardRateLimits limits) {
+        this(delegate, limits, limits.getShardMapCache() != null ? limits.getShardMapCache()
+                : ShardMapCache.create(delegate));
+    }
+
+    /**
+     * Calls go through the invalidating client of the cache, so reshards and puts that land on other shards than
+     * the map predicted drop the cached map.
+     */
+    private RateLimitedKinesisClient(final KinesisClient delegate, final ShardRateLimits limits,
+                                     final ShardMapCache shardMapCache) {
+        super(shardMapCache.invalidatingClient(delegate));
+        this.limits = limits;
+        this.shardMapCache = shardMapCache;
+        this.scheduler = limits.getScheduler() != null ? limits.getScheduler() : SharedScheduler.get();
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(limits.getMaxDelayMillis());
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final PutRecordRequest request) {
+        return write(request.getStreamName(), request.getPartitionKey(), request.getExplicitHashKey(),
+                request.getData(), () -> delegate.putRecord(request));
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey) {
+        return write(streamName, partitionKey, null, data, () -> delegate.putRecord(streamName, data, partitionKey));
+    }
+
+    @Override
+    public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                              final String partitionKey, final String sequenceNumberForOrdering) {
+        return write(streamName, partitionKey, null, data,
+                () -> delegate.putRecord(streamName, data, partitionKey, sequenceNumberForOrdering));
+    }
+
+    @Override
+    public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+        return invokablePromise(promise -> withShardMap(request.getStreamName(), shardMap -> {
+            if (shardMap == null) {
+                forward(() -> delegate.putRecords(request), promise);
+                return;
+            }
+            final Map<ShardThrottle, long[]> usage = new HashMap<>();
+            for (PutRecordsRequestEntry entry : request.getRecords()) {
+                final Shard shard = shardMap.shardFor(entry.getPartitionKey(), entry.getExplicitHashKey());
+                if (shard != null) {
+                    final long[] recordsAndBytes = usage.computeIfAbsent(
+                            throttle(request.getStreamName(), shard.getShardId()), throttle -> new long[2]);
+                    recordsAndBytes[0]++;
+                    recordsAndBytes[1] += Records.size(entry.getData(), entry.getPartitionKey());
+                }
+            }
+            final long now = System.nanoTime();
+            long delay = 0;
+            final Map<ShardThrottle, long[]> reserved = new HashMap<>();
+            for (Map.Entry<ShardThrottle, long[]> entry : usage.entrySet()) {
+                final long shardDelay = entry.getKey().reserveWrite(entry.getValue()[0], entry.getValue()[1], now);
+                if (shardDelay < 0) {
+                    reserved.forEach((throttle, recordsAndBytes) ->
+                            throttle.refundWrite(recordsAndBytes[0], recordsAndBytes[1], now));
+                    promise.reject(new ProvisionedThroughputExceededException("shard "
+                            + entry.getKey().shardId + " is over its local write limit"));
+                    return;
+                }
+                reserved.put(entry.getKey(), entry.getValue());
+                delay = Math.max(delay, shardDelay);
+            }
+            forwardAfter(delay, () -> delegate.putRecords(request), promise);
+        }));
+    }
+
+    @Override
+    public Promise<GetShardIteratorResult> getShardIteratorAsync(final GetShardIteratorRequest request) {
+        return track(request.getStreamName(), request.getShardId(), delegate.getShardIteratorAsync(request));
+    }
+
+    @Override
+    public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                 final String shardIteratorType) {
+        return track(streamName, shardId, delegate.getShardIteratorAsync(streamName, shardId, shardIteratorType));
+    }
+
+    @Override
+    public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                 final String shardIteratorType,
+                                                                 final String startingSequenceNumber) {
+        return track(streamName, shardId, delegate.getShardIteratorAsync(streamName, shardId, shardIteratorType,
+                startingSequenceNumber));
+    }
+
+    @Override
+    public Promise<GetRecordsResult> getRecords(final GetRecordsRequest request) {
+        return invokablePromise(promise -> {
+            final ShardThrottle throttle = shardIterators.remove(request.getShardIterator());
+            if (throttle == null) {
+                forward(() -> delegate.getRecords(request), promise);
+                return;
+            }
+            final long delay = throttle.reserveRead(System.nanoTime());
+            if (delay < 0) {
+                shardIterators.put(request.getShardIterator(), throttle);
+                promise.reject(new ProvisionedThroughputExceededException("shard "
+                        + throttle.shardId + " is over its local read limit"));
+                return;
+            }
+            final Runnable call = () -> delegate.getRecords(request).then(result -> {
+                long bytes = 0;
+                for (Record record : result.getRecords()) {
+                    bytes += Records.size(record.getData(), record.getPartitionKey());
+                }
+                throttle.readBytes.charge(bytes, System.nanoTime());
+                if (result.getNextShardIterator() != null) {
+                    shardIterators.put(result.getNextShardIterator(), throttle);
+                }
+                promise.resolve(result);
+            }).catchError(error -> {
+                if (error instanceof ProvisionedThroughputExceededException) {
+                    shardIterators.put(request.getShardIterator(), throttle);
+                }
+                promise.reject(error);
+            }).invoke();
+            if (delay == 0) {
+                call.run();
+            } else {
+                scheduler.schedule(call, delay, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    private Promise<PutRecordResult> write(final String streamName, final String partitionKey,
+                                           final String explicitHashKey, final ByteBuffer data,
+                                           final Supplier<Promise<PutRecordResult>> call) {
+        return invokablePromise(promise -> withShardMap(streamName, shardMap -> {
+            final Shard shard = shardMap == null ? null : shardMap.shardFor(partitionKey, explicitHashKey);
+            if (shard == null) {
+                forward(call, promise);
+                return;
+            }
+            final ShardThrottle throttle = throttle(streamName, shard.getShardId());
+            final long delay = throttle.reserveWrite(1, Records.size(data, partitionKey), System.nanoTime());
+            if (delay < 0) {
+                promise.reject(new ProvisionedThroughputExceededException("shard "
+                        + shard.getShardId() + " is over its local write limit"));
+                return;
+            }
+            forwardAfter(delay, call, promise);
+        }));
+    }
+
+    private Promise<GetShardIteratorResult> track(final String streamName, final String shardId,
+                                                  final Promise<GetShardIteratorResult> call) {
+        return invokablePromise(promise -> call.then(result -> {
+            if (result.getShardIterator() != null) {
+                shardIterators.put(result.getShardIterator(), throttle(streamName, shardId));
+            }
+            promise.resolve(result);
+        }).catchError(promise::reject).invoke());
+    }
+
+    private void withShardMap(final String streamName, final Consumer<ShardMap> action) {
+        final ShardMap shardMap = shardMapCache.cachedShardMap(streamName);
+        if (shardMap != null) {
+            action.accept(shardMap);
+        } else {
+            shardMapCache.shardMap(streamName).then(action).catchError(error -> action.accept(null)).invoke();
+        }
+    }
+
+    private ShardThrottle throttle(final String streamName, final String shardId) {
+        return throttles.computeIfAbsent(streamName + '/' + shardId, key -> new ShardThrottle(shardId));
+    }
+
+    private <T> void forwardAfter(final long delayNanos, final Supplier<Promise<T>> call, final Promise<T> promise) {
+        if (delayNanos == 0) {
+            forward(call, promise);
+        } else {
+            scheduler.schedule(() -> forward(call, promise), delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static <T> void forward(final Supplier<Promise<T>> call, final Promise<T> promise) {
+        call.get().then(promise::resolve).catchError(promise::reject).invoke();
+    }
+
+    /**
+     * Token buckets of one shard.
+     */
+    private class ShardThrottle {
+        private final String shardId;
+        private final TokenBucket writeRecords = new TokenBucket(limits.getWriteRecordsPerSecond());
+        private final TokenBucket writeBytes = new TokenBucket(limits.getWriteBytesPerSecond());
+        private final TokenBucket readCalls = new TokenBucket(limits.getReadCallsPerSecond());
+        private final TokenBucket readBytes = new TokenBucket(limits.getReadBytesPerSecond());
+
+        private ShardThrottle(final String shardId) {
+            this.shardId = shardId;
+        }
+
+        private long reserveWrite(final long records, final long bytes, final long now) {
+            final long recordsDelay = writeRecords.reserve(records, now, maxDelayNanos);
+            if (recordsDelay < 0) {
+                return -1;
+            }
+            final long bytesDelay = writeBytes.reserve(bytes, now, maxDelayNanos);
+            if (bytesDelay < 0) {
+                writeRecords.refund(records, now);
+                return -1;
+            }
+            return Math.max(recordsDelay, bytesDelay);
+        }
+
+        private void refundWrite(final long records, final long bytes, final long now) {
+            writeRecords.refund(records, now);
+            writeBytes.refund(bytes, now);
+        }
+
+        /**
+         * Read bytes are only known once the call returns, so they are charged afterwards
+         * and the next read waits for them.
+         */
+        private long reserveRead(final long now) {
+            final long bytesDelay = readBytes.waitTime(now);
+            if (bytesDelay > maxDelayNanos) {
+                return -1;
+            }
+            final long callsDelay = readCalls.reserve(1, now, maxDelayNanos);
+            if (callsDelay < 0) {
+                return -1;
+            }
+            return Math.max(callsDelay, bytesDelay);
+        }
+    }
+}
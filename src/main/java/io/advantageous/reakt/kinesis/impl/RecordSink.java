@@ -0,0 +1,16 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.Record;
+
+/**
+ * Receives the output of a {@link KinesisShardReaderImpl}.
+ * Calls for one reader are never concurrent and arrive in shard order.
+ */
+public interface RecordSink {
+
+    void onRecord(Record record);
+
+    void onShardEnd();
+
+    void onError(Throwable error);
+}
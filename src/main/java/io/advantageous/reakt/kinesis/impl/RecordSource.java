@@ -0,0 +1,26 @@
+package io.advantageous.reakt.kinesis.impl;
+
+/**
+ * Shard reader that delivers into a {@link RecordSink} with explicit demand, polled or pushed.
+ */
+public interface RecordSource {
+
+    /**
+     * Starts reading at the given position into a sink. Demand is added with {@link #request(long)}.
+     *
+     * @param shardIteratorType      shard iterator type
+     * @param startingSequenceNumber sequence number for AT_ and AFTER_SEQUENCE_NUMBER, epoch milliseconds
+     *                               for AT_TIMESTAMP, otherwise null
+     * @param sink                   sink that receives the records
+     */
+    void read(String shardIteratorType, String startingSequenceNumber, RecordSink sink);
+
+    /**
+     * Adds demand for more records.
+     *
+     * @param count number of records
+     */
+    void request(long count);
+
+    void stop();
+}
@@ -0,0 +1,34 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Record size accounting as Kinesis does it: data bytes plus UTF-8 bytes of the partition key.
+ */
+final class Records {
+
+    private Records() {
+    }
+
+    static int size(final ByteBuffer data, final String partitionKey) {
+        return data.remaining() + (partitionKey == null ? 0 : utf8Length(partitionKey));
+    }
+
+    static int utf8Length(final String value) {
+        int length = 0;
+        for (int index = 0; index < value.length(); index++) {
+            final char c = value.charAt(index);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                index++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,273 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.StreamStatus;
+import io.advantageous.reakt.Callback;
+import io.advantageous.reakt.kinesis.AutoscalerConfig;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.KinesisMetrics;
+import io.advantageous.reakt.kinesis.ShardAutoscaler;
+import io.advantageous.reakt.promise.Promise;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+public class ShardAutoscalerImpl implements ShardAutoscaler {
+
+    private static final long ACTIVE_POLL_MILLIS = 1_000;
+
+    private final KinesisClient kinesisClient;
+    private final String streamName;
+    private final AutoscalerConfig config;
+    private final KinesisMetrics metrics;
+    private final ScheduledExecutorService scheduler;
+    private final long controlPlaneIntervalNanos;
+    private final AtomicBoolean evaluating = new AtomicBoolean();
+    private final Object controlPlaneLock = new Object();
+    private long nextControlPlaneNanos = Long.MIN_VALUE;
+    private Sample previous;
+    private long lastReshardNanos;
+    private boolean resharded;
+    private volatile ScheduledFuture<?> task;
+    private volatile boolean closed;
+
+    public ShardAutoscalerImpl(final KinesisClient kinesisClient, final String streamName,
+                               final AutoscalerConfig config) {
+        if (config.getMetrics() == null) {
+            throw new IllegalArgumentException("the autoscaler needs the metrics of a metered client");
+        }
+        this.kinesisClient = kinesisClient;
+        this.streamName = streamName;
+        this.config = config;
+        this.metrics = config.getMetrics();
+        this.scheduler = config.getScheduler() != null ? config.getScheduler() : SharedScheduler.get();
+        this.controlPlaneIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getControlPlaneIntervalMillis());
+    }
+
+    @Override
+    public void start(final Callback<String> callback) {
+        final long interval = config.getEvaluationIntervalMillis();
+        task = scheduler.scheduleWithFixedDelay(() -> evaluate().then(change -> {
+            if (change != null) {
+                callback.reply(change);
+            }
+        }).catchError(callback::reject).invoke(), 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Promise<String> evaluate() {
+        return invokablePromise(promise -> {
+            if (closed || !evaluating.compareAndSet(false, true)) {
+                promise.resolve(null);
+                return;
+            }
+            final Sample sample = new Sample(metrics, streamName);
+            final Sample last = previous;
+            previous = sample;
+            if (last == null) {
+                done(promise, null);
+                return;
+            }
+            controlPlane(() -> ShardDiscovery.describeAllShards(kinesisClient, streamName)).then(shards -> {
+                final Reshard<?> reshard = decide(openShards(shards), last, sample);
+                if (reshard == null) {
+                    done(promise, null);
+                    return;
+                }
+                send(reshard, promise);
+            }).catchError(error -> fail(promise, error)).invoke();
+        });
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Split first: a hot shard costs throttled writes, a cold pair only costs money.
+     */
+    private Reshard<?> decide(final List<Shard> shards, final Sample last, final Sample sample) {
+        final double seconds = (sample.nanos - last.nanos) / 1e9;
+        final boolean throttled = sample.throttles > last.throttles;
+        final long sinceReshard = resharded ? sample.nanos - lastReshardNanos : Long.MAX_VALUE;
+        final double[] utilization = new double[shards.size()];
+        for (int index = 0; index < shards.size(); index++) {
+            utilization[index] = utilization(shards.get(index).getShardId(), last, sample, seconds);
+        }
+        if (shards.size() < config.getMaxShards()
+                && sinceReshard >= TimeUnit.MILLISECONDS.toNanos(config.getSplitCooldownMillis())) {
+            final double threshold = throttled
+                    ? Math.min(config.getSplitUtilization(), config.getThrottledSplitUtilization())
+                    : config.getSplitUtilization();
+            int hottest = -1;
+            for (int index = 0; index < shards.size(); index++) {
+                if (utilization[index] >= threshold && (hottest < 0 || utilization[index] > utilization[hottest])) {
+                    hottest = index;
+                }
+            }
+            if (hottest >= 0) {
+                final Reshard<?> split = split(shards.get(hottest));
+                if (split != null) {
+                    return split;
+                }
+            }
+        }
+        if (config.isFleetWideMetrics() && !throttled && shards.size() > config.getMinShards()
+                && sinceReshard >= TimeUnit.MILLISECONDS.toNanos(config.getMergeCooldownMillis())) {
+            int coldest = -1;
+            for (int index = 0; index + 1 < shards.size(); index++) {
+                final double combined = utilization[index] + utilization[index + 1];
+                if (adjacent(shards.get(index), shards.get(index + 1)) && combined < config.getMergeUtilization()
+                        && (coldest < 0 || combined < utilization[coldest] + utilization[coldest + 1])) {
+                    coldest = index;
+                }
+            }
+            if (coldest >= 0) {
+                final String shardId = shards.get(coldest).getShardId();
+                final String adjacentShardId = shards.get(coldest + 1).getShardId();
+                return new Reshard<>("merge " + shardId + " and " + adjacentShardId,
+                        () -> kinesisClient.mergeShards(streamName, shardId, adjacentShardId));
+            }
+        }
+        return null;
+    }
+
+    private double utilization(final String shardId, final Sample last, final Sample sample, final double seconds) {
+        final double bytesPerSecond = (count(sample.bytes, shardId) - count(last.bytes, shardId)) / seconds;
+        final double recordsPerSecond = (count(sample.records, shardId) - count(last.records, shardId)) / seconds;
+        return Math.max(bytesPerSecond / config.getWriteBytesPerSecondPerShard(),
+                recordsPerSecond / config.getWriteRecordsPerSecondPerShard());
+    }
+
+    /**
+     * Splits at the middle of the hash key range, so each child takes half the keys.
+     */
+    private Reshard<?> split(final Shard shard) {
+        final BigInteger start = new BigInteger(shard.getHashKeyRange().getStartingHashKey());
+        final BigInteger end = new BigInteger(shard.getHashKeyRange().getEndingHashKey());
+        final BigInteger middle = start.add(end.subtract(start).add(BigInteger.ONE).shiftRight(1));
+        if (middle.compareTo(start) <= 0) {
+            return null;
+        }
+        final String shardId = shard.getShardId();
+        return new Reshard<>("split " + shardId,
+                () -> kinesisClient.splitShardAsync(streamName, shardId, middle.toString()));
+    }
+
+    private <T> void send(final Reshard<T> reshard, final Promise<String> promise) {
+        controlPlane(reshard.call).then(result -> {
+            lastReshardNanos = System.nanoTime();
+            resharded = true;
+            waitForActive(reshard.description, promise);
+        }).catchError(error -> fail(promise, error)).invoke();
+    }
+
+    /**
+     * The stream takes no other reshard until it is active again.
+     */
+    private void waitForActive(final String change, final Promise<String> promise) {
+        controlPlane(() -> kinesisClient.describeStream(streamName, 1, null)).then(result -> {
+            if (StreamStatus.ACTIVE.toString().equals(result.getStreamDescription().getStreamStatus())) {
+                done(promise, change);
+            } else {
+                scheduler.schedule(() -> waitForActive(change, promise), ACTIVE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }).catchError(error -> fail(promise, error)).invoke();
+    }
+
+    /**
+     * Spaces the control plane calls of this autoscaler at least the configured interval apart.
+     */
+    private <T> Promise<T> controlPlane(final Supplier<Promise<T>> call) {
+        return invokablePromise(promise -> {
+            final long now = System.nanoTime();
+            final long delay;
+            synchronized (controlPlaneLock) {
+                final long start = nextControlPlaneNanos == Long.MIN_VALUE ? now
+                        : Math.max(now, nextControlPlaneNanos);
+                nextControlPlaneNanos = start + controlPlaneIntervalNanos;
+                delay = start - now;
+            }
+            final Runnable send = () -> call.get().then(promise::resolve).catchError(promise::reject).invoke();
+            if (delay == 0) {
+                send.run();
+            } else {
+                scheduler.schedule(send, delay, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    private void done(final Promise<String> promise, final String change) {
+        evaluating.set(false);
+        promise.resolve(change);
+    }
+
+    private void fail(final Promise<String> promise, final Throwable error) {
+        evaluating.set(false);
+        promise.reject(error);
+    }
+
+    private static List<Shard> openShards(final List<Shard> shards) {
+        final List<Shard> open = new ArrayList<>();
+        for (Shard shard : shards) {
+            if (ShardDiscovery.isOpen(shard)) {
+                open.add(shard);
+            }
+        }
+        open.sort(Comparator.comparing(shard -> new BigInteger(shard.getHashKeyRange().getStartingHashKey())));
+        return open;
+    }
+
+    private static boolean adjacent(final Shard lower, final Shard upper) {
+        return new BigInteger(lower.getHashKeyRange().getEndingHashKey()).add(BigInteger.ONE)
+                .equals(new BigInteger(upper.getHashKeyRange().getStartingHashKey()));
+    }
+
+    private static long count(final Map<String, Long> counts, final String shardId) {
+        final Long count = counts.get(shardId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Write counters of the stream at one point in time.
+     */
+    private static class Sample {
+        private final long nanos = System.nanoTime();
+        private final Map<String, Long> bytes;
+        private final Map<String, Long> records;
+        private final long throttles;
+
+        private Sample(final KinesisMetrics metrics, final String streamName) {
+            this.bytes = metrics.getShardBytesWritten(streamName);
+            this.records = metrics.getShardRecordsWritten(streamName);
+            this.throttles = metrics.getWriteThrottles(streamName);
+        }
+    }
+
+    /**
+     * One split or merge.
+     */
+    private static class Reshard<T> {
+        private final String description;
+        private final Supplier<Promise<T>> call;
+
+        private Reshard(final String description, final Supplier<Promise<T>> call) {
+            this.description = description;
+            this.call = call;
+        }
+    }
+}
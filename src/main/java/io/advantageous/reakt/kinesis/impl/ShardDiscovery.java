@@ -0,0 +1,62 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.Shard;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.promise.Promise;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+/**
+ * Lists every shard of a stream by paging through DescribeStream.
+ */
+public final class ShardDiscovery {
+
+    /**
+     * Shards requested per DescribeStream page.
+     */
+    public static final int PAGE_SIZE = 100;
+
+    private ShardDiscovery() {
+    }
+
+    /**
+     * @param kinesisClient kinesis client
+     * @param streamName    stream name
+     * @return promise of all shards of the stream, open and closed, in DescribeStream order
+     */
+    public static Promise<List<Shard>> describeAllShards(final KinesisClient kinesisClient, final String streamName) {
+        return invokablePromise(promise -> describePage(kinesisClient, streamName, null, new ArrayList<>(), promise));
+    }
+
+    /**
+     * @param shard shard
+     * @return true if the shard still accepts records
+     */
+    public static boolean isOpen(final Shard shard) {
+        return shard.getSequenceNumberRange() == null
+                || shard.getSequenceNumberRange().getEndingSequenceNumber() == null;
+    }
+
+    private static void describePage(final KinesisClient kinesisClient, final String streamName,
+                                     final String exclusiveStartShardId, final List<Shard> shards,
+                                     final Promise<List<Shard>> promise) {
+        kinesisClient.describeStream(streamName, PAGE_SIZE, exclusiveStartShardId).then(result -> {
+            final List<Shard> page = pageOf(result);
+            shards.addAll(page);
+            if (Boolean.TRUE.equals(result.getStreamDescription().getHasMoreShards()) && !page.isEmpty()) {
+                describePage(kinesisClient, streamName, page.get(page.size() - 1).getShardId(), shards, promise);
+            } else {
+                promise.resolve(shards);
+            }
+        }).catchError(promise::reject).invoke();
+    }
+
+    private static List<Shard> pageOf(final DescribeStreamResult result) {
+        final List<Shard> page = result.getStreamDescription().getShards();
+        return page == null ? new ArrayList<>() : page;
+    }
+}
@@ -0,0 +1,61 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shard iterators handed out by a client, mapped to the shard they read. Kinesis expires an iterator five minutes
+ * after it was issued, so the iterators readers stopped without using are dropped once they are that old.
+ *
+ * @param <T> what an iterator is mapped to
+ */
+final class ShardIterators<T> {
+
+    private static final long EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + EXPIRY_NANOS);
+
+    /**
+     * @param shardIterator iterator just issued
+     * @param value         what it reads
+     */
+    void put(final String shardIterator, final T value) {
+        final long now = System.nanoTime();
+        entries.put(shardIterator, new Entry<>(value, now));
+        final long sweep = nextSweep.get();
+        if (now - sweep >= 0 && nextSweep.compareAndSet(sweep, now + EXPIRY_NANOS)) {
+            entries.values().removeIf(entry -> now - entry.issued > EXPIRY_NANOS);
+        }
+    }
+
+    /**
+     * @param shardIterator iterator
+     * @return what the iterator reads, or null if it is not known
+     */
+    T get(final String shardIterator) {
+        final Entry<T> entry = shardIterator == null ? null : entries.get(shardIterator);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * @param shardIterator iterator that was used up
+     * @return what the iterator reads, or null if it is not known
+     */
+    T remove(final String shardIterator) {
+        final Entry<T> entry = shardIterator == null ? null : entries.remove(shardIterator);
+        return entry == null ? null : entry.value;
+    }
+
+    private static final class Entry<T> {
+        private final T value;
+        private final long issued;
+
+        private Entry(final T value, final long issued) {
+            this.value = value;
+            this.issued = issued;
+        }
+    }
+}
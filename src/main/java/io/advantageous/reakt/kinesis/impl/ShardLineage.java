@@ -0,0 +1,90 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.Shard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parent and child relations of the shards of one stream, built from the ParentShardId and AdjacentParentShardId
+ * DescribeStream reports after splits and merges. A shard is ready to read once every parent has been read to
+ * its end, so records of one partition key are read in the order they were written across reshards.
+ * Parents that are no longer described, because they aged out of the retention period, count as read.
+ */
+public class ShardLineage {
+
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+    /**
+     * Adds shards that are not known yet. Known shards keep their state.
+     *
+     * @param shards shards from DescribeStream
+     */
+    public synchronized void update(final Collection<Shard> shards) {
+        for (Shard shard : shards) {
+            nodes.computeIfAbsent(shard.getShardId(), shardId -> new Node(shard));
+        }
+    }
+
+    /**
+     * @param shardId shard read to its end, or not to be read at all
+     */
+    public synchronized void finish(final String shardId) {
+        final Node node = nodes.get(shardId);
+        if (node != null) {
+            node.state = State.FINISHED;
+        }
+    }
+
+    /**
+     * Hands out the shards that are ready to read, each only once.
+     *
+     * @return shards not handed out or finished yet whose parents are all finished or unknown
+     */
+    public synchronized List<Shard> takeReady() {
+        final List<Shard> ready = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.state == State.PENDING && parentsFinished(node)) {
+                node.state = State.TAKEN;
+                ready.add(node.shard);
+            }
+        }
+        return ready;
+    }
+
+    private boolean parentsFinished(final Node node) {
+        for (String parentId : node.parentIds) {
+            final Node parent = nodes.get(parentId);
+            if (parent != null && parent.state != State.FINISHED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private enum State {
+        PENDING, TAKEN, FINISHED
+    }
+
+    private static class Node {
+        private final Shard shard;
+        private final List<String> parentIds;
+        private State state = State.PENDING;
+
+        private Node(final Shard shard) {
+            this.shard = shard;
+            final List<String> ids = new ArrayList<>(2);
+            if (shard.getParentShardId() != null) {
+                ids.add(shard.getParentShardId());
+            }
+            if (shard.getAdjacentParentShardId() != null) {
+                ids.add(shard.getAdjacentParentShardId());
+            }
+            this.parentIds = Collections.unmodifiableList(ids);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.GetShardIteratorResult;
+import com.amazonaws.services.kinesis.model.MergeShardsRequest;
+import com.amazonaws.services.kinesis.model.MergeShardsResult;
+import com.amazonaws.services.kinesis.model.PutRecordRequest;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.amazonaws.services.kinesis.model.ResourceNotFoundException;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.SplitShardRequest;
+import com.amazonaws.services.kinesis.model.SplitShardResult;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.ShardMap;
+import io.advantageous.reakt.kinesis.ShardMapCache;
+import io.advantageous.reakt.promise.Promise;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+
+public class ShardMapCacheImpl implements ShardMapCache {
+
+    private final KinesisClient kinesisClient;
+    private final long timeToLiveMillis;
+    private final ConcurrentMap<String, CachedShardMap> cache = new ConcurrentHashMap<>();
+
+    public ShardMapCacheImpl(final KinesisClient kinesisClient, final long timeToLiveMillis) {
+        this.kinesisClient = kinesisClient;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    @Override
+    public Promise<ShardMap> shardMap(final String streamName) {
+        return invokablePromise(promise -> {
+            final ShardMap shardMap = cachedShardMap(streamName);
+            if (shardMap != null) {
+                promise.resolve(shardMap);
+                return;
+            }
+            ShardDiscovery.describeAllShards(kinesisClient, streamName).then(shards -> {
+                final ShardMap loaded = new ShardMap(streamName, shards);
+                cache.put(streamName, new CachedShardMap(loaded, System.currentTimeMillis() + timeToLiveMillis));
+                promise.resolve(loaded);
+            }).catchError(promise::reject).invoke();
+        });
+    }
+
+    @Override
+    public ShardMap cachedShardMap(final String streamName) {
+        final CachedShardMap cached = cache.get(streamName);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt < System.currentTimeMillis()) {
+            cache.remove(streamName, cached);
+            return null;
+        }
+        return cached.shardMap;
+    }
+
+    @Override
+    public void invalidate(final String streamName) {
+        cache.remove(streamName);
+    }
+
+    @Override
+    public KinesisClient invalidatingClient(final KinesisClient kinesisClient) {
+        return new InvalidatingKinesisClient(kinesisClient != null ? kinesisClient : this.kinesisClient);
+    }
+
+    /**
+     * @return true if a cached shard map exists and routes the hash key to a different shard than Kinesis did
+     */
+    private boolean isStale(final String streamName, final String partitionKey, final String explicitHashKey,
+                            final String shardId) {
+        final ShardMap shardMap = cachedShardMap(streamName);
+        if (shardMap == null || shardId == null) {
+            return false;
+        }
+        final Shard shard = shardMap.shardFor(partitionKey, explicitHashKey);
+        return shard == null || !shard.getShardId().equals(shardId);
+    }
+
+    private static class CachedShardMap {
+        private final ShardMap shardMap;
+        private final long expiresAt;
+
+        private CachedShardMap(final ShardMap shardMap, final long expiresAt) {
+            this.shardMap = shardMap;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Drops cached shard maps when the shard layout of a stream changes or turns out to be different.
+     */
+    private class InvalidatingKinesisClient extends DelegatingKinesisClient {
+
+        private InvalidatingKinesisClient(final KinesisClient delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Promise<MergeShardsResult> mergeShards(final MergeShardsRequest request) {
+            return watch(request.getStreamName(), delegate.mergeShards(request),
+                    result -> invalidate(request.getStreamName()));
+        }
+
+        @Override
+        public Promise<MergeShardsResult> mergeShards(final String streamName, final String shardToMerge,
+                                                      final String adjacentShardToMerge) {
+            return watch(streamName, delegate.mergeShards(streamName, shardToMerge, adjacentShardToMerge),
+                    result -> invalidate(streamName));
+        }
+
+        @Override
+        public Promise<SplitShardResult> splitShardAsync(final SplitShardRequest request) {
+            return watch(request.getStreamName(), delegate.splitShardAsync(request),
+                    result -> invalidate(request.getStreamName()));
+        }
+
+        @Override
+        public Promise<SplitShardResult> splitShardAsync(final String streamName, final String shardToSplit,
+                                                         final String newStartingHashKey) {
+            return watch(streamName, delegate.splitShardAsync(streamName, shardToSplit, newStartingHashKey),
+                    result -> invalidate(streamName));
+        }
+
+        @Override
+        public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                     final String shardIteratorType) {
+            return watch(streamName, delegate.getShardIteratorAsync(streamName, shardId, shardIteratorType));
+        }
+
+        @Override
+        public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                     final String shardIteratorType,
+                                                                     final String startingSequenceNumber) {
+            return watch(streamName, delegate.getShardIteratorAsync(streamName, shardId, shardIteratorType,
+                    startingSequenceNumber));
+        }
+
+        @Override
+        public Promise<PutRecordResult> putRecord(final PutRecordRequest request) {
+            return watch(request.getStreamName(), delegate.putRecord(request), result -> checkPlacement(
+                    request.getStreamName(), request.getPartitionKey(), request.getExplicitHashKey(), result));
+        }
+
+        @Override
+        public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                                  final String partitionKey) {
+            return watch(streamName, delegate.putRecord(streamName, data, partitionKey),
+                    result -> checkPlacement(streamName, partitionKey, null, result));
+        }
+
+        @Override
+        public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                                  final String partitionKey, final String sequenceNumberForOrdering) {
+            return watch(streamName, delegate.putRecord(streamName, data, partitionKey, sequenceNumberForOrdering),
+                    result -> checkPlacement(streamName, partitionKey, null, result));
+        }
+
+        /**
+         * Only the first successful entry is checked, which is enough to notice a resharded stream.
+         */
+        @Override
+        public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+            return watch(request.getStreamName(), delegate.putRecords(request), result -> {
+                final List<PutRecordsRequestEntry> entries = request.getRecords();
+                final List<PutRecordsResultEntry> resultEntries = result.getRecords();
+                for (int index = 0; index < resultEntries.size(); index++) {
+                    final PutRecordsResultEntry resultEntry = resultEntries.get(index);
+                    if (resultEntry.getErrorCode() == null) {
+                        final PutRecordsRequestEntry entry = entries.get(index);
+                        if (isStale(request.getStreamName(), entry.getPartitionKey(), entry.getExplicitHashKey(),
+                                resultEntry.getShardId())) {
+                            invalidate(request.getStreamName());
+                        }
+                        return;
+                    }
+                }
+            });
+        }
+
+        private void checkPlacement(final String streamName, final String partitionKey, final String explicitHashKey,
+                                    final PutRecordResult result) {
+            if (isStale(streamName, partitionKey, explicitHashKey, result.getShardId())) {
+                invalidate(streamName);
+            }
+        }
+
+        private <T> Promise<T> watch(final String streamName, final Promise<T> call) {
+            return watch(streamName, call, result -> {
+            });
+        }
+
+        private <T> Promise<T> watch(final String streamName, final Promise<T> call, final Consumer<T> onSuccess) {
+            return invokablePromise(promise -> call.then(result -> {
+                onSuccess.accept(result);
+                promise.resolve(result);
+            }).catchError(error -> {
+                if (error instanceof ResourceNotFoundException) {
+                    invalidate(streamName);
+                }
+                promise.reject(error);
+            }).invoke());
+        }
+    }
+}
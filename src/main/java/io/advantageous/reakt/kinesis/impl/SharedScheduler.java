@@ -0,0 +1,24 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Daemon scheduler used for timers when the caller does not supply one.
+ */
+final class SharedScheduler {
+
+    private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                final Thread thread = new Thread(runnable, "reakt-kinesis-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private SharedScheduler() {
+    }
+
+    static ScheduledExecutorService get() {
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,84 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, kept as the time at which the bucket is next full (generic cell rate algorithm).
+ * One second of permits may be used as a burst. Taking permits is a single compare and set.
+ */
+final class TokenBucket {
+
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double nanosPerPermit;
+    private final AtomicLong theoreticalArrivalTime = new AtomicLong(Long.MIN_VALUE);
+
+    TokenBucket(final long permitsPerSecond) {
+        this.nanosPerPermit = (double) ONE_SECOND / permitsPerSecond;
+    }
+
+    /**
+     * Takes permits if the caller would not have to wait longer than the max delay.
+     *
+     * @param permits       permits to take
+     * @param now           current System.nanoTime()
+     * @param maxDelayNanos longest acceptable wait
+     * @return nanos to wait before using the permits, or -1 if the wait would be too long and nothing was taken
+     */
+    long reserve(final long permits, final long now, final long maxDelayNanos) {
+        final long cost = (long) (permits * nanosPerPermit);
+        while (true) {
+            final long current = theoreticalArrivalTime.get();
+            final long next = Math.max(current, now) + cost;
+            final long delay = Math.max(0, next - ONE_SECOND - now);
+            if (delay > maxDelayNanos) {
+                return -1;
+            }
+            if (theoreticalArrivalTime.compareAndSet(current, next)) {
+                return delay;
+            }
+        }
+    }
+
+    /**
+     * Takes permits after the fact, the next caller waits for them.
+     *
+     * @param permits permits used
+     * @param now     current System.nanoTime()
+     */
+    void charge(final long permits, final long now) {
+        final long cost = (long) (permits * nanosPerPermit);
+        while (true) {
+            final long current = theoreticalArrivalTime.get();
+            if (theoreticalArrivalTime.compareAndSet(current, Math.max(current, now) + cost)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives back permits taken by {@link #reserve(long, long, long)}. The bucket is never left fuller than full,
+     * so a refund cannot grant more than one second of burst.
+     *
+     * @param permits permits to give back
+     * @param now     current System.nanoTime()
+     */
+    void refund(final long permits, final long now) {
+        final long cost = (long) (permits * nanosPerPermit);
+        while (true) {
+            final long current = theoreticalArrivalTime.get();
+            if (current <= now || theoreticalArrivalTime.compareAndSet(current, Math.max(current - cost, now))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param now current System.nanoTime()
+     * @return nanos until a caller may proceed without waiting
+     */
+    long waitTime(final long now) {
+        return Math.max(0, theoreticalArrivalTime.get() - ONE_SECOND - now);
+    }
+}
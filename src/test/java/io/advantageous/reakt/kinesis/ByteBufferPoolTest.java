@@ -0,0 +1,75 @@
+package io.advantageous.reakt.kinesis;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ByteBufferPoolTest {
+
+    private final ByteBufferPool pool = new ByteBufferPool();
+
+    @Test
+    public void reissuesReleasedBuffer() {
+        final ByteBuffer buffer = pool.acquire(300);
+        buffer.put((byte) 1);
+
+        pool.release(buffer);
+        final ByteBuffer reissued = pool.acquire(400);
+
+        assertSame(buffer, reissued);
+        assertEquals(512, reissued.capacity());
+        assertEquals(0, reissued.position());
+        assertEquals(400, reissued.limit());
+    }
+
+    @Test
+    public void ignoresForeignBuffers() {
+        final ByteBuffer foreign = ByteBuffer.allocate(256);
+
+        pool.release(foreign);
+
+        assertNotSame(foreign, pool.acquire(256));
+    }
+
+    @Test
+    public void ignoresSlicesDuplicatesAndReadOnlyViews() {
+        final ByteBuffer buffer = pool.acquire(256);
+
+        pool.release(buffer.slice());
+        pool.release(buffer.duplicate());
+        pool.release(buffer.asReadOnlyBuffer());
+
+        assertNotSame(buffer, pool.acquire(256));
+    }
+
+    @Test
+    public void takesBuffersBackOnce() {
+        final ByteBuffer buffer = pool.acquire(256);
+
+        pool.release(buffer);
+        pool.release(buffer);
+
+        assertSame(buffer, pool.acquire(256));
+        assertNotSame(buffer, pool.acquire(256));
+    }
+
+    @Test
+    public void dropsBuffersPastSizeClassLimit() {
+        final ByteBufferPool small = new ByteBufferPool(false, 1024, 1);
+        final ByteBuffer first = small.acquire(256);
+        final ByteBuffer second = small.acquire(256);
+        final ByteBuffer oversized = small.acquire(2048);
+
+        small.release(first);
+        small.release(second);
+        small.release(oversized);
+
+        assertSame(first, small.acquire(256));
+        assertNotSame(second, small.acquire(256));
+        assertNotSame(oversized, small.acquire(2048));
+    }
+}
@@ -0,0 +1,194 @@
+package io.advantageous.reakt.kinesis;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PayloadCompressionTest {
+
+    private final PayloadCompression compression = new PayloadCompression(new DeflatePayloadCodec());
+
+    @Test
+    public void roundTripsCompressiblePayload() {
+        final byte[] payload = repeat("{\"event\":\"click\",\"user\":42}", 100);
+
+        final ByteBuffer compressed = compression.compress(ByteBuffer.wrap(payload));
+
+        assertTrue(compressed.remaining() < payload.length / 4);
+        assertEquals(DeflatePayloadCodec.HEADER, compressed.get(4));
+        assertArrayEquals(payload, array(compression.decompress(compressed)));
+    }
+
+    @Test
+    public void smallPayloadIsFramedUncompressed() {
+        final byte[] payload = "small".getBytes(StandardCharsets.UTF_8);
+
+        final ByteBuffer framed = compression.compress(ByteBuffer.wrap(payload));
+
+        assertEquals(payload.length + 9, framed.remaining());
+        assertEquals(PayloadCompression.UNCOMPRESSED, framed.get(4));
+        assertArrayEquals(payload, array(compression.decompress(framed)));
+    }
+
+    @Test
+    public void incompressiblePayloadIsFramedUncompressed() {
+        final byte[] payload = random(4096);
+
+        final ByteBuffer framed = compression.compress(ByteBuffer.wrap(payload));
+
+        assertEquals(PayloadCompression.UNCOMPRESSED, framed.get(4));
+        assertArrayEquals(payload, array(compression.decompress(framed)));
+    }
+
+    @Test
+    public void legacyPayloadsPassThrough() {
+        for (byte[] payload : new byte[][]{{(byte) 0x80, 1, 2, 3}, {(byte) 0x81, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10},
+                "{\"plain\":true}".getBytes(StandardCharsets.UTF_8), {}}) {
+            final ByteBuffer data = ByteBuffer.wrap(payload);
+            assertSame(data, compression.decompress(data));
+        }
+    }
+
+    @Test
+    public void magicWithoutMatchingChecksumPassesThrough() {
+        final ByteBuffer framed = compression.compress(ByteBuffer.wrap(repeat("abc", 100)));
+        framed.put(framed.limit() - 1, (byte) (framed.get(framed.limit() - 1) ^ 1));
+
+        assertSame(framed, compression.decompress(framed));
+    }
+
+    @Test
+    public void uncompressedLengthPastRecordLimitPassesThrough() {
+        final ByteBuffer forged = frame((byte) 0x81, new byte[]{(byte) 0x81, (byte) 0x80, (byte) 0x40, 0x03});
+
+        assertSame(forged, compression.decompress(forged));
+    }
+
+    @Test
+    public void unknownCodecPassesThrough() {
+        final ByteBuffer forged = frame((byte) 0x90, new byte[]{3, 1, 2, 3});
+
+        assertSame(forged, compression.decompress(forged));
+    }
+
+    @Test
+    public void payloadAtRecordLimitIsNotFramed() {
+        final byte[] payload = random(BatchingProducerConfig.MAX_BYTES_PER_RECORD);
+
+        final ByteBuffer stored = compression.compress(ByteBuffer.wrap(payload));
+
+        assertArrayEquals(payload, array(stored));
+        assertArrayEquals(payload, array(compression.decompress(stored)));
+    }
+
+    @Test
+    public void decompressesDirectBuffersToExactHeapBuffers() {
+        final PayloadCompression direct = new PayloadCompression(new DeflatePayloadCodec(),
+                new ByteBufferPool(true, 1024 * 1024, 4), 16);
+        final byte[] payload = repeat("direct ", 200);
+
+        final ByteBuffer compressed = direct.compress(ByteBuffer.wrap(payload));
+        final ByteBuffer decompressed = direct.decompress(compressed);
+
+        assertTrue(compressed.isDirect());
+        assertFalse(decompressed.isDirect());
+        assertEquals(payload.length, decompressed.capacity());
+        assertArrayEquals(payload, array(decompressed));
+        direct.release(compressed);
+    }
+
+    @Test
+    public void decompressedBuffersAreNeverPooled() {
+        final ByteBufferPool pool = new ByteBufferPool();
+        final PayloadCompression pooled = new PayloadCompression(new DeflatePayloadCodec(), pool, 16);
+        final byte[] payload = repeat("pooled ", 200);
+        final ByteBuffer compressed = pooled.compress(ByteBuffer.wrap(payload));
+
+        final ByteBuffer decompressed = pooled.decompress(compressed);
+        pooled.release(decompressed);
+
+        assertNotSame(decompressed, pool.acquire(payload.length));
+        assertArrayEquals(payload, array(decompressed));
+    }
+
+    @Test
+    public void releasesTargetWhenCodecThrows() {
+        final ByteBufferPool pool = new ByteBufferPool();
+        final PayloadCompression failing = new PayloadCompression(new FailingCodec(), pool, 16);
+        final ByteBuffer target = pool.acquire(FailingCodec.MAX_LENGTH);
+        pool.release(target);
+
+        try {
+            failing.compress(ByteBuffer.wrap(repeat("fail ", 10)));
+            fail("codec error expected");
+        } catch (IllegalStateException expected) {
+            /* The target taken for the failed call went back to the pool. */
+            assertSame(target, pool.acquire(FailingCodec.MAX_LENGTH));
+        }
+    }
+
+    private static class FailingCodec implements PayloadCodec {
+        private static final int MAX_LENGTH = 100;
+
+        @Override
+        public byte header() {
+            return (byte) 0x82;
+        }
+
+        @Override
+        public int maxCompressedLength(final int length) {
+            return MAX_LENGTH - 10;
+        }
+
+        @Override
+        public void compress(final ByteBuffer source, final ByteBuffer target) {
+            throw new IllegalStateException("compress failed");
+        }
+
+        @Override
+        public void decompress(final ByteBuffer source, final ByteBuffer target) {
+            throw new IllegalStateException("decompress failed");
+        }
+    }
+
+    private static ByteBuffer frame(final byte codec, final byte[] body) {
+        final ByteBuffer frame = ByteBuffer.allocate(4 + 1 + body.length + 4);
+        frame.put(new byte[]{(byte) 0xF8, 'R', 'K', 'Z'}).put(codec).put(body);
+        final CRC32 crc = new CRC32();
+        crc.update(frame.array(), 4, 1 + body.length);
+        frame.putInt((int) crc.getValue());
+        frame.flip();
+        return frame;
+    }
+
+    private static byte[] repeat(final String value, final int times) {
+        final StringBuilder builder = new StringBuilder();
+        for (int index = 0; index < times; index++) {
+            builder.append(value);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] random(final int length) {
+        final byte[] bytes = new byte[length];
+        new Random(7).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] array(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
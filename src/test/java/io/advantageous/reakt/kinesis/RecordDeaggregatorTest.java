@@ -0,0 +1,179 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.Record;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RecordDeaggregatorTest {
+
+    private static final byte[] MAGIC = {(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2};
+
+    /* AggregatedRecord{partition_key_table: ["a"], records: [{0, "x"}, {0, "y"}]} as the KPL encodes it. */
+    private static final byte[] TWO_RECORDS = {
+            0x0A, 0x01, 'a',
+            0x1A, 0x05, 0x08, 0x00, 0x1A, 0x01, 'x',
+            0x1A, 0x05, 0x08, 0x00, 0x1A, 0x01, 'y'};
+
+    @Test
+    public void aggregatorWritesKplBytes() throws Exception {
+        final RecordAggregator aggregator = new RecordAggregator();
+        assertTrue(aggregator.add("a", null, bytes("x")));
+        assertTrue(aggregator.add("a", null, bytes("y")));
+        final PutRecordsRequestEntry entry = aggregator.build();
+
+        assertEquals("a", entry.getPartitionKey());
+        assertEquals(ShardMap.hashKey("a").toString(), entry.getExplicitHashKey());
+        assertArrayEquals(kpl(TWO_RECORDS), array(entry.getData()));
+        assertEquals(entry.getData().remaining() + 1, aggregator.sizeBytes());
+    }
+
+    @Test
+    public void deaggregatesKplBytes() throws Exception {
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record("a", kpl(TWO_RECORDS)));
+
+        assertEquals(2, userRecords.size());
+        for (int index = 0; index < 2; index++) {
+            final UserRecord userRecord = userRecords.get(index);
+            assertEquals("a", userRecord.getPartitionKey());
+            assertEquals("49500000000000000000000000000000000000000000000000000001", userRecord.getSequenceNumber());
+            assertEquals(index, userRecord.getSubSequenceNumber());
+            assertTrue(userRecord.isAggregated());
+            assertNull(userRecord.getExplicitHashKey());
+        }
+        assertEquals("x", string(userRecords.get(0).getData()));
+        assertEquals("y", string(userRecords.get(1).getData()));
+    }
+
+    @Test
+    public void roundTripsKeysAndData() throws Exception {
+        final RecordAggregator aggregator = new RecordAggregator();
+        aggregator.add("first", null, bytes("one"));
+        aggregator.add("second", "170141183460469231731687303715884105728", bytes("two"));
+        aggregator.add("first", null, bytes(""));
+        final PutRecordsRequestEntry entry = aggregator.build();
+
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(
+                record(entry.getPartitionKey(), array(entry.getData())));
+
+        assertEquals(3, userRecords.size());
+        assertEquals("first", userRecords.get(0).getPartitionKey());
+        assertEquals("one", string(userRecords.get(0).getData()));
+        assertEquals("second", userRecords.get(1).getPartitionKey());
+        assertEquals("170141183460469231731687303715884105728", userRecords.get(1).getExplicitHashKey());
+        assertEquals("two", string(userRecords.get(1).getData()));
+        assertEquals("first", userRecords.get(2).getPartitionKey());
+        assertEquals(0, userRecords.get(2).getData().remaining());
+    }
+
+    @Test
+    public void singleRecordIsNotAggregated() {
+        final RecordAggregator aggregator = new RecordAggregator();
+        aggregator.add("a", null, bytes("x"));
+        final PutRecordsRequestEntry entry = aggregator.build();
+
+        assertEquals("x", string(entry.getData()));
+        assertNull(entry.getExplicitHashKey());
+    }
+
+    @Test
+    public void plainRecordIsPassedOn() {
+        final Record record = record("a", "plain".getBytes(StandardCharsets.UTF_8));
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record);
+
+        assertEquals(1, userRecords.size());
+        assertFalse(userRecords.get(0).isAggregated());
+        assertSame(record.getData(), userRecords.get(0).getData());
+    }
+
+    @Test
+    public void wrongDigestIsPassedOn() throws Exception {
+        final byte[] data = kpl(TWO_RECORDS);
+        data[data.length - 1] ^= 1;
+
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record("a", data));
+
+        assertEquals(1, userRecords.size());
+        assertFalse(userRecords.get(0).isAggregated());
+    }
+
+    @Test
+    public void aggregateWithoutUserRecordsIsEmpty() throws Exception {
+        final byte[] message = {0x0A, 0x01, 'a'};
+
+        assertTrue(RecordDeaggregator.deaggregate(record("a", kpl(message))).isEmpty());
+        assertEquals(1, RecordDeaggregator.deaggregate(Arrays.asList(record("a", kpl(message)),
+                record("a", bytes("plain").array()))).size());
+    }
+
+    @Test
+    public void userRecordWithoutDataIsPassedOn() throws Exception {
+        final byte[] message = {0x0A, 0x01, 'a', 0x1A, 0x02, 0x08, 0x00};
+
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record("a", kpl(message)));
+
+        assertEquals(1, userRecords.size());
+        assertFalse(userRecords.get(0).isAggregated());
+        assertEquals("a", userRecords.get(0).getPartitionKey());
+    }
+
+    @Test
+    public void unknownPartitionKeyIndexIsPassedOn() throws Exception {
+        final byte[] message = {0x0A, 0x01, 'a', 0x1A, 0x05, 0x08, 0x03, 0x1A, 0x01, 'x'};
+
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record("a", kpl(message)));
+
+        assertEquals(1, userRecords.size());
+        assertFalse(userRecords.get(0).isAggregated());
+    }
+
+    @Test
+    public void truncatedMessageIsPassedOn() throws Exception {
+        final byte[] message = {0x0A, 0x01, 'a', 0x1A, 0x7F, 0x08, 0x00, 0x1A, 0x01, 'x'};
+
+        final List<UserRecord> userRecords = RecordDeaggregator.deaggregate(record("a", kpl(message)));
+
+        assertEquals(1, userRecords.size());
+        assertFalse(userRecords.get(0).isAggregated());
+    }
+
+    private static byte[] kpl(final byte[] message) throws Exception {
+        final byte[] digest = MessageDigest.getInstance("MD5").digest(message);
+        final byte[] data = new byte[MAGIC.length + message.length + digest.length];
+        System.arraycopy(MAGIC, 0, data, 0, MAGIC.length);
+        System.arraycopy(message, 0, data, MAGIC.length, message.length);
+        System.arraycopy(digest, 0, data, MAGIC.length + message.length, digest.length);
+        return data;
+    }
+
+    private static Record record(final String partitionKey, final byte[] data) {
+        return new Record().withPartitionKey(partitionKey).withData(ByteBuffer.wrap(data))
+                .withSequenceNumber("49500000000000000000000000000000000000000000000000000001");
+    }
+
+    private static ByteBuffer bytes(final String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] array(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static String string(final ByteBuffer buffer) {
+        return new String(array(buffer), StandardCharsets.UTF_8);
+    }
+}
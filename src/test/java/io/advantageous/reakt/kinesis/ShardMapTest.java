@@ -0,0 +1,80 @@
+package io.advantageous.reakt.kinesis;
+
+import com.amazonaws.services.kinesis.model.HashKeyRange;
+import com.amazonaws.services.kinesis.model.SequenceNumberRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ShardMapTest {
+
+    private static final BigInteger HALF = BigInteger.ONE.shiftLeft(127);
+    private static final BigInteger MAX = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+    private final ShardMap shardMap = new ShardMap("stream", Arrays.asList(
+            shard("shardId-000000000000", BigInteger.ZERO, MAX, "1"),
+            shard("shardId-000000000001", BigInteger.ZERO, HALF.subtract(BigInteger.ONE), null),
+            shard("shardId-000000000002", HALF, MAX, null)));
+
+    @Test
+    public void hashKeyIsMd5OfPartitionKey() {
+        assertEquals(new BigInteger("d41d8cd98f00b204e9800998ecf8427e", 16), ShardMap.hashKey(""));
+        assertEquals(new BigInteger("0cc175b9c0f1b6a831c399e269772661", 16), ShardMap.hashKey("a"));
+        assertEquals(new BigInteger("900150983cd24fb0d6963f7d28e17f72", 16), ShardMap.hashKey("abc"));
+    }
+
+    @Test
+    public void routesByPartitionKey() {
+        assertEquals("shardId-000000000001", shardMap.shardFor("a").getShardId());
+        assertEquals("shardId-000000000002", shardMap.shardFor("").getShardId());
+        assertEquals("shardId-000000000002", shardMap.shardFor("abc", null).getShardId());
+    }
+
+    @Test
+    public void routesByExplicitHashKey() {
+        assertEquals("shardId-000000000002", shardMap.shardFor("a", HALF.toString()).getShardId());
+        assertEquals("shardId-000000000001",
+                shardMap.shardFor("", HALF.subtract(BigInteger.ONE).toString()).getShardId());
+        assertEquals("shardId-000000000001", shardMap.shardFor("", "0").getShardId());
+        assertEquals("shardId-000000000002", shardMap.shardFor("a", MAX.toString()).getShardId());
+    }
+
+    @Test
+    public void ignoresClosedShards() {
+        assertEquals(2, shardMap.getShards().size());
+        assertEquals("shardId-000000000001", shardMap.getShards().get(0).getShardId());
+    }
+
+    @Test
+    public void rejectsMalformedExplicitHashKeys() {
+        for (String explicitHashKey : new String[]{"", "abc", "-1", "01", "1.0", " 1", MAX.add(BigInteger.ONE)
+                .toString(), "1000000000000000000000000000000000000000"}) {
+            assertNull(explicitHashKey, ShardMap.parseHashKey(explicitHashKey));
+            assertNull(explicitHashKey, shardMap.shardFor("a", explicitHashKey));
+        }
+        assertEquals(MAX, ShardMap.parseHashKey(MAX.toString()));
+        assertEquals(BigInteger.ZERO, ShardMap.parseHashKey("0"));
+    }
+
+    @Test
+    public void uncoveredHashKeyHasNoShard() {
+        final ShardMap half = new ShardMap("stream", Arrays.asList(shard("shardId-000000000002", HALF, MAX, null)));
+
+        assertNull(half.shardFor("a"));
+        assertEquals("shardId-000000000002", half.shardFor("").getShardId());
+    }
+
+    private static Shard shard(final String shardId, final BigInteger start, final BigInteger end,
+                               final String endingSequenceNumber) {
+        return new Shard().withShardId(shardId)
+                .withHashKeyRange(new HashKeyRange().withStartingHashKey(start.toString())
+                        .withEndingHashKey(end.toString()))
+                .withSequenceNumberRange(new SequenceNumberRange().withStartingSequenceNumber("0")
+                        .withEndingSequenceNumber(endingSequenceNumber));
+    }
+}
@@ -0,0 +1,158 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.Record;
+import io.advantageous.reakt.kinesis.RecordAggregator;
+import io.advantageous.reakt.kinesis.ShardReaderConfig;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AbstractShardReaderTest {
+
+    @Test
+    public void skipsAggregatesWithoutUserRecords() throws Exception {
+        final byte[] message = {0x0A, 0x01, 'a'};
+        final byte[] digest = MessageDigest.getInstance("MD5").digest(message);
+        final ByteBuffer empty = ByteBuffer.allocate(4 + message.length + digest.length);
+        empty.put(new byte[]{(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2}).put(message).put(digest).flip();
+
+        final RecordAggregator aggregator = new RecordAggregator();
+        aggregator.add("b", null, ByteBuffer.wrap("one".getBytes(StandardCharsets.UTF_8)));
+        aggregator.add("b", null, ByteBuffer.wrap("two".getBytes(StandardCharsets.UTF_8)));
+
+        final TestReader reader = new TestReader(new ShardReaderConfig().withDeaggregate(true), Arrays.asList(
+                Collections.singletonList(record(empty)),
+                Collections.singletonList(record(aggregator.build().getData()))));
+        reader.read("TRIM_HORIZON", null, reader.sink);
+
+        assertNull(reader.sink.error);
+        assertEquals(Arrays.asList("one", "two"), reader.sink.records);
+        assertEquals(1, reader.sink.shardEnds);
+    }
+
+    @Test
+    public void readsAheadWithinBatchBound() {
+        final TestReader reader = new TestReader(new ShardReaderConfig().withInitialDemand(1)
+                .withReadAheadBatches(1), fetches(3));
+        reader.read("TRIM_HORIZON", null, reader.sink);
+
+        /* One record delivered, the rest of its batch and one batch ahead buffered. */
+        assertEquals(Collections.singletonList("0"), reader.sink.records);
+        assertEquals(2, reader.next);
+
+        reader.request(10);
+
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5"), reader.sink.records);
+        assertEquals(1, reader.sink.shardEnds);
+    }
+
+    @Test
+    public void fetchesOnDemandWithoutReadAhead() {
+        final TestReader reader = new TestReader(new ShardReaderConfig().withInitialDemand(1), fetches(3));
+        reader.read("TRIM_HORIZON", null, reader.sink);
+
+        assertEquals(Collections.singletonList("0"), reader.sink.records);
+        assertEquals(1, reader.next);
+
+        reader.request(2);
+
+        assertEquals(Arrays.asList("0", "1", "2"), reader.sink.records);
+        assertEquals(2, reader.next);
+    }
+
+    @Test
+    public void readAheadStopsAtByteBound() {
+        final TestReader reader = new TestReader(new ShardReaderConfig().withInitialDemand(1)
+                .withReadAheadBatches(2).withReadAheadBytes(1), fetches(3));
+        reader.read("TRIM_HORIZON", null, reader.sink);
+
+        assertEquals(1, reader.next);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeReadAheadBytes() {
+        new ShardReaderConfig().withReadAheadBytes(-1);
+    }
+
+    /**
+     * @return batches of two records each, numbered from 0
+     */
+    private static List<List<Record>> fetches(final int batches) {
+        final List<List<Record>> fetches = new ArrayList<>();
+        for (int batch = 0; batch < batches; batch++) {
+            fetches.add(Arrays.asList(record(Integer.toString(2 * batch)), record(Integer.toString(2 * batch + 1))));
+        }
+        return fetches;
+    }
+
+    private static Record record(final String data) {
+        return record(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Record record(final ByteBuffer data) {
+        return new Record().withPartitionKey("a").withSequenceNumber("1").withData(data);
+    }
+
+    /**
+     * Hands out one fetch per call and ends the shard after the last one.
+     */
+    private static class TestReader extends AbstractShardReader {
+        private final List<List<Record>> fetches;
+        private final CollectingSink sink = new CollectingSink();
+        private int next;
+
+        private TestReader(final ShardReaderConfig config, final List<List<Record>> fetches) {
+            super("shardId-000000000000", config);
+            this.fetches = fetches;
+        }
+
+        @Override
+        public String getStreamName() {
+            return "stream";
+        }
+
+        @Override
+        protected void start() {
+            drain();
+        }
+
+        @Override
+        protected void fetchNext() {
+            buffer(fetches.get(next++));
+            shardEnded = next == fetches.size();
+            drain();
+        }
+    }
+
+    private static class CollectingSink implements RecordSink {
+        private final List<String> records = new ArrayList<>();
+        private int shardEnds;
+        private Throwable error;
+
+        @Override
+        public void onRecord(final Record record) {
+            final byte[] bytes = new byte[record.getData().remaining()];
+            record.getData().duplicate().get(bytes);
+            records.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void onShardEnd() {
+            shardEnds++;
+        }
+
+        @Override
+        public void onError(final Throwable error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import io.advantageous.reakt.kinesis.BatchingProducerConfig;
+import io.advantageous.reakt.kinesis.SpillConfig;
+import io.advantageous.reakt.kinesis.SpilledPutRecordResult;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BatchingKinesisProducerImplTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("spill").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void replaysSpillLeftByPreviousProducer() throws Exception {
+        spill("stream", entry("a", null, "one"), entry("b", "42", "two"));
+        final ScriptedClient client = new ScriptedClient(1);
+
+        final BatchingKinesisProducerImpl producer = producer(client, spillConfig());
+        assertTrue(client.calls.await(5, TimeUnit.SECONDS));
+
+        assertEquals(Collections.singletonList("a:one,b:two"), client.requests);
+        awaitEmpty(producer);
+        assertEquals(0, producer.getDroppedRecords());
+        producer.close();
+    }
+
+    @Test
+    public void retriesRetryableReplayFailures() throws Exception {
+        spill("stream", entry("a", null, "one"));
+        final ScriptedClient client = new ScriptedClient(2, serviceError(503));
+
+        final BatchingKinesisProducerImpl producer = producer(client, spillConfig());
+        assertTrue(client.calls.await(5, TimeUnit.SECONDS));
+
+        assertEquals(2, client.requests.size());
+        awaitEmpty(producer);
+        assertEquals(0, producer.getDroppedRecords());
+        producer.close();
+    }
+
+    @Test
+    public void reportsRecordsDroppedOnReplay() throws Exception {
+        spill("stream", entry("a", null, "one"), entry("b", null, "two"));
+        spill("other", entry("c", null, "three"));
+        final AmazonServiceException error = serviceError(400);
+        final ScriptedClient client = new ScriptedClient(2, error);
+        final List<String> dropped = new ArrayList<>();
+        final List<Throwable> errors = new ArrayList<>();
+        final CountDownLatch handled = new CountDownLatch(1);
+
+        final BatchingKinesisProducerImpl producer = producer(client, spillConfig()
+                .withDropHandler((streamName, entries, cause) -> {
+                    dropped.add(streamName + "/" + describe(entries));
+                    errors.add(cause);
+                    handled.countDown();
+                }));
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        assertTrue(client.calls.await(5, TimeUnit.SECONDS));
+
+        assertEquals(Collections.singletonList("stream/a:one,b:two"), dropped);
+        assertSame(error, errors.get(0));
+        assertEquals("c:three", client.requests.get(1));
+        awaitEmpty(producer);
+        assertEquals(2, producer.getDroppedRecords());
+        producer.close();
+
+        final MappedFileSpill reopened = new MappedFileSpill(spillConfig());
+        assertNull(reopened.peek(10, Long.MAX_VALUE));
+        reopened.close();
+    }
+
+    @Test
+    public void spilledRecordResolvesWithSpilledMarker() throws Exception {
+        final ScriptedClient client = new ScriptedClient(2, serviceError(503));
+        final BatchingKinesisProducerImpl producer = producer(client, spillConfig());
+        final List<Object> results = new ArrayList<>();
+        final CountDownLatch resolved = new CountDownLatch(1);
+
+        producer.putRecord("stream", ByteBuffer.wrap("one".getBytes(StandardCharsets.UTF_8)), "a")
+                .then(result -> {
+                    results.add(result);
+                    resolved.countDown();
+                }).invoke();
+        producer.flush();
+
+        assertTrue(resolved.await(5, TimeUnit.SECONDS));
+        assertTrue(results.get(0) instanceof SpilledPutRecordResult);
+        /* The replay sends the record later without completing the promise again. */
+        assertTrue(client.calls.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a:one", "a:one"), client.requests);
+        awaitEmpty(producer);
+        assertEquals(1, results.size());
+        producer.close();
+    }
+
+    @Test
+    public void putAfterCloseIsRejected() {
+        final ScriptedClient client = new ScriptedClient(0);
+        final BatchingKinesisProducerImpl producer = new BatchingKinesisProducerImpl(client,
+                new BatchingProducerConfig());
+        producer.close();
+        final List<Throwable> errors = new ArrayList<>();
+
+        producer.putRecord("stream", ByteBuffer.allocate(1), "a").catchError(errors::add).invoke();
+
+        assertTrue(errors.get(0) instanceof IllegalStateException);
+        assertTrue(client.requests.isEmpty());
+    }
+
+    private SpillConfig spillConfig() {
+        return new SpillConfig(directory).withSegmentBytes(SpillConfig.MIN_SEGMENT_BYTES)
+                .withReplayIntervalMillis(10);
+    }
+
+    private void spill(final String streamName, final PutRecordsRequestEntry... entries) {
+        final MappedFileSpill spill = new MappedFileSpill(spillConfig());
+        for (PutRecordsRequestEntry entry : entries) {
+            assertTrue(spill.append(streamName, entry));
+        }
+        spill.close();
+    }
+
+    private static BatchingKinesisProducerImpl producer(final ScriptedClient client, final SpillConfig spill) {
+        return new BatchingKinesisProducerImpl(client, new BatchingProducerConfig().withSpill(spill));
+    }
+
+    private static void awaitEmpty(final BatchingKinesisProducerImpl producer) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5_000;
+        while (producer.getSpilledBytes() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, producer.getSpilledBytes());
+    }
+
+    private static AmazonServiceException serviceError(final int statusCode) {
+        final AmazonServiceException error = new AmazonServiceException("scripted");
+        error.setStatusCode(statusCode);
+        return error;
+    }
+
+    private static PutRecordsRequestEntry entry(final String partitionKey, final String explicitHashKey,
+                                                final String data) {
+        return new PutRecordsRequestEntry().withPartitionKey(partitionKey).withExplicitHashKey(explicitHashKey)
+                .withData(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String describe(final List<PutRecordsRequestEntry> entries) {
+        final StringBuilder builder = new StringBuilder();
+        for (PutRecordsRequestEntry entry : entries) {
+            final byte[] bytes = new byte[entry.getData().remaining()];
+            entry.getData().duplicate().get(bytes);
+            builder.append(builder.length() == 0 ? "" : ",").append(entry.getPartitionKey()).append(':')
+                    .append(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Fails PutRecords calls with the scripted errors in turn, then accepts every record.
+     */
+    private static class ScriptedClient extends DelegatingKinesisClient {
+        private final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch calls;
+
+        private ScriptedClient(final int expectedCalls, final Throwable... errors) {
+            super(null);
+            this.calls = new CountDownLatch(expectedCalls);
+            Collections.addAll(this.errors, errors);
+        }
+
+        @Override
+        public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+            return invokablePromise(promise -> {
+                requests.add(describe(request.getRecords()));
+                calls.countDown();
+                final Throwable error = errors.poll();
+                if (error != null) {
+                    promise.reject(error);
+                    return;
+                }
+                final List<PutRecordsResultEntry> results = new ArrayList<>();
+                for (int index = 0; index < request.getRecords().size(); index++) {
+                    results.add(new PutRecordsResultEntry().withShardId("shardId-000000000000")
+                            .withSequenceNumber(Integer.toString(index)));
+                }
+                promise.resolve(new PutRecordsResult().withFailedRecordCount(0).withRecords(results));
+            });
+        }
+    }
+}
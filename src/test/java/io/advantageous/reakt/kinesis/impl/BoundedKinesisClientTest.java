@@ -0,0 +1,148 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import io.advantageous.reakt.kinesis.InFlightLimitExceededException;
+import io.advantageous.reakt.kinesis.InFlightLimits;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedKinesisClientTest {
+
+    private final PendingClient delegate = new PendingClient();
+    private final List<String> completed = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void queuedPutIsSentWhenThePutAheadCompletes() {
+        final BoundedKinesisClient client = new BoundedKinesisClient(delegate, new InFlightLimits()
+                .withMaxRequests(1).withMaxQueuedRequests(2));
+
+        put(client, "a", 10);
+        put(client, "b", 10);
+        put(client, "c", 10);
+
+        assertEquals(Collections.singletonList("a"), delegate.sent);
+        assertEquals(1, client.getInFlightRequests());
+        assertEquals(2, client.getQueuedRequests());
+
+        delegate.complete(0);
+
+        assertEquals(Arrays.asList("a", "b"), delegate.sent);
+        assertEquals(Collections.singletonList("a"), completed);
+        assertEquals(1, client.getQueuedRequests());
+
+        delegate.complete(1);
+        delegate.complete(2);
+
+        assertEquals(Arrays.asList("a", "b", "c"), completed);
+        assertEquals(0, client.getInFlightRequests());
+        assertEquals(0, client.getInFlightBytes());
+    }
+
+    @Test
+    public void failedPutReleasesItsRoom() {
+        final BoundedKinesisClient client = new BoundedKinesisClient(delegate, new InFlightLimits()
+                .withMaxRequests(1).withMaxQueuedRequests(1));
+
+        put(client, "a", 10);
+        put(client, "b", 10);
+        delegate.fail(0);
+
+        assertEquals(Arrays.asList("a", "b"), delegate.sent);
+        assertEquals(Collections.singletonList("a:failed"), completed);
+    }
+
+    @Test
+    public void byteBoundQueuesUntilBytesAreReleased() {
+        final BoundedKinesisClient client = new BoundedKinesisClient(delegate, new InFlightLimits()
+                .withMaxBytes(100).withMaxQueuedRequests(1));
+
+        put(client, "a", 60);
+        put(client, "b", 60);
+
+        assertEquals(Collections.singletonList("a"), delegate.sent);
+        assertEquals(61, client.getInFlightBytes());
+
+        delegate.complete(0);
+
+        assertEquals(Arrays.asList("a", "b"), delegate.sent);
+        assertEquals(61, client.getInFlightBytes());
+    }
+
+    @Test
+    public void oversizedPutIsSentOnceNothingElseIsInFlight() {
+        final BoundedKinesisClient client = new BoundedKinesisClient(delegate, new InFlightLimits()
+                .withMaxBytes(100).withMaxQueuedRequests(1));
+
+        put(client, "a", 10);
+        put(client, "b", 500);
+
+        assertEquals(Collections.singletonList("a"), delegate.sent);
+
+        delegate.complete(0);
+
+        assertEquals(Arrays.asList("a", "b"), delegate.sent);
+    }
+
+    @Test
+    public void putIsRejectedWhenTheQueueIsFull() {
+        final BoundedKinesisClient client = new BoundedKinesisClient(delegate, new InFlightLimits()
+                .withMaxRequests(1).withMaxQueuedRequests(1));
+
+        put(client, "a", 10);
+        put(client, "b", 10);
+        put(client, "c", 10);
+
+        assertEquals(Collections.singletonList("a"), delegate.sent);
+        assertEquals(Collections.singletonList("c:rejected"), completed);
+        assertEquals(1, client.getQueuedRequests());
+    }
+
+    private void put(final BoundedKinesisClient client, final String partitionKey, final int bytes) {
+        client.putRecord("stream", ByteBuffer.allocate(bytes), partitionKey)
+                .then(result -> completed.add(partitionKey))
+                .catchError(error -> completed.add(partitionKey
+                        + (error instanceof InFlightLimitExceededException ? ":rejected" : ":failed")))
+                .invoke();
+    }
+
+    /**
+     * Keeps every putRecord call pending until the test completes or fails it.
+     */
+    private static class PendingClient extends DelegatingKinesisClient {
+        private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        private final List<Promise<PutRecordResult>> pending = Collections.synchronizedList(new ArrayList<>());
+
+        private PendingClient() {
+            super(null);
+        }
+
+        @Override
+        public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                                  final String partitionKey) {
+            return invokablePromise(promise -> {
+                sent.add(partitionKey);
+                pending.add(promise);
+            });
+        }
+
+        private void complete(final int call) {
+            assertTrue(call < pending.size());
+            pending.get(call).resolve(new PutRecordResult().withShardId("shardId-000000000000"));
+        }
+
+        private void fail(final int call) {
+            pending.get(call).reject(new AmazonServiceException("failed"));
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.ListStreamsResult;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.SplitShardResult;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+import com.amazonaws.services.kinesis.model.StreamStatus;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CachingKinesisClientTest {
+
+    private final ScriptedStreams delegate = new ScriptedStreams();
+    private final CachingKinesisClient client = new CachingKinesisClient(delegate, 60_000);
+    private final List<String> described = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void concurrentCallersShareOneLoad() {
+        delegate.hold = true;
+
+        describe("stream");
+        describe("stream");
+        describe("stream");
+
+        assertEquals(1, delegate.describeCalls);
+        assertTrue(described.isEmpty());
+
+        delegate.complete(0);
+
+        assertEquals(Arrays.asList("shard-0,shard-1,shard-2", "shard-0,shard-1,shard-2", "shard-0,shard-1,shard-2"),
+                described);
+        describe("stream");
+        assertEquals(1, delegate.describeCalls);
+    }
+
+    @Test
+    public void loadFinishingAfterInvalidationIsNotCached() {
+        delegate.hold = true;
+        describe("stream");
+
+        client.invalidate("stream");
+        delegate.complete(0);
+
+        /* The caller that was waiting still gets the result. */
+        assertEquals(1, described.size());
+        describe("stream");
+        assertEquals(2, delegate.describeCalls);
+    }
+
+    @Test
+    public void invalidationDuringLoadStartsAFreshLoad() {
+        delegate.hold = true;
+        describe("stream");
+        client.invalidate("stream");
+
+        describe("stream");
+        assertEquals(2, delegate.describeCalls);
+
+        delegate.complete(1);
+        delegate.complete(0);
+        describe("stream");
+
+        /* The fresh load is cached, the one started before the invalidation is not. */
+        assertEquals(2, delegate.describeCalls);
+        assertEquals(3, described.size());
+    }
+
+    @Test
+    public void streamsThatAreNotActiveAreNotCached() {
+        delegate.status = StreamStatus.UPDATING.toString();
+
+        describe("stream");
+        describe("stream");
+
+        /* Two pages per load. */
+        assertEquals(4, delegate.describeCalls);
+    }
+
+    @Test
+    public void describePagesAreServedFromTheCompleteStream() {
+        final List<String> pages = new ArrayList<>();
+
+        client.describeStream("stream", 2, null).then(result -> pages.add(page(result))).invoke();
+        client.describeStream("stream", 2, "shard-1").then(result -> pages.add(page(result))).invoke();
+        client.describeStream("stream", 2, "shard-2").then(result -> pages.add(page(result))).invoke();
+
+        assertEquals(Arrays.asList("shard-0,shard-1 more", "shard-2", ""), pages);
+        /* The delegate pages two shards at a time, the complete stream takes two calls. */
+        assertEquals(2, delegate.describeCalls);
+    }
+
+    @Test
+    public void streamListPagesAreServedFromTheCompleteList() {
+        final List<String> pages = new ArrayList<>();
+
+        client.listStreams(2, null).then(result -> pages.add(page(result))).invoke();
+        client.listStreams(2, "b").then(result -> pages.add(page(result))).invoke();
+        client.listStreams("d").then(result -> pages.add(page(result))).invoke();
+
+        assertEquals(Arrays.asList("a,b more", "c,d more", "e"), pages);
+        assertEquals(3, delegate.listCalls);
+    }
+
+    @Test
+    public void splitDropsTheCachedStream() {
+        describe("stream");
+
+        client.splitShardAsync("stream", "shard-0", "50").invoke();
+        describe("stream");
+
+        /* Two pages per load. */
+        assertEquals(4, delegate.describeCalls);
+        assertEquals(2, described.size());
+    }
+
+    private void describe(final String streamName) {
+        client.describeStream(streamName).then(result -> described.add(shardIds(result.getStreamDescription())))
+                .invoke();
+    }
+
+    private static String page(final DescribeStreamResult result) {
+        final StreamDescription description = result.getStreamDescription();
+        return shardIds(description) + (description.getHasMoreShards() ? " more" : "");
+    }
+
+    private static String page(final ListStreamsResult result) {
+        return String.join(",", result.getStreamNames()) + (result.getHasMoreStreams() ? " more" : "");
+    }
+
+    private static String shardIds(final StreamDescription description) {
+        final List<String> shardIds = new ArrayList<>();
+        for (Shard shard : description.getShards()) {
+            shardIds.add(shard.getShardId());
+        }
+        return String.join(",", shardIds);
+    }
+
+    /**
+     * Three shards described two at a time and five streams listed two at a time. Held describe calls stay
+     * pending until the test completes them, each with the whole stream on one page.
+     */
+    private static class ScriptedStreams extends DelegatingKinesisClient {
+        private static final List<String> SHARD_IDS = Arrays.asList("shard-0", "shard-1", "shard-2");
+        private static final List<String> STREAM_NAMES = Arrays.asList("a", "b", "c", "d", "e");
+
+        private final List<Promise<DescribeStreamResult>> pending = new ArrayList<>();
+        private boolean hold;
+        private String status = StreamStatus.ACTIVE.toString();
+        private int describeCalls;
+        private int listCalls;
+
+        private ScriptedStreams() {
+            super(null);
+        }
+
+        @Override
+        public Promise<DescribeStreamResult> describeStream(final String streamName, final int limit,
+                                                            final String exclusiveStartShardId) {
+            return invokablePromise(promise -> {
+                describeCalls++;
+                if (hold) {
+                    pending.add(promise);
+                    return;
+                }
+                final int from = exclusiveStartShardId == null ? 0 : SHARD_IDS.indexOf(exclusiveStartShardId) + 1;
+                final int to = Math.min(SHARD_IDS.size(), from + 2);
+                promise.resolve(describe(streamName, SHARD_IDS.subList(from, to), to < SHARD_IDS.size()));
+            });
+        }
+
+        @Override
+        public Promise<ListStreamsResult> listStreams(final int limit, final String exclusiveStartStreamName) {
+            return invokablePromise(promise -> {
+                listCalls++;
+                final int from = exclusiveStartStreamName == null ? 0
+                        : STREAM_NAMES.indexOf(exclusiveStartStreamName) + 1;
+                final int to = Math.min(STREAM_NAMES.size(), from + 2);
+                promise.resolve(new ListStreamsResult()
+                        .withStreamNames(new ArrayList<>(STREAM_NAMES.subList(from, to)))
+                        .withHasMoreStreams(to < STREAM_NAMES.size()));
+            });
+        }
+
+        @Override
+        public Promise<SplitShardResult> splitShardAsync(final String streamName, final String shardToSplit,
+                                                         final String newStartingHashKey) {
+            return invokablePromise(promise -> promise.resolve(new SplitShardResult()));
+        }
+
+        private void complete(final int call) {
+            pending.get(call).resolve(describe("stream", SHARD_IDS, false));
+        }
+
+        private DescribeStreamResult describe(final String streamName, final List<String> shardIds,
+                                              final boolean hasMoreShards) {
+            final List<Shard> shards = new ArrayList<>();
+            for (String shardId : shardIds) {
+                shards.add(new Shard().withShardId(shardId));
+            }
+            return new DescribeStreamResult().withStreamDescription(new StreamDescription()
+                    .withStreamName(streamName).withStreamStatus(status).withShards(shards)
+                    .withHasMoreShards(hasMoreShards));
+        }
+    }
+}
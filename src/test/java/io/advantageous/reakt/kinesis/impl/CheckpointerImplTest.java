@@ -0,0 +1,106 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import io.advantageous.reakt.kinesis.CheckpointStore;
+import io.advantageous.reakt.kinesis.Checkpointer;
+import io.advantageous.reakt.kinesis.CheckpointerConfig;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointerImplTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "checkpointer-test"));
+    private final BlockingStore store = new BlockingStore();
+
+    @After
+    public void shutdown() {
+        store.release.countDown();
+        scheduler.shutdownNow();
+    }
+
+    @Test(timeout = 10_000)
+    public void thresholdWriteRunsOnTheScheduler() throws Exception {
+        final Checkpointer checkpointer = Checkpointer.create(store, "stream", new CheckpointerConfig()
+                .withMaxRecordsPerShard(2).withFlushIntervalMillis(60_000).withScheduler(scheduler));
+
+        checkpointer.checkpoint("shard-1", "1");
+        checkpointer.checkpoint("shard-1", "2");
+        /* The store blocks until released, the calling thread went on regardless. */
+        checkpointer.checkpoint("shard-1", "3");
+
+        assertTrue(store.saving.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("checkpointer-test"), store.threads);
+
+        store.release.countDown();
+        final CountDownLatch flushed = new CountDownLatch(1);
+        checkpointer.flush().then(result -> flushed.countDown()).invoke();
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonMap("shard-1", "3"), store.saved.get(store.saved.size() - 1));
+        checkpointer.close();
+    }
+
+    @Test
+    public void belowThresholdNothingIsWritten() throws Exception {
+        final Checkpointer checkpointer = Checkpointer.create(store, "stream", new CheckpointerConfig()
+                .withMaxRecordsPerShard(3).withFlushIntervalMillis(60_000).withScheduler(scheduler));
+
+        checkpointer.checkpoint("shard-1", "1");
+        checkpointer.checkpoint("shard-2", "1");
+        checkpointer.checkpoint("shard-1", "2");
+
+        assertFalse(store.saving.await(100, TimeUnit.MILLISECONDS));
+        store.release.countDown();
+        checkpointer.close();
+        assertEquals(1, store.saved.size());
+    }
+
+    /**
+     * Records the thread and contents of every write and holds writes until released.
+     */
+    private static class BlockingStore implements CheckpointStore {
+        private final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        private final List<Map<String, String>> saved = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch saving = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public Promise<Map<String, String>> load(final String streamName) {
+            return invokablePromise(promise -> promise.resolve(Collections.emptyMap()));
+        }
+
+        @Override
+        public Promise<Void> save(final String streamName, final Map<String, String> sequenceNumbers) {
+            return invokablePromise(promise -> {
+                threads.add(Thread.currentThread().getName());
+                saved.add(new HashMap<>(sequenceNumbers));
+                saving.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                promise.resolve(null);
+            });
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.kinesis.model.Record;
+import io.advantageous.reakt.kinesis.FanOutConsumer;
+import io.advantageous.reakt.kinesis.FanOutTransport;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.ShardEvent;
+import io.advantageous.reakt.kinesis.ShardEventListener;
+import io.advantageous.reakt.kinesis.ShardReaderConfig;
+import io.advantageous.reakt.kinesis.ShardSubscription;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FanOutShardReaderTest {
+
+    private static final String SHARD_ID = "shardId-000000000000";
+
+    private final ScriptedTransport transport = new ScriptedTransport();
+    private final CollectingSink sink = new CollectingSink();
+    private FanOutShardReader reader;
+
+    @After
+    public void stop() {
+        if (reader != null) {
+            reader.stop();
+        }
+    }
+
+    @Test
+    public void completedSubscriptionResumesAfterContinuation() throws Exception {
+        read(new ShardReaderConfig(), "TRIM_HORIZON");
+
+        /* One event is requested at a time. */
+        assertEquals(1, transport.subscribe(0).requested);
+        transport.listener(0).onEvent(event("2", "1", "2"));
+        transport.listener(0).onComplete();
+
+        assertTrue(transport.subscribed.tryAcquire(2, 5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("1", "2"), sink.records);
+        assertEquals(Arrays.asList("TRIM_HORIZON:null", "AFTER_SEQUENCE_NUMBER:2"), transport.positions);
+    }
+
+    @Test
+    public void staleListenerIsIgnored() throws Exception {
+        read(new ShardReaderConfig(), "TRIM_HORIZON");
+        transport.subscribe(0);
+        transport.listener(0).onComplete();
+        assertTrue(transport.subscribed.tryAcquire(2, 5, TimeUnit.SECONDS));
+
+        final ShardEventListener stale = transport.listener(0);
+        stale.onEvent(event("2", "1", "2"));
+        stale.onComplete();
+        stale.onError(new IllegalStateException("stale"));
+        final TestSubscription late = new TestSubscription();
+        stale.onSubscribe(late);
+
+        assertTrue(late.cancelled);
+        assertEquals(Collections.emptyList(), sink.records);
+        assertNull(sink.error);
+        assertEquals(2, transport.positions.size());
+    }
+
+    @Test
+    public void retryableErrorResubscribesAfterBackoff() throws Exception {
+        read(new ShardReaderConfig().withThrottledBackoffMillis(50), "TRIM_HORIZON");
+        transport.subscribe(0);
+        transport.listener(0).onEvent(event("1", "1"));
+        assertTrue(transport.subscribed.tryAcquire(1, 5, TimeUnit.SECONDS));
+
+        final long failed = System.nanoTime();
+        transport.listener(0).onError(new ProvisionedThroughputExceededException("slow down"));
+
+        assertTrue(transport.subscribed.tryAcquire(1, 5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - failed >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(Arrays.asList("TRIM_HORIZON:null", "AFTER_SEQUENCE_NUMBER:1"), transport.positions);
+        assertNull(sink.error);
+    }
+
+    @Test
+    public void nonRetryableErrorFailsTheRead() {
+        read(new ShardReaderConfig(), "TRIM_HORIZON");
+        transport.subscribe(0);
+
+        final IllegalStateException error = new IllegalStateException("broken");
+        transport.listener(0).onError(error);
+
+        assertEquals(error, sink.error);
+        assertEquals(1, transport.positions.size());
+    }
+
+    @Test
+    public void missingContinuationEndsTheShard() {
+        read(new ShardReaderConfig(), "TRIM_HORIZON");
+        transport.subscribe(0);
+
+        transport.listener(0).onEvent(event(null, "1", "2"));
+        transport.listener(0).onComplete();
+
+        assertEquals(Arrays.asList("1", "2"), sink.records);
+        assertEquals(1, sink.shardEnds);
+        assertEquals(1, transport.positions.size());
+    }
+
+    @Test
+    public void latestWithoutEventsResubscribesAtStartTime() throws Exception {
+        final long before = System.currentTimeMillis();
+        read(new ShardReaderConfig(), "LATEST");
+        transport.subscribe(0);
+
+        transport.listener(0).onComplete();
+
+        assertTrue(transport.subscribed.tryAcquire(2, 5, TimeUnit.SECONDS));
+        assertEquals("LATEST:null", transport.positions.get(0));
+        final String[] resubscribed = transport.positions.get(1).split(":");
+        assertEquals("AT_TIMESTAMP", resubscribed[0]);
+        final long timestamp = Long.parseLong(resubscribed[1]);
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis());
+    }
+
+    private void read(final ShardReaderConfig config, final String shardIteratorType) {
+        final KinesisClient client = KinesisClient.fanOut(new DelegatingKinesisClient(null), transport);
+        reader = new FanOutShardReader(client, new FanOutConsumer("stream", "consumer", "arn"), SHARD_ID, config);
+        reader.read(shardIteratorType, null, sink);
+    }
+
+    private static ShardEvent event(final String continuation, final String... sequenceNumbers) {
+        final List<Record> records = new ArrayList<>();
+        for (String sequenceNumber : sequenceNumbers) {
+            records.add(new Record().withSequenceNumber(sequenceNumber).withPartitionKey("pk")
+                    .withData(ByteBuffer.allocate(1)));
+        }
+        return new ShardEvent(records, continuation, 0L);
+    }
+
+    /**
+     * Records the positions subscriptions start at and the listener of each, the test opens them.
+     */
+    private static class ScriptedTransport implements FanOutTransport {
+        private final List<String> positions = Collections.synchronizedList(new ArrayList<>());
+        private final List<ShardEventListener> listeners = Collections.synchronizedList(new ArrayList<>());
+        private final Semaphore subscribed = new Semaphore(0);
+
+        @Override
+        public Promise<FanOutConsumer> registerConsumer(final String streamName, final String consumerName) {
+            return invokablePromise(promise -> promise.resolve(new FanOutConsumer(streamName, consumerName, "arn")));
+        }
+
+        @Override
+        public Promise<Void> deregisterConsumer(final FanOutConsumer consumer) {
+            return invokablePromise(promise -> promise.resolve(null));
+        }
+
+        @Override
+        public void subscribeToShard(final FanOutConsumer consumer, final String shardId,
+                                     final String startingPositionType, final String startingSequenceNumber,
+                                     final ShardEventListener listener) {
+            positions.add(startingPositionType + ":" + startingSequenceNumber);
+            listeners.add(listener);
+            subscribed.release();
+        }
+
+        private ShardEventListener listener(final int subscription) {
+            return listeners.get(subscription);
+        }
+
+        private TestSubscription subscribe(final int subscription) {
+            final TestSubscription shardSubscription = new TestSubscription();
+            listener(subscription).onSubscribe(shardSubscription);
+            return shardSubscription;
+        }
+    }
+
+    private static class TestSubscription implements ShardSubscription {
+        private volatile long requested;
+        private volatile boolean cancelled;
+
+        @Override
+        public void request(final long events) {
+            requested += events;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static class CollectingSink implements RecordSink {
+        private final List<String> records = Collections.synchronizedList(new ArrayList<>());
+        private volatile int shardEnds;
+        private volatile Throwable error;
+
+        @Override
+        public void onRecord(final Record record) {
+            records.add(record.getSequenceNumber());
+        }
+
+        @Override
+        public void onShardEnd() {
+            shardEnds++;
+        }
+
+        @Override
+        public void onError(final Throwable error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.GetShardIteratorRequest;
+import com.amazonaws.services.kinesis.model.GetShardIteratorResult;
+import com.amazonaws.services.kinesis.model.Record;
+import io.advantageous.reakt.kinesis.ShardReaderConfig;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KinesisShardReaderImplTest {
+
+    private final ScriptedShard shard = new ScriptedShard();
+    private final KinesisShardReaderImpl reader = new KinesisShardReaderImpl(shard, "stream",
+            "shardId-000000000000", new ShardReaderConfig().withPollIntervalMillis(1).withIdlePollIntervalMillis(10));
+    private final List<String> records = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void stop() {
+        reader.stop();
+    }
+
+    @Test
+    public void expiredIteratorReopensAfterLastRecord() throws Exception {
+        shard.fetches.add(records("1", "2"));
+        shard.fetches.add(new ExpiredIteratorException("expired"));
+
+        read("TRIM_HORIZON");
+
+        assertTrue(shard.reopened.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("1", "2"), records);
+        assertEquals(Arrays.asList("TRIM_HORIZON", "AFTER_SEQUENCE_NUMBER:2"), shard.positions);
+    }
+
+    @Test
+    public void expiredIteratorBeforeFirstRecordReopensWhereItStarted() throws Exception {
+        shard.fetches.add(new ExpiredIteratorException("expired"));
+
+        read("AT_SEQUENCE_NUMBER", "7");
+
+        assertTrue(shard.reopened.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("AT_SEQUENCE_NUMBER:7", "AT_SEQUENCE_NUMBER:7"), shard.positions);
+    }
+
+    @Test
+    public void expiredLatestIteratorReopensAtStartTime() throws Exception {
+        shard.fetches.add(new ExpiredIteratorException("expired"));
+        final long before = System.currentTimeMillis();
+
+        read("LATEST");
+
+        assertTrue(shard.reopened.await(5, TimeUnit.SECONDS));
+        assertEquals("LATEST", shard.positions.get(0));
+        final String[] reopened = shard.positions.get(1).split(":");
+        assertEquals("AT_TIMESTAMP", reopened[0]);
+        final long timestamp = Long.parseLong(reopened[1]);
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis());
+    }
+
+    private void read(final String shardIteratorType) {
+        read(shardIteratorType, null);
+    }
+
+    private void read(final String shardIteratorType, final String sequenceNumber) {
+        reader.read(shardIteratorType, sequenceNumber, new RecordSink() {
+            @Override
+            public void onRecord(final Record record) {
+                records.add(record.getSequenceNumber());
+            }
+
+            @Override
+            public void onShardEnd() {
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+            }
+        });
+    }
+
+    private static GetRecordsResult records(final String... sequenceNumbers) {
+        final List<Record> records = new ArrayList<>();
+        for (String sequenceNumber : sequenceNumbers) {
+            records.add(new Record().withSequenceNumber(sequenceNumber).withPartitionKey("pk")
+                    .withData(ByteBuffer.allocate(1)));
+        }
+        return new GetRecordsResult().withRecords(records).withMillisBehindLatest(0L);
+    }
+
+    /**
+     * Records the positions iterators are opened at and answers GetRecords from a script of results and errors,
+     * then with empty results.
+     */
+    private static class ScriptedShard extends DelegatingKinesisClient {
+        private final Queue<Object> fetches = new ConcurrentLinkedQueue<>();
+        private final List<String> positions = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch reopened = new CountDownLatch(2);
+
+        private ScriptedShard() {
+            super(null);
+        }
+
+        @Override
+        public Promise<GetShardIteratorResult> getShardIteratorAsync(final GetShardIteratorRequest request) {
+            return open(request.getShardIteratorType() + ":" + request.getTimestamp().getTime());
+        }
+
+        @Override
+        public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                     final String shardIteratorType) {
+            return open(shardIteratorType);
+        }
+
+        @Override
+        public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                     final String shardIteratorType,
+                                                                     final String startingSequenceNumber) {
+            return open(shardIteratorType + ":" + startingSequenceNumber);
+        }
+
+        @Override
+        public Promise<GetRecordsResult> getRecords(final GetRecordsRequest request) {
+            return invokablePromise(promise -> {
+                final Object fetch = fetches.poll();
+                if (fetch instanceof Throwable) {
+                    promise.reject((Throwable) fetch);
+                } else {
+                    final GetRecordsResult result = fetch != null ? (GetRecordsResult) fetch : records();
+                    promise.resolve(result.withNextShardIterator("iterator"));
+                }
+            });
+        }
+
+        private Promise<GetShardIteratorResult> open(final String position) {
+            return invokablePromise(promise -> {
+                positions.add(position);
+                reopened.countDown();
+                promise.resolve(new GetShardIteratorResult().withShardIterator("iterator"));
+            });
+        }
+    }
+}
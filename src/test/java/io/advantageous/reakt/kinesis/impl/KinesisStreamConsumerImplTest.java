@@ -0,0 +1,173 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.GetShardIteratorRequest;
+import com.amazonaws.services.kinesis.model.GetShardIteratorResult;
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.SequenceNumberRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+import io.advantageous.reakt.kinesis.KinesisStreamConsumer;
+import io.advantageous.reakt.kinesis.ShardReaderConfig;
+import io.advantageous.reakt.kinesis.ShardRecordHandler;
+import io.advantageous.reakt.kinesis.StreamConsumerConfig;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KinesisStreamConsumerImplTest {
+
+    private static final String SHARD_ID = "shardId-000000000000";
+
+    private final ScriptedStream stream = new ScriptedStream();
+    private final List<String> handled = Collections.synchronizedList(new ArrayList<>());
+    private KinesisStreamConsumer consumer;
+
+    @After
+    public void close() {
+        if (consumer != null) {
+            consumer.close();
+        }
+    }
+
+    @Test
+    public void retryResumesAfterLastHandledRecord() throws Exception {
+        stream.fetches.add(records("1", "2"));
+        stream.fetches.add(new AmazonServiceException("read failed"));
+
+        start((shardId, record) -> handled.add(record.getSequenceNumber()));
+
+        assertTrue(stream.retried.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("1", "2"), handled);
+        assertEquals(Arrays.asList("LATEST", "AFTER_SEQUENCE_NUMBER:2"), stream.positions);
+    }
+
+    @Test
+    public void handlerFailureRetriesAtFirstDeliveredRecord() throws Exception {
+        stream.fetches.add(records("1", "2"));
+        stream.fetches.add(new AmazonServiceException("read failed"));
+
+        start((shardId, record) -> {
+            handled.add(record.getSequenceNumber());
+            if ("1".equals(record.getSequenceNumber())) {
+                throw new IllegalStateException("handler failed");
+            }
+        });
+
+        assertTrue(stream.retried.await(5, TimeUnit.SECONDS));
+        /* Nothing was handled without error, so LATEST would skip both records. */
+        assertEquals(Arrays.asList("1", "2"), handled);
+        assertEquals(Arrays.asList("LATEST", "AT_SEQUENCE_NUMBER:1"), stream.positions);
+    }
+
+    @Test
+    public void readFailureBeforeAnyRecordRetriesAtStartTime() throws Exception {
+        stream.fetches.add(new AmazonServiceException("read failed"));
+        final long before = System.currentTimeMillis();
+
+        start((shardId, record) -> handled.add(record.getSequenceNumber()));
+
+        assertTrue(stream.retried.await(5, TimeUnit.SECONDS));
+        assertEquals("LATEST", stream.positions.get(0));
+        final String[] retry = stream.positions.get(1).split(":");
+        assertEquals("AT_TIMESTAMP", retry[0]);
+        final long timestamp = Long.parseLong(retry[1]);
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis());
+    }
+
+    private void start(final ShardRecordHandler handler) {
+        consumer = KinesisStreamConsumer.create(stream, "stream", new StreamConsumerConfig()
+                .withShardSyncIntervalMillis(0)
+                .withShardRetryMillis(1)
+                .withReaderConfig(new ShardReaderConfig().withPollIntervalMillis(1).withIdlePollIntervalMillis(10)));
+        consumer.start(handler).invoke();
+    }
+
+    private static GetRecordsResult records(final String... sequenceNumbers) {
+        final List<Record> records = new ArrayList<>();
+        for (String sequenceNumber : sequenceNumbers) {
+            records.add(new Record().withSequenceNumber(sequenceNumber).withPartitionKey("pk")
+                    .withData(ByteBuffer.allocate(1)));
+        }
+        return new GetRecordsResult().withRecords(records).withMillisBehindLatest(0L);
+    }
+
+    /**
+     * One open shard. Records the positions iterators are opened at and answers GetRecords from a script of
+     * results and errors, then with empty results.
+     */
+    private static class ScriptedStream extends DelegatingKinesisClient {
+        private final Queue<Object> fetches = new ConcurrentLinkedQueue<>();
+        private final List<String> positions = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch retried = new CountDownLatch(2);
+
+        private ScriptedStream() {
+            super(null);
+        }
+
+        @Override
+        public Promise<DescribeStreamResult> describeStream(final String streamName, final int limit,
+                                                            final String exclusiveStartShardId) {
+            return invokablePromise(promise -> promise.resolve(new DescribeStreamResult().withStreamDescription(
+                    new StreamDescription().withStreamName(streamName).withHasMoreShards(false).withShards(
+                            new Shard().withShardId(SHARD_ID).withSequenceNumberRange(
+                                    new SequenceNumberRange().withStartingSequenceNumber("0"))))));
+        }
+
+        @Override
+        public Promise<GetShardIteratorResult> getShardIteratorAsync(final GetShardIteratorRequest request) {
+            return open(request.getShardIteratorType() + ":" + request.getTimestamp().getTime());
+        }
+
+        @Override
+        public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                     final String shardIteratorType) {
+            return open(shardIteratorType);
+        }
+
+        @Override
+        public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                     final String shardIteratorType,
+                                                                     final String startingSequenceNumber) {
+            return open(shardIteratorType + ":" + startingSequenceNumber);
+        }
+
+        @Override
+        public Promise<GetRecordsResult> getRecords(final GetRecordsRequest request) {
+            return invokablePromise(promise -> {
+                final Object fetch = fetches.poll();
+                if (fetch instanceof Throwable) {
+                    promise.reject((Throwable) fetch);
+                } else {
+                    final GetRecordsResult result = fetch != null ? (GetRecordsResult) fetch : records();
+                    promise.resolve(result.withNextShardIterator("iterator"));
+                }
+            });
+        }
+
+        private Promise<GetShardIteratorResult> open(final String position) {
+            return invokablePromise(promise -> {
+                positions.add(position);
+                retried.countDown();
+                promise.resolve(new GetShardIteratorResult().withShardIterator("iterator"));
+            });
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedFileCheckpointStoreTest {
+
+    /* Layout of the first slot: header, key, then two copies of version, length, value and CRC. */
+    private static final int FIRST_COPY = 8 + 256;
+    private static final int SECOND_COPY = FIRST_COPY + 256;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("checkpoints", ".bin");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void survivesReopen() {
+        final MappedFileCheckpointStore store = new MappedFileCheckpointStore(file, false);
+        save(store, "stream", "shardId-000000000000", "100");
+        save(store, "stream", "shardId-000000000001", "200");
+        save(store, "other", "shardId-000000000000", "300");
+        save(store, "stream", "shardId-000000000000", "101");
+        store.close();
+
+        final MappedFileCheckpointStore reopened = new MappedFileCheckpointStore(file, false);
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("shardId-000000000000", "101");
+        expected.put("shardId-000000000001", "200");
+        assertEquals(expected, load(reopened, "stream"));
+        assertEquals(Collections.singletonMap("shardId-000000000000", "300"), load(reopened, "other"));
+        reopened.close();
+    }
+
+    @Test
+    public void survivesProcessCrash() {
+        final MappedFileCheckpointStore store = new MappedFileCheckpointStore(file, false);
+        save(store, "stream", "shardId-000000000000", "100");
+
+        /* No close, a second mapping sees the writes the crashed process left in the page cache. */
+        final MappedFileCheckpointStore recovered = new MappedFileCheckpointStore(file, false);
+        assertEquals(Collections.singletonMap("shardId-000000000000", "100"), load(recovered, "stream"));
+        recovered.close();
+        store.close();
+    }
+
+    @Test
+    public void tornSaveKeepsPreviousSequenceNumber() throws Exception {
+        final MappedFileCheckpointStore store = new MappedFileCheckpointStore(file, false);
+        save(store, "stream", "shardId-000000000000", "100");
+        save(store, "stream", "shardId-000000000000", "200");
+        store.close();
+
+        /* The second save went to the second copy, tear its value as a crash in the middle of the write would. */
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(SECOND_COPY + 10 + 1);
+            raf.write('9');
+        }
+
+        final MappedFileCheckpointStore reopened = new MappedFileCheckpointStore(file, false);
+        assertEquals(Collections.singletonMap("shardId-000000000000", "100"), load(reopened, "stream"));
+
+        /* The next save overwrites the torn copy. */
+        save(reopened, "stream", "shardId-000000000000", "300");
+        reopened.close();
+        final MappedFileCheckpointStore again = new MappedFileCheckpointStore(file, false);
+        assertEquals(Collections.singletonMap("shardId-000000000000", "300"), load(again, "stream"));
+        again.close();
+    }
+
+    @Test
+    public void tornFirstSaveLoadsNothing() throws Exception {
+        final MappedFileCheckpointStore store = new MappedFileCheckpointStore(file, false);
+        save(store, "stream", "shardId-000000000000", "100");
+        store.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(FIRST_COPY + 10 + 3);
+            raf.writeInt(0);
+        }
+
+        final MappedFileCheckpointStore reopened = new MappedFileCheckpointStore(file, false);
+        assertTrue(load(reopened, "stream").isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    public void growsPastInitialSlots() {
+        final MappedFileCheckpointStore store = new MappedFileCheckpointStore(file, false);
+        final Map<String, String> sequenceNumbers = new HashMap<>();
+        for (int shard = 0; shard < 600; shard++) {
+            sequenceNumbers.put(String.format("shardId-%012d", shard), Integer.toString(shard));
+        }
+        save(store, "stream", sequenceNumbers);
+        store.close();
+
+        final MappedFileCheckpointStore reopened = new MappedFileCheckpointStore(file, false);
+        assertEquals(sequenceNumbers, load(reopened, "stream"));
+        reopened.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsForeignFile() throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(0x12345678);
+        }
+        new MappedFileCheckpointStore(file, false);
+    }
+
+    private static void save(final MappedFileCheckpointStore store, final String streamName, final String shardId,
+                             final String sequenceNumber) {
+        save(store, streamName, Collections.singletonMap(shardId, sequenceNumber));
+    }
+
+    private static void save(final MappedFileCheckpointStore store, final String streamName,
+                             final Map<String, String> sequenceNumbers) {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        store.save(streamName, sequenceNumbers).catchError(error::set).invoke();
+        assertEquals(null, error.get());
+    }
+
+    private static Map<String, String> load(final MappedFileCheckpointStore store, final String streamName) {
+        final AtomicReference<Map<String, String>> loaded = new AtomicReference<>();
+        store.load(streamName).then(loaded::set).invoke();
+        return loaded.get();
+    }
+}
@@ -0,0 +1,251 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import io.advantageous.reakt.kinesis.SpillConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+public class MappedFileSpillTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("spill").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void readsBackInOrder() {
+        final MappedFileSpill spill = new MappedFileSpill(config());
+        assertTrue(spill.append("stream", entry("a", null, "one")));
+        assertTrue(spill.append("stream", entry("b", "42", "two")));
+
+        final MappedFileSpill.Batch batch = spill.peek(10, Long.MAX_VALUE);
+        assertEquals("stream", batch.getStreamName());
+        assertEquals(2, batch.getEntries().size());
+        assertEntry(batch.getEntries().get(0), "a", null, "one");
+        assertEntry(batch.getEntries().get(1), "b", "42", "two");
+
+        spill.commit(batch);
+        assertTrue(spill.isEmpty());
+        assertNull(spill.peek(10, Long.MAX_VALUE));
+        spill.close();
+    }
+
+    @Test
+    public void tornFrameIsDroppedOnOpen() throws Exception {
+        final MappedFileSpill spill = new MappedFileSpill(config());
+        spill.append("stream", entry("a", null, "one"));
+        spill.append("stream", entry("b", null, "two"));
+        spill.close();
+
+        /* Tear the last byte of the second frame's data as a crash in the middle of the append would. */
+        final File segment = directory.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            final int secondFrame = 8 + 8 + frameLength("stream", "a", null, "one");
+            raf.seek(secondFrame + 8 + frameLength("stream", "b", null, "two") - 1);
+            raf.write('x');
+        }
+
+        final MappedFileSpill reopened = new MappedFileSpill(config());
+        final MappedFileSpill.Batch batch = reopened.peek(10, Long.MAX_VALUE);
+        assertEquals(1, batch.getEntries().size());
+        assertEntry(batch.getEntries().get(0), "a", null, "one");
+
+        /* Appends after recovery overwrite the torn frame. */
+        assertTrue(reopened.append("stream", entry("c", null, "three")));
+        reopened.commit(batch);
+        assertEntry(reopened.peek(10, Long.MAX_VALUE).getEntries().get(0), "c", null, "three");
+        reopened.close();
+    }
+
+    @Test
+    public void lengthWrittenBeforeCrashWithoutFrameIsDropped() throws Exception {
+        final MappedFileSpill spill = new MappedFileSpill(config());
+        spill.append("stream", entry("a", null, "one"));
+        spill.close();
+
+        final File segment = directory.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(8 + 8 + frameLength("stream", "a", null, "one"));
+            raf.writeInt(100);
+        }
+
+        final MappedFileSpill reopened = new MappedFileSpill(config());
+        assertEquals(1, reopened.peek(10, Long.MAX_VALUE).getEntries().size());
+        reopened.close();
+    }
+
+    @Test
+    public void resumesAfterCommittedRecordsOnReopen() {
+        final MappedFileSpill spill = new MappedFileSpill(config());
+        spill.append("stream", entry("a", null, "one"));
+        spill.append("stream", entry("b", null, "two"));
+        spill.append("stream", entry("c", null, "three"));
+        spill.commit(spill.peek(1, Long.MAX_VALUE));
+        final long pendingBytes = spill.getPendingBytes();
+        spill.close();
+
+        final MappedFileSpill reopened = new MappedFileSpill(config());
+        assertEquals(pendingBytes, reopened.getPendingBytes());
+        final MappedFileSpill.Batch batch = reopened.peek(10, Long.MAX_VALUE);
+        assertEquals(2, batch.getEntries().size());
+        assertEntry(batch.getEntries().get(0), "b", null, "two");
+        assertEntry(batch.getEntries().get(1), "c", null, "three");
+        reopened.close();
+    }
+
+    @Test
+    public void uncommittedBatchIsReplayedAfterReopen() {
+        final MappedFileSpill spill = new MappedFileSpill(config());
+        spill.append("stream", entry("a", null, "one"));
+        final MappedFileSpill.Batch batch = spill.peek(10, Long.MAX_VALUE);
+        spill.close();
+        spill.commit(batch);
+
+        final MappedFileSpill reopened = new MappedFileSpill(config());
+        assertEntry(reopened.peek(10, Long.MAX_VALUE).getEntries().get(0), "a", null, "one");
+        reopened.close();
+    }
+
+    @Test
+    public void resumesAcrossSegments() {
+        final String data = new String(new char[400_000]).replace('\0', 'x');
+        final MappedFileSpill spill = new MappedFileSpill(config());
+        for (int index = 0; index < 5; index++) {
+            assertTrue(spill.append("stream", entry("key-" + index, null, data)));
+        }
+        assertEquals(3, directory.listFiles().length);
+
+        final MappedFileSpill.Batch first = spill.peek(10, Long.MAX_VALUE);
+        assertEquals(2, first.getEntries().size());
+        spill.commit(first);
+        assertEquals(2, directory.listFiles().length);
+        spill.close();
+
+        final MappedFileSpill reopened = new MappedFileSpill(config());
+        for (int index = 2; index < 5; index++) {
+            final MappedFileSpill.Batch batch = reopened.peek(1, Long.MAX_VALUE);
+            assertEquals("key-" + index, batch.getEntries().get(0).getPartitionKey());
+            reopened.commit(batch);
+        }
+        assertTrue(reopened.isEmpty());
+        assertNull(reopened.peek(10, Long.MAX_VALUE));
+        assertEquals(1, directory.listFiles().length);
+        reopened.close();
+    }
+
+    @Test
+    public void failedDeleteIsRetriedOnALaterCommit() throws Exception {
+        final String data = new String(new char[400_000]).replace('\0', 'x');
+        final MappedFileSpill spill = new MappedFileSpill(config());
+        for (int index = 0; index < 5; index++) {
+            assertTrue(spill.append("stream", entry("key-" + index, null, data)));
+        }
+        final File probe = new File(directory, "probe");
+        assertTrue(probe.createNewFile());
+        assertTrue(directory.setWritable(false));
+        try {
+            /* Stands in for a platform that refuses to delete a mapped file, root deletes anyway. */
+            assumeFalse(probe.delete());
+
+            spill.commit(spill.peek(10, Long.MAX_VALUE));
+            assertEquals(4, directory.listFiles().length);
+        } finally {
+            directory.setWritable(true);
+        }
+
+        spill.commit(spill.peek(10, Long.MAX_VALUE));
+        assertEquals(Arrays.asList("probe", "segment-00000000000000000002.spill"), names(directory.listFiles()));
+        spill.close();
+    }
+
+    @Test
+    public void rejectsAppendsOnceFull() {
+        final String data = new String(new char[400_000]).replace('\0', 'x');
+        final MappedFileSpill spill = new MappedFileSpill(config().withMaxSegments(2));
+        for (int index = 0; index < 4; index++) {
+            assertTrue(spill.append("stream", entry("key-" + index, null, data)));
+        }
+        assertFalse(spill.append("stream", entry("key-4", null, data)));
+
+        spill.commit(spill.peek(10, Long.MAX_VALUE));
+        assertTrue(spill.append("stream", entry("key-4", null, data)));
+        spill.close();
+    }
+
+    @Test
+    public void batchesHoldOneStream() {
+        final MappedFileSpill spill = new MappedFileSpill(config());
+        spill.append("first", entry("a", null, "one"));
+        spill.append("second", entry("b", null, "two"));
+
+        final MappedFileSpill.Batch batch = spill.peek(10, Long.MAX_VALUE);
+        assertEquals("first", batch.getStreamName());
+        assertEquals(1, batch.getEntries().size());
+        spill.commit(batch);
+        assertEquals("second", spill.peek(10, Long.MAX_VALUE).getStreamName());
+        spill.close();
+    }
+
+    private static List<String> names(final File[] files) {
+        final List<String> names = new ArrayList<>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private SpillConfig config() {
+        return new SpillConfig(directory).withSegmentBytes(SpillConfig.MIN_SEGMENT_BYTES).withMaxSegments(4);
+    }
+
+    private static int frameLength(final String streamName, final String partitionKey, final String explicitHashKey,
+                                   final String data) {
+        return 6 + streamName.length() + partitionKey.length()
+                + (explicitHashKey == null ? 0 : explicitHashKey.length()) + data.length();
+    }
+
+    static PutRecordsRequestEntry entry(final String partitionKey, final String explicitHashKey, final String data) {
+        return new PutRecordsRequestEntry().withPartitionKey(partitionKey).withExplicitHashKey(explicitHashKey)
+                .withData(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static void assertEntry(final PutRecordsRequestEntry entry, final String partitionKey,
+                            final String explicitHashKey, final String data) {
+        assertEquals(partitionKey, entry.getPartitionKey());
+        assertEquals(explicitHashKey, entry.getExplicitHashKey());
+        final byte[] bytes = new byte[entry.getData().remaining()];
+        entry.getData().duplicate().get(bytes);
+        assertEquals(data, new String(bytes, StandardCharsets.UTF_8));
+    }
+}
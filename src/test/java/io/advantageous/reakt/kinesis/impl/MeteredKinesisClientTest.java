@@ -0,0 +1,145 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.GetRecordsRequest;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.GetShardIteratorResult;
+import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.kinesis.model.PutRecordResult;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.amazonaws.services.kinesis.model.Record;
+import io.advantageous.reakt.kinesis.KinesisMetrics;
+import io.advantageous.reakt.kinesis.KinesisOperation;
+import io.advantageous.reakt.kinesis.OperationMetrics;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MeteredKinesisClientTest {
+
+    private static final String SHARD_ID = "shardId-000000000000";
+
+    private final KinesisMetrics metrics = new KinesisMetrics();
+    private final ScriptedClient delegate = new ScriptedClient();
+    private final MeteredKinesisClient client = new MeteredKinesisClient(delegate, metrics);
+
+    @Test
+    public void readsAreMeteredPerShardUntilShardEnd() {
+        delegate.reads.put("iterator-1", new GetRecordsResult().withMillisBehindLatest(500L)
+                .withNextShardIterator("iterator-2")
+                .withRecords(new Record().withPartitionKey("pk").withData(ByteBuffer.allocate(10))));
+        delegate.reads.put("iterator-2", new GetRecordsResult().withMillisBehindLatest(0L));
+
+        client.getShardIteratorAsync("stream", SHARD_ID, "TRIM_HORIZON").invoke();
+        client.getRecords(new GetRecordsRequest().withShardIterator("iterator-1")).invoke();
+
+        assertEquals(Collections.singletonMap(SHARD_ID, 500L), metrics.getShardMillisBehindLatest("stream"));
+        assertEquals(12, metrics.getBytesRead("stream"));
+        assertEquals(Collections.singletonMap(SHARD_ID, 12L), metrics.getShardBytesRead("stream"));
+
+        client.getRecords(new GetRecordsRequest().withShardIterator("iterator-2")).invoke();
+
+        /* A closed shard no longer holds up the lag of the stream. */
+        assertEquals(Collections.emptyMap(), metrics.getShardMillisBehindLatest("stream"));
+        assertEquals(-1, metrics.getMillisBehindLatest("stream"));
+        final OperationMetrics getRecords = metrics.operation(KinesisOperation.GET_RECORDS);
+        assertEquals(2, getRecords.getSuccesses());
+        assertEquals(0, getRecords.getInFlight());
+        assertEquals(2, getRecords.getLatency().getCount());
+    }
+
+    @Test
+    public void readsOfUnknownIteratorsAreOnlyTimed() {
+        delegate.reads.put("foreign", new GetRecordsResult().withMillisBehindLatest(500L)
+                .withNextShardIterator("next"));
+
+        client.getRecords(new GetRecordsRequest().withShardIterator("foreign")).invoke();
+
+        assertEquals(1, metrics.operation(KinesisOperation.GET_RECORDS).getSuccesses());
+        assertEquals(Collections.emptyMap(), metrics.getShardMillisBehindLatest("stream"));
+    }
+
+    @Test
+    public void putRecordsCountsWrittenFailedAndThrottledEntries() {
+        client.putRecords(new PutRecordsRequest().withStreamName("stream").withRecords(
+                new PutRecordsRequestEntry().withPartitionKey("a").withData(ByteBuffer.allocate(8)),
+                new PutRecordsRequestEntry().withPartitionKey("b").withData(ByteBuffer.allocate(8)),
+                new PutRecordsRequestEntry().withPartitionKey("c").withData(ByteBuffer.allocate(8)))).invoke();
+
+        assertEquals(9, metrics.getBytesWritten("stream"));
+        assertEquals(Collections.singletonMap(SHARD_ID, 1L), metrics.getShardRecordsWritten("stream"));
+        assertEquals(1, metrics.getWriteThrottles("stream"));
+        assertEquals(2, metrics.operation(KinesisOperation.PUT_RECORDS).getFailedRecords());
+        assertEquals(1, metrics.operation(KinesisOperation.PUT_RECORDS).getSuccesses());
+    }
+
+    @Test
+    public void throttledCallsAreCountedAsErrorsAndThrottles() {
+        final AtomicReference<Throwable> rejected = new AtomicReference<>();
+
+        client.putRecord("stream", ByteBuffer.allocate(1), "throttled").catchError(rejected::set).invoke();
+
+        assertTrue(rejected.get() instanceof ProvisionedThroughputExceededException);
+        final OperationMetrics putRecord = metrics.operation(KinesisOperation.PUT_RECORD);
+        assertEquals(1, putRecord.getErrors());
+        assertEquals(1, putRecord.getThrottles());
+        assertEquals(0, putRecord.getInFlight());
+        assertEquals(1, metrics.getWriteThrottles("stream"));
+        assertEquals(0, metrics.getBytesWritten("stream"));
+    }
+
+    /**
+     * Hands out one shard iterator, answers reads by iterator, accepts the first entry of a PutRecords call,
+     * throttles the second and fails the rest, and throttles putRecord for the partition key "throttled".
+     */
+    private static class ScriptedClient extends DelegatingKinesisClient {
+        private final Map<String, GetRecordsResult> reads = new HashMap<>();
+
+        private ScriptedClient() {
+            super(null);
+        }
+
+        @Override
+        public Promise<GetShardIteratorResult> getShardIteratorAsync(final String streamName, final String shardId,
+                                                                     final String shardIteratorType) {
+            return invokablePromise(promise -> promise.resolve(
+                    new GetShardIteratorResult().withShardIterator("iterator-1")));
+        }
+
+        @Override
+        public Promise<GetRecordsResult> getRecords(final GetRecordsRequest request) {
+            return invokablePromise(promise -> promise.resolve(reads.get(request.getShardIterator())));
+        }
+
+        @Override
+        public Promise<PutRecordResult> putRecord(final String streamName, final ByteBuffer data,
+                                                  final String partitionKey) {
+            return invokablePromise(promise -> {
+                if ("throttled".equals(partitionKey)) {
+                    promise.reject(new ProvisionedThroughputExceededException("slow down"));
+                } else {
+                    promise.resolve(new PutRecordResult().withShardId(SHARD_ID).withSequenceNumber("1"));
+                }
+            });
+        }
+
+        @Override
+        public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+            return invokablePromise(promise -> promise.resolve(new PutRecordsResult().withFailedRecordCount(2)
+                    .withRecords(new PutRecordsResultEntry().withShardId(SHARD_ID).withSequenceNumber("1"),
+                            new PutRecordsResultEntry().withErrorCode("ProvisionedThroughputExceededException"),
+                            new PutRecordsResultEntry().withErrorCode("InternalFailure"))));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import io.advantageous.reakt.kinesis.BatchingProducerConfig;
+import io.advantageous.reakt.kinesis.ByteBufferPool;
+import io.advantageous.reakt.kinesis.KinesisClient;
+import io.advantageous.reakt.kinesis.KinesisMetrics;
+import io.advantageous.reakt.kinesis.RecordAggregator;
+import io.advantageous.reakt.kinesis.RetryPolicy;
+import io.advantageous.reakt.kinesis.SpillConfig;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PooledPayloadKinesisClientTest {
+
+    private final CountingPool pool = new CountingPool();
+
+    @Test
+    public void retriedBatchReleasesBuffersOnceAfterLastAttempt() throws Exception {
+        final ByteBuffer one = payload("one");
+        final ByteBuffer two = payload("two");
+        final FailingOnceClient delegate = new FailingOnceClient();
+        final PooledPayloadKinesisClient client = new PooledPayloadKinesisClient(delegate, pool);
+        final PutRecordsRequest request = new PutRecordsRequest().withStreamName("stream").withRecords(
+                new PutRecordsRequestEntry().withPartitionKey("a").withData(one),
+                new PutRecordsRequestEntry().withPartitionKey("b").withData(two));
+        final AtomicReference<PutRecordsResult> result = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        client.putRecords(request, new RetryPolicy().withBaseBackoffMillis(1).withMaxBackoffMillis(1))
+                .then(putRecordsResult -> {
+                    result.set(putRecordsResult);
+                    done.countDown();
+                })
+                .invoke();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        /* The retry resent the original bytes, nothing went back to the pool between attempts. */
+        assertEquals(Arrays.asList("a:one,b:two", "b:two"), delegate.attempts);
+        assertEquals(Arrays.asList(0, 0), delegate.releasedBeforeAttempt);
+        assertEquals(0, (int) result.get().getFailedRecordCount());
+        assertNull(result.get().getRecords().get(1).getErrorCode());
+        assertEquals(2, pool.released.size());
+        assertSame(one, pool.released.get(0));
+        assertSame(two, pool.released.get(1));
+    }
+
+    @Test
+    public void singleCallReleasesBuffersOnce() throws Exception {
+        final ByteBuffer one = payload("one");
+        final PooledPayloadKinesisClient client = new PooledPayloadKinesisClient(new FailingOnceClient(), pool);
+
+        client.putRecords(new PutRecordsRequest().withStreamName("stream").withRecords(
+                new PutRecordsRequestEntry().withPartitionKey("a").withData(one))).invoke();
+
+        assertEquals(Collections.singletonList(one), pool.released);
+    }
+
+    @Test
+    public void foreignBufferIsNeverReissued() {
+        final ByteBuffer foreign = ByteBuffer.allocate(3);
+        final ByteBuffer pooled = payload("one");
+        final PooledPayloadKinesisClient client = new PooledPayloadKinesisClient(new FailingOnceClient(), pool);
+
+        client.putRecords(new PutRecordsRequest().withStreamName("stream").withRecords(
+                new PutRecordsRequestEntry().withPartitionKey("a").withData(foreign),
+                new PutRecordsRequestEntry().withPartitionKey("b").withData(pooled))).invoke();
+
+        /* Both were handed back, only the one the pool issued is reused. */
+        assertEquals(Arrays.asList(foreign, pooled), pool.released);
+        final ByteBuffer first = pool.acquire(3);
+        final ByteBuffer second = pool.acquire(3);
+        assertSame(pooled, first);
+        assertNotSame(foreign, second);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pooledClientCannotBeWrapped() {
+        new MeteredKinesisClient(new PooledPayloadKinesisClient(new FailingOnceClient(), pool), new KinesisMetrics());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pooledClientCannotBePooledAgain() {
+        KinesisClient.pooledPayloads(KinesisClient.pooledPayloads(new FailingOnceClient(), pool), pool);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void producerWithSpillRefusesPooledClient() {
+        new BatchingKinesisProducerImpl(new PooledPayloadKinesisClient(new FailingOnceClient(), pool),
+                new BatchingProducerConfig().withSpill(new SpillConfig(new File("unused-spill"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aggregatingProducerRefusesPooledClient() {
+        new BatchingKinesisProducerImpl(new PooledPayloadKinesisClient(new FailingOnceClient(), pool),
+                new BatchingProducerConfig().withAggregationMaxBytes(RecordAggregator.DEFAULT_MAX_BYTES));
+    }
+
+    private ByteBuffer payload(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = pool.acquire(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    private static class CountingPool extends ByteBufferPool {
+        private final List<ByteBuffer> released = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void release(final ByteBuffer buffer) {
+            released.add(buffer);
+            super.release(buffer);
+        }
+    }
+
+    /**
+     * Fails the second entry of the first PutRecords call, accepts everything after.
+     */
+    private class FailingOnceClient extends DelegatingKinesisClient {
+        private final List<String> attempts = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> releasedBeforeAttempt = Collections.synchronizedList(new ArrayList<>());
+
+        private FailingOnceClient() {
+            super(null);
+        }
+
+        @Override
+        public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+            return invokablePromise(promise -> {
+                final boolean first = attempts.isEmpty();
+                releasedBeforeAttempt.add(pool.released.size());
+                final StringBuilder attempt = new StringBuilder();
+                final List<PutRecordsResultEntry> results = new ArrayList<>();
+                int failed = 0;
+                for (PutRecordsRequestEntry entry : request.getRecords()) {
+                    final byte[] bytes = new byte[entry.getData().remaining()];
+                    entry.getData().duplicate().get(bytes);
+                    attempt.append(attempt.length() == 0 ? "" : ",").append(entry.getPartitionKey()).append(':')
+                            .append(new String(bytes, StandardCharsets.UTF_8));
+                    if (first && results.size() == 1) {
+                        results.add(new PutRecordsResultEntry()
+                                .withErrorCode("ProvisionedThroughputExceededException").withErrorMessage("slow"));
+                        failed++;
+                    } else {
+                        results.add(new PutRecordsResultEntry().withShardId("shardId-000000000000")
+                                .withSequenceNumber(Integer.toString(attempts.size())));
+                    }
+                }
+                attempts.add(attempt.toString());
+                promise.resolve(new PutRecordsResult().withFailedRecordCount(failed).withRecords(results));
+            });
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import io.advantageous.reakt.kinesis.RetryPolicy;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PutRecordsRetrierTest {
+
+    private final RetryPolicy retryPolicy = new RetryPolicy().withBaseBackoffMillis(1).withMaxBackoffMillis(1);
+
+    @Test
+    public void resendsOnlyFailedEntries() throws Exception {
+        final ScriptedClient client = new ScriptedClient(0, "b,c", "c", "");
+
+        final PutRecordsResult result = await(client, request("a", "b", "c"));
+
+        assertEquals(Arrays.asList("a,b,c", "b,c", "c"), client.attempts);
+        assertEquals(0, (int) result.getFailedRecordCount());
+        assertEquals("a@1", result.getRecords().get(0).getSequenceNumber());
+        assertEquals("b@2", result.getRecords().get(1).getSequenceNumber());
+        assertEquals("c@3", result.getRecords().get(2).getSequenceNumber());
+    }
+
+    @Test
+    public void stopsWhenAttemptsAreUsedUp() throws Exception {
+        final ScriptedClient client = new ScriptedClient(0, "b", "b", "b");
+
+        final PutRecordsResult result = await(client, request("a", "b"), retryPolicy.withMaxAttempts(2));
+
+        assertEquals(Arrays.asList("a,b", "b"), client.attempts);
+        assertEquals(1, (int) result.getFailedRecordCount());
+        assertNull(result.getRecords().get(0).getErrorCode());
+        assertEquals("ProvisionedThroughputExceededException", result.getRecords().get(1).getErrorCode());
+    }
+
+    @Test
+    public void stopsWhenElapsedTimeIsUsedUp() throws Exception {
+        final ScriptedClient client = new ScriptedClient(20, "a", "");
+
+        final PutRecordsResult result = await(client, request("a"), retryPolicy.withMaxElapsedMillis(10));
+
+        assertEquals(Collections.singletonList("a"), client.attempts);
+        assertEquals(1, (int) result.getFailedRecordCount());
+    }
+
+    @Test
+    public void retriesRetryableRequestErrors() throws Exception {
+        final ScriptedClient client = new ScriptedClient(0, "");
+        client.errors.add(serviceError(503));
+
+        final PutRecordsResult result = await(client, request("a", "b"));
+
+        assertEquals(Arrays.asList("a,b", "a,b"), client.attempts);
+        assertEquals(0, (int) result.getFailedRecordCount());
+    }
+
+    @Test
+    public void rejectsNonRetryableErrorOnFirstAttempt() throws Exception {
+        final ScriptedClient client = new ScriptedClient(0, "");
+        final AmazonServiceException error = serviceError(400);
+        client.errors.add(error);
+        final AtomicReference<Throwable> rejected = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        PutRecordsRetrier.putRecords(client, request("a"), retryPolicy)
+                .catchError(throwable -> {
+                    rejected.set(throwable);
+                    done.countDown();
+                })
+                .invoke();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(error, rejected.get());
+        assertEquals(Collections.singletonList("a"), client.attempts);
+    }
+
+    @Test
+    public void marksPendingEntriesWhenRetriedRequestFails() throws Exception {
+        final ScriptedClient client = new ScriptedClient(0, "b");
+        client.errors.add(null);
+        client.errors.add(serviceError(400));
+
+        final PutRecordsResult result = await(client, request("a", "b"));
+
+        assertEquals(Arrays.asList("a,b", "b"), client.attempts);
+        assertEquals(1, (int) result.getFailedRecordCount());
+        assertNotNull(result.getRecords().get(0).getSequenceNumber());
+        assertEquals("ValidationException", result.getRecords().get(1).getErrorCode());
+    }
+
+    private PutRecordsResult await(final ScriptedClient client, final PutRecordsRequest request) throws Exception {
+        return await(client, request, retryPolicy);
+    }
+
+    private static PutRecordsResult await(final ScriptedClient client, final PutRecordsRequest request,
+                                          final RetryPolicy retryPolicy) throws Exception {
+        final AtomicReference<PutRecordsResult> result = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        PutRecordsRetrier.putRecords(client, request, retryPolicy)
+                .then(putRecordsResult -> {
+                    result.set(putRecordsResult);
+                    done.countDown();
+                })
+                .invoke();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    private static PutRecordsRequest request(final String... partitionKeys) {
+        final List<PutRecordsRequestEntry> entries = new ArrayList<>();
+        for (String partitionKey : partitionKeys) {
+            entries.add(new PutRecordsRequestEntry().withPartitionKey(partitionKey).withData(ByteBuffer.allocate(1)));
+        }
+        return new PutRecordsRequest().withStreamName("stream").withRecords(entries);
+    }
+
+    private static AmazonServiceException serviceError(final int statusCode) {
+        final AmazonServiceException error = new AmazonServiceException("status " + statusCode);
+        error.setStatusCode(statusCode);
+        error.setErrorCode(statusCode < 500 ? "ValidationException" : "ServiceUnavailable");
+        return error;
+    }
+
+    /**
+     * Fails, per attempt, the entries whose partition keys are scripted, or the whole call with a queued error.
+     */
+    private static class ScriptedClient extends DelegatingKinesisClient {
+        private final long latencyMillis;
+        private final List<String> failures;
+        private final List<AmazonServiceException> errors = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> attempts = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * @param failures comma separated partition keys to fail, per attempt, the last one repeats
+         */
+        private ScriptedClient(final long latencyMillis, final String... failures) {
+            super(null);
+            this.latencyMillis = latencyMillis;
+            this.failures = Arrays.asList(failures);
+        }
+
+        @Override
+        public Promise<PutRecordsResult> putRecords(final PutRecordsRequest request) {
+            return invokablePromise(promise -> {
+                final int attempt = attempts.size();
+                final StringBuilder keys = new StringBuilder();
+                for (PutRecordsRequestEntry entry : request.getRecords()) {
+                    keys.append(keys.length() == 0 ? "" : ",").append(entry.getPartitionKey());
+                }
+                attempts.add(keys.toString());
+                if (latencyMillis > 0) {
+                    try {
+                        Thread.sleep(latencyMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                final AmazonServiceException error = attempt < errors.size() ? errors.get(attempt) : null;
+                if (error != null) {
+                    promise.reject(error);
+                    return;
+                }
+                final Set<String> failing = new HashSet<>(Arrays.asList(
+                        failures.get(Math.min(attempt, failures.size() - 1)).split(",")));
+                final List<PutRecordsResultEntry> results = new ArrayList<>();
+                int failed = 0;
+                for (PutRecordsRequestEntry entry : request.getRecords()) {
+                    if (failing.contains(entry.getPartitionKey())) {
+                        results.add(new PutRecordsResultEntry()
+                                .withErrorCode("ProvisionedThroughputExceededException").withErrorMessage("slow"));
+                        failed++;
+                    } else {
+                        results.add(new PutRecordsResultEntry().withShardId("shardId-000000000000")
+                                .withSequenceNumber(entry.getPartitionKey() + "@" + (attempt + 1)));
+                    }
+                }
+                promise.resolve(new PutRecordsResult().withFailedRecordCount(failed).withRecords(results));
+            });
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.HashKeyRange;
+import com.amazonaws.services.kinesis.model.MergeShardsResult;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.SplitShardResult;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+import com.amazonaws.services.kinesis.model.StreamStatus;
+import io.advantageous.reakt.kinesis.AutoscalerConfig;
+import io.advantageous.reakt.kinesis.KinesisMetrics;
+import io.advantageous.reakt.kinesis.ShardAutoscaler;
+import io.advantageous.reakt.promise.Promise;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.advantageous.reakt.promise.Promises.invokablePromise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShardAutoscalerImplTest {
+
+    /* Far beyond the capacity of a shard however long the test takes between two samples. */
+    private static final long HOT_BYTES = 1L << 50;
+
+    private final KinesisMetrics metrics = new KinesisMetrics();
+    private final ScriptedStream stream = new ScriptedStream();
+
+    @Test
+    public void hotShardIsSplitAtTheMiddleOfItsHashKeyRange() throws Exception {
+        final ShardAutoscaler autoscaler = create(new AutoscalerConfig());
+
+        assertNull(evaluate(autoscaler));
+        metrics.bytesWritten("stream", "shard-0", HOT_BYTES);
+
+        assertEquals("split shard-0", evaluate(autoscaler));
+        assertEquals(Collections.singletonList("split shard-0 at 50"), stream.reshards);
+    }
+
+    @Test
+    public void splitCooldownHoldsTheNextSplit() throws Exception {
+        final ShardAutoscaler autoscaler = create(new AutoscalerConfig().withSplitCooldownMillis(60_000));
+
+        evaluate(autoscaler);
+        metrics.bytesWritten("stream", "shard-0", HOT_BYTES);
+        assertEquals("split shard-0", evaluate(autoscaler));
+        metrics.bytesWritten("stream", "shard-1", HOT_BYTES);
+
+        assertNull(evaluate(autoscaler));
+        assertEquals(1, stream.reshards.size());
+    }
+
+    @Test
+    public void splitsAgainWithoutCooldown() throws Exception {
+        final ShardAutoscaler autoscaler = create(new AutoscalerConfig().withSplitCooldownMillis(0));
+
+        evaluate(autoscaler);
+        metrics.bytesWritten("stream", "shard-0", HOT_BYTES);
+        assertEquals("split shard-0", evaluate(autoscaler));
+        metrics.bytesWritten("stream", "shard-1", HOT_BYTES);
+
+        assertEquals("split shard-1", evaluate(autoscaler));
+        assertEquals(Arrays.asList("split shard-0 at 50", "split shard-1 at 150"), stream.reshards);
+    }
+
+    @Test
+    public void coldAdjacentShardsAreMergedWithFleetWideMetrics() throws Exception {
+        final ShardAutoscaler autoscaler = create(new AutoscalerConfig().withFleetWideMetrics(true));
+
+        evaluate(autoscaler);
+
+        assertEquals("merge shard-0 and shard-1", evaluate(autoscaler));
+        assertEquals(Collections.singletonList("merge shard-0 and shard-1"), stream.reshards);
+    }
+
+    @Test
+    public void coldShardsAreKeptWithoutFleetWideMetrics() throws Exception {
+        /* Writes of other producers do not show in the metrics, so the shards only look cold. */
+        final ShardAutoscaler autoscaler = create(new AutoscalerConfig());
+
+        evaluate(autoscaler);
+
+        assertNull(evaluate(autoscaler));
+        assertTrue(stream.reshards.isEmpty());
+    }
+
+    @Test
+    public void throttledStreamIsNotMerged() throws Exception {
+        final ShardAutoscaler autoscaler = create(new AutoscalerConfig().withFleetWideMetrics(true));
+
+        evaluate(autoscaler);
+        metrics.writesThrottled("stream", 1);
+
+        assertNull(evaluate(autoscaler));
+        assertTrue(stream.reshards.isEmpty());
+    }
+
+    @Test
+    public void mergeCooldownFollowsASplit() throws Exception {
+        final ShardAutoscaler autoscaler = create(new AutoscalerConfig().withFleetWideMetrics(true)
+                .withMergeCooldownMillis(60_000));
+
+        evaluate(autoscaler);
+        metrics.bytesWritten("stream", "shard-0", HOT_BYTES);
+        assertEquals("split shard-0", evaluate(autoscaler));
+
+        assertNull(evaluate(autoscaler));
+        assertEquals(1, stream.reshards.size());
+    }
+
+    private ShardAutoscaler create(final AutoscalerConfig config) {
+        return ShardAutoscaler.create(stream, "stream", config.withMetrics(metrics)
+                .withControlPlaneIntervalMillis(0));
+    }
+
+    private static String evaluate(final ShardAutoscaler autoscaler) throws Exception {
+        final AtomicReference<Object> change = new AtomicReference<>();
+        final CountDownLatch evaluated = new CountDownLatch(1);
+        autoscaler.evaluate().then(result -> {
+            change.set(result);
+            evaluated.countDown();
+        }).catchError(error -> {
+            change.set(error);
+            evaluated.countDown();
+        }).invoke();
+        assertTrue(evaluated.await(5, TimeUnit.SECONDS));
+        assertFalse(change.get() instanceof Throwable);
+        return (String) change.get();
+    }
+
+    /**
+     * An active stream of two adjacent open shards that records the reshards it is asked for.
+     */
+    private static class ScriptedStream extends DelegatingKinesisClient {
+        private final List<String> reshards = Collections.synchronizedList(new ArrayList<>());
+
+        private ScriptedStream() {
+            super(null);
+        }
+
+        @Override
+        public Promise<DescribeStreamResult> describeStream(final String streamName, final int limit,
+                                                            final String exclusiveStartShardId) {
+            return invokablePromise(promise -> promise.resolve(new DescribeStreamResult().withStreamDescription(
+                    new StreamDescription().withStreamName(streamName).withHasMoreShards(false)
+                            .withStreamStatus(StreamStatus.ACTIVE.toString())
+                            .withShards(shard("shard-1", "100", "199"), shard("shard-0", "0", "99")))));
+        }
+
+        @Override
+        public Promise<SplitShardResult> splitShardAsync(final String streamName, final String shardToSplit,
+                                                         final String newStartingHashKey) {
+            return invokablePromise(promise -> {
+                reshards.add("split " + shardToSplit + " at " + newStartingHashKey);
+                promise.resolve(new SplitShardResult());
+            });
+        }
+
+        @Override
+        public Promise<MergeShardsResult> mergeShards(final String streamName, final String shardToMerge,
+                                                      final String adjacentShardToMerge) {
+            return invokablePromise(promise -> {
+                reshards.add("merge " + shardToMerge + " and " + adjacentShardToMerge);
+                promise.resolve(new MergeShardsResult());
+            });
+        }
+
+        private static Shard shard(final String shardId, final String startingHashKey, final String endingHashKey) {
+            return new Shard().withShardId(shardId).withHashKeyRange(new HashKeyRange()
+                    .withStartingHashKey(startingHashKey).withEndingHashKey(endingHashKey));
+        }
+    }
+}
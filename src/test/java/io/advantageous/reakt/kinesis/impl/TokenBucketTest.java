@@ -0,0 +1,84 @@
+package io.advantageous.reakt.kinesis.impl;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long PERMIT = SECOND / 10;
+
+    private final TokenBucket bucket = new TokenBucket(10);
+
+    @Test
+    public void allowsOneSecondOfBurst() {
+        assertEquals(0, bucket.reserve(10, 0, 0));
+        assertEquals(-1, bucket.reserve(1, 0, 0));
+        assertEquals(0, bucket.waitTime(0));
+    }
+
+    @Test
+    public void delaysWithinMaxDelay() {
+        bucket.reserve(10, 0, 0);
+
+        assertEquals(PERMIT, bucket.reserve(1, 0, SECOND));
+        assertEquals(3 * PERMIT, bucket.reserve(2, 0, SECOND));
+        assertEquals(3 * PERMIT, bucket.waitTime(0));
+    }
+
+    @Test
+    public void rejectedReservationTakesNothing() {
+        bucket.reserve(10, 0, 0);
+
+        assertEquals(-1, bucket.reserve(5, 0, PERMIT));
+        assertEquals(PERMIT, bucket.reserve(1, 0, PERMIT));
+    }
+
+    @Test
+    public void refillsOverTime() {
+        bucket.reserve(10, 0, 0);
+
+        assertEquals(-1, bucket.reserve(4, 3 * PERMIT, 0));
+        assertEquals(0, bucket.reserve(3, 3 * PERMIT, 0));
+        assertEquals(0, bucket.reserve(10, 20 * PERMIT, 0));
+    }
+
+    @Test
+    public void chargeMakesTheNextCallerWait() {
+        bucket.reserve(10, 0, 0);
+        bucket.charge(5, 0);
+
+        assertEquals(5 * PERMIT, bucket.waitTime(0));
+        assertEquals(3 * PERMIT, bucket.waitTime(2 * PERMIT));
+    }
+
+    @Test
+    public void refundGivesPermitsBack() {
+        bucket.reserve(10, 0, 0);
+        bucket.refund(4, 0);
+
+        assertEquals(0, bucket.reserve(4, 0, 0));
+        assertEquals(-1, bucket.reserve(1, 0, 0));
+    }
+
+    @Test
+    public void refundNeverOverfills() {
+        bucket.reserve(1, 0, 0);
+        bucket.refund(5, 0);
+
+        assertEquals(0, bucket.reserve(10, 0, 0));
+        assertEquals(-1, bucket.reserve(1, 0, 0));
+    }
+
+    @Test
+    public void refundAfterRefillIsIgnored() {
+        bucket.reserve(10, 0, 0);
+        bucket.refund(10, 2 * SECOND);
+
+        assertEquals(0, bucket.reserve(10, 2 * SECOND, 0));
+        assertEquals(-1, bucket.reserve(1, 2 * SECOND, 0));
+    }
+}